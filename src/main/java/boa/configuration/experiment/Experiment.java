@@ -110,8 +110,10 @@ public class Experiment extends ContainerParameterImpl<Experiment> implements Tr
     PluginParameter<Autofocus> autofocus = new PluginParameter<>("Algorithm", Autofocus.class, new SelectBestFocusPlane(), true);
     GroupParameter bestFocusPlane = new GroupParameter("Best Focus plane computation", new Parameter[]{bestFocusPlaneChannel, autofocus}).setToolTipText("This algorithm will be used to select one plane in case a transformation that requires 2D images and 3D images are provided");
     
-    public enum ImageDAOTypes {LocalFileSystem};
-    ImageDAOTypes imageDAOType=ImageDAOTypes.LocalFileSystem;
+    public enum ImageDAOTypes {LocalFileSystem, Chunked};
+    ChoiceParameter imageDAOType = new ChoiceParameter("Pre-processed Image Storage", Utils.toStringArray(ImageDAOTypes.values()), ImageDAOTypes.LocalFileSystem.name(), false).setToolTipText("<ul><li>"+ImageDAOTypes.LocalFileSystem.name()+": one TIFF file per channel and frame</li><li>"+ImageDAOTypes.Chunked.name()+": one file per channel containing all frames, split in compressed chunks. Faster to open, and reading a sub-region only reads the corresponding chunks</li></ul>Changing this parameter requires to run pre-processing again");
+    public enum MeasurementStoreTypes {JSON, Columnar};
+    ChoiceParameter measurementStoreType = new ChoiceParameter("Measurement Storage", Utils.toStringArray(MeasurementStoreTypes.values()), MeasurementStoreTypes.JSON.name(), false).setToolTipText("<ul><li>"+MeasurementStoreTypes.JSON.name()+": one JSON string per object</li><li>"+MeasurementStoreTypes.Columnar.name()+": one file per measurement. Faster to extract, not readable by previous versions</li></ul>Only applies to measurement files created after the change. Existing files can be converted from the menu of the local database");
     ConfigurationTreeModel model;
     
     @Override
@@ -126,6 +128,8 @@ public class Experiment extends ContainerParameterImpl<Experiment> implements Tr
         res.put("template", template.toJSONEntry());
         res.put("importMethod", importCond.toJSONEntry());
         res.put("bestFocusPlane", bestFocusPlane.toJSONEntry());
+        res.put("imageDAOType", imageDAOType.toJSONEntry());
+        res.put("measurementStoreType", measurementStoreType.toJSONEntry());
         return res;
     }
 
@@ -142,6 +146,8 @@ public class Experiment extends ContainerParameterImpl<Experiment> implements Tr
         if (jsonO.get("importMethod") instanceof JSONObject) importCond.initFromJSONEntry(jsonO.get("importMethod"));
         else importMethod.initFromJSONEntry(jsonO.get("importMethod")); // RETRO COMPATIBILITY
         bestFocusPlane.initFromJSONEntry(jsonO.get("bestFocusPlane"));
+        if (jsonO.containsKey("imageDAOType")) imageDAOType.initFromJSONEntry(jsonO.get("imageDAOType"));
+        if (jsonO.containsKey("measurementStoreType")) measurementStoreType.initFromJSONEntry(jsonO.get("measurementStoreType"));
         this.name="Configuration";
     }
     public Experiment(){
@@ -176,14 +182,29 @@ public class Experiment extends ContainerParameterImpl<Experiment> implements Tr
     public void setImportImageMethod(IMPORT_METHOD method) {this.importMethod.setValue(method.getMethod());}
     
     public void setImageDAOType(ImageDAOTypes type) {
-        this.imageDAOType=type;
+        this.imageDAOType.setSelectedItem(type.name());
+    }
+    public ImageDAOTypes getImageDAOType() {
+        return ImageDAOTypes.valueOf(imageDAOType.getSelectedItem());
+    }
+    public void setMeasurementStoreType(MeasurementStoreTypes type) {
+        this.measurementStoreType.setSelectedItem(type.name());
+    }
+    public MeasurementStoreTypes getMeasurementStoreType() {
+        return MeasurementStoreTypes.valueOf(measurementStoreType.getSelectedItem());
     }
     public ImageDAO getImageDAO() {
-        return ImageDAOFactory.getLocalFileSystemImageDAO(getOutputImageDirectory()); //if (imageDAOType.equals(ImageDAOTypes.LocalFileSystem))
+        switch (getImageDAOType()) {
+            case Chunked:
+                return ImageDAOFactory.getAsyncImageDAO(ImageDAOFactory.getChunkedImageDAO(getOutputImageDirectory()));
+            case LocalFileSystem:
+            default:
+                return ImageDAOFactory.getAsyncImageDAO(ImageDAOFactory.getLocalFileSystemImageDAO(getOutputImageDirectory()));
+        }
     }
     
     protected void initChildList() {
-        super.initChildren(importCond, template, positions, channelImages, structures, measurements, outputPath, imagePath, bestFocusPlane);
+        super.initChildren(importCond, template, positions, channelImages, structures, measurements, outputPath, imagePath, imageDAOType, measurementStoreType, bestFocusPlane);
     }
     
     public PreProcessingChain getPreProcessingTemplate() {
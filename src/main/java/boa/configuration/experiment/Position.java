@@ -33,6 +33,7 @@ import boa.data_structure.input_image.InputImage;
 import boa.data_structure.input_image.InputImagesImpl;
 import boa.data_structure.image_container.MultipleImageContainer;
 import boa.data_structure.dao.ObjectDAO;
+import boa.data_structure.ImageCache;
 import boa.data_structure.StructureObject;
 import boa.data_structure.StructureObjectUtils;
 import static boa.data_structure.StructureObjectUtils.setTrackLinks;
@@ -167,6 +168,7 @@ public class Position extends ContainerParameterImpl<Position> implements ListEl
             preProcessedImages.flush();
             preProcessedImages = null;
         }
+        if (preProcessed) ImageCache.getInstance().invalidate(getExperiment().getOutputImageDirectory(), name);
         if (raw && sourceImages!=null) sourceImages.flush();
     }
     
@@ -31,7 +31,10 @@ import boa.data_structure.StructureObjectUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +56,44 @@ public class DbConverter {
         MasterDAO dbMap = MasterDAOFactory.createDAO(dbName, dir, MasterDAOFactory.DAOType.DBMap);
         copy(mongo, dbMap, true);
     }
+    /**
+     * Converts objects of a DBMap dataset to the binary format (see {@link MasterDAOFactory.DAOType#Binary}) in the same directory. 
+     * Measurements files are shared by both formats and are thus not copied
+     * @param dbName
+     * @param dir 
+     */
+    public static void dbMapToBinary(String dbName, String dir) {
+        convertObjectStorage(dbName, dir, MasterDAOFactory.DAOType.Binary);
+    }
+    /**
+     * Converts objects of a DBMap dataset to the segment format (see {@link MasterDAOFactory.DAOType#Segment}) in the same directory. 
+     * Measurements files are shared by both formats and are thus not copied
+     * @param dbName
+     * @param dir 
+     */
+    public static void dbMapToSegment(String dbName, String dir) {
+        convertObjectStorage(dbName, dir, MasterDAOFactory.DAOType.Segment);
+    }
+    private static void convertObjectStorage(String dbName, String dir, MasterDAOFactory.DAOType destType) {
+        MasterDAO dbMap = MasterDAOFactory.createDAO(dbName, dir, MasterDAOFactory.DAOType.DBMap);
+        MasterDAO destMDAO = MasterDAOFactory.createDAO(dbName, dir, destType);
+        if (dbMap.getExperiment()==null) {
+            logger.error("No dataset found: {} in {}", dbName, dir);
+            return;
+        }
+        for (String position : dbMap.getExperiment().getPositionsAsString()) {
+            if (!destMDAO.lockPositions(position)) {
+                logger.error("Position: {} could not be locked. Conversion is skipped", position);
+                continue;
+            }
+            ObjectDAO destDAO = destMDAO.getDao(position);
+            int[] allStructures = IntStream.range(-1, dbMap.getExperiment().getStructureCount()).toArray();
+            destDAO.deleteObjectsByStructureIdx(allStructures); // only deletes object files of the destination format
+            copyObjects(dbMap.getDao(position), destDAO, false);
+            destMDAO.unlockPositions(position);
+            dbMap.clearCache(position);
+        }
+    }
     
     public static void copy(MasterDAO source, MasterDAO dest, boolean copyXP) {
         if (copyXP) {
@@ -65,36 +106,36 @@ public class DbConverter {
             SelectionDAO destSelDAO = dest.getSelectionDAO();
             for (Selection s : sourceSelDAO.getSelections()) destSelDAO.store(s);
         }
-        long readTime = 0;
-        long writeTime = 0;
-        long objectCount = 0;
         for (String position : source.getExperiment().getPositionsAsString()) {
-            ObjectDAO sourceDAO = source.getDao(position);
-            ObjectDAO destDAO = dest.getDao(position);
-            List<StructureObject> roots=sourceDAO.getRoots();
-            destDAO.store(roots);
-            for (int sIdx = 0; sIdx<source.getExperiment().getStructureCount(); ++sIdx) {
-                long tr0 = System.currentTimeMillis();
-                Collection<List<StructureObject>> allTracks = StructureObjectUtils.getAllTracks(roots, sIdx).values();
-                long tr1 = System.currentTimeMillis();
-                
-                List<StructureObject> toWrite = new ArrayList<>();
-                for (List<StructureObject> list : allTracks) toWrite.addAll(list);
-                objectCount+=toWrite.size();
-                for (StructureObject o : toWrite) {
-                    o.getRegion();
-                    o.getMeasurements();
-                }
-                readTime+=tr1-tr0;
-                long t0 = System.currentTimeMillis();
-                destDAO.store(toWrite);
-                destDAO.upsertMeasurements(toWrite);
-                long t1 = System.currentTimeMillis();
-                writeTime+=t1-t0;
-                if (destDAO instanceof DBMapObjectDAO) ((DBMapObjectDAO)destDAO).compactDBs(false);
-            }
-            logger.debug("xp: {}, current readTime: {} ({}), current write time: {} ({}), total object number: {}", source.getDBName(), readTime, (double)readTime/(double)objectCount, writeTime, (double)writeTime/(double)objectCount, objectCount);
+            copyObjects(source.getDao(position), dest.getDao(position), true);
         }
         
     }
+    private static void copyObjects(ObjectDAO sourceDAO, ObjectDAO destDAO, boolean measurements) {
+        long objectCount = 0;
+        long tr0 = System.currentTimeMillis();
+        // all objects are retrieved before storing because storing changes the DAO of objects
+        List<StructureObject> roots=sourceDAO.getRoots();
+        Map<Integer, List<StructureObject>> toWriteByStructure = new LinkedHashMap<>();
+        for (int sIdx : sourceDAO.getExperiment().getStructuresInHierarchicalOrderAsArray()) {
+            Collection<List<StructureObject>> allTracks = StructureObjectUtils.getAllTracks(roots, sIdx).values();
+            List<StructureObject> toWrite = new ArrayList<>();
+            for (List<StructureObject> list : allTracks) toWrite.addAll(list);
+            objectCount+=toWrite.size();
+            for (StructureObject o : toWrite) {
+                o.getRegion();
+                if (measurements) o.getMeasurements();
+            }
+            toWriteByStructure.put(sIdx, toWrite);
+        }
+        long tr1 = System.currentTimeMillis();
+        destDAO.store(roots);
+        for (List<StructureObject> toWrite : toWriteByStructure.values()) {
+            destDAO.store(toWrite);
+            if (measurements) destDAO.upsertMeasurements(toWrite);
+        }
+        if (destDAO instanceof DBMapObjectDAO) ((DBMapObjectDAO)destDAO).compactDBs(false);
+        long t1 = System.currentTimeMillis();
+        logger.debug("position: {}, read time: {} ({}), write time: {} ({}), total object number: {}", sourceDAO.getPositionName(), tr1-tr0, (double)(tr1-tr0)/(double)objectCount, t1-tr1, (double)(t1-tr1)/(double)objectCount, objectCount);
+    }
 }
@@ -26,20 +26,36 @@ import boa.configuration.experiment.PreProcessingChain;
 import boa.data_structure.dao.ImageDAO;
 import boa.data_structure.input_image.InputImagesImpl;
 import boa.data_structure.image_container.MultipleImageContainer;
+import boa.data_structure.dao.DBMapObjectDAO;
 import boa.data_structure.dao.MasterDAO;
 import boa.data_structure.dao.ObjectDAO;
+import boa.data_structure.ImageCache;
 import boa.data_structure.StructureObject;
 import boa.data_structure.StructureObjectUtils;
 import boa.gui.image_interaction.Kymograph;
+import boa.image.BoundingBox;
 import boa.image.Image;
+import boa.image.SimpleOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import boa.measurement.MeasurementKey;
 import boa.plugins.ConfigurableTransformation;
@@ -49,6 +65,7 @@ import boa.plugins.Measurement;
 import boa.plugins.MultiThreaded;
 import boa.plugins.Transformation;
 import boa.plugins.plugins.processing_pipeline.SegmentOnly;
+import boa.utils.Id;
 import boa.utils.MultipleException;
 import boa.utils.Pair;
 import boa.utils.StreamConcatenation;
@@ -113,10 +130,11 @@ public class Processor {
             throw new RuntimeException("No images found for position");
         }
         images.deleteFromDAO(); // eraseAll images if existing in imageDAO
+        ImageCache.getInstance().invalidate(dao.getExperiment().getOutputImageDirectory(), position.getName());
         for (int s =0; s<dao.getExperiment().getStructureCount(); ++s) dao.getExperiment().getImageDAO().deleteTrackImages(position.getName(), s);
         setTransformations(position);
         logger.debug("applying all transformation, save & close. {} ", Utils.getMemoryUsage());
-        images.applyTranformationsAndSave(false); // here : should be able to close if necessary
+        images.applyTranformationsAndSave(true); // images are re-opened from DAO if needed
         System.gc();
         logger.debug("after applying: {}", Utils.getMemoryUsage());
         if (deleteObjects) dao.deleteAllObjects();
@@ -198,7 +216,6 @@ public class Processor {
         final ProcessingPipeline ps = xp.getStructure(structureIdx).getProcessingScheme();
         int directParentStructure = xp.getStructure(structureIdx).getParentStructure();
         if (trackOnly && ps instanceof SegmentOnly) return  ;
-        StructureObjectUtils.setAllChildren(parentTrack, structureIdx);
         Map<StructureObject, List<StructureObject>> allParentTracks;
         if (directParentStructure==-1 || parentTrack.get(0).getStructureIdx()==directParentStructure) { // parents = roots or parentTrack is parent structure
             allParentTracks = new HashMap<>(1);
@@ -207,18 +224,29 @@ public class Processor {
             allParentTracks = StructureObjectUtils.getAllTracks(parentTrack, directParentStructure);
         }
         logger.debug("ex ps: structure: {}, allParentTracks: {}", structureIdx, allParentTracks.size());
-        
+        // objects modified by the processing step are not evicted from the DAO cache before they are stored, otherwise unmodified copies would be retrieved and stored
+        List<Id> parentTrackHeadIds = allParentTracks.values().stream().flatMap(pt -> pt.stream()).map(p -> p.getTrackHeadId()).distinct().collect(Collectors.toList());
+        if (dao instanceof DBMapObjectDAO) for (Id thId : parentTrackHeadIds) ((DBMapObjectDAO)dao).pin(thId, structureIdx);
         MultipleException me=null;
-        try { // execute sequentially, store what has been processed, and throw exception in the end
-            ThreadRunner.executeAndThrowErrors(allParentTracks.values().stream(), pt -> execute(xp.getStructure(structureIdx).getProcessingScheme(), structureIdx, pt, trackOnly, deleteChildren, dao));
-        } catch (MultipleException e) {
-            me=e;
-        }
-        
-        // store in DAO
         List<StructureObject> children = new ArrayList<>();
-        for (StructureObject p : parentTrack) children.addAll(p.getChildren(structureIdx));
-        dao.store(children);
+        try {
+            StructureObjectUtils.setAllChildren(parentTrack, structureIdx);
+            try { // execute sequentially, store what has been processed, and throw exception in the end
+                ThreadRunner.executeAndThrowErrors(allParentTracks.values().stream(), pt -> {
+                    try (ImageCache.Pin pin = ImageCache.getInstance().pin(pt.stream().flatMap(p -> p.getRoot().getRawImageCacheKeys().stream()).collect(Collectors.toList()))) { // images of the track, in all channels the processing scheme may read, are not evicted during the processing step
+                        execute(xp.getStructure(structureIdx).getProcessingScheme(), structureIdx, pt, trackOnly, deleteChildren, dao);
+                    }
+                });
+            } catch (MultipleException e) {
+                me=e;
+            }
+
+            // store in DAO
+            for (StructureObject p : parentTrack) children.addAll(p.getChildren(structureIdx));
+            dao.store(children);
+        } finally {
+            if (dao instanceof DBMapObjectDAO) for (Id thId : parentTrackHeadIds) ((DBMapObjectDAO)dao).unpin(thId, structureIdx);
+        }
         logger.debug("total objects: {}, dao type: {}", children.size(), dao.getClass().getSimpleName());
         
         // create error selection
@@ -285,6 +313,11 @@ public class Processor {
         final Map<Integer, List<Measurement>> measurements = dao.getExperiment().getMeasurementsByCallStructureIdx();
         if (roots.isEmpty()) throw new RuntimeException("no root");
         Map<StructureObject, List<StructureObject>> rootTrack = new HashMap<>(1); rootTrack.put(roots.get(0), roots);
+        // load all objects involved in measurements at once: independent parent tracks are loaded concurrently
+        int[] involvedStructures = Utils.flattenMap(measurements).stream()
+                .flatMap(m->Stream.concat(Stream.of(m.getCallObjectClassIdx()), m.getMeasurementKeys().stream().map(k->k.getStoreStructureIdx())))
+                .filter(s->s>=0).distinct().mapToInt(i->i).toArray();
+        dao.prefetch(roots.get(0), involvedStructures);
         boolean containsObjects=false;
         BiPredicate<StructureObject, Measurement> measurementMissing = (StructureObject callObject, Measurement m) -> {
             return mode!=MEASUREMENT_MODE.ONLY_NEW || m.getMeasurementKeys().stream().anyMatch(k -> callObject.getChildren(k.getStoreStructureIdx()).stream().anyMatch(o -> !o.getMeasurements().getValues().containsKey(k.getKey())));
@@ -385,6 +418,14 @@ public class Processor {
         return l;
     }
     
+    /**
+     * Number of frames whose pre-processed image is loaded in advance during track image generation
+     */
+    public static int TRACK_IMAGE_PREFETCH_FRAMES = 4;
+    /**
+     * Number of track images assembled at the same time during track image generation: tracks are processed by groups of this size, so that at most two groups of track images are in memory (one being assembled, one being written)
+     */
+    public static int TRACK_IMAGES_IN_FLIGHT = 2 * ThreadRunner.getMaxCPUs();
     public static void generateTrackImages(ObjectDAO dao, int parentStructureIdx, ProgressCallback pcb, int... childStructureIdx) {
         if (dao==null || dao.getExperiment()==null) return;
         if (childStructureIdx==null || childStructureIdx.length==0) {
@@ -393,19 +434,104 @@ public class Processor {
             Utils.removeDuplicates(childStructures, sIdx -> dao.getExperiment().getStructure(sIdx).getChannelImage());
             childStructureIdx = Utils.toArray(childStructures, false);
         }
-        final int[] cSI = childStructureIdx;
         ImageDAO imageDAO = dao.getExperiment().getImageDAO();
         imageDAO.deleteTrackImages(dao.getPositionName(), parentStructureIdx);
         Map<StructureObject, List<StructureObject>> allTracks = StructureObjectUtils.getAllTracks(dao.getRoots(), parentStructureIdx);
         if (pcb!=null) pcb.log("Generating Image for structure: "+parentStructureIdx+". #tracks: "+allTracks.size()+", child structures: "+Utils.toStringArray(childStructureIdx));
-        ThreadRunner.execute(allTracks.values(), false, (List<StructureObject> track, int idx) -> {
-            InteractiveImage i = Kymograph.generateKymograph(track, parentStructureIdx);
-            for (int childSIdx : cSI) {
-                //GUI.log("Generating Image for track:"+track.get(0)+", structureIdx:"+childSIdx+" ...");
-                Image im = i.generatemage(childSIdx, false);
-                int channelIdx = dao.getExperiment().getChannelImageIdx(childSIdx);
-                imageDAO.writeTrackImage(track.get(0), channelIdx, im);
+        if (allTracks.isEmpty()) return;
+        List<List<StructureObject>> tracks = new ArrayList<>(allTracks.values());
+        List<Kymograph> kymographs = tracks.parallelStream().map(track -> Kymograph.generateKymograph(track, parentStructureIdx)).collect(Collectors.toList()); // only used for layout
+        for (int childSIdx : childStructureIdx) generateTrackImages(tracks, kymographs, childSIdx, imageDAO, pcb);
+    }
+    /**
+     * Track images are generated frame by frame, by groups of {@link #TRACK_IMAGES_IN_FLIGHT} tracks: the pre-processed image of each frame is loaded once per group (and next frames are loaded in advance), 
+     * and the region of each parent is pasted directly in the image of its track. Track images are allocated at the first frame of the track and written once the last frame has been pasted
+     */
+    private static void generateTrackImages(List<List<StructureObject>> tracks, List<Kymograph> kymographs, int structureIdx, ImageDAO imageDAO, ProgressCallback pcb) {
+        int channelIdx = tracks.get(0).get(0).getExperiment().getChannelImageIdx(structureIdx);
+        int groupSize = Math.max(1, TRACK_IMAGES_IN_FLIGHT);
+        Image[] trackImages = new Image[tracks.size()];
+        AtomicInteger[] remaining = tracks.stream().map(t -> new AtomicInteger(t.size())).toArray(l -> new AtomicInteger[l]);
+        AtomicLong loadTime = new AtomicLong(), pasteTime = new AtomicLong(), writtenBytes = new AtomicLong(), writeStart = new AtomicLong(Long.MAX_VALUE);
+        int loadedFrames = 0;
+        Semaphore inFlight = new Semaphore(2 * groupSize); // released when a track image is written
+        MultipleException errors = new MultipleException();
+        ExecutorService loader = Executors.newFixedThreadPool(Math.max(1, Math.min(TRACK_IMAGE_PREFETCH_FRAMES, ThreadRunner.getMaxCPUs())));
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        long t0 = System.currentTimeMillis();
+        long writeEnd;
+        try {
+            for (int g = 0; g<tracks.size(); g+=groupSize) {
+                int gEnd = Math.min(tracks.size(), g+groupSize);
+                inFlight.acquire(gEnd - g); // waits until the track images of the group before the previous one are written
+                TreeMap<Integer, List<int[]>> parentsByFrame = new TreeMap<>(); // frame -> track index, index in track
+                for (int t = g; t<gEnd; ++t) {
+                    for (int i = 0; i<tracks.get(t).size(); ++i) parentsByFrame.computeIfAbsent(tracks.get(t).get(i).getFrame(), f->new ArrayList<>()).add(new int[]{t, i});
+                }
+                loadedFrames += parentsByFrame.size();
+                Iterator<Entry<Integer, List<int[]>>> toLoad = parentsByFrame.entrySet().iterator();
+                ArrayDeque<Future<Image>> loading = new ArrayDeque<>();
+                Function<Entry<Integer, List<int[]>>, Future<Image>> load = e -> {
+                    int[] first = e.getValue().get(0);
+                    StructureObject root = tracks.get(first[0]).get(first[1]).getRoot();
+                    return loader.submit(() -> {
+                        long tl = System.currentTimeMillis();
+                        Image res = root.getRawImage(structureIdx);
+                        loadTime.addAndGet(System.currentTimeMillis()-tl);
+                        return res;
+                    });
+                };
+                for (Entry<Integer, List<int[]>> e : parentsByFrame.entrySet()) {
+                    while (loading.size()<=TRACK_IMAGE_PREFETCH_FRAMES && toLoad.hasNext()) loading.add(load.apply(toLoad.next()));
+                    Image source = loading.poll().get();
+                    if (source==null) throw new RuntimeException("No pre-processed image found for frame: "+e.getKey()+" channel: "+channelIdx);
+                    long tp = System.currentTimeMillis();
+                    e.getValue().parallelStream().forEach(ti -> {
+                        int t = ti[0], i = ti[1];
+                        StructureObject parent = tracks.get(t).get(i);
+                        BoundingBox bounds = parent.getRelativeRawImageBounds(structureIdx); // extended in Z for 2D parents in a 3D channel
+                        synchronized(trackImages) {
+                            if (trackImages[t]==null) trackImages[t] = kymographs.get(t).generateEmptyImage(kymographs.get(t).getImageName(structureIdx), source.cropView(bounds));
+                        }
+                        Image.pasteImage(source, trackImages[t], new SimpleOffset(kymographs.get(t).getTrackOffset(i)), bounds);
+                        if (remaining[t].decrementAndGet()==0) {
+                            Image trackImage = trackImages[t];
+                            trackImages[t] = null;
+                            writer.execute(() -> {
+                                writeStart.accumulateAndGet(System.currentTimeMillis(), Math::min);
+                                try {
+                                    imageDAO.writeTrackImage(tracks.get(t).get(0), channelIdx, trackImage);
+                                    writtenBytes.addAndGet((long)trackImage.sizeXYZ() * trackImage.getBitDepth()/8);
+                                } catch(Throwable ex) {
+                                    synchronized(errors) {errors.addExceptions(new Pair<>(tracks.get(t).get(0).toString(), ex));}
+                                } finally {
+                                    inFlight.release();
+                                }
+                            });
+                        }
+                    });
+                    pasteTime.addAndGet(System.currentTimeMillis()-tp);
+                }
             }
-        });
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            try {
+                imageDAO.flush(); // writes may be asynchronous
+            } catch (MultipleException e) {
+                synchronized(errors) {errors.addExceptions(e.getExceptions());}
+            }
+            writeEnd = System.currentTimeMillis();
+        } catch (InterruptedException|ExecutionException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            loader.shutdownNow();
+            writer.shutdownNow();
+        }
+        long t1 = System.currentTimeMillis();
+        long writeTime = writeStart.get()==Long.MAX_VALUE ? 0 : writeEnd - writeStart.get(); // from the first write until all images are stored
+        String metrics = "Track images of structure: "+structureIdx+": "+tracks.size()+" tracks, "+loadedFrames+" frames loaded in "+(t1-t0)+"ms. load: "+loadTime.get()+"ms ("+ String.format("%.1f", loadedFrames*1000d/Math.max(1, loadTime.get()))+" frames/s), assembly: "+pasteTime.get()+"ms, write (until flushed): "+writeTime+"ms ("+String.format("%.1f", writtenBytes.get()/1000d/Math.max(1, writeTime))+" MB/s)";
+        logger.debug(metrics);
+        if (pcb!=null) pcb.log(metrics);
+        if (!errors.isEmpty()) throw errors;
     }
 }
@@ -40,6 +40,7 @@ import boa.data_structure.dao.DBMapMasterDAO;
 import boa.data_structure.dao.DBMapObjectDAO;
 import boa.data_structure.dao.MasterDAO;
 import boa.data_structure.dao.MasterDAOFactory;
+import boa.data_structure.dao.ObjectDAO;
 import ij.IJ;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -524,6 +525,8 @@ public class Task extends SwingWorker<Integer, String> implements ProgressCallba
             
             try {
                 positions.stream().map((pIdx) -> db.getExperiment().getPosition(pIdx).getName()).forEachOrdered((position) -> {
+                    ObjectDAO dao = db.getDao(position);
+                    if (dao instanceof DBMapObjectDAO) ((DBMapObjectDAO)dao).setWriteBehind(DBMapObjectDAO.PROCESSING_FLUSH_SIZE, DBMapObjectDAO.PROCESSING_FLUSH_LATENCY); // written by batches, committed at the end of each step
                     try {
                         process(position, deleteAllField);
                     } catch (MultipleException e) {
@@ -531,6 +534,16 @@ public class Task extends SwingWorker<Integer, String> implements ProgressCallba
                     } catch (Throwable e) {
                         errors.addExceptions(new Pair("Error while processing: db: "+db.getDBName()+" pos: "+position, e));
                     } finally {
+                        try {
+                            if (dao instanceof DBMapObjectDAO) ((DBMapObjectDAO)dao).setWriteBehind(DBMapObjectDAO.DEFAULT_FLUSH_SIZE, DBMapObjectDAO.DEFAULT_FLUSH_LATENCY);
+                        } catch (Throwable e) {
+                            errors.addExceptions(new Pair("Error while storing objects: db: "+db.getDBName()+" pos: "+position, e));
+                        }
+                        try {
+                            db.getExperiment().getImageDAO().flush(); // wait for asynchronous image writes
+                        } catch (MultipleException e) {
+                            errors.addExceptions(e.getExceptions());
+                        }
                         db.getExperiment().getPosition(position).flushImages(true, true);
                         db.clearCache(position);
                         if (!db.isConfigurationReadOnly() && db.getSelectionDAO()!=null) db.getSelectionDAO().clearCache();
@@ -558,6 +571,7 @@ public class Task extends SwingWorker<Integer, String> implements ProgressCallba
             Processor.preProcessImages(db.getExperiment().getPosition(position), db.getDao(position), true, this);
             boolean createRoot = segmentAndTrack || trackOnly || generateTrackImages;
             if (createRoot) Processor.getOrCreateRootTrack(db.getDao(position)); // will set opened pre-processed images to root -> no need to open them once again in further steps
+            db.getDao(position).flush();
             db.getExperiment().getPosition(position).flushImages(true, true); 
             System.gc();
             incrementProgress();
@@ -577,6 +591,7 @@ public class Task extends SwingWorker<Integer, String> implements ProgressCallba
                 } catch (Throwable e) {
                     errors.addExceptions(new Pair("Error while processing: db: "+db.getDBName()+" pos: "+position+" structure: "+s, e));
                 }
+                db.getDao(position).flush();
                 incrementProgress();
                 if (generateTrackImages && !db.getExperiment().getAllDirectChildStructures(s).isEmpty()) {
                     publish("Generating Track Images for Structure: "+s);
@@ -604,6 +619,7 @@ public class Task extends SwingWorker<Integer, String> implements ProgressCallba
             publish("Measurements...");
             logger.info("Measurements: DB: {}, Position: {}", dbName, position);
             Processor.performMeasurements(db.getDao(position), measurementMode, this);
+            db.getDao(position).flush();
             incrementProgress();
             //publishMemoryUsage("After Measurements");
         }
@@ -0,0 +1,261 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.image.BoundingBox;
+import boa.image.Image;
+import boa.utils.EvictingCache;
+import boa.utils.HashMapGetCreate;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of pre-processed images shared by all {@link StructureObject}, bounded by the total size of images in bytes. 
+ * Least recently used images are evicted, except pinned images. Images are keyed by dataset (output image directory), position, channel, frame and bounds (null for the whole image). 
+ * Only images that can be re-opened from their DAO should be cached
+ * Statistics are visible through JMX as boa:type=ImageCache
+ * @author Jean Ollion
+ */
+public class ImageCache implements ImageCacheMBean {
+    public static final Logger logger = LoggerFactory.getLogger(ImageCache.class);
+    /**
+     * If false, root objects keep their images as before
+     */
+    public static boolean ENABLED = true;
+    /**
+     * Maximal fraction of the heap used by cached images
+     */
+    public static double MAX_HEAP_FRACTION = 0.25;
+    private static ImageCache instance;
+    final EvictingCache<Key, Image> cache;
+    final Map<Key, Integer> pinned = new HashMap<>();
+    final HashMapGetCreate<Key, Object> loadLocks = new HashMapGetCreate<>(k -> new Object());
+    
+    public static synchronized ImageCache getInstance() {
+        if (instance==null) {
+            instance = new ImageCache((long)(Runtime.getRuntime().maxMemory() * MAX_HEAP_FRACTION));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("boa:type=ImageCache"));
+            } catch (Exception e) {
+                logger.debug("could not register image cache MBean", e);
+            }
+        }
+        return instance;
+    }
+    
+    public ImageCache(long maxBytes) {
+        cache = new EvictingCache<Key, Image>(k -> null, ImageCache::getBytes, maxBytes).setEvictionFilter((k, v) -> !pinned.containsKey(k));
+    }
+    
+    public static long getBytes(Image image) {
+        return (long)image.sizeXYZ() * Math.max(1, image.getBitDepth()/8);
+    }
+    
+    public Image get(Key key) {
+        synchronized(cache) {
+            return cache.get(key);
+        }
+    }
+    public boolean contains(Key key) {
+        return cache.containsKey(key);
+    }
+    /**
+     * 
+     * @param key
+     * @param loader called if {@param key} is not in the cache. Images of different keys are loaded concurrently
+     * @return image associated to {@param key}, loaded if necessary
+     */
+    public Image get(Key key, Supplier<Image> loader) {
+        Image res = get(key);
+        if (res!=null) return res;
+        synchronized(loadLocks.getAndCreateIfNecessarySync(key)) {
+            res = cache.peek(key); // loaded by another thread
+            if (res!=null) return res;
+            res = loader.get();
+            if (res!=null) put(key, res);
+        }
+        synchronized(loadLocks) {
+            loadLocks.remove(key);
+        }
+        return res;
+    }
+    public void put(Key key, Image image) {
+        synchronized(cache) { // eviction filter reads pinned
+            if (image==null) cache.remove(key);
+            else cache.put(key, image);
+        }
+    }
+    public void remove(Key key) {
+        synchronized(cache) {
+            cache.remove(key);
+        }
+    }
+    /**
+     * Removes all images of {@param position} of {@param dataset} at {@param frame}
+     * @param dataset
+     * @param position
+     * @param frame 
+     */
+    public void invalidate(String dataset, String position, int frame) {
+        synchronized(cache) {
+            cache.keys().stream().filter(k -> k.frame==frame && k.position.equals(position) && Objects.equals(k.dataset, dataset)).forEach(cache::remove);
+        }
+    }
+    /**
+     * Removes all images of {@param position} of {@param dataset}
+     * @param dataset
+     * @param position 
+     */
+    public void invalidate(String dataset, String position) {
+        synchronized(cache) {
+            cache.keys().stream().filter(k -> k.position.equals(position) && Objects.equals(k.dataset, dataset)).forEach(cache::remove);
+        }
+    }
+    /**
+     * Prevents images from being evicted until the returned pin is closed. Keys need not be in the cache.
+     * @param keys
+     * @return pin to be closed after use
+     */
+    public Pin pin(Collection<Key> keys) {
+        List<Key> k = keys.stream().distinct().collect(Collectors.toList());
+        synchronized(cache) {
+            for (Key key : k) pinned.merge(key, 1, Integer::sum);
+        }
+        return new Pin(k);
+    }
+    public class Pin implements AutoCloseable {
+        final List<Key> keys;
+        boolean closed;
+        private Pin(List<Key> keys) {
+            this.keys=keys;
+        }
+        @Override
+        public void close() {
+            synchronized(cache) {
+                if (closed) return;
+                closed = true;
+                for (Key key : keys) pinned.computeIfPresent(key, (k, c) -> c==1 ? null : c-1);
+                cache.trim();
+            }
+        }
+    }
+    // MBean
+    @Override
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+    @Override
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+    @Override
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+    @Override
+    public void setMaxWeight(long maxWeight) {
+        synchronized(cache) {
+            cache.setMaxWeight(maxWeight);
+        }
+    }
+    @Override
+    public int getPinnedCount() {
+        synchronized(cache) {
+            return pinned.size();
+        }
+    }
+    @Override
+    public void clear() {
+        synchronized(cache) {
+            cache.clear();
+        }
+    }
+    @Override
+    public void resetStatistics() {
+        cache.resetStatistics();
+    }
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+    
+    public static class Key {
+        final String dataset, position;
+        final int channel, frame;
+        final int[] bounds;
+        /**
+         * 
+         * @param dataset identifies the dataset containing the image, e.g. its output image directory
+         * @param position
+         * @param channel
+         * @param frame
+         * @param bounds 
+         */
+        public Key(String dataset, String position, int channel, int frame, BoundingBox bounds) {
+            this.dataset=dataset;
+            this.position=position;
+            this.channel=channel;
+            this.frame=frame;
+            this.bounds = bounds==null ? null : new int[]{bounds.xMin(), bounds.xMax(), bounds.yMin(), bounds.yMax(), bounds.zMin(), bounds.zMax()};
+        }
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 47 * hash + Objects.hashCode(this.dataset);
+            hash = 47 * hash + Objects.hashCode(this.position);
+            hash = 47 * hash + this.channel;
+            hash = 47 * hash + this.frame;
+            hash = 47 * hash + Arrays.hashCode(this.bounds);
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Key other = (Key) obj;
+            return channel==other.channel && frame==other.frame && Objects.equals(position, other.position) && Objects.equals(dataset, other.dataset) && Arrays.equals(bounds, other.bounds);
+        }
+        @Override
+        public String toString() {
+            return dataset+";"+position+";c="+channel+";f="+frame+(bounds==null?"":";"+Arrays.toString(bounds));
+        }
+    }
+}
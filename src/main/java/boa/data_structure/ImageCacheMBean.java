@@ -0,0 +1,36 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+/**
+ * Statistics and settings of {@link ImageCache} exposed through JMX
+ * @author Jean Ollion
+ */
+public interface ImageCacheMBean {
+    public long getHitCount();
+    public long getMissCount();
+    public long getEvictionCount();
+    public int getSize();
+    public long getWeight();
+    public long getMaxWeight();
+    public void setMaxWeight(long maxWeight);
+    public int getPinnedCount();
+    public void clear();
+    public void resetStatistics();
+}
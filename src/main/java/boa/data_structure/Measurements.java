@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.function.Function;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import boa.utils.Id;
 import boa.utils.JSONSerializable;
 import boa.utils.JSONUtils;
 import boa.utils.Utils;
@@ -37,7 +38,7 @@ import boa.utils.Utils;
  */
 
 public class Measurements implements Comparable<Measurements>, JSONSerializable{
-    protected String id;
+    protected Id id;
     protected String positionName;
     protected int frame, structureIdx;
     protected double calibratedTimePoint;
@@ -56,6 +57,16 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
         this.values=new HashMap<>();
         updateObjectProperties(o);
     }
+    public Measurements(Id id, String positionName, int structureIdx, int frame, double calibratedTimePoint, boolean isTrackHead, int[] indices, Map<String, Object> values) {
+        this.id=id;
+        this.positionName=positionName;
+        this.structureIdx=structureIdx;
+        this.frame=frame;
+        this.calibratedTimePoint=calibratedTimePoint;
+        this.isTrackHead=isTrackHead;
+        this.indices=indices;
+        this.values=values;
+    }
     public Measurements(Map json, String positionName) {
         this.initFromJSONEntry(json);
         this.positionName=positionName;
@@ -63,7 +74,7 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
     @Override
     public void initFromJSONEntry(Object jsonEntry) {
         JSONObject json = (JSONObject)jsonEntry;
-        id = (String)json.get("id");
+        id = json.get("id")==null ? null : new Id((String)json.get("id"));
         structureIdx = ((Number)json.get("sIdx")).intValue();
         frame = ((Number)json.get("frame")).intValue();
         calibratedTimePoint = ((Number)json.get("timePointCal")).doubleValue();
@@ -74,7 +85,7 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
     @Override
     public JSONObject toJSONEntry() {
         JSONObject obj1=new JSONObject();
-        obj1.put("id", id);
+        if (id!=null) obj1.put("id", id.toHexString());
         obj1.put("frame", frame);
         obj1.put("sIdx", structureIdx);
         obj1.put("timePointCal", calibratedTimePoint);
@@ -86,7 +97,7 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
     
     public boolean modified() {return modifications;}
     
-    public String getId() {
+    public Id getId() {
         return id;
     }
 
@@ -109,6 +120,10 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
     public int[] getIndices() {
         return indices;
     }
+    
+    public boolean isTrackHead() {
+        return isTrackHead;
+    }
         
     static String[] getBaseFields() {
         return new String[]{"time_point", "structure_idx", "indices", "is_track_head", "calibrated_time_point"};
@@ -205,15 +220,23 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
         else if (structureIdx>o.structureIdx) return 1;
         else {
             //if (indices==null) logger.error("indices null error: {}", this);
-            int lMin = Math.min(indices.length, o.indices.length);
-            for (int i  = 0; i<lMin; ++i) {
-                if (indices[i]<o.indices[i]) return -1;
-                if (indices[i]>o.indices[i]) return 1;
-            }
-            if (indices.length!=o.indices.length) return lMin==indices.length?-1:1;
+            return compareIndices(indices, o.indices);
         }
+    }
+    /**
+     * Lexicographical order of indices, shorter first. As indices of parents are prefixes of indices of their children, sorting children also sorts their parents
+     * @param indices
+     * @param otherIndices
+     * @return 
+     */
+    public static int compareIndices(int[] indices, int[] otherIndices) {
+        int lMin = Math.min(indices.length, otherIndices.length);
+        for (int i  = 0; i<lMin; ++i) {
+            if (indices[i]<otherIndices[i]) return -1;
+            if (indices[i]>otherIndices[i]) return 1;
+        }
+        if (indices.length!=otherIndices.length) return lMin==indices.length?-1:1;
         return 0;
-        
     }
     
     @Override 
@@ -259,6 +282,15 @@ public class Measurements implements Comparable<Measurements>, JSONSerializable{
         return new Measurements(positionName, frame, structureIdx, Arrays.copyOfRange(indices, 0, indices.length-parentOrder));
     }
     public Map<String, Object> getValues() {return values;}
+    /**
+     * 
+     * @return a copy of this object that is not affected by further modifications of this object
+     */
+    public Measurements duplicate() {
+        Measurements res = new Measurements(id, positionName, structureIdx, frame, calibratedTimePoint, isTrackHead, indices==null ? null : indices.clone(), values==null ? null : new HashMap<>(values));
+        res.modifications = modifications;
+        return res;
+    }
     
     
 }
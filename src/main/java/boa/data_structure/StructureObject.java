@@ -61,9 +61,14 @@ import java.util.stream.IntStream;
 
 public class StructureObject implements StructureObjectPostProcessing, StructureObjectTracker, StructureObjectTrackCorrection, Comparable<StructureObject>, PostLoadable, JSONSerializable {
     public final static Logger logger = LoggerFactory.getLogger(StructureObject.class);
+    /**
+     * When true and the root image is not opened, the raw image of an object is read only within its bounds (see {@link boa.data_structure.dao.ImageDAO#openPreProcessedImage(int, int, java.lang.String, boa.image.MutableBoundingBox) }) instead of opening the whole root image and cropping it. 
+     * Reading the root image once is faster when most of its area is used by the objects of a frame
+     */
+    public static boolean OPEN_RAW_IMAGE_REGION = true;
     //structure-related attributes
-    protected String id;
-    protected String parentId;
+    protected Id id;
+    protected Id parentId;
     protected transient StructureObject parent;
     protected int structureIdx;
     protected int idx;
@@ -73,8 +78,8 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     // track-related attributes
     protected int timePoint;
     protected transient StructureObject previous, next; 
-    String nextId, previousId;
-    String parentTrackHeadId, trackHeadId; // TODO remove parentTrackHeadId ? useful for getTrackHeads
+    Id nextId, previousId;
+    Id parentTrackHeadId, trackHeadId; // TODO remove parentTrackHeadId ? useful for getTrackHeads
     protected transient StructureObject trackHead;
     protected boolean isTrackHead=true;
     protected Map<String, Object> attributes;
@@ -90,7 +95,7 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     Measurements measurements;
     
     public StructureObject(int timePoint, int structureIdx, int idx, Region object, StructureObject parent) {
-        this.id= Id.get().toHexString();
+        this.id= Id.get();
         this.timePoint = timePoint;
         this.object=object;
         if (object!=null) this.object.label=idx+1;
@@ -109,7 +114,7 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
      * @param mask
      */
     public StructureObject(int timePoint, BlankMask mask, ObjectDAO dao) {
-        this.id= Id.get().toHexString();
+        this.id= Id.get();
         this.timePoint=timePoint;
         if (mask!=null) this.object=new Region(mask, 1, true);
         this.structureIdx = -1;
@@ -155,7 +160,7 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     // structure-related methods
     public ObjectDAO getDAO() {return dao;}
     public void setDAO(ObjectDAO dao) {this.dao=dao;}
-    public String getId() {return id;}
+    public Id getId() {return id;}
     public String getPositionName() {return dao==null? "?":dao.getPositionName();}
     public int getPositionIdx() {return dao==null?-1 : getExperiment().getPosition(getPositionName()).getIndex();}
     public int getStructureIdx() {return structureIdx;}
@@ -203,7 +208,7 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     public boolean isParentSet() {
         return parent!=null;
     }
-    public String getParentId() {return parentId;}
+    public Id getParentId() {return parentId;}
     public StructureObject getParent(int parentStructureIdx) {
         if (structureIdx==parentStructureIdx) return this;
         if (parentStructureIdx<0) return getRoot();
@@ -443,10 +448,10 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
         if (next==null && nextId!=null) next = dao.getById(parentTrackHeadId, structureIdx, -1, nextId);
         return next;
     }
-    public String getNextId() {
+    public Id getNextId() {
         return nextId;
     }
-    public String getPreviousId() {
+    public Id getPreviousId() {
         return this.previousId;
     }
     public void setNext(StructureObject next) {
@@ -507,20 +512,20 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
         return trackHead;
     }
     
-    public String getTrackHeadId() {
+    public Id getTrackHeadId() {
         if (trackHeadId==null) {
             getTrackHead();
             if (trackHead!=null) trackHeadId = trackHead.id;
         }
         return trackHeadId;
     }
-    public String getParentTrackHeadIdIfPresent() {
+    public Id getParentTrackHeadIdIfPresent() {
         return parentTrackHeadId;
     }
-    public String getTrackHeadIdIfPresent() {
+    public Id getTrackHeadIdIfPresent() {
         return trackHeadId;
     }
-    public String getParentTrackHeadId() {
+    public Id getParentTrackHeadId() {
         if (parentTrackHeadId==null) {
             if (getParent()!=null) {
                 parentTrackHeadId = parent.getTrackHeadId();
@@ -768,7 +773,10 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     
     public ImageProperties getMaskProperties() {return getRegion().getImageProperties();}
     @Override public ImageMask getMask() {return getRegion().getMask();}
-    public BoundingBox getBounds() {return getRegion().getBounds();}
+    public BoundingBox getBounds() {
+        if (object==null && regionContainer!=null && regionContainer.getBounds()!=null) return regionContainer.getBounds(); // avoid decoding region
+        return getRegion().getBounds();
+    }
     protected void createRegionContainer() {this.regionContainer=object.createRegionContainer(this);}
     public boolean hasRegionContainer() {
         return regionContainer!=null;
@@ -788,12 +796,57 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     //public ObjectContainer getObjectContainer() {return objectContainer;}
     public void deleteMask(){if (regionContainer!=null) regionContainer.deleteRegion();};
     public void setRawImage(int structureIdx, Image image) {
+        if (useImageCache()) {
+            ImageCache.getInstance().put(getRawImageCacheKey(structureIdx), image);
+            return;
+        }
         int channelIdx = getExperiment().getChannelImageIdx(structureIdx);
         rawImagesC.set(image, channelIdx);
     }
+    /**
+     * Images of root objects are stored in the shared {@link ImageCache} instead of being referenced by each root. 
+     * Objects of an in-memory DAO keep their images, as images set with {@link #setRawImage(int, boa.image.Image)} could not be re-opened after eviction
+     * @return whether images of this object are stored in the image cache
+     */
+    private boolean useImageCache() {
+        return ImageCache.ENABLED && isRoot() && dao!=null && !(dao instanceof BasicObjectDAO);
+    }
+    /**
+     * 
+     * @param structureIdx
+     * @return key of the pre-processed image of the root of this object, in the channel of {@param structureIdx}
+     */
+    public ImageCache.Key getRawImageCacheKey(int structureIdx) {
+        return getRawImageCacheKey(structureIdx, null);
+    }
+    private ImageCache.Key getRawImageCacheKey(int structureIdx, BoundingBox bounds) {
+        return getRawImageCacheKeyForChannel(getExperiment().getChannelImageIdx(structureIdx), bounds);
+    }
+    private ImageCache.Key getRawImageCacheKeyForChannel(int channelIdx, BoundingBox bounds) {
+        return new ImageCache.Key(getExperiment().getOutputImageDirectory(), getPositionName(), channelIdx, getMicroscopyField().singleFrameChannel(channelIdx) ? 0 : getRoot().timePoint, bounds);
+    }
+    /**
+     * 
+     * @return keys of the pre-processed images of the root of this object, in all channels
+     */
+    public List<ImageCache.Key> getRawImageCacheKeys() {
+        return IntStream.range(0, getExperiment().getChannelImageCount()).mapToObj(c -> getRawImageCacheKeyForChannel(c, null)).collect(Collectors.toList());
+    }
+    private boolean hasOpenedRawImage(int structureIdx) {
+        if (useImageCache()) return ImageCache.getInstance().contains(getRawImageCacheKey(structureIdx));
+        return rawImagesC.get(getExperiment().getChannelImageIdx(structureIdx))!=null;
+    }
     @Override
     public Image getRawImage(int structureIdx) {
         int channelIdx = getExperiment().getChannelImageIdx(structureIdx);
+        if (useImageCache()) {
+            return ImageCache.getInstance().get(getRawImageCacheKey(structureIdx), () -> {
+                Image im = getExperiment().getImageDAO().openPreProcessedImage(channelIdx, getMicroscopyField().singleFrame(structureIdx) ? 0 : timePoint, getPositionName());
+                if (im==null) logger.error("Could not find preProcessed Image for: {}", this);
+                else im.setCalibration(getScaleXY(), getScaleZ());
+                return im;
+            });
+        }
         if (rawImagesC.get(channelIdx)==null) { // chercher l'image chez le parent avec les bounds
             synchronized(rawImagesC) {
                 if (rawImagesC.get(channelIdx)==null) {
@@ -812,23 +865,27 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
                         if (parentWithImage!=null) {
                             //logger.debug("object: {}, channel: {}, open from parent with open image: {}", this, channelIdx, parentWithImage);
                             BoundingBox bb=getRelativeBoundingBox(parentWithImage);
-                            extendBoundsInZIfNecessary(channelIdx, bb);
+                            bb = extendBoundsInZIfNecessary(channelIdx, bb);
                             rawImagesC.set(parentWithImage.getRawImage(structureIdx).crop(bb), channelIdx);    
                         } else { // check track image
                             Image trackImage = getTrackImage(structureIdx);
                             if (trackImage!=null) {
                                 //logger.debug("object: {}, channel: {}, open from trackImage: offset:{}", this, channelIdx, offsetInTrackImage);
                                 BoundingBox bb = new SimpleBoundingBox(getBounds()).resetOffset().translate(offsetInTrackImage);
-                                extendBoundsInZIfNecessary(channelIdx, bb);
+                                bb = extendBoundsInZIfNecessary(channelIdx, bb);
                                 Image image = trackImage.crop(bb);
                                 image.resetOffset().translate(getBounds());
                                 rawImagesC.set(image, channelIdx);
+                            } else if (OPEN_RAW_IMAGE_REGION && !getRoot().hasOpenedRawImage(structureIdx)) { // only read the bounds of this object
+                                MutableBoundingBox bb = new MutableBoundingBox(getRelativeBoundingBox(getRoot()));
+                                extendBoundsInZIfNecessary(channelIdx, bb);
+                                rawImagesC.set(getRoot().openRawImage(structureIdx, bb), channelIdx);
                             } else { // open root and crop
                                 Image rootImage = getRoot().getRawImage(structureIdx);
                                 //logger.debug("object: {}, channel: {}, no trackImage try to open root and crop... null ? {}", this, channelIdx, rootImage==null);
                                 if (rootImage!=null) {
                                     BoundingBox bb = getRelativeBoundingBox(getRoot());
-                                    extendBoundsInZIfNecessary(channelIdx, bb);
+                                    bb = extendBoundsInZIfNecessary(channelIdx, bb);
                                     Image image = rootImage.crop(bb);
                                     rawImagesC.set(image, channelIdx);
                                 } else if (!this.equals(getRoot())) {
@@ -837,17 +894,12 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
                                     //logger.debug("try to open parent image: null?{}", pImage==null);
                                     if (pImage!=null) {
                                         BoundingBox bb = getRelativeBoundingBox(getParent());
-                                        extendBoundsInZIfNecessary(channelIdx, bb);
+                                        bb = extendBoundsInZIfNecessary(channelIdx, bb);
                                         Image image = pImage.crop(bb);
                                         rawImagesC.set(image, channelIdx);
                                     }
                                 }                                
                             }
-                            // no speed gain in opening only tiles
-                            /*StructureObject root = getRoot();
-                            BoundingBox bb=getRelativeBoundingBox(root);
-                            extendBoundsInZIfNecessary(channelIdx, bb);
-                            rawImagesC.set(root.openRawImage(structureIdx, bb), channelIdx);*/
                         }
                     }
                     if (rawImagesC.has(channelIdx)) rawImagesC.get(channelIdx).setCalibration(getScaleXY(), getScaleZ());
@@ -902,6 +954,16 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
         return this.offsetInTrackImage;
     }
     
+    /**
+     * 
+     * @param structureIdx
+     * @return bounds of the raw image of this object in the channel of {@param structureIdx}, relative to the root: bounds of this object, extended in Z if this object is 2D and the channel is 3D (as for {@link #getRawImage(int)})
+     */
+    public BoundingBox getRelativeRawImageBounds(int structureIdx) {
+        BoundingBox bb = getRelativeBoundingBox(getRoot());
+        if (isRoot()) return bb;
+        return extendBoundsInZIfNecessary(getExperiment().getChannelImageIdx(structureIdx), bb);
+    }
     private BoundingBox extendBoundsInZIfNecessary(int channelIdx, BoundingBox bounds) { //when the current structure is 2D but channel is 3D 
         //logger.debug("extends bounds Z if necessary: is2D: {}, bounds: {}, sizeZ of image to open: {}", is2D(), bounds, getExperiment().getPosition(getPositionName()).getSizeZ(channelIdx));
         if (bounds.sizeZ()==1 && is2D() && channelIdx!=this.getExperiment().getChannelImageIdx(structureIdx)) { 
@@ -923,6 +985,17 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     
     public Image openRawImage(int structureIdx, MutableBoundingBox bounds) {
         int channelIdx = getExperiment().getChannelImageIdx(structureIdx);
+        if (useImageCache()) {
+            ImageCache cache = ImageCache.getInstance();
+            Image image = cache.get(getRawImageCacheKey(structureIdx));
+            if (image!=null) return image.crop(bounds);
+            return cache.get(getRawImageCacheKey(structureIdx, bounds), () -> {
+                Image res =  getExperiment().getImageDAO().openPreProcessedImage(channelIdx, getMicroscopyField().singleFrame(structureIdx) ? 0 : timePoint, getPositionName(), bounds);
+                if (res==null) throw new RuntimeException("No image found for object: "+this+" structure: "+structureIdx);
+                res.setCalibration(getScaleXY(), getScaleZ());
+                return res;
+            });
+        }
         Image res;
         if (rawImagesC.get(channelIdx)==null) {//opens only within bounds
             if (getMicroscopyField().singleFrame(structureIdx) && timePoint>0 && trackHead!=null && trackHead.getBounds().sameBounds(getBounds())) {
@@ -943,10 +1016,10 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     
     public StructureObject getFirstParentWithOpenedRawImage(int structureIdx) {
         if (isRoot()) {
-            if (rawImagesC.get(getExperiment().getChannelImageIdx(structureIdx))!=null) return this;
+            if (hasOpenedRawImage(structureIdx)) return this;
             else return null;
         }
-        if (getParent().rawImagesC.get(getExperiment().getChannelImageIdx(structureIdx))!=null) return parent;
+        if (getParent().hasOpenedRawImage(structureIdx)) return parent;
         else return parent.getFirstParentWithOpenedRawImage(structureIdx);
     }
     
@@ -969,6 +1042,7 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     } 
     
     public void flushImages() {
+        if (useImageCache()) ImageCache.getInstance().invalidate(getExperiment().getOutputImageDirectory(), getPositionName(), timePoint);
         for (int i = 0; i<rawImagesC.getBucketSize(); ++i) rawImagesC.setQuick(null, i);
         for (int i = 0; i<trackImagesC.getBucketSize(); ++i) trackImagesC.setQuick(null, i);
         for (int i = 0; i<preFilteredImagesS.getBucketSize(); ++i) preFilteredImagesS.setQuick(null, i);
@@ -1090,15 +1164,15 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     @Override
     public JSONObject toJSONEntry() {
         JSONObject obj1=new JSONObject();
-        obj1.put("id", id);
-        if (parentId!=null) obj1.put("pId", parentId);
+        obj1.put("id", id.toHexString());
+        if (parentId!=null) obj1.put("pId", parentId.toHexString());
         obj1.put("sIdx", structureIdx);
         obj1.put("idx", idx);
         obj1.put("frame", timePoint);
-        if (nextId!=null) obj1.put("nextId", nextId);
-        if (previousId!=null) obj1.put("prevId", previousId);
-        if (parentTrackHeadId!=null) obj1.put("parentThId", parentTrackHeadId);
-        if (trackHeadId!=null) obj1.put("thId", trackHeadId);
+        if (nextId!=null) obj1.put("nextId", nextId.toHexString());
+        if (previousId!=null) obj1.put("prevId", previousId.toHexString());
+        if (parentTrackHeadId!=null) obj1.put("parentThId", parentTrackHeadId.toHexString());
+        if (trackHeadId!=null) obj1.put("thId", trackHeadId.toHexString());
         obj1.put("isTh", isTrackHead);
         if (attributes!=null && !attributes.isEmpty()) obj1.put("attributes", JSONUtils.toJSONObject(attributes));
         if (regionContainer!=null) obj1.put("object", regionContainer.toJSON());
@@ -1107,30 +1181,29 @@ public class StructureObject implements StructureObjectPostProcessing, Structure
     @Override
     public void initFromJSONEntry(Object jsonEntry) {
         Map json = (JSONObject)jsonEntry;
-        id = (String)json.get("id");
+        id = new Id((String)json.get("id")); // ids are persisted as hexadecimal strings in JSON
         Object pId = json.get("pId");
-        if (pId!=null) parentId = (String)pId;
+        if (pId!=null) parentId = new Id((String)pId);
         structureIdx = ((Number)json.get("sIdx")).intValue();
         idx = ((Number)json.get("idx")).intValue();
         timePoint = ((Number)json.get("frame")).intValue();
         Object nId = json.get("nextId");
-        if (nId!=null) nextId = (String)nId;
+        if (nId!=null) nextId = new Id((String)nId);
         Object prevId = json.get("prevId");
-        if (prevId!=null) previousId = (String)prevId;
+        if (prevId!=null) previousId = new Id((String)prevId);
         Object parentThId = json.get("parentThId");
-        if (parentThId!=null) parentTrackHeadId = (String)parentThId;
+        if (parentThId!=null) parentTrackHeadId = new Id((String)parentThId);
         Object thId = json.get("thId");
-        if (thId!=null) trackHeadId = (String)thId;
+        if (thId!=null) trackHeadId = new Id((String)thId);
         isTrackHead = (Boolean)json.get("isTh");
         
         if (json.containsKey("attributes")) {
             attributes = (Map<String, Object>)json.get("attributes");
             //attributes = JSONUtils.toValueMap((Map)json.get("attributes")); // leave list for better efficiency ?
         } 
-        if (json.containsKey("object")) {
-            Map objectJ = (Map)json.get("object");
-            regionContainer = RegionContainer.createFromJSON(this, objectJ);
-        }
+        Object objectJ = json.get("object");
+        if (objectJ instanceof String) regionContainer = RegionContainer.createFromJSON(this, (String)objectJ); // unparsed region (see JSONUtils#parse(Class, String))
+        else if (objectJ!=null) regionContainer = RegionContainer.createFromJSON(this, (Map)objectJ);
     }
     public StructureObject(Map json) {
         this.initFromJSONEntry(json);
@@ -0,0 +1,315 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.region_container.RegionContainer;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
+import boa.utils.Id;
+import boa.utils.JSONUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Column-oriented binary representation of all the objects stored under a same key (parent track head id, structure index).
+ * Layout: header | id, parentId, previousId, nextId, trackHeadId columns (12 bytes each) | frame, idx columns (4 bytes each) | flag column (1 byte) | payload offset column | payloads
+ * Payload of each object = attributes (JSON string, length-prefixed) followed by the region container (var-int packed)
+ * @author Jean Ollion
+ */
+public class StructureObjectBlock {
+    public final static int MAGIC = 0x424F4231; // "BOB1"
+    final static byte VERSION = 1;
+    final static int ID_BYTES = 12;
+    final static int FLAG_TRACK_HEAD=1, FLAG_PARENT=1<<1, FLAG_PREV=1<<2, FLAG_NEXT=1<<3, FLAG_TRACK_HEAD_ID=1<<4, FLAG_REGION=1<<5, FLAG_ATTRIBUTES=1<<6;
+    final int structureIdx;
+    final Id parentTrackHeadId;
+    int size;
+    Id[] ids, parentIds, prevIds, nextIds, trackHeadIds;
+    int[] frames, indices;
+    byte[] flags;
+    byte[][] payloads;
+    Map<Id, Integer> rowById;
+    
+    public StructureObjectBlock(Id parentTrackHeadId, int structureIdx) {
+        this(parentTrackHeadId, structureIdx, 10);
+    }
+    private StructureObjectBlock(Id parentTrackHeadId, int structureIdx, int capacity) {
+        this.parentTrackHeadId=parentTrackHeadId;
+        this.structureIdx=structureIdx;
+        allocate(Math.max(1, capacity));
+    }
+    private void allocate(int capacity) {
+        ids = ids==null ? new Id[capacity] : Arrays.copyOf(ids, capacity);
+        parentIds = parentIds==null ? new Id[capacity] : Arrays.copyOf(parentIds, capacity);
+        prevIds = prevIds==null ? new Id[capacity] : Arrays.copyOf(prevIds, capacity);
+        nextIds = nextIds==null ? new Id[capacity] : Arrays.copyOf(nextIds, capacity);
+        trackHeadIds = trackHeadIds==null ? new Id[capacity] : Arrays.copyOf(trackHeadIds, capacity);
+        frames = frames==null ? new int[capacity] : Arrays.copyOf(frames, capacity);
+        indices = indices==null ? new int[capacity] : Arrays.copyOf(indices, capacity);
+        flags = flags==null ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+        payloads = payloads==null ? new byte[capacity][] : Arrays.copyOf(payloads, capacity);
+    }
+    public int size() {
+        return size;
+    }
+    public boolean isEmpty() {
+        return size==0;
+    }
+    public int getStructureIdx() {
+        return structureIdx;
+    }
+    public Id getParentTrackHeadId() {
+        return parentTrackHeadId;
+    }
+    public Id getId(int row) {
+        return ids[row];
+    }
+    public int getFrame(int row) {
+        return frames[row];
+    }
+    public int getIdx(int row) {
+        return indices[row];
+    }
+    public boolean isTrackHead(int row) {
+        return (flags[row] & FLAG_TRACK_HEAD)!=0;
+    }
+    public Id getTrackHeadId(int row) {
+        return trackHeadIds[row];
+    }
+    private Map<Id, Integer> getRowById() {
+        if (rowById==null) {
+            rowById = new HashMap<>(size);
+            for (int i = 0; i<size; ++i) rowById.put(getId(i), i);
+        }
+        return rowById;
+    }
+    public boolean contains(Id id) {
+        return getRowById().containsKey(id);
+    }
+    /**
+     * Adds the objects to this block, replacing the rows with same ids
+     * @param objects 
+     */
+    public void putAll(Collection<StructureObject> objects) {
+        Map<Id, Integer> rows = getRowById();
+        if (size+objects.size()>ids.length) allocate(Math.max(ids.length*2, size+objects.size()));
+        for (StructureObject o : objects) {
+            if (o.structureIdx!=structureIdx) throw new IllegalArgumentException("Invalid structure index: "+o.structureIdx+" block: "+structureIdx);
+            Integer row = rows.get(o.id);
+            if (row==null) {
+                row = size++;
+                rows.put(o.id, row);
+            }
+            setRow(row, o);
+        }
+    }
+    /**
+     * Adds the rows of {@param other} to this block, replacing the rows with same ids. Payloads are copied without being decoded
+     * @param other block of the same structure
+     */
+    public void putAll(StructureObjectBlock other) {
+        if (other.structureIdx!=structureIdx) throw new IllegalArgumentException("Invalid structure index: "+other.structureIdx+" block: "+structureIdx);
+        Map<Id, Integer> rows = getRowById();
+        if (size+other.size>ids.length) allocate(Math.max(ids.length*2, size+other.size));
+        for (int i = 0; i<other.size; ++i) {
+            Integer row = rows.get(other.ids[i]);
+            if (row==null) {
+                row = size++;
+                rows.put(other.ids[i], row);
+            }
+            ids[row] = other.ids[i];
+            parentIds[row] = other.parentIds[i];
+            prevIds[row] = other.prevIds[i];
+            nextIds[row] = other.nextIds[i];
+            trackHeadIds[row] = other.trackHeadIds[i];
+            frames[row] = other.frames[i];
+            indices[row] = other.indices[i];
+            flags[row] = other.flags[i];
+            payloads[row] = other.payloads[i];
+        }
+    }
+    /**
+     * Removes rows corresponding to {@param ids}
+     * @param ids 
+     * @return number of removed rows
+     */
+    public int removeAll(Collection<Id> ids) {
+        Map<Id, Integer> rows = getRowById();
+        int count = 0;
+        for (Id id : ids) {
+            Integer row = rows.remove(id);
+            if (row==null) continue;
+            ++count;
+            int last = --size;
+            if (row!=last) { // move last row to the removed position
+                moveRow(last, row);
+                rows.put(getId(row), row);
+            }
+            clearRow(last);
+        }
+        return count;
+    }
+    private void moveRow(int from, int to) {
+        ids[to] = ids[from];
+        parentIds[to] = parentIds[from];
+        prevIds[to] = prevIds[from];
+        nextIds[to] = nextIds[from];
+        trackHeadIds[to] = trackHeadIds[from];
+        frames[to] = frames[from];
+        indices[to] = indices[from];
+        flags[to] = flags[from];
+        payloads[to] = payloads[from];
+    }
+    private void clearRow(int row) {
+        ids[row] = null;
+        parentIds[row] = null;
+        prevIds[row] = null;
+        nextIds[row] = null;
+        trackHeadIds[row] = null;
+        payloads[row] = null;
+    }
+    private void setRow(int row, StructureObject o) {
+        ids[row] = o.id;
+        parentIds[row] = o.parentId;
+        prevIds[row] = o.previousId;
+        nextIds[row] = o.nextId;
+        trackHeadIds[row] = o.trackHeadId;
+        frames[row] = o.timePoint;
+        indices[row] = o.idx;
+        int f = 0;
+        if (o.isTrackHead) f|=FLAG_TRACK_HEAD;
+        if (o.parentId!=null) f|=FLAG_PARENT;
+        if (o.previousId!=null) f|=FLAG_PREV;
+        if (o.nextId!=null) f|=FLAG_NEXT;
+        if (o.trackHeadId!=null) f|=FLAG_TRACK_HEAD_ID;
+        if (o.regionContainer!=null) f|=FLAG_REGION;
+        if (o.attributes!=null && !o.attributes.isEmpty()) f|=FLAG_ATTRIBUTES;
+        flags[row] = (byte)f;
+        payloads[row] = encodePayload(o);
+    }
+    private static byte[] encodePayload(StructureObject o) {
+        BinaryWriter out = new BinaryWriter();
+        if (o.attributes!=null && !o.attributes.isEmpty()) out.writeString(JSONUtils.toJSONObject(o.attributes).toJSONString());
+        if (o.regionContainer!=null) RegionContainer.writeBinary(o.regionContainer, out);
+        return out.toByteArray();
+    }
+    /**
+     * 
+     * @param row
+     * @return a new instance of StructureObject corresponding to row {@param row}, without DAO
+     */
+    public StructureObject getObject(int row) {
+        StructureObject o = new StructureObject();
+        o.id = getId(row);
+        o.structureIdx = structureIdx;
+        o.parentTrackHeadId = parentTrackHeadId;
+        o.parentId = parentIds[row];
+        o.previousId = prevIds[row];
+        o.nextId = nextIds[row];
+        o.trackHeadId = trackHeadIds[row];
+        o.timePoint = frames[row];
+        o.idx = indices[row];
+        o.isTrackHead = (flags[row] & FLAG_TRACK_HEAD)!=0;
+        if ((flags[row] & (FLAG_ATTRIBUTES | FLAG_REGION))!=0) {
+            BinaryReader in = new BinaryReader(payloads[row]);
+            if ((flags[row] & FLAG_ATTRIBUTES)!=0) o.attributes = (Map<String, Object>)JSONUtils.parse(in.readString());
+            if ((flags[row] & FLAG_REGION)!=0) o.regionContainer = RegionContainer.createFromBinary(o, in);
+        }
+        return o;
+    }
+    public List<StructureObject> getObjects(Predicate<Id> idFilter) {
+        List<StructureObject> res = new ArrayList<>(size);
+        for (int i = 0; i<size; ++i) {
+            if (idFilter==null || idFilter.test(getId(i))) res.add(getObject(i));
+        }
+        return res;
+    }
+    
+    public byte[] encode() {
+        BinaryWriter out = new BinaryWriter(size * (5*ID_BYTES + 13) + 64);
+        out.writeInt(MAGIC).writeByte(VERSION).writeInt(structureIdx);
+        out.writeBoolean(parentTrackHeadId!=null);
+        if (parentTrackHeadId!=null) out.writeBytes(parentTrackHeadId.toByteArray());
+        out.writeInt(size);
+        writeIdColumn(out, ids);
+        writeIdColumn(out, parentIds);
+        writeIdColumn(out, prevIds);
+        writeIdColumn(out, nextIds);
+        writeIdColumn(out, trackHeadIds);
+        for (int i = 0; i<size; ++i) out.writeInt(frames[i]);
+        for (int i = 0; i<size; ++i) out.writeInt(indices[i]);
+        out.writeBytes(flags, 0, size);
+        int offset = 0;
+        for (int i = 0; i<size; ++i) {
+            out.writeInt(offset);
+            offset+=payloads[i].length;
+        }
+        out.writeInt(offset);
+        for (int i = 0; i<size; ++i) out.writeBytes(payloads[i]);
+        return out.toByteArray();
+    }
+    private void writeIdColumn(BinaryWriter out, Id[] column) {
+        byte[] bytes = new byte[size * ID_BYTES]; // null ids are written as zeros
+        for (int i = 0; i<size; ++i) if (column[i]!=null) column[i].writeTo(bytes, i * ID_BYTES);
+        out.writeBytes(bytes);
+    }
+    public static StructureObjectBlock decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+    public static StructureObjectBlock decode(ByteBuffer data) {
+        BinaryReader in = new BinaryReader(data);
+        int magic = in.readInt();
+        if (magic!=MAGIC) throw new IllegalArgumentException("Not an object block");
+        byte version = in.readByte();
+        if (version>VERSION) throw new IllegalArgumentException("Unsupported object block version: "+version);
+        int structureIdx = in.readInt();
+        Id pth = in.readBoolean() ? new Id(in.readBytes(ID_BYTES)) : null;
+        int n = in.readInt();
+        StructureObjectBlock res = new StructureObjectBlock(pth, structureIdx, n);
+        res.size = n;
+        // flags are stored after id columns: read them first so that null ids are not instantiated
+        int idColumns = in.position();
+        in.skip(5 * n * ID_BYTES);
+        for (int i = 0; i<n; ++i) res.frames[i] = in.readInt();
+        for (int i = 0; i<n; ++i) res.indices[i] = in.readInt();
+        for (int i = 0; i<n; ++i) res.flags[i] = in.readByte();
+        int[] offsets = new int[n+1];
+        for (int i = 0; i<=n; ++i) offsets[i] = in.readInt();
+        for (int i = 0; i<n; ++i) res.payloads[i] = in.readBytes(offsets[i+1]-offsets[i]);
+        in.position(idColumns);
+        readIdColumn(in, res.ids, n, res.flags, 0);
+        readIdColumn(in, res.parentIds, n, res.flags, FLAG_PARENT);
+        readIdColumn(in, res.prevIds, n, res.flags, FLAG_PREV);
+        readIdColumn(in, res.nextIds, n, res.flags, FLAG_NEXT);
+        readIdColumn(in, res.trackHeadIds, n, res.flags, FLAG_TRACK_HEAD_ID);
+        return res;
+    }
+    private static void readIdColumn(BinaryReader in, Id[] column, int n, byte[] flags, int flag) {
+        byte[] bytes = in.readBytes(n * ID_BYTES);
+        for (int i = 0; i<n; ++i) {
+            if (flag==0 || (flags[i] & flag)!=0) column[i] = new Id(bytes, i * ID_BYTES);
+        }
+    }
+}
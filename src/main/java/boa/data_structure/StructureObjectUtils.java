@@ -39,6 +39,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 import boa.utils.HashMapGetCreate;
+import boa.utils.Id;
 import boa.utils.Pair;
 import boa.utils.StreamConcatenation;
 import boa.utils.Utils;
@@ -462,8 +463,8 @@ public class StructureObjectUtils {
         return res;
     }
     
-    public static List<String> getIdList(Collection<StructureObject> objects) {
-        List<String> ids = new ArrayList<>(objects.size());
+    public static List<Id> getIdList(Collection<StructureObject> objects) {
+        List<Id> ids = new ArrayList<>(objects.size());
         for (StructureObject o : objects) ids.add(o.id);
         return ids;
     }
@@ -601,7 +602,7 @@ public class StructureObjectUtils {
         }
     }
     
-    public static void setRelatives(Map<String, StructureObject> allObjects, boolean parent, boolean trackAttributes) {
+    public static void setRelatives(Map<Id, StructureObject> allObjects, boolean parent, boolean trackAttributes) {
         for (StructureObject o : allObjects.values()) {
             if (parent && o.parentId!=null) {
                 StructureObject p = allObjects.get(o.parentId);
@@ -621,7 +622,7 @@ public class StructureObjectUtils {
     }
     
     // duplicate objects 
-    private static StructureObject duplicateWithChildrenAndParents(StructureObject o, ObjectDAO newDAO, Map<String, StructureObject> sourceToDupMap, boolean children, boolean parents, boolean generateNewId) {
+    private static StructureObject duplicateWithChildrenAndParents(StructureObject o, ObjectDAO newDAO, Map<Id, StructureObject> sourceToDupMap, boolean children, boolean parents, boolean generateNewId) {
         o.loadAllChildren(false);
         StructureObject res=o.duplicate(generateNewId, true, true);
         if (sourceToDupMap!=null) sourceToDupMap.put(o.getId(), res);
@@ -651,10 +652,10 @@ public class StructureObjectUtils {
         return res;
     }
     
-    public static Map<String, StructureObject> duplicateRootTrackAndChangeDAO(boolean includeChildren, StructureObject... rootTrack) {
+    public static Map<Id, StructureObject> duplicateRootTrackAndChangeDAO(boolean includeChildren, StructureObject... rootTrack) {
         return createGraphCut(Arrays.asList(rootTrack), includeChildren, false);
     }
-    public static Map<String, StructureObject> createGraphCut(List<StructureObject> track, boolean includeChildren, boolean generateNewId) {
+    public static Map<Id, StructureObject> createGraphCut(List<StructureObject> track, boolean includeChildren, boolean generateNewId) {
         if (track==null) return null;
         if (track.isEmpty()) return Collections.EMPTY_MAP;
         // load trackImages if existing (on duplicated objects trackHead can be changed and trackImage won't be loadable anymore)
@@ -673,7 +674,7 @@ public class StructureObjectUtils {
             }
         }
         // create basic dao for duplicated objects
-        Map<String, StructureObject> dupMap = new HashMap<>();
+        Map<Id, StructureObject> dupMap = new HashMap<>();
         BasicMasterDAO mDAO = new BasicMasterDAO();
         mDAO.setExperiment(track.get(0).getExperiment());
         BasicObjectDAO dao = mDAO.getDao(track.get(0).getPositionName());
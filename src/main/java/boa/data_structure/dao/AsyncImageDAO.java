@@ -0,0 +1,274 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.StructureObject;
+import boa.image.BlankMask;
+import boa.image.Image;
+import boa.image.MutableBoundingBox;
+import boa.utils.MultipleException;
+import boa.utils.Pair;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ImageDAO decorator performing writes of images asynchronously in a dedicated I/O thread pool. 
+ * Write calls return immediately unless the size of images pending to be written exceeds {@link #maxPendingBytes}. Images pending to be written are served by read calls. 
+ * Images should not be modified after they are written. 
+ * Errors occurring during writes are thrown by {@link #flush()}. 
+ * Writer threads are daemon threads: images pending to be written are written by a shutdown hook before the JVM exits (see {@link #flushAll()})
+ * @author Jean Ollion
+ */
+public class AsyncImageDAO implements ImageDAO {
+    public static final Logger logger = LoggerFactory.getLogger(AsyncImageDAO.class);
+    public static int DEFAULT_IO_THREADS = 2;
+    public static long DEFAULT_MAX_PENDING_BYTES = 512l * 1024 * 1024;
+    final ImageDAO dao;
+    final long maxPendingBytes;
+    final ExecutorService executor;
+    final Map<String, Pending> pending = new HashMap<>();
+    long pendingBytes;
+    final List<Pair<String, Throwable>> errors = new ArrayList<>();
+    
+    public AsyncImageDAO(ImageDAO dao) {
+        this(dao, DEFAULT_IO_THREADS, DEFAULT_MAX_PENDING_BYTES);
+    }
+    public AsyncImageDAO(ImageDAO dao, int ioThreads, long maxPendingBytes) {
+        this.dao=dao;
+        this.maxPendingBytes=maxPendingBytes;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, ioThreads), r -> {
+            Thread t = new Thread(r, "ImageDAO-writer-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        register(this);
+    }
+    private static final Set<AsyncImageDAO> INSTANCES = Collections.newSetFromMap(new WeakHashMap<>());
+    private static Thread shutdownHook;
+    private static synchronized void register(AsyncImageDAO dao) {
+        INSTANCES.add(dao);
+        if (shutdownHook==null) {
+            shutdownHook = new Thread(AsyncImageDAO::flushAll, "ImageDAO-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+    /**
+     * Waits until images pending to be written by all instances are written. Errors are logged
+     */
+    public static void flushAll() {
+        List<AsyncImageDAO> daos;
+        synchronized(AsyncImageDAO.class) {
+            daos = new ArrayList<>(INSTANCES);
+        }
+        for (AsyncImageDAO dao : daos) {
+            try {
+                dao.flush();
+            } catch (MultipleException e) {
+                logger.error("{} error(s) occurred while writing images", e.getExceptions().size()); // each error is logged when it occurs
+            }
+        }
+    }
+    public ImageDAO getDAO() {
+        return dao;
+    }
+    private static class Pending {
+        final Image image;
+        final long bytes;
+        Pending(Image image) {
+            this.image=image;
+            this.bytes = (long)image.sizeXYZ() * Math.max(1, image.getBitDepth()/8);
+        }
+    }
+    private static String getPreProcessedKey(int channelImageIdx, int timePoint, String position) {
+        return "p;"+position+";"+channelImageIdx+";"+timePoint;
+    }
+    private static String getTrackKey(StructureObject trackHead, int channelImageIdx) {
+        return "t;"+trackHead.getPositionName()+";"+trackHead.getStructureIdx()+";"+trackHead.getId()+";"+channelImageIdx;
+    }
+    private synchronized Image getPending(String key) {
+        Pending p = pending.get(key);
+        return p==null ? null : p.image;
+    }
+    /**
+     * Waits until image with key {@param key} is written
+     * @param key 
+     */
+    private synchronized void waitFor(String key) {
+        while (pending.containsKey(key)) waitInterruptibly();
+    }
+    private void waitInterruptibly() { // called in synchronized block
+        try {
+            wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+    private void write(String key, Image image, Runnable write) {
+        Pending p = new Pending(image);
+        synchronized(this) {
+            while (pending.containsKey(key)) waitInterruptibly(); // previous write of the same image should be performed first
+            while (pendingBytes>0 && pendingBytes+p.bytes>maxPendingBytes) waitInterruptibly(); // back-pressure
+            pending.put(key, p);
+            pendingBytes+=p.bytes;
+        }
+        executor.execute(() -> {
+            try {
+                write.run();
+            } catch(Throwable t) {
+                logger.error("Error while writing image: "+key, t);
+                synchronized(this) {errors.add(new Pair<>(key, t));}
+            } finally {
+                synchronized(this) {
+                    pending.remove(key);
+                    pendingBytes-=p.bytes;
+                    notifyAll();
+                }
+            }
+        });
+    }
+    /**
+     * Waits until all pending images are written
+     * @throws MultipleException if errors occurred while writing images
+     */
+    @Override
+    public void flush() {
+        List<Pair<String, Throwable>> err;
+        synchronized(this) {
+            while (!pending.isEmpty()) waitInterruptibly();
+            if (errors.isEmpty()) return;
+            err = new ArrayList<>(errors);
+            errors.clear();
+        }
+        throw new MultipleException(err);
+    }
+    /**
+     * Waits until the pre-processed image is written
+     * @param channelImageIdx
+     * @param timePoint
+     * @param microscopyFieldName 
+     */
+    public void waitForPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        waitFor(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+    }
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+    private static Image copy(Image image, MutableBoundingBox bounds) {
+        if (bounds!=null) return image.crop(bounds);
+        Image res = image.duplicate();
+        res.resetOffset(); // as if read from file
+        return res;
+    }
+    // pre-processed images
+    @Override
+    public String getImageExtension() {
+        return dao.getImageExtension();
+    }
+
+    @Override
+    public InputStream openPreProcessedImageAsStream(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        waitFor(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+        return dao.openPreProcessedImageAsStream(channelImageIdx, timePoint, microscopyFieldName);
+    }
+
+    @Override
+    public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        Image im = getPending(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+        if (im!=null) return copy(im, null);
+        return dao.openPreProcessedImage(channelImageIdx, timePoint, microscopyFieldName);
+    }
+
+    @Override
+    public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName, MutableBoundingBox bounds) {
+        Image im = getPending(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+        if (im!=null) return copy(im, bounds);
+        return dao.openPreProcessedImage(channelImageIdx, timePoint, microscopyFieldName, bounds);
+    }
+
+    @Override
+    public BlankMask getPreProcessedImageProperties(String microscopyFieldName) {
+        Image im = getPending(getPreProcessedKey(0, 0, microscopyFieldName));
+        if (im!=null) return new BlankMask(im.sizeX(), im.sizeY(), im.sizeZ(), 0, 0, 0, im.getScaleXY(), im.getScaleZ());
+        waitFor(getPreProcessedKey(0, 0, microscopyFieldName));
+        return dao.getPreProcessedImageProperties(microscopyFieldName);
+    }
+
+    @Override
+    public void writePreProcessedImage(Image image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+        write(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName), image, () -> dao.writePreProcessedImage(image, channelImageIdx, timePoint, microscopyFieldName));
+    }
+
+    @Override
+    public void writePreProcessedImage(InputStream image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+        waitFor(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+        dao.writePreProcessedImage(image, channelImageIdx, timePoint, microscopyFieldName);
+    }
+
+    @Override
+    public void deletePreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        waitFor(getPreProcessedKey(channelImageIdx, timePoint, microscopyFieldName));
+        dao.deletePreProcessedImage(channelImageIdx, timePoint, microscopyFieldName);
+    }
+    // track images
+    @Override
+    public void writeTrackImage(StructureObject trackHead, int channelImageIdx, Image image) {
+        write(getTrackKey(trackHead, channelImageIdx), image, () -> dao.writeTrackImage(trackHead, channelImageIdx, image));
+    }
+
+    @Override
+    public Image openTrackImage(StructureObject trackHead, int channelImageIdx) {
+        Image im = getPending(getTrackKey(trackHead, channelImageIdx));
+        if (im!=null) return copy(im, null);
+        return dao.openTrackImage(trackHead, channelImageIdx);
+    }
+
+    @Override
+    public InputStream openTrackImageAsStream(StructureObject trackHead, int channelImageIdx) {
+        waitFor(getTrackKey(trackHead, channelImageIdx));
+        return dao.openTrackImageAsStream(trackHead, channelImageIdx);
+    }
+
+    @Override
+    public void writeTrackImage(StructureObject trackHead, int channelImageIdx, InputStream image) {
+        waitFor(getTrackKey(trackHead, channelImageIdx));
+        dao.writeTrackImage(trackHead, channelImageIdx, image);
+    }
+
+    @Override
+    public void deleteTrackImages(String position, int parentStructureIdx) {
+        String prefix = "t;"+position+";"+parentStructureIdx+";";
+        synchronized(this) {
+            while (pending.keySet().stream().anyMatch(k -> k.startsWith(prefix))) waitInterruptibly();
+        }
+        dao.deleteTrackImages(position, parentStructureIdx);
+    }
+}
@@ -29,11 +29,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import boa.utils.Id;
 import boa.utils.Utils;
 import java.util.function.Consumer;
 
@@ -196,6 +198,11 @@ public class BasicObjectDAO implements ObjectDAO {
         }
         
     }
+    
+    @Override
+    public void flush() {} // objects are only kept in memory
+    @Override
+    public void prefetch(StructureObject parentTrackHead, int... structureIdx) {} // objects are only kept in memory
 
     public List<StructureObject> getRoots() {
         List<StructureObject> res = new ArrayList<>(this.rootTrack.values());
@@ -279,6 +286,12 @@ public class BasicObjectDAO implements ObjectDAO {
         return res;
     }
     @Override
+    public Iterator<Measurements> iterateMeasurements(int structureIdx, String... measurements) {
+        List<Measurements> res = getMeasurements(structureIdx, measurements);
+        Collections.sort(res);
+        return res.iterator();
+    }
+    @Override
     public void deleteAllMeasurements() {
         int structureCount = getExperiment().getStructureCount();
         for (StructureObject root : rootTrack.values()) {
@@ -301,7 +314,7 @@ public class BasicObjectDAO implements ObjectDAO {
     }
 
     @Override
-    public StructureObject getById(String parentTrackHeadId, int structureIdx, int frame, String id) {
+    public StructureObject getById(Id parentTrackHeadId, int structureIdx, int frame, Id id) {
         if (frame>=0) {
             for (StructureObject o : this.getRoot(frame).getChildren(structureIdx)) if (o.getId().equals(id)) return o;
             return null;
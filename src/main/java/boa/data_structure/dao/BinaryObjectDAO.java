@@ -0,0 +1,289 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.StructureObject;
+import boa.data_structure.StructureObjectBlock;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
+import boa.utils.DBMapUtils;
+import boa.utils.HashMapGetCreate;
+import boa.utils.Id;
+import boa.utils.Pair;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import org.mapdb.DB;
+import org.mapdb.HTreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ObjectDAO storing objects in a compact binary column-oriented layout (see {@link StructureObjectBlock}) instead of one JSON string per object. 
+ * All objects of a same parent track and structure are stored in a single block. Modifications are appended to the block as delta records (stored and removed rows), that are merged with the block when it is read. 
+ * Once deltas outweigh the block, or when {@link #MAX_DELTA_RECORDS} is reached, they are merged and the block is rewritten. Measurements are stored as in {@link DBMapObjectDAO}
+ * @author Jean Ollion
+ */
+public class BinaryObjectDAO extends DBMapObjectDAO {
+    public static final Logger logger = LoggerFactory.getLogger(BinaryObjectDAO.class);
+    /**
+     * Maximal number of delta records of a block. When reached, deltas are merged and the block is rewritten
+     */
+    public static int MAX_DELTA_RECORDS = 64;
+    final static String DELTA_SEPARATOR = "#";
+    final static int REMOVED_MAGIC = 0x424F4252; // "BOBR"
+    final static int ID_BYTES = 12;
+    final Map<Integer, HTreeMap<String, byte[]>> blockMaps = new HashMap<>();
+    final HashMapGetCreate<Pair<Id, Integer>, Object> blockLocks = new HashMapGetCreate<>(k -> new Object());
+    final Map<Pair<Id, Integer>, DeltaLog> deltaLogs = new ConcurrentHashMap<>();
+    public BinaryObjectDAO(DBMapMasterDAO mDAO, String positionName, String dir, boolean readOnly) {
+        super(mDAO, positionName, dir, readOnly);
+    }
+    
+    @Override
+    protected String getDBFile(int structureIdx) {
+        return dir+"objects_"+structureIdx+".bin.db";
+    }
+    
+    protected HTreeMap<String, byte[]> getBlockMap(int structureIdx) {
+        HTreeMap<String, byte[]> res = blockMaps.get(structureIdx);
+        if (res==null) {
+            synchronized(blockMaps) {
+                if (blockMaps.containsKey(structureIdx)) res = blockMaps.get(structureIdx);
+                else {
+                    DB db = getDB(structureIdx);
+                    if (db!=null) {
+                        res = DBMapUtils.createBinaryHTreeMap(db, "blocks");
+                        if (res!=null || readOnly) blockMaps.put(structureIdx, res);
+                    }
+                }
+            }
+        }
+        return res;
+    }
+    // record layer: subclasses can override the following methods to store records elsewhere
+    protected ByteBuffer getRecord(int structureIdx, String name) {
+        HTreeMap<String, byte[]> blocks = getBlockMap(structureIdx);
+        if (blocks==null) return null;
+        byte[] data = blocks.get(name);
+        return data==null ? null : ByteBuffer.wrap(data);
+    }
+    protected void putRecord(int structureIdx, String name, byte[] data) {
+        getBlockMap(structureIdx).put(name, data);
+    }
+    protected void removeRecord(int structureIdx, String name) {
+        HTreeMap<String, byte[]> blocks = getBlockMap(structureIdx);
+        if (blocks!=null) blocks.remove(name);
+    }
+    protected Iterable<String> getRecordNames(int structureIdx) {
+        return DBMapUtils.getKeys(getBlockMap(structureIdx));
+    }
+    
+    protected static String getBlockKey(Pair<Id, Integer> key) {
+        return key.key==null ? "root" : key.key.toHexString();
+    }
+    protected static String getDeltaKey(String blockKey, int record) {
+        return blockKey+DELTA_SEPARATOR+record;
+    }
+    /**
+     * Number and size of the delta records of a block
+     */
+    private static class DeltaLog {
+        int records;
+        long bytes, baseBytes;
+    }
+    private DeltaLog getDeltaLog(Pair<Id, Integer> key) { // called while the key is locked
+        DeltaLog log = deltaLogs.get(key);
+        if (log==null) {
+            log = new DeltaLog();
+            String name = getBlockKey(key);
+            ByteBuffer base = getRecord(key.value, name);
+            if (base!=null) log.baseBytes = base.remaining();
+            ByteBuffer delta;
+            while ((delta = getRecord(key.value, getDeltaKey(name, log.records)))!=null) {
+                ++log.records;
+                log.bytes+=delta.remaining();
+            }
+            deltaLogs.put(key, log);
+        }
+        return log;
+    }
+    /**
+     * 
+     * @param key
+     * @return block stored under {@param key} with its delta records merged, null if nothing is stored
+     */
+    protected StructureObjectBlock getBlock(Pair<Id, Integer> key) {
+        synchronized(blockLocks.getAndCreateIfNecessarySync(key)) {
+            DeltaLog log = getDeltaLog(key);
+            String name = getBlockKey(key);
+            ByteBuffer data = getRecord(key.value, name);
+            StructureObjectBlock block = data==null ? null : StructureObjectBlock.decode(data);
+            for (int i = 0; i<log.records; ++i) {
+                if (block==null) block = new StructureObjectBlock(key.key, key.value);
+                applyDelta(block, getRecord(key.value, getDeltaKey(name, i)));
+            }
+            return block;
+        }
+    }
+    private static void applyDelta(StructureObjectBlock block, ByteBuffer delta) {
+        if (delta.getInt(delta.position())==REMOVED_MAGIC) {
+            BinaryReader in = new BinaryReader(delta);
+            in.skip(4);
+            int n = in.readInt();
+            byte[] bytes = in.readBytes(n * ID_BYTES);
+            List<Id> ids = new ArrayList<>(n);
+            for (int i = 0; i<n; ++i) ids.add(new Id(bytes, i * ID_BYTES));
+            block.removeAll(ids);
+        } else block.putAll(StructureObjectBlock.decode(delta));
+    }
+    private static byte[] encodeRemoved(Collection<Id> ids) {
+        BinaryWriter out = new BinaryWriter(8 + ids.size() * ID_BYTES);
+        out.writeInt(REMOVED_MAGIC).writeInt(ids.size());
+        byte[] bytes = new byte[ids.size() * ID_BYTES];
+        int i = 0;
+        for (Id id : ids) id.writeTo(bytes, ID_BYTES * i++);
+        out.writeBytes(bytes);
+        return out.toByteArray();
+    }
+    /**
+     * Appends a delta record to the block stored under {@param key}, so that the cost of a modification is proportional to the number of modified objects and not to the size of the block. 
+     * When deltas outweigh the block or {@link #MAX_DELTA_RECORDS} is reached, they are merged and the block is rewritten
+     * @param key
+     * @param delta 
+     */
+    private void appendDelta(Pair<Id, Integer> key, byte[] delta) { // called while the key is locked
+        DeltaLog log = getDeltaLog(key);
+        String name = getBlockKey(key);
+        if (log.records+1<MAX_DELTA_RECORDS && log.bytes+delta.length<=log.baseBytes) {
+            putRecord(key.value, getDeltaKey(name, log.records), delta);
+            ++log.records;
+            log.bytes+=delta.length;
+        } else {
+            StructureObjectBlock block = getBlock(key);
+            if (block==null) block = new StructureObjectBlock(key.key, key.value);
+            applyDelta(block, ByteBuffer.wrap(delta));
+            if (block.isEmpty()) {
+                removeRecord(key.value, name);
+                log.baseBytes = 0;
+            } else {
+                byte[] data = block.encode();
+                putRecord(key.value, name, data);
+                log.baseBytes = data.length;
+            }
+            for (int i = 0; i<log.records; ++i) removeRecord(key.value, getDeltaKey(name, i));
+            log.records = 0;
+            log.bytes = 0;
+        }
+    }
+    
+    @Override
+    protected Collection<StructureObject> retrieveObjects(Pair<Id, Integer> key, Predicate<Id> idFilter) {
+        StructureObjectBlock block = getBlock(key);
+        if (block==null) return Collections.emptyList();
+        return block.getObjects(idFilter);
+    }
+
+    @Override
+    protected void writeObjects(Pair<Id, Integer> key, Collection<StructureObject> objects) {
+        if (objects.isEmpty()) return;
+        StructureObjectBlock delta = new StructureObjectBlock(key.key, key.value);
+        delta.putAll(objects);
+        byte[] data = delta.encode();
+        synchronized(blockLocks.getAndCreateIfNecessarySync(key)) {
+            appendDelta(key, data);
+        }
+    }
+
+    /**
+     * Objects are encoded as single-row blocks
+     */
+    @Override
+    protected Object encodeObject(StructureObject o) {
+        StructureObjectBlock block = new StructureObjectBlock(o.isRoot() ? null : o.getParentTrackHeadId(), o.getStructureIdx());
+        block.putAll(Collections.singleton(o));
+        return block.encode();
+    }
+    @Override
+    protected void writeEncodedObjects(Pair<Id, Integer> key, Collection<EncodedObject> objects) {
+        if (objects.isEmpty()) return;
+        StructureObjectBlock delta = new StructureObjectBlock(key.key, key.value);
+        for (EncodedObject o : objects) delta.putAll(StructureObjectBlock.decode((byte[])o.encoded));
+        byte[] data = delta.encode();
+        synchronized(blockLocks.getAndCreateIfNecessarySync(key)) {
+            appendDelta(key, data);
+        }
+    }
+    @Override
+    protected void removeObjects(Pair<Id, Integer> key, Collection<Id> ids) {
+        if (ids.isEmpty()) return;
+        synchronized(blockLocks.getAndCreateIfNecessarySync(key)) {
+            DeltaLog log = getDeltaLog(key);
+            if (log.baseBytes==0 && log.records==0) return; // nothing is stored under this key
+            appendDelta(key, encodeRemoved(ids));
+        }
+    }
+
+    /**
+     * The index is read from the id, frame and track head columns of the block: regions and attributes are not decoded
+     */
+    @Override
+    protected ObjectIndex retrieveIndex(Pair<Id, Integer> key) {
+        ObjectIndex index = new ObjectIndex();
+        StructureObjectBlock block = getBlock(key);
+        if (block==null) return index;
+        for (int row = 0; row<block.size(); ++row) {
+            Id thId = block.getTrackHeadId(row);
+            if (thId==null && block.isTrackHead(row)) thId = block.getId(row);
+            index.put(block.getId(row), thId, block.getFrame(row));
+        }
+        return index;
+    }
+    @Override
+    protected Iterable<String> getParentTrackHeadIds(int structureIdx) {
+        List<String> res = new ArrayList<>();
+        for (String name : getRecordNames(structureIdx)) if (!name.contains(DELTA_SEPARATOR)) res.add(name);
+        return res;
+    }
+    
+    @Override
+    public synchronized void deleteObjectsByStructureIdx(int... structures) {
+        if (readOnly) return;
+        synchronized(blockMaps) {
+            for (int s : structures) blockMaps.remove(s);
+        }
+        for (int s : structures) deltaLogs.keySet().removeIf(k -> k.value==s);
+        super.deleteObjectsByStructureIdx(structures);
+    }
+    
+    @Override
+    protected synchronized void closeAllObjectFiles(boolean commit) {
+        super.closeAllObjectFiles(commit); // flushes buffered objects before files are closed
+        synchronized(blockMaps) {
+            blockMaps.clear();
+        }
+        deltaLogs.clear(); // uncommitted records may be discarded
+    }
+}
@@ -0,0 +1,145 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.image.BlankMask;
+import boa.image.Image;
+import boa.image.MutableBoundingBox;
+import boa.image.io.ImageFormat;
+import boa.image.io.ImageReader;
+import boa.image.io.ImageWriter;
+import boa.utils.FileIO;
+import boa.utils.Utils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-processed images are stored in one {@link ChunkedImageStore} per position and channel instead of one TIFF file per frame. Track images are stored as in {@link LocalFileSystemImageDAO}.
+ * Streams (used for import/export) are in TIFF format so that both DAOs are interchangeable
+ * @author Jean Ollion
+ */
+public class ChunkedImageDAO extends LocalFileSystemImageDAO {
+    public static final Logger logger = LoggerFactory.getLogger(ChunkedImageDAO.class);
+    public static int DEFAULT_CHUNK_SIZE_XY = 256, DEFAULT_CHUNK_SIZE_Z = 1;
+    public static boolean COMPRESS = true;
+    final Map<String, ChunkedImageStore> stores = new HashMap<>();
+    
+    public ChunkedImageDAO(String localDirectory) {
+        super(localDirectory);
+    }
+    protected String getPreProcessedStorePath(int channelImageIdx, String microscopyFieldName) {
+        return directory+File.separator+microscopyFieldName+File.separator+"pre_processed"+File.separator+"c"+Utils.formatInteger(2, channelImageIdx);
+    }
+    protected ChunkedImageStore getStore(int channelImageIdx, String microscopyFieldName) {
+        String path = getPreProcessedStorePath(channelImageIdx, microscopyFieldName);
+        synchronized(stores) {
+            ChunkedImageStore store = stores.get(path);
+            if (store==null || (!store.isEmpty() && !store.exists())) { // files may have been deleted externally
+                store = new ChunkedImageStore(path);
+                stores.put(path, store);
+            }
+            return store;
+        }
+    }
+    @Override
+    public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        Image im = getStore(channelImageIdx, microscopyFieldName).read(timePoint, null);
+        if (im==null) logger.trace("pre-processed image not found: channel: {} timePoint: {} position: {}", channelImageIdx, timePoint, microscopyFieldName);
+        else im.setName(getImageName(channelImageIdx, timePoint));
+        return im;
+    }
+    @Override
+    public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName, MutableBoundingBox bounds) {
+        Image im = getStore(channelImageIdx, microscopyFieldName).read(timePoint, bounds);
+        if (im==null) logger.error("pre-processed image not found: channel: {} timePoint: {} position: {}", channelImageIdx, timePoint, microscopyFieldName);
+        else im.setName(getImageName(channelImageIdx, timePoint));
+        return im;
+    }
+    private static String getImageName(int channelImageIdx, int timePoint) {
+        return "t"+Utils.formatInteger(5, timePoint)+"_c"+Utils.formatInteger(2, channelImageIdx);
+    }
+    @Override
+    public void deletePreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        getStore(channelImageIdx, microscopyFieldName).delete(timePoint);
+    }
+    @Override
+    public BlankMask getPreProcessedImageProperties(String microscopyFieldName) {
+        ChunkedImageStore store = getStore(0, microscopyFieldName);
+        if (!store.contains(0)) {
+            logger.debug("getPreProcessedImageProperties: pre-processed image not found for position: {}", microscopyFieldName);
+            return null;
+        }
+        return store.getProperties();
+    }
+    @Override
+    public void writePreProcessedImage(Image image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+        logger.trace("writing preprocessed image: channel: {} timePoint: {} position: {}", channelImageIdx, timePoint, microscopyFieldName);
+        getStore(channelImageIdx, microscopyFieldName).write(timePoint, image, DEFAULT_CHUNK_SIZE_XY, DEFAULT_CHUNK_SIZE_Z, COMPRESS);
+    }
+    /**
+     * 
+     * @param image TIFF image
+     * @param channelImageIdx
+     * @param timePoint
+     * @param microscopyFieldName 
+     */
+    @Override
+    public void writePreProcessedImage(InputStream image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+        File temp = null;
+        try {
+            temp = File.createTempFile("pre_processed", getImageExtension());
+            FileIO.writeFile(image, temp.getAbsolutePath());
+            Image im = ImageReader.openImage(temp.getAbsolutePath());
+            if (im!=null) writePreProcessedImage(im, channelImageIdx, timePoint, microscopyFieldName);
+        } catch (IOException ex) {
+            logger.error("Error while writing pre-processed image: channel: "+channelImageIdx+" timePoint: "+timePoint+" position: "+microscopyFieldName, ex);
+        } finally {
+            if (temp!=null) temp.delete();
+        }
+    }
+    /**
+     * 
+     * @return the pre-processed image in TIFF format. The underlying temporary file is deleted when the stream is closed
+     */
+    @Override
+    public InputStream openPreProcessedImageAsStream(int channelImageIdx, int timePoint, String microscopyFieldName) {
+        Image im = openPreProcessedImage(channelImageIdx, timePoint, microscopyFieldName);
+        if (im==null) return null;
+        try {
+            File temp = File.createTempFile("pre_processed", getImageExtension());
+            ImageWriter.writeToFile(im, temp.getAbsolutePath(), ImageFormat.TIF);
+            return new FileInputStream(temp) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    temp.delete();
+                }
+            };
+        } catch (IOException ex) {
+            logger.error("Error while opening pre-processed image: channel: "+channelImageIdx+" timePoint: "+timePoint+" position: "+microscopyFieldName, ex);
+            return null;
+        }
+    }
+}
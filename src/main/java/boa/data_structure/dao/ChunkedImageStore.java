@@ -0,0 +1,577 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.image.BlankMask;
+import boa.image.BoundingBox;
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.ImageFloat;
+import boa.image.ImageInt;
+import boa.image.ImageShort;
+import boa.image.SimpleImageProperties;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * All frames of one channel of one position stored in a single file, each frame being split in chunks of {@link Header#chunkSizeXY} x {@link Header#chunkSizeXY} x {@link Header#chunkSizeZ} pixels, compressed independently. 
+ * Reading a sub-volume only reads and decodes the chunks it intersects. 
+ * The location of chunks is appended to an index file, so that frames can be written concurrently and in any order. 
+ * The index file starts with a header containing image dimensions, type and calibration, shared by all frames. 
+ * Space of overwritten and deleted frames is reused by chunks written afterwards, once no read is in progress; the index file is rewritten when most of its records are obsolete.
+ * @author Jean Ollion
+ */
+public class ChunkedImageStore {
+    public static final Logger logger = LoggerFactory.getLogger(ChunkedImageStore.class);
+    static final int MAGIC = 0x424d4349; // "BMCI"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 4*3 + 1 + 8*2 + 4*2;
+    static final int RECORD_SIZE = 4 + 4 + 8 + 4 + 1;
+    static final byte RAW = 0, DEFLATE = 1;
+    static final int MIN_INDEX_COMPACTION_RECORDS = 10000;
+    final Path dataFile, indexFile;
+    Header header; // null if no frame is stored. header is immutable: it is read once under lock by each read & write
+    final Map<Integer, Frame> frames = new HashMap<>();
+    // space management of the data file
+    long dataLength;
+    final TreeMap<Long, Long> freeExtents = new TreeMap<>(); // offset -> length of regions of the data file that are not referenced by the index
+    final List<long[]> releasedExtents = new ArrayList<>(); // regions of replaced or deleted frames, that may still be read
+    int activeReads;
+    int indexRecords;
+    
+    public ChunkedImageStore(String pathWithoutExtension) {
+        this.dataFile = Paths.get(pathWithoutExtension+".chunks");
+        this.indexFile = Paths.get(pathWithoutExtension+".index");
+        if (Files.exists(indexFile)) readIndex();
+    }
+    /**
+     * 
+     * @return whether the files of this store exist
+     */
+    public boolean exists() {
+        return Files.exists(indexFile);
+    }
+    public synchronized boolean contains(int frame) {
+        return frames.containsKey(frame);
+    }
+    public synchronized boolean isEmpty() {
+        return frames.isEmpty();
+    }
+    /**
+     * 
+     * @return dimensions and calibration of stored frames, null if no frame is stored
+     */
+    public synchronized BlankMask getProperties() {
+        if (header==null) return null;
+        return new BlankMask(header.sizeX, header.sizeY, header.sizeZ, 0, 0, 0, header.scaleXY, header.scaleZ);
+    }
+    /**
+     * 
+     * @return length of the data file, including space that is not referenced anymore
+     */
+    public synchronized long getDataLength() {
+        return dataLength;
+    }
+    // index
+    private void readIndex() {
+        ByteBuffer in;
+        try {
+            in = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            dataLength = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        header = Header.decode(in, indexFile);
+        int chunkCount = header.getChunkCount();
+        while (in.remaining()>=RECORD_SIZE) { // an incomplete trailing record is ignored
+            int frame = in.getInt();
+            int chunk = in.getInt();
+            long offset = in.getLong();
+            int length = in.getInt();
+            byte codec = in.get();
+            ++indexRecords;
+            if (chunk<0) frames.remove(frame);
+            else {
+                Frame f = frames.get(frame);
+                if (f==null) {
+                    f = new Frame(chunkCount);
+                    frames.put(frame, f);
+                }
+                f.offsets[chunk] = offset;
+                f.lengths[chunk] = length;
+                f.codecs[chunk] = codec;
+            }
+        }
+        frames.values().removeIf(f -> !f.isComplete()); // interrupted write
+        // regions of the data file that are not referenced are free
+        List<long[]> used = new ArrayList<>();
+        for (Frame f : frames.values()) for (int c = 0; c<chunkCount; ++c) used.add(new long[]{f.offsets[c], f.lengths[c]});
+        used.sort((e1, e2) -> Long.compare(e1[0], e2[0]));
+        long end = 0;
+        for (long[] e : used) {
+            if (e[0]>end) freeExtents.put(end, e[0]-end);
+            end = Math.max(end, e[0]+e[1]);
+        }
+        if (dataLength>end) freeExtents.put(end, dataLength-end);
+        dataLength = Math.max(dataLength, end);
+    }
+    private void appendRecords(ByteBuffer records) throws IOException {
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (records.hasRemaining()) index.write(records);
+        }
+    }
+    /**
+     * Rewrites the index with records of stored frames only. The new index replaces the current one atomically
+     */
+    private void compactIndex() throws IOException {
+        int chunkCount = header.getChunkCount();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + frames.size() * chunkCount * RECORD_SIZE);
+        out.put(header.encode());
+        for (Map.Entry<Integer, Frame> e : frames.entrySet()) {
+            Frame f = e.getValue();
+            for (int c = 0; c<chunkCount; ++c) out.putInt(e.getKey()).putInt(c).putLong(f.offsets[c]).putInt(f.lengths[c]).put(f.codecs[c]);
+        }
+        out.flip();
+        Path temp = Paths.get(indexFile.toString()+".tmp");
+        try (FileChannel index = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) index.write(out);
+            index.force(true);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexRecords = frames.size() * chunkCount;
+    }
+    // space management
+    /**
+     * 
+     * @param length
+     * @return offset of a region of {@param length} bytes of the data file that is not referenced by the index: the first free region that fits, or the end of the file
+     */
+    private long allocate(int length) {
+        for (Map.Entry<Long, Long> e : freeExtents.entrySet()) {
+            long offset = e.getKey(), free = e.getValue();
+            if (free>=length) {
+                freeExtents.remove(offset);
+                if (free>length) freeExtents.put(offset+length, free-length);
+                return offset;
+            }
+        }
+        long offset = dataLength;
+        dataLength += length;
+        return offset;
+    }
+    private void release(Frame f) {
+        for (int c = 0; c<f.lengths.length; ++c) releasedExtents.add(new long[]{f.offsets[c], f.lengths[c]});
+        if (activeReads==0) reclaimReleased();
+    }
+    /**
+     * Released regions become free once no read is in progress, as reads may have started before they were released
+     */
+    private void reclaimReleased() {
+        for (long[] e : releasedExtents) {
+            long offset = e[0], length = e[1];
+            if (length<=0) continue;
+            Map.Entry<Long, Long> previous = freeExtents.floorEntry(offset);
+            if (previous!=null && previous.getKey()+previous.getValue()==offset) { // merge with adjacent regions
+                offset = previous.getKey();
+                length += previous.getValue();
+            }
+            Long next = freeExtents.get(e[0]+e[1]);
+            if (next!=null) {
+                freeExtents.remove(e[0]+e[1]);
+                length += next;
+            }
+            freeExtents.put(offset, length);
+        }
+        releasedExtents.clear();
+    }
+    // write
+    /**
+     * Stores {@param image} as frame {@param frame}, replacing existing frame. All frames must have same dimensions and type
+     * @param frame
+     * @param image 
+     * @param chunkSizeXY chunk size in X and Y direction, used only for the first written frame 
+     * @param chunkSizeZ chunk size in Z direction, used only for the first written frame 
+     * @param compress whether chunks should be compressed
+     */
+    public void write(int frame, Image image, int chunkSizeXY, int chunkSizeZ, boolean compress) {
+        Header h;
+        synchronized(this) {
+            if (header==null) header = new Header(image, chunkSizeXY, chunkSizeZ);
+            else if (!header.sameDimensions(image)) {
+                if (frames.isEmpty() || (frames.size()==1 && frames.containsKey(frame))) {
+                    deleteFiles();
+                    header = new Header(image, chunkSizeXY, chunkSizeZ);
+                } else throw new IllegalArgumentException("Image: "+image+" differs in size or type from images already stored in: "+dataFile);
+            }
+            h = header;
+        }
+        // chunks are encoded concurrently, only file access is synchronized
+        int chunkCount = h.getChunkCount();
+        byte[][] chunks = new byte[chunkCount][];
+        byte[] codecs = new byte[chunkCount];
+        Object[] planes = getPlanes(image.getHeapImage()); // images stored off-heap are copied, not moved to the heap
+        for (int c = 0; c<chunkCount; ++c) {
+            byte[] raw = toBytes(h.getChunk(planes, c));
+            if (compress) {
+                byte[] comp = deflate(raw);
+                if (comp.length<raw.length) {
+                    chunks[c] = comp;
+                    codecs[c] = DEFLATE;
+                    continue;
+                }
+            }
+            chunks[c] = raw;
+            codecs[c] = RAW;
+        }
+        synchronized(this) {
+            if (header!=h) throw new IllegalStateException("Store: "+dataFile+" was reset while frame: "+frame+" was written");
+            try {
+                boolean newFile = !Files.exists(indexFile);
+                if (newFile) Files.createDirectories(indexFile.toAbsolutePath().getParent());
+                Frame f = new Frame(chunkCount);
+                ByteBuffer records = ByteBuffer.allocate((newFile ? HEADER_SIZE : 0) + chunkCount * RECORD_SIZE);
+                if (newFile) records.put(h.encode());
+                try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    for (int c = 0; c<chunkCount; ++c) {
+                        long offset = allocate(chunks[c].length);
+                        ByteBuffer b = ByteBuffer.wrap(chunks[c]);
+                        while (b.hasRemaining()) data.write(b, offset + b.position());
+                        f.offsets[c] = offset;
+                        f.lengths[c] = chunks[c].length;
+                        f.codecs[c] = codecs[c];
+                        records.putInt(frame).putInt(c).putLong(f.offsets[c]).putInt(f.lengths[c]).put(f.codecs[c]);
+                    }
+                }
+                records.flip();
+                // chunks are written before they are referenced in the index. they are written in regions that are not referenced by the index, so that an interrupted write does not alter stored frames
+                appendRecords(records);
+                indexRecords += chunkCount;
+                Frame replaced = frames.put(frame, f);
+                if (replaced!=null) release(replaced);
+                if (indexRecords>=MIN_INDEX_COMPACTION_RECORDS && indexRecords>2*frames.size()*chunkCount) compactIndex();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    public synchronized void delete(int frame) {
+        Frame f = frames.remove(frame);
+        if (f==null) return;
+        if (frames.isEmpty()) {
+            deleteFiles();
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(frame).putInt(-1).putLong(0).putInt(0).put(RAW);
+        record.flip();
+        try {
+            appendRecords(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ++indexRecords;
+        release(f);
+    }
+    private void deleteFiles() {
+        frames.clear();
+        header = null;
+        dataLength = 0;
+        freeExtents.clear();
+        releasedExtents.clear();
+        indexRecords = 0;
+        try {
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(dataFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // read
+    /**
+     * 
+     * @param frame
+     * @param bounds area to read. z-bounds are limited to the image; if null, the whole frame is read
+     * @return image corresponding to {@param bounds} with offset of {@param bounds}, or null if frame is not stored
+     */
+    public Image read(int frame, BoundingBox bounds) {
+        Frame f;
+        Header h;
+        synchronized(this) {
+            f = frames.get(frame);
+            if (f==null) return null;
+            h = header;
+            ++activeReads; // regions of f are not reused until the read is done
+        }
+        try {
+            return read(h, f, bounds);
+        } finally {
+            synchronized(this) {
+                if (--activeReads==0) reclaimReleased();
+            }
+        }
+    }
+    private Image read(Header h, Frame f, BoundingBox bounds) {
+        int xMin=0, yMin=0, zMin=0, xMax=h.sizeX-1, yMax=h.sizeY-1, zMax=h.sizeZ-1;
+        if (bounds!=null) {
+            xMin = bounds.xMin();
+            xMax = bounds.xMax();
+            yMin = bounds.yMin();
+            yMax = bounds.yMax();
+            zMin = Math.max(bounds.zMin(), 0);
+            zMax = Math.min(bounds.zMax(), h.sizeZ-1);
+            if (zMin>zMax) {zMin=0; zMax=h.sizeZ-1;}
+        }
+        Image res = h.createImage(xMax-xMin+1, yMax-yMin+1, zMax-zMin+1);
+        Object[] resPlanes = getPlanes(res);
+        int cxMin = Math.max(0, xMin) / h.chunkSizeXY, cxMax = Math.min(h.sizeX-1, xMax) / h.chunkSizeXY;
+        int cyMin = Math.max(0, yMin) / h.chunkSizeXY, cyMax = Math.min(h.sizeY-1, yMax) / h.chunkSizeXY;
+        int czMin = zMin / h.chunkSizeZ, czMax = zMax / h.chunkSizeZ;
+        try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            for (int cz = czMin; cz<=czMax; ++cz) {
+                for (int cy = cyMin; cy<=cyMax; ++cy) {
+                    for (int cx = cxMin; cx<=cxMax; ++cx) {
+                        int c = h.getChunkIndex(cx, cy, cz);
+                        Object chunk = readChunk(data, h, f, c);
+                        // copy intersection of chunk and requested area
+                        int x0 = cx*h.chunkSizeXY, y0 = cy*h.chunkSizeXY, z0 = cz*h.chunkSizeZ;
+                        int w = Math.min(h.chunkSizeXY, h.sizeX-x0), hh = Math.min(h.chunkSizeXY, h.sizeY-y0);
+                        int ixMin = Math.max(x0, xMin), ixMax = Math.min(x0+w-1, xMax);
+                        int iyMin = Math.max(y0, yMin), iyMax = Math.min(y0+hh-1, yMax);
+                        int izMin = Math.max(z0, zMin), izMax = Math.min(z0+h.chunkSizeZ-1, zMax);
+                        int length = ixMax-ixMin+1;
+                        for (int z = izMin; z<=izMax; ++z) {
+                            Object plane = resPlanes[z-zMin];
+                            for (int y = iyMin; y<=iyMax; ++y) {
+                                System.arraycopy(chunk, ((z-z0)*hh + (y-y0))*w + ixMin-x0, plane, (y-yMin)*res.sizeX() + ixMin-xMin, length);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        res.translate(xMin, yMin, zMin);
+        return res;
+    }
+    private Object readChunk(FileChannel data, Header h, Frame f, int c) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(f.lengths[c]);
+        long offset = f.offsets[c];
+        while (b.hasRemaining()) {
+            int n = data.read(b, offset + b.position());
+            if (n<0) throw new IOException("Unexpected end of file: "+dataFile);
+        }
+        int[] size = h.getChunkSize(c);
+        int length = size[0]*size[1]*size[2];
+        byte[] raw = f.codecs[c]==DEFLATE ? inflate(b.array(), length * bytesPerPixel(h.bitDepth)) : b.array();
+        Object res = newArray(h.bitDepth, length);
+        fromBytes(raw, res);
+        return res;
+    }
+    /**
+     * Dimensions, type, calibration and chunk layout shared by all frames
+     */
+    static class Header {
+        final int sizeX, sizeY, sizeZ, bitDepth, chunkSizeXY, chunkSizeZ;
+        final double scaleXY, scaleZ;
+        final int nChunkX, nChunkY, nChunkZ;
+        Header(int sizeX, int sizeY, int sizeZ, int bitDepth, double scaleXY, double scaleZ, int chunkSizeXY, int chunkSizeZ) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.bitDepth = bitDepth;
+            this.scaleXY = scaleXY;
+            this.scaleZ = scaleZ;
+            this.chunkSizeXY = chunkSizeXY;
+            this.chunkSizeZ = chunkSizeZ;
+            nChunkX = (sizeX + chunkSizeXY - 1) / chunkSizeXY;
+            nChunkY = (sizeY + chunkSizeXY - 1) / chunkSizeXY;
+            nChunkZ = (sizeZ + chunkSizeZ - 1) / chunkSizeZ;
+        }
+        Header(Image image, int chunkSizeXY, int chunkSizeZ) {
+            this(image.sizeX(), image.sizeY(), image.sizeZ(), image.getBitDepth(), image.getScaleXY(), image.getScaleZ(), chunkSizeXY, chunkSizeZ);
+        }
+        static Header decode(ByteBuffer in, Path indexFile) {
+            if (in.remaining()<HEADER_SIZE || in.getInt()!=MAGIC) throw new IllegalArgumentException("Not a chunked image index: "+indexFile);
+            byte version = in.get();
+            if (version!=VERSION) throw new IllegalArgumentException("Unsupported chunked image version: "+version);
+            int sizeX = in.getInt();
+            int sizeY = in.getInt();
+            int sizeZ = in.getInt();
+            int bitDepth = in.get();
+            double scaleXY = in.getDouble();
+            double scaleZ = in.getDouble();
+            return new Header(sizeX, sizeY, sizeZ, bitDepth, scaleXY, scaleZ, in.getInt(), in.getInt());
+        }
+        byte[] encode() {
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE);
+            out.putInt(MAGIC).put(VERSION).putInt(sizeX).putInt(sizeY).putInt(sizeZ).put((byte)bitDepth).putDouble(scaleXY).putDouble(scaleZ).putInt(chunkSizeXY).putInt(chunkSizeZ);
+            return out.array();
+        }
+        boolean sameDimensions(Image image) {
+            return sizeX==image.sizeX() && sizeY==image.sizeY() && sizeZ==image.sizeZ() && bitDepth==image.getBitDepth();
+        }
+        int getChunkCount() {
+            return nChunkX * nChunkY * nChunkZ;
+        }
+        int getChunkIndex(int cx, int cy, int cz) {
+            return (cz * nChunkY + cy) * nChunkX + cx;
+        }
+        int[] getChunkSize(int c) {
+            int cx = c % nChunkX, cy = (c / nChunkX) % nChunkY, cz = c / (nChunkX * nChunkY);
+            return new int[]{Math.min(chunkSizeXY, sizeX - cx*chunkSizeXY), Math.min(chunkSizeXY, sizeY - cy*chunkSizeXY), Math.min(chunkSizeZ, sizeZ - cz*chunkSizeZ)};
+        }
+        Object getChunk(Object[] planes, int c) {
+            int cx = c % nChunkX, cy = (c / nChunkX) % nChunkY, cz = c / (nChunkX * nChunkY);
+            int[] size = getChunkSize(c);
+            int x0 = cx*chunkSizeXY, y0 = cy*chunkSizeXY, z0 = cz*chunkSizeZ;
+            Object res = newArray(bitDepth, size[0]*size[1]*size[2]);
+            for (int z = 0; z<size[2]; ++z) {
+                for (int y = 0; y<size[1]; ++y) System.arraycopy(planes[z0+z], (y0+y)*sizeX + x0, res, (z*size[1] + y)*size[0], size[0]);
+            }
+            return res;
+        }
+        Image createImage(int sizeX, int sizeY, int sizeZ) {
+            SimpleImageProperties props = new SimpleImageProperties(sizeX, sizeY, sizeZ, scaleXY, scaleZ);
+            switch(bitDepth) {
+                case 8: return new ImageByte("", props);
+                case 16: return new ImageShort("", props);
+                case 32: return new ImageFloat("", props);
+                case 64: return new ImageInt("", props);
+                default: throw new IllegalArgumentException("Unsupported bit depth: "+bitDepth);
+            }
+        }
+    }
+    // pixel conversion
+    static Object[] getPlanes(Image image) {
+        if (image instanceof ImageByte) return ((ImageByte)image).getPixelArray();
+        if (image instanceof ImageShort) return ((ImageShort)image).getPixelArray();
+        if (image instanceof ImageFloat) return ((ImageFloat)image).getPixelArray();
+        if (image instanceof ImageInt) return ((ImageInt)image).getPixelArray();
+        throw new IllegalArgumentException("Unsupported image type: "+image.getClass().getSimpleName());
+    }
+    static int bytesPerPixel(int bitDepth) {
+        switch(bitDepth) {
+            case 8: return 1;
+            case 16: return 2;
+            default: return 4; // float & int
+        }
+    }
+    static Object newArray(int bitDepth, int length) {
+        switch(bitDepth) {
+            case 8: return new byte[length];
+            case 16: return new short[length];
+            case 32: return new float[length];
+            default: return new int[length];
+        }
+    }
+    static byte[] toBytes(Object array) {
+        if (array instanceof byte[]) return (byte[])array;
+        if (array instanceof short[]) {
+            short[] a = (short[])array;
+            ByteBuffer b = ByteBuffer.allocate(a.length*2);
+            b.asShortBuffer().put(a);
+            return b.array();
+        }
+        if (array instanceof float[]) {
+            float[] a = (float[])array;
+            ByteBuffer b = ByteBuffer.allocate(a.length*4);
+            b.asFloatBuffer().put(a);
+            return b.array();
+        }
+        int[] a = (int[])array;
+        ByteBuffer b = ByteBuffer.allocate(a.length*4);
+        b.asIntBuffer().put(a);
+        return b.array();
+    }
+    static void fromBytes(byte[] bytes, Object array) {
+        if (array instanceof byte[]) System.arraycopy(bytes, 0, array, 0, bytes.length);
+        else if (array instanceof short[]) ByteBuffer.wrap(bytes).asShortBuffer().get((short[])array);
+        else if (array instanceof float[]) ByteBuffer.wrap(bytes).asFloatBuffer().get((float[])array);
+        else ByteBuffer.wrap(bytes).asIntBuffer().get((int[])array);
+    }
+    static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[raw.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length==buffer.length) return raw; // not compressible
+                length += deflater.deflate(buffer, length, buffer.length-length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+    static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] res = new byte[rawLength];
+            int length = 0;
+            while (length<rawLength && !inflater.finished()) {
+                int n = inflater.inflate(res, length, rawLength-length);
+                if (n==0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IllegalStateException("Corrupted chunk");
+                length += n;
+            }
+            return res;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    static class Frame {
+        final long[] offsets;
+        final int[] lengths;
+        final byte[] codecs;
+        Frame(int chunkCount) {
+            offsets = new long[chunkCount];
+            lengths = new int[chunkCount];
+            codecs = new byte[chunkCount];
+            Arrays.fill(lengths, -1);
+        }
+        boolean isComplete() {
+            for (int l : lengths) if (l<0) return false;
+            return true;
+        }
+    }
+}
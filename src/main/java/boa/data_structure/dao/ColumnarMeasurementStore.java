@@ -0,0 +1,582 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.Measurements;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
+import boa.utils.Id;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measurements stored in columnar format: each measurement key is a typed column (double, long, boolean, string dictionary or double array) indexed by a dense row index assigned to each object.
+ * Each column is stored in a separate file so that modifying a few measurement keys only rewrites the corresponding columns, and columns are only decoded when requested. 
+ * Files are never modified in place: modified columns are written to new files, which are referenced by the rows file once it is atomically replaced. 
+ * Removed objects are marked as deleted and rows are compacted when more than half of them are deleted.
+ * The "rows" file contains object properties (id, frame, indices, track head flag, time point) and the list of columns
+ * @author Jean Ollion
+ */
+public class ColumnarMeasurementStore implements MeasurementStore {
+    public static final Logger logger = LoggerFactory.getLogger(ColumnarMeasurementStore.class);
+    static final int MAGIC = 0x424d4353; // "BMCS"
+    static final byte VERSION = 1;
+    static final String ROWS_FILE = "rows.bin";
+    static final byte FLAG_TRACK_HEAD = 1, FLAG_DELETED = 2;
+    static final int MIN_COMPACTION_ROWS = 1000;
+    public enum ColumnType {DOUBLE, LONG, BOOLEAN, STRING, ARRAY}
+    final File dir;
+    final String positionName;
+    final int structureIdx;
+    final boolean readOnly;
+    // rows
+    int rowCount, deletedCount;
+    Id[] ids = new Id[0];
+    int[] frames = new int[0];
+    byte[] flags = new byte[0];
+    double[] timePoints = new double[0];
+    int[][] indices = new int[0][];
+    final Map<Id, Integer> rowById = new HashMap<>();
+    // columns
+    final Map<String, Column> columns = new LinkedHashMap<>();
+    int nextFileId;
+    boolean rowsModified;
+    
+    public ColumnarMeasurementStore(String dir, String positionName, int structureIdx, boolean readOnly) {
+        this.dir = new File(dir);
+        this.positionName=positionName;
+        this.structureIdx=structureIdx;
+        this.readOnly=readOnly;
+        File rows = new File(this.dir, ROWS_FILE);
+        if (rows.exists()) readRows(rows);
+    }
+    public static boolean exists(String dir) {
+        return new File(dir, ROWS_FILE).exists();
+    }
+    public static void delete(String dir) {
+        File d = new File(dir);
+        if (!d.exists()) return;
+        File[] files = d.listFiles();
+        if (files!=null) for (File f : files) f.delete();
+        d.delete();
+    }
+    // rows
+    private void ensureRowCapacity(int capacity) {
+        if (capacity<=ids.length) return;
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length + (ids.length>>1)));
+        ids = Arrays.copyOf(ids, newCapacity);
+        frames = Arrays.copyOf(frames, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        timePoints = Arrays.copyOf(timePoints, newCapacity);
+        indices = Arrays.copyOf(indices, newCapacity);
+    }
+    private int getOrAppendRow(Id id) {
+        Integer row = rowById.get(id);
+        if (row!=null) return row;
+        ensureRowCapacity(rowCount+1);
+        ids[rowCount] = id;
+        rowById.put(id, rowCount);
+        rowsModified = true;
+        return rowCount++;
+    }
+    private boolean isDeleted(int row) {
+        return (flags[row] & FLAG_DELETED)!=0;
+    }
+    // columns
+    private Column getColumn(String key) {
+        Column c = columns.get(key);
+        if (c!=null) c.load();
+        return c;
+    }
+    @Override
+    public synchronized void put(Collection<Measurements> measurements) {
+        for (Measurements m : measurements) {
+            Id id = m.getId();
+            boolean newRow = !rowById.containsKey(id);
+            int row = getOrAppendRow(id);
+            byte flag = m.isTrackHead() ? FLAG_TRACK_HEAD : 0;
+            if (newRow || frames[row]!=m.getFrame() || flags[row]!=flag || Double.compare(timePoints[row], m.getCalibratedTimePoint())!=0 || !Arrays.equals(indices[row], m.getIndices())) {
+                frames[row] = m.getFrame();
+                flags[row] = flag;
+                timePoints[row] = m.getCalibratedTimePoint();
+                indices[row] = m.getIndices();
+                rowsModified = true;
+            }
+            Map<String, Object> values = m.getValues();
+            if (!newRow) { // keys absent from measurements are removed
+                for (Column c : columns.values()) {
+                    if (!values.containsKey(c.name)) {
+                        c.load();
+                        if (c.get(row)!=null) c.set(row, null);
+                    }
+                }
+            }
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                if (e.getValue()==null) continue;
+                Column c = getColumn(e.getKey());
+                if (c==null) {
+                    c = new Column(e.getKey(), typeOf(e.getValue()), -1); // file id is assigned when the column is written
+                    columns.put(e.getKey(), c);
+                    rowsModified = true; // columns are listed in the rows file
+                }
+                c.set(row, e.getValue());
+            }
+        }
+    }
+    @Override
+    public synchronized void remove(Collection<Id> ids) {
+        for (Id id : ids) {
+            Integer row = rowById.remove(id);
+            if (row==null) continue;
+            flags[row] |= FLAG_DELETED;
+            ++deletedCount;
+            rowsModified = true;
+        }
+    }
+    @Override
+    public synchronized Measurements get(Id id) {
+        Integer row = rowById.get(id);
+        if (row==null) return null;
+        for (Column c : columns.values()) c.load();
+        return getMeasurements(row, columns.values());
+    }
+    private Measurements getMeasurements(int row, Collection<Column> columns) {
+        Map<String, Object> values = new HashMap<>();
+        for (Column c : columns) {
+            Object v = c.get(row);
+            if (v!=null) values.put(c.name, v);
+        }
+        return new Measurements(ids[row], positionName, structureIdx, frames[row], timePoints[row], (flags[row] & FLAG_TRACK_HEAD)!=0, indices[row], values);
+    }
+    private List<Column> getColumns(String... keys) {
+        List<Column> cols = new ArrayList<>();
+        if (keys.length==0) cols.addAll(columns.values());
+        else for (String k : keys) {
+            Column c = columns.get(k);
+            if (c!=null) cols.add(c);
+        }
+        for (Column c : cols) c.load();
+        return cols;
+    }
+    @Override
+    public synchronized List<Measurements> getAll(String... keys) {
+        List<Column> cols = getColumns(keys);
+        List<Measurements> res = new ArrayList<>(rowCount-deletedCount);
+        for (int row = 0; row<rowCount; ++row) {
+            if (!isDeleted(row)) res.add(getMeasurements(row, cols));
+        }
+        return res;
+    }
+    /**
+     * Only the row order and the requested columns are held in memory: measurements are created when iterated
+     */
+    @Override
+    public synchronized Iterator<Measurements> iterator(String... keys) {
+        List<Column> cols = getColumns(keys);
+        Integer[] order = new Integer[rowCount-deletedCount];
+        int count = 0;
+        for (int row = 0; row<rowCount; ++row) if (!isDeleted(row)) order[count++] = row;
+        Arrays.sort(order, (r1, r2) -> Measurements.compareIndices(indices[r1], indices[r2]));
+        return new Iterator<Measurements>() {
+            int idx = 0;
+            @Override
+            public boolean hasNext() {
+                return idx<order.length;
+            }
+            @Override
+            public Measurements next() {
+                if (idx>=order.length) throw new NoSuchElementException();
+                synchronized(ColumnarMeasurementStore.this) {
+                    return getMeasurements(order[idx++], cols);
+                }
+            }
+        };
+    }
+    @Override
+    public synchronized void commit() {
+        if (readOnly) return;
+        if (deletedCount>=MIN_COMPACTION_ROWS && deletedCount*2>rowCount) compact();
+        if (!rowsModified && columns.values().stream().noneMatch(c->c.modified)) return;
+        if (!dir.exists()) dir.mkdirs();
+        // modified columns are written to new files, so that files referenced by the current rows file are never modified: the rows file is replaced atomically, then previous files are deleted
+        for (Column c : columns.values()) {
+            if (c.modified) {
+                c.fileId = nextFileId++;
+                writeFile(c.getFile(), c.encode(rowCount));
+                c.modified = false;
+                rowsModified = true;
+            }
+        }
+        if (rowsModified) {
+            writeFile(new File(dir, ROWS_FILE), encodeRows());
+            rowsModified = false;
+        }
+        // remove files of columns that are not referenced anymore, including files written by an interrupted commit
+        File[] files = dir.listFiles((d, n) -> n.endsWith(".col"));
+        if (files!=null) {
+            for (File f : files) if (columns.values().stream().noneMatch(c->c.getFile().getName().equals(f.getName()))) f.delete();
+        }
+    }
+    @Override
+    public synchronized void close(boolean commit) {
+        if (commit) commit();
+        columns.clear();
+        rowById.clear();
+        rowCount = 0;
+    }
+    /**
+     * Removes deleted rows: all columns are loaded and written to new files at next commit
+     */
+    public synchronized void compact() {
+        if (deletedCount==0) return;
+        for (Column c : columns.values()) c.load();
+        int[] newRows = new int[rowCount];
+        int count = 0;
+        for (int row = 0; row<rowCount; ++row) newRows[row] = isDeleted(row) ? -1 : count++;
+        for (int row = 0; row<rowCount; ++row) {
+            int newRow = newRows[row];
+            if (newRow<0 || newRow==row) continue;
+            ids[newRow] = ids[row];
+            frames[newRow] = frames[row];
+            flags[newRow] = flags[row];
+            timePoints[newRow] = timePoints[row];
+            indices[newRow] = indices[row];
+        }
+        for (Column c : columns.values()) c.compact(newRows, rowCount);
+        for (int row = count; row<rowCount; ++row) {
+            ids[row] = null;
+            indices[row] = null;
+        }
+        rowCount = count;
+        deletedCount = 0;
+        rowById.clear();
+        for (int row = 0; row<rowCount; ++row) rowById.put(ids[row], row);
+        rowsModified = true;
+    }
+    // persistence
+    private static void writeFile(File file, byte[] data) {
+        File temp = new File(file.getPath()+".tmp");
+        try {
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    private static BinaryReader readFile(File file) {
+        try {
+            return new BinaryReader(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    private byte[] encodeRows() {
+        BinaryWriter out = new BinaryWriter(64 + rowCount * 48);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(rowCount);
+        byte[] idBytes = new byte[12];
+        for (int row = 0; row<rowCount; ++row) {
+            ids[row].writeTo(idBytes, 0);
+            out.writeBytes(idBytes);
+            out.writeInt(frames[row]);
+            out.writeByte(flags[row]);
+            out.writeDouble(timePoints[row]);
+            int[] idx = indices[row];
+            out.writeVarInt(idx==null ? 0 : idx.length);
+            if (idx!=null) for (int i : idx) out.writeVarInt(i);
+        }
+        out.writeVarInt(columns.size());
+        for (Column c : columns.values()) {
+            out.writeString(c.name);
+            out.writeByte(c.type.ordinal());
+            out.writeVarInt(c.fileId);
+        }
+        return out.toByteArray();
+    }
+    private void readRows(File file) {
+        BinaryReader in = readFile(file);
+        if (in.readInt()!=MAGIC) throw new IllegalArgumentException("Not a measurement file: "+file);
+        byte version = in.readByte();
+        if (version!=VERSION) throw new IllegalArgumentException("Unsupported measurement file version: "+version);
+        rowCount = in.readInt();
+        ensureRowCapacity(rowCount);
+        byte[] idBytes;
+        for (int row = 0; row<rowCount; ++row) {
+            idBytes = in.readBytes(12);
+            ids[row] = new Id(idBytes);
+            frames[row] = in.readInt();
+            flags[row] = in.readByte();
+            timePoints[row] = in.readDouble();
+            int[] idx = new int[in.readVarInt()];
+            for (int i = 0; i<idx.length; ++i) idx[i] = in.readVarInt();
+            indices[row] = idx;
+            if (isDeleted(row)) ++deletedCount;
+            else rowById.put(ids[row], row);
+        }
+        int colCount = in.readVarInt();
+        for (int i = 0; i<colCount; ++i) {
+            String name = in.readString();
+            ColumnType type = ColumnType.values()[in.readByte()];
+            Column c = new Column(name, type, in.readVarInt());
+            c.loaded = false;
+            columns.put(name, c);
+            nextFileId = Math.max(nextFileId, c.fileId+1);
+        }
+    }
+    static ColumnType typeOf(Object value) {
+        if (value instanceof Double || value instanceof Float) return ColumnType.DOUBLE;
+        if (value instanceof Number) return ColumnType.LONG;
+        if (value instanceof Boolean) return ColumnType.BOOLEAN;
+        if (value instanceof double[] || value instanceof int[] || value instanceof List) return ColumnType.ARRAY;
+        return ColumnType.STRING;
+    }
+    static double[] toDoubleArray(Object value) {
+        if (value instanceof double[]) return (double[])value;
+        if (value instanceof int[]) return Arrays.stream((int[])value).asDoubleStream().toArray();
+        List l = (List)value;
+        double[] res = new double[l.size()];
+        for (int i = 0; i<res.length; ++i) res[i] = l.get(i) instanceof Number ? ((Number)l.get(i)).doubleValue() : Double.NaN;
+        return res;
+    }
+    
+    /**
+     * Typed column. Values are null for missing rows
+     */
+    class Column {
+        final String name;
+        ColumnType type;
+        int fileId;
+        boolean loaded = true, modified;
+        int size; // number of rows with allocated storage
+        double[] doubles;
+        long[] longs;
+        BitSet present; // for LONG columns
+        byte[] booleans; // -1: NA
+        int[] codes; // -1: NA
+        List<String> dictionary;
+        Map<String, Integer> dictionaryIndex;
+        double[][] arrays;
+        Column(String name, ColumnType type, int fileId) {
+            this.name=name;
+            this.fileId=fileId;
+            init(type, 0);
+        }
+        private void init(ColumnType type, int capacity) {
+            this.type=type;
+            doubles = null; longs = null; present = null; booleans = null; codes = null; dictionary = null; dictionaryIndex = null; arrays = null;
+            size = 0;
+            switch(type) {
+                case DOUBLE: doubles = new double[capacity]; break;
+                case LONG: longs = new long[capacity]; present = new BitSet(capacity); break;
+                case BOOLEAN: booleans = new byte[capacity]; break;
+                case STRING: codes = new int[capacity]; dictionary = new ArrayList<>(); dictionaryIndex = new HashMap<>(); break;
+                case ARRAY: arrays = new double[capacity][]; break;
+            }
+        }
+        File getFile() {
+            return new File(dir, fileId+".col");
+        }
+        private int capacity() {
+            switch(type) {
+                case DOUBLE: return doubles.length;
+                case LONG: return longs.length;
+                case BOOLEAN: return booleans.length;
+                case STRING: return codes.length;
+                default: return arrays.length;
+            }
+        }
+        private void ensureSize(int newSize) {
+            if (newSize<=size) return;
+            if (newSize>capacity()) {
+                int cap = Math.max(newSize, Math.max(16, capacity() + (capacity()>>1)));
+                switch(type) {
+                    case DOUBLE: doubles = Arrays.copyOf(doubles, cap); break;
+                    case LONG: longs = Arrays.copyOf(longs, cap); break;
+                    case BOOLEAN: booleans = Arrays.copyOf(booleans, cap); break;
+                    case STRING: codes = Arrays.copyOf(codes, cap); break;
+                    case ARRAY: arrays = Arrays.copyOf(arrays, cap); break;
+                }
+            }
+            // missing rows are NA
+            switch(type) {
+                case DOUBLE: Arrays.fill(doubles, size, newSize, Double.NaN); break;
+                case BOOLEAN: Arrays.fill(booleans, size, newSize, (byte)-1); break;
+                case STRING: Arrays.fill(codes, size, newSize, -1); break;
+                default: break; // LONG: not present, ARRAY: null
+            }
+            size = newSize;
+        }
+        Object get(int row) {
+            if (row>=size) return null;
+            switch(type) {
+                case DOUBLE: return Double.isNaN(doubles[row]) ? null : doubles[row];
+                case LONG: return present.get(row) ? longs[row] : null;
+                case BOOLEAN: return booleans[row]<0 ? null : booleans[row]==1;
+                case STRING: return codes[row]<0 ? null : dictionary.get(codes[row]);
+                default: return arrays[row];
+            }
+        }
+        void set(int row, Object value) {
+            if (value!=null && !accepts(value)) convert(typeOf(value)==ColumnType.DOUBLE && type==ColumnType.LONG ? ColumnType.DOUBLE : ColumnType.STRING);
+            Object current = get(row);
+            if (Objects.equals(current, value) || (type==ColumnType.ARRAY && value!=null && current!=null && Arrays.equals((double[])current, toDoubleArray(value)))) return;
+            ensureSize(row+1);
+            modified = true;
+            switch(type) {
+                case DOUBLE:
+                    doubles[row] = value==null ? Double.NaN : ((Number)value).doubleValue();
+                    break;
+                case LONG:
+                    if (value==null) present.clear(row);
+                    else {
+                        longs[row] = ((Number)value).longValue();
+                        present.set(row);
+                    }
+                    break;
+                case BOOLEAN:
+                    booleans[row] = value==null ? -1 : (byte)((Boolean)value ? 1 : 0);
+                    break;
+                case STRING:
+                    codes[row] = value==null ? -1 : getCode(value instanceof String ? (String)value : Measurements.asString(value, n->n.toString()));
+                    break;
+                case ARRAY:
+                    arrays[row] = value==null ? null : toDoubleArray(value);
+                    break;
+            }
+        }
+        private int getCode(String value) {
+            Integer code = dictionaryIndex.get(value);
+            if (code==null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                dictionaryIndex.put(value, code);
+            }
+            return code;
+        }
+        private boolean accepts(Object value) {
+            ColumnType t = typeOf(value);
+            return t==type || (type==ColumnType.DOUBLE && t==ColumnType.LONG) || type==ColumnType.STRING;
+        }
+        private void convert(ColumnType newType) {
+            logger.debug("measurement: {} converted from {} to {}", name, type, newType);
+            Object[] values = new Object[size];
+            for (int row = 0; row<size; ++row) values[row] = get(row);
+            init(newType, values.length);
+            for (int row = 0; row<values.length; ++row) if (values[row]!=null) set(row, values[row]);
+            modified = true;
+        }
+        void compact(int[] newRows, int rowCount) {
+            Object[] values = new Object[rowCount];
+            for (int row = 0; row<Math.min(size, rowCount); ++row) if (newRows[row]>=0) values[newRows[row]] = get(row);
+            List<String> dict = dictionary;
+            init(type, rowCount);
+            if (dict!=null) for (String s : dict) getCode(s); // keep dictionary order
+            for (int row = 0; row<values.length; ++row) if (values[row]!=null) set(row, values[row]);
+            modified = true;
+        }
+        byte[] encode(int rowCount) {
+            int n = Math.min(size, rowCount);
+            BinaryWriter out = new BinaryWriter(16 + n * 8);
+            out.writeByte(type.ordinal());
+            out.writeInt(n);
+            switch(type) {
+                case DOUBLE:
+                    for (int i = 0; i<n; ++i) out.writeDouble(doubles[i]);
+                    break;
+                case LONG:
+                    for (int i = 0; i<n; ++i) out.writeBoolean(present.get(i));
+                    for (int i = 0; i<n; ++i) out.writeLong(longs[i]);
+                    break;
+                case BOOLEAN:
+                    out.writeBytes(booleans, 0, n);
+                    break;
+                case STRING:
+                    out.writeVarInt(dictionary.size());
+                    for (String s : dictionary) out.writeByteArray(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                    for (int i = 0; i<n; ++i) out.writeInt(codes[i]);
+                    break;
+                case ARRAY:
+                    for (int i = 0; i<n; ++i) {
+                        if (arrays[i]==null) out.writeInt(-1);
+                        else {
+                            out.writeInt(arrays[i].length);
+                            for (double d : arrays[i]) out.writeDouble(d);
+                        }
+                    }
+                    break;
+            }
+            return out.toByteArray();
+        }
+        void load() {
+            if (loaded) return;
+            loaded = true;
+            File f = getFile();
+            if (!f.exists()) return; // column was not written: all values are NA
+            BinaryReader in = readFile(f);
+            ColumnType t = ColumnType.values()[in.readByte()];
+            int n = in.readInt();
+            init(t, n);
+            ensureSize(n);
+            switch(type) {
+                case DOUBLE:
+                    for (int i = 0; i<n; ++i) doubles[i] = in.readDouble();
+                    break;
+                case LONG:
+                    for (int i = 0; i<n; ++i) if (in.readBoolean()) present.set(i);
+                    for (int i = 0; i<n; ++i) longs[i] = in.readLong();
+                    break;
+                case BOOLEAN:
+                    System.arraycopy(in.readBytes(n), 0, booleans, 0, n);
+                    break;
+                case STRING:
+                    int dictSize = in.readVarInt();
+                    for (int i = 0; i<dictSize; ++i) getCode(new String(in.readByteArray(), java.nio.charset.StandardCharsets.UTF_8));
+                    for (int i = 0; i<n; ++i) codes[i] = in.readInt();
+                    break;
+                case ARRAY:
+                    for (int i = 0; i<n; ++i) {
+                        int l = in.readInt();
+                        if (l>=0) {
+                            double[] a = new double[l];
+                            for (int j = 0; j<l; ++j) a[j] = in.readDouble();
+                            arrays[i] = a;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+}
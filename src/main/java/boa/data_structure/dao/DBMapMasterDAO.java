@@ -41,6 +41,8 @@ import org.slf4j.LoggerFactory;
 import boa.utils.DBMapUtils;
 import boa.utils.FileIO;
 import boa.utils.JSONUtils;
+import boa.utils.MultipleException;
+import boa.utils.Pair;
 import boa.utils.Utils;
 import java.util.HashSet;
 import java.util.Set;
@@ -61,7 +63,17 @@ public class DBMapMasterDAO implements MasterDAO {
     RandomAccessFile cfg;
     DBMapSelectionDAO selectionDAO;
     boolean readOnly = true; // default is read only
+    final ObjectDAOFactory objectDAOFactory;
     public DBMapMasterDAO(String dir, String dbName) {
+        this(dir, dbName, DBMapObjectDAO::new);
+    }
+    /**
+     * 
+     * @param dir
+     * @param dbName
+     * @param objectDAOFactory allows to choose the storage of objects (see {@link MasterDAOFactory.DAOType})
+     */
+    public DBMapMasterDAO(String dir, String dbName, ObjectDAOFactory objectDAOFactory) {
         if (dir==null) throw new IllegalArgumentException("Invalid directory: "+ dir);
         if (dbName==null) throw new IllegalArgumentException("Invalid DbName: "+ dbName);
         logger.debug("create DBMAPMASTERDAO: dir: {}, dbName: {}", dir, dbName);
@@ -69,6 +81,10 @@ public class DBMapMasterDAO implements MasterDAO {
         File conf = new File(configDir);
         if (!conf.exists()) conf.mkdirs();
         this.dbName = dbName;
+        this.objectDAOFactory=objectDAOFactory;
+    }
+    public static interface ObjectDAOFactory {
+        public DBMapObjectDAO create(DBMapMasterDAO mDAO, String positionName, String dir, boolean readOnly);
     }
 
     @Override
@@ -154,7 +170,7 @@ public class DBMapMasterDAO implements MasterDAO {
         if (res==null) {
             String op = getOutputPath();
             if (op==null) return null;
-            res = new DBMapObjectDAO(this, positionName, op, !positionLock.contains(positionName));
+            res = objectDAOFactory.create(this, positionName, op, !positionLock.contains(positionName));
             //logger.debug("creating DAO: {} position lock: {}, read only: {}", positionName, positionLock.contains(positionName), res.isReadOnly());
             DAOs.put(positionName, res);
         }
@@ -242,10 +258,21 @@ public class DBMapMasterDAO implements MasterDAO {
     }
     @Override 
     public void clearCache(String position) {
+        flushImageDAO();
         if (getExperiment().getPosition(position)!=null) getExperiment().getPosition(position).flushImages(true, true); // input images
         DBMapObjectDAO dao = DAOs.get(position);
         if (dao!=null) dao.clearCache();
     }
+    /**
+     * Waits until images written asynchronously are stored. Errors are logged
+     */
+    private void flushImageDAO() {
+        try {
+            getExperiment().getImageDAO().flush();
+        } catch (MultipleException e) {
+            for (Pair<String, Throwable> p : e.getExceptions()) logger.error("Error while writing image: "+p.key, p.value);
+        }
+    }
     public synchronized void clearCache(boolean xpDAO, boolean objectDAO, boolean selectionDAO) {
         if (objectDAO) {
             for (DBMapObjectDAO dao : DAOs.values()) clearCache(dao.getPositionName());
@@ -257,6 +284,7 @@ public class DBMapMasterDAO implements MasterDAO {
         }
         if (xpDAO) {
             //this.unlockXP();
+            if (xp!=null) flushImageDAO();
             this.xp=null;
         }
     }
@@ -268,6 +296,15 @@ public class DBMapMasterDAO implements MasterDAO {
         }
         if (getSelectionDAO()!=null) getSelectionDAO().compact(true);
     }
+    /**
+     * Converts measurement files of all positions to the format set in the experiment (see {@link DBMapObjectDAO#convertMeasurementStores() })
+     */
+    public void convertMeasurementStores() {
+        for (String s : getExperiment().getPositionsAsString()) {
+            GUI.log("Converting measurements of position: "+s);
+            getDao(s).convertMeasurementStores();
+        }
+    }
 
     @Override
     public Experiment getExperiment() {
@@ -0,0 +1,124 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.Measurements;
+import boa.utils.DBMapUtils;
+import static boa.utils.DBMapUtils.getValues;
+import boa.utils.Id;
+import boa.utils.JSONUtils;
+import static boa.utils.JSONUtils.parse;
+import java.io.IOError;
+import boa.utils.Pair;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import org.json.simple.JSONArray;
+import org.mapdb.DB;
+import org.mapdb.HTreeMap;
+
+/**
+ * Measurements stored as one JSON string per object in a MapDB file
+ * @author Jean Ollion
+ */
+public class DBMapMeasurementStore implements MeasurementStore {
+    final DB db;
+    final HTreeMap<String, String> dbMap;
+    final String positionName;
+    final boolean readOnly;
+    /**
+     * 
+     * @param file
+     * @param positionName
+     * @param readOnly
+     * @throws org.mapdb.DBException if the file could not be opened
+     */
+    public DBMapMeasurementStore(String file, String positionName, boolean readOnly) {
+        this.db = DBMapUtils.createFileDB(file, readOnly);
+        this.dbMap = DBMapUtils.createHTreeMap(db, "measurements");
+        this.positionName=positionName;
+        this.readOnly=readOnly;
+    }
+    @Override
+    public void put(Collection<Measurements> measurements) {
+        for (Measurements m : measurements) dbMap.put(m.getId().toHexString(), JSONUtils.serialize(m));
+    }
+    @Override
+    public void remove(Collection<Id> ids) {
+        for (Id id : ids) dbMap.remove(id.toHexString());
+    }
+    @Override
+    public Measurements get(Id id) {
+        try {
+            String mS = dbMap.get(id.toHexString());
+            if (mS==null) return null;
+            return new Measurements(parse(mS), positionName);
+        } catch (IOError e) {
+            return null;
+        }
+    }
+    @Override
+    public List<Measurements> getAll(String... keys) {
+        return getValues(dbMap).stream().map((s) -> new Measurements(parse(s), positionName)).collect(Collectors.toList());
+    }
+    /**
+     * Only ids and indices of all objects are held in memory in order to sort them: measurements are parsed again when iterated
+     */
+    @Override
+    public Iterator<Measurements> iterator(String... keys) {
+        List<Pair<int[], String>> order = getValues(dbMap).stream().map(s -> {
+            Map json = parse(s);
+            return new Pair<>(JSONUtils.fromIntArray((JSONArray)json.get("indices")), (String)json.get("id"));
+        }).sorted((p1, p2) -> Measurements.compareIndices(p1.key, p2.key)).collect(Collectors.toList());
+        Iterator<Pair<int[], String>> it = order.iterator();
+        return new Iterator<Measurements>() {
+            Measurements next = fetchNext();
+            private Measurements fetchNext() {
+                while (it.hasNext()) {
+                    String mS = dbMap.get(it.next().value);
+                    if (mS!=null) return new Measurements(parse(mS), positionName); // skips objects removed since the iterator was created
+                }
+                return null;
+            }
+            @Override
+            public boolean hasNext() {
+                return next!=null;
+            }
+            @Override
+            public Measurements next() {
+                if (next==null) throw new NoSuchElementException();
+                Measurements res = next;
+                next = fetchNext();
+                return res;
+            }
+        };
+    }
+    @Override
+    public void commit() {
+        db.commit();
+    }
+    @Override
+    public void close(boolean commit) {
+        if (!readOnly && commit && !db.isClosed()) db.commit();
+        db.close();
+    }
+}
@@ -26,6 +26,7 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOError;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -42,10 +43,12 @@ import org.mapdb.HTreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import boa.utils.DBMapUtils;
+import boa.utils.EvictingCache;
+import boa.utils.HashMapGetCreate;
 import static boa.utils.DBMapUtils.createFileDB;
 import static boa.utils.DBMapUtils.getEntrySet;
 import static boa.utils.DBMapUtils.getValues;
-import boa.utils.HashMapGetCreate;
+import boa.utils.Id;
 import boa.utils.JSONUtils;
 import static boa.utils.JSONUtils.parse;
 import boa.utils.Pair;
@@ -59,7 +62,14 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 
 /**
@@ -71,14 +81,46 @@ public class DBMapObjectDAO implements ObjectDAO {
     final DBMapMasterDAO mDAO;
     final String positionName;
     //List<StructureObject> rootCache;
-    final HashMapGetCreate<Pair<String, Integer>, Map<String, StructureObject>> cache = new HashMapGetCreate<>(new HashMapGetCreate.MapFactory()); // parent trackHead id -> id cache
-    final HashMapGetCreate<Pair<String, Integer>, Boolean> allObjectsRetrievedInCache = new HashMapGetCreate<>(p -> false);
-    final Map<Pair<String, Integer>, HTreeMap<String, String>> dbMaps = new HashMap<>();
+    public static long DEFAULT_CACHE_LIMIT = 1000000; // maximal number of objects in cache
+    final EvictingCache<Pair<Id, Integer>, Map<Id, StructureObject>> cache = new EvictingCache<>(k -> new HashMap<>(), m -> m.size(), DEFAULT_CACHE_LIMIT); // parent trackHead id -> id cache
+    final Set<Pair<Id, Integer>> allObjectsRetrievedInCache = ConcurrentHashMap.newKeySet();
+    final Map<Pair<Id, Integer>, Integer> pinned = new HashMap<>();
+    // guarded by the cache lock, as they are accessed by the eviction filter & listener
+    final Map<Pair<Id, Integer>, Pair<Id, Integer>> parentKeys = new HashMap<>(); // cached key -> key of the parents of its objects
+    final Map<Pair<Id, Integer>, Integer> cachedChildKeyCount = new HashMap<>(); // key -> number of cached keys whose objects have their parents in this key
+    final HashMapGetCreate<Pair<Id, Integer>, Object> keyLocks = new HashMapGetCreate<>(k -> new Object());
+    final Map<Pair<Id, Integer>, HTreeMap<String, String>> dbMaps = new HashMap<>();
+    final Map<Pair<Id, Integer>, ObjectIndex> indices = new HashMap<>(); // parent trackHead id -> track & frame index
     final String dir;
     final Map<Integer, DB> dbS = new HashMap<>();
-    final Map<Integer, Pair<DB, HTreeMap<String, String>>> measurementdbS = new HashMap<>();
+    final Map<Integer, MeasurementStore> measurementStores = new HashMap<>();
     public final boolean readOnly;
     private java.nio.channels.FileLock lock;
+    // write-behind: modifications are buffered and written & committed by batches. disabled by default (see setWriteBehind)
+    public static int DEFAULT_FLUSH_SIZE = 1;
+    public static long DEFAULT_FLUSH_LATENCY = 2000;
+    // write-behind parameters set during processing steps (see Task) and manual edition: modifications are written by batches and committed at the explicit flush that ends each step or edition
+    public static int PROCESSING_FLUSH_SIZE = 10000;
+    public static long PROCESSING_FLUSH_LATENCY = 0;
+    public static int EDITION_FLUSH_SIZE = 1000;
+    public static long EDITION_FLUSH_LATENCY = 2000;
+    private static final ScheduledExecutorService FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DBMapObjectDAO-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private int flushSize = DEFAULT_FLUSH_SIZE;
+    private long flushLatency = DEFAULT_FLUSH_LATENCY;
+    private final Object writeBehindLock = new Object(); // lock order: this, flushLock, writeBehindLock
+    private final Object flushLock = new Object();
+    private Map<Pair<Id, Integer>, Map<Id, EncodedObject>> pendingObjects = new HashMap<>();
+    private Map<Integer, Map<Id, Measurements>> pendingMeasurements = new HashMap<>();
+    private Set<Integer> pendingCommits = new HashSet<>();
+    private Map<Pair<Id, Integer>, Map<Id, EncodedObject>> flushingObjects = Collections.emptyMap(); // buffers being written by the flush in progress
+    private Map<Integer, Map<Id, Measurements>> flushingMeasurements = Collections.emptyMap();
+    private int pendingOperations;
+    private final AtomicLong commitCount = new AtomicLong();
+    private ScheduledFuture<?> scheduledFlush;
     private FileChannel lockChannel;
     public DBMapObjectDAO(DBMapMasterDAO mDAO, String positionName, String dir, boolean readOnly) {
         this.mDAO=mDAO;
@@ -90,6 +132,7 @@ public class DBMapObjectDAO implements ObjectDAO {
         if (!readOnly) {
             this.readOnly = !lock();
         } else this.readOnly = true;
+        cache.setEvictionFilter(this::isEvictable).setEvictionListener(this::evicted);
     }
 
     @Override
@@ -163,7 +206,7 @@ public class DBMapObjectDAO implements ObjectDAO {
     }
 
     
-    private String getDBFile(int structureIdx) {
+    protected String getDBFile(int structureIdx) {
         String res = dir+"objects_"+structureIdx+".db";
         //logger.debug("db file: {}", res);
         return res;
@@ -190,7 +233,7 @@ public class DBMapObjectDAO implements ObjectDAO {
         return res;
     }
 
-    protected HTreeMap<String, String> getDBMap(Pair<String, Integer> key) {
+    protected HTreeMap<String, String> getDBMap(Pair<Id, Integer> key) {
         HTreeMap<String, String> res = this.dbMaps.get(key);
         if (res==null) {
             synchronized(dbMaps) {
@@ -198,7 +241,7 @@ public class DBMapObjectDAO implements ObjectDAO {
                 else {
                     DB db = getDB(key.value);
                     if (db!=null) {
-                        res = DBMapUtils.createHTreeMap(db, key.key!=null? key.key : "root");
+                        res = DBMapUtils.createHTreeMap(db, key.key!=null? key.key.toHexString() : "root");
                         if (res!=null || readOnly) dbMaps.put(key, res); // readonly case && not already created -> null
                     }
                 }
@@ -206,49 +249,452 @@ public class DBMapObjectDAO implements ObjectDAO {
         }
         return res;
     }
-    protected Map<String, StructureObject> getChildren(Pair<String, Integer> key) {
-        if (cache.containsKey(key) && allObjectsRetrievedInCache.getOrDefault(key, false)) return cache.get(key);
+    // storage layer: subclasses can override the following methods to use another serialization of objects
+    /**
+     * Reads stored objects
+     * @param key parent track head id & structure index
+     * @param idFilter if not null only objects with ids validated by the filter are returned
+     * @return stored objects, DAO is not set
+     */
+    protected Collection<StructureObject> retrieveObjects(Pair<Id, Integer> key, Predicate<Id> idFilter) {
+        HTreeMap<String, String> dbm = getDBMap(key);
+        if (idFilter==null) return getValues(dbm).parallelStream().map((s) -> JSONUtils.parse(StructureObject.class, s)).collect(Collectors.toList());
+        else return getEntrySet(dbm).parallelStream().filter(e -> idFilter.test(new Id(e.getKey()))).map((e) -> JSONUtils.parse(StructureObject.class, e.getValue())).collect(Collectors.toList());
+    }
+    /**
+     * Writes objects, without commit
+     * @param key parent track head id & structure index
+     * @param objects objects with region container already updated
+     */
+    protected void writeObjects(Pair<Id, Integer> key, Collection<StructureObject> objects) {
+        HTreeMap<String, String> dbMap = getDBMap(key);
+        if (objects.size()==1) {
+            StructureObject o = objects.iterator().next();
+            dbMap.put(o.getId().toHexString(), JSONUtils.serialize(o));
+        } else {
+            Map<String, String> toStoreMap = objects.parallelStream().collect(Collectors.toMap(o->o.getId().toHexString(), o->JSONUtils.serialize(o)));
+            dbMap.putAll(toStoreMap);
+        }
+    }
+    /**
+     * Removes objects, without commit
+     * @param key parent track head id & structure index
+     * @param ids ids of objects to remove
+     */
+    protected void removeObjects(Pair<Id, Integer> key, Collection<Id> ids) {
+        HTreeMap<String, String> dbMap = getDBMap(key);
+        for (Id id : ids) dbMap.remove(id.toHexString());
+    }
+    protected void commit(int structureIdx) {
+        getDB(structureIdx).commit();
+    }
+    /**
+     * 
+     * @param structureIdx
+     * @return all parent track head ids (as hexadecimal strings, "root" for root objects) under which objects of structure {@param structureIdx} are stored
+     */
+    protected Iterable<String> getParentTrackHeadIds(int structureIdx) {
+        return DBMapUtils.getNames(getDB(structureIdx));
+    }
+    /**
+     * Creates the index of stored objects
+     * @param key parent track head id & structure index
+     * @return index of all objects stored under {@param key}
+     */
+    protected ObjectIndex retrieveIndex(Pair<Id, Integer> key) {
+        ObjectIndex index = new ObjectIndex();
+        for (StructureObject o : getChildren(key).values()) index.put(o.getId(), o.getTrackHeadId(), o.getFrame());
+        return index;
+    }
+    protected ObjectIndex getIndex(Pair<Id, Integer> key) {
+        synchronized(this) {
+            ObjectIndex res = indices.get(key);
+            if (res==null) {
+                // buffered objects are not in the store yet. objects buffered after this point are added by updateIndex once the index is created. removed objects are erased from the buffer
+                List<EncodedObject> buffered = getBufferedObjects(key);
+                res = retrieveIndex(key);
+                for (EncodedObject o : buffered) res.put(o.id, o.trackHeadId, o.frame);
+                indices.put(key, res);
+            }
+            return res;
+        }
+    }
+    private List<EncodedObject> getBufferedObjects(Pair<Id, Integer> key) {
+        synchronized(writeBehindLock) {
+            List<EncodedObject> res = new ArrayList<>();
+            Map<Id, EncodedObject> buffered = flushingObjects.get(key);
+            if (buffered!=null) res.addAll(buffered.values());
+            buffered = pendingObjects.get(key);
+            if (buffered!=null) res.addAll(buffered.values());
+            return res;
+        }
+    }
+    private void updateIndex(Pair<Id, Integer> key, Collection<StructureObject> stored) {
+        ObjectIndex index;
+        synchronized(this) {
+            index = indices.get(key);
+        }
+        if (index!=null) for (StructureObject o : stored) index.put(o.getId(), o.getTrackHeadId(), o.getFrame()); // not created yet: will include stored objects when created
+    }
+    private void removeFromIndex(Pair<Id, Integer> key, Collection<Id> ids) {
+        ObjectIndex index;
+        synchronized(this) {
+            index = indices.get(key);
+        }
+        if (index!=null) index.removeAll(ids);
+    }
+    /**
+     * Sets the maximal number of objects kept in cache. When exceeded, objects of the least recently used parent tracks are evicted from the cache, except pinned tracks, tracks with buffered modifications and tracks whose objects are parents of cached objects
+     * @param maxObjects if 0 or negative, the cache is unbounded
+     */
+    public void setCacheLimit(long maxObjects) {
+        cache.setMaxWeight(maxObjects);
+    }
+    /**
+     * 
+     * @return number of commits of object and measurement files performed when storing objects and measurements
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+    public long getCacheEvictionCount() {
+        return cache.getEvictionCount();
+    }
+    /**
+     * Prevents objects of structure {@param structureIdx} stored under the parent track head {@param parentTrackHeadId} from being evicted from the cache, for instance while they are displayed. 
+     * Calls are counted: each call should be followed by a call to {@link #unpin(boa.utils.Id, int)}
+     * @param parentTrackHeadId
+     * @param structureIdx 
+     */
+    public void pin(Id parentTrackHeadId, int structureIdx) {
+        synchronized(pinned) {
+            pinned.merge(new Pair<>(parentTrackHeadId, structureIdx), 1, Integer::sum);
+        }
+    }
+    public void unpin(Id parentTrackHeadId, int structureIdx) {
+        synchronized(pinned) {
+            pinned.computeIfPresent(new Pair<>(parentTrackHeadId, structureIdx), (k, c) -> c>1 ? c-1 : null);
+        }
+    }
+    private boolean isEvictable(Pair<Id, Integer> key, Map<Id, StructureObject> objects) {
+        if (key.value<0) return false; // root objects are referenced by all objects
+        synchronized(pinned) {
+            if (pinned.containsKey(key)) return false;
+        }
+        synchronized(writeBehindLock) { // buffered objects cannot be retrieved from the store
+            Map<Id, EncodedObject> pending = pendingObjects.get(key);
+            if (pending!=null && !pending.isEmpty()) return false;
+            pending = flushingObjects.get(key);
+            if (pending!=null && !pending.isEmpty()) return false;
+        }
+        // objects referenced as parents by cached objects are kept so that parent references remain consistent
+        return !cachedChildKeyCount.containsKey(key); // called while the cache is locked
+    }
+    /**
+     * Called while the cache is locked. Parents keep references to their children: they are released so that evicted objects can be garbage collected. Children are retrieved again from the DAO if needed
+     * @param key evicted key
+     * @param objects evicted objects
+     */
+    private void evicted(Pair<Id, Integer> key, Map<Id, StructureObject> objects) {
+        allObjectsRetrievedInCache.remove(key);
+        Pair<Id, Integer> parentKey = parentKeys.remove(key);
+        if (parentKey!=null) cachedChildKeyCount.computeIfPresent(parentKey, (k, c) -> c>1 ? c-1 : null);
+        Set<StructureObject> parents = new HashSet<>();
+        for (StructureObject o : objects.values()) if (o.isParentSet()) parents.add(o.getParent());
+        for (StructureObject p : parents) p.setChildren(null, key.value);
+    }
+    /**
+     * Records the key of the parents of objects stored under {@param key}, so that they are not evicted while {@param key} is cached.
+     * All objects stored under a key have their parents in the same key, as they belong to the same parent track
+     * @param key
+     * @param child any object stored under {@param key}
+     */
+    private void registerParentKey(Pair<Id, Integer> key, StructureObject child) {
+        if (key.value<0 || child==null || !child.isParentSet()) return;
+        StructureObject parent = child.getParent();
+        Pair<Id, Integer> parentKey = new Pair<>(parent.isRoot() ? null : parent.getParentTrackHeadId(), parent.getStructureIdx());
+        synchronized(cache) { // same lock as the eviction filter & listener
+            if (parentKeys.containsKey(key) || !cache.containsKey(key)) return;
+            parentKeys.put(key, parentKey);
+            cachedChildKeyCount.merge(parentKey, 1, Integer::sum);
+        }
+    }
+    private void clearParentKeys() {
+        synchronized(cache) {
+            parentKeys.clear();
+            cachedChildKeyCount.clear();
+        }
+    }
+    /**
+     * Sets the write-behind parameters: stored objects and measurements are encoded when stored and buffered (several modifications of a same object are coalesced), then written and committed once per batch. Write-behind is disabled by default
+     * @param flushSize number of buffered modifications that triggers a flush. if lower or equal to 1, write-behind is disabled and each modification is written & committed immediately
+     * @param flushLatency maximal delay in ms between a modification and its flush. if 0 modifications are only flushed when {@param flushSize} is reached or at explicit calls to {@link #flush()}
+     */
+    public void setWriteBehind(int flushSize, long flushLatency) {
+        synchronized(writeBehindLock) {
+            this.flushSize=flushSize;
+            this.flushLatency=flushLatency;
+        }
+        if (!isWriteBehind()) flush();
+    }
+    protected boolean isWriteBehind() {
+        return flushSize>1;
+    }
+    /**
+     * Object encoded when it is buffered, so that modifications performed after the call to store are not written
+     */
+    protected static class EncodedObject {
+        final Id id, trackHeadId;
+        final int frame;
+        final Object encoded;
+        EncodedObject(StructureObject o, Object encoded) {
+            this.id = o.getId();
+            this.trackHeadId = o.getTrackHeadId();
+            this.frame = o.getFrame();
+            this.encoded = encoded;
+        }
+    }
+    /**
+     * Encodes an object so that it can be written later by {@link #writeEncodedObjects(boa.utils.Pair, java.util.Collection) }
+     * @param o object with region container already updated
+     * @return encoded object
+     */
+    protected Object encodeObject(StructureObject o) {
+        return JSONUtils.serialize(o);
+    }
+    /**
+     * Writes objects encoded by {@link #encodeObject(boa.data_structure.StructureObject) }, without commit
+     * @param key parent track head id & structure index
+     * @param objects 
+     */
+    protected void writeEncodedObjects(Pair<Id, Integer> key, Collection<EncodedObject> objects) {
+        Map<String, String> toStoreMap = new HashMap<>(objects.size());
+        for (EncodedObject o : objects) toStoreMap.put(o.id.toHexString(), (String)o.encoded);
+        getDBMap(key).putAll(toStoreMap);
+    }
+    private void writeOrBuffer(Pair<Id, Integer> key, Collection<StructureObject> objects, boolean commit) {
+        if (!isWriteBehind()) {
+            objects.parallelStream().forEach(o->o.updateRegionContainer());
+            writeObjects(key, objects);
+            if (commit) {
+                commit(key.value);
+                commitCount.incrementAndGet();
+            }
+            return;
+        }
+        List<EncodedObject> encoded = objects.parallelStream().map(o -> {
+            o.updateRegionContainer();
+            return new EncodedObject(o, encodeObject(o));
+        }).collect(Collectors.toList());
+        synchronized(writeBehindLock) {
+            Map<Id, EncodedObject> pending = pendingObjects.get(key);
+            if (pending==null) {
+                pending = new HashMap<>();
+                pendingObjects.put(key, pending);
+            }
+            for (EncodedObject o : encoded) pending.put(o.id, o);
+            pendingCommits.add(key.value);
+            pendingOperations+=encoded.size();
+        }
+        afterBufferedOperation();
+    }
+    private void writeOrBufferMeasurements(int structureIdx, Collection<StructureObject> objects) {
+        List<Measurements> measurements = new ArrayList<>(objects.size());
+        for (StructureObject o : objects) {
+            o.getMeasurements().updateObjectProperties(o);
+            measurements.add(o.getMeasurements());
+        }
+        if (!isWriteBehind()) {
+            MeasurementStore store = getMeasurementStore(structureIdx);
+            store.put(measurements);
+            for (Measurements m : measurements) m.modifications=false;
+            store.commit();
+            commitCount.incrementAndGet();
+            return;
+        }
+        List<Measurements> copies = new ArrayList<>(measurements.size());
+        for (Measurements m : measurements) {
+            copies.add(m.duplicate());
+            m.modifications=false;
+        }
+        synchronized(writeBehindLock) {
+            Map<Id, Measurements> pending = pendingMeasurements.get(structureIdx);
+            if (pending==null) {
+                pending = new HashMap<>();
+                pendingMeasurements.put(structureIdx, pending);
+            }
+            for (Measurements m : copies) pending.put(m.getId(), m);
+            pendingOperations+=copies.size();
+        }
+        afterBufferedOperation();
+    }
+    /**
+     * Removes objects and their measurements from the store and from the write-behind buffer
+     * @param key
+     * @param ids 
+     */
+    private void erase(Pair<Id, Integer> key, Set<Id> ids) {
+        synchronized(flushLock) { // objects being flushed are removed after they are written
+            synchronized(writeBehindLock) {
+                Map<Id, EncodedObject> pending = pendingObjects.get(key);
+                if (pending!=null) pending.keySet().removeAll(ids);
+                Map<Id, Measurements> pendingM = pendingMeasurements.get(key.value);
+                if (pendingM!=null) pendingM.keySet().removeAll(ids);
+            }
+            removeObjects(key, ids);
+            MeasurementStore store = getMeasurementStore(key.value);
+            if (store!=null) store.remove(ids);
+        }
+        removeFromIndex(key, ids);
+    }
+    private void commitOrBuffer(int structureIdx) {
+        if (!isWriteBehind()) {
+            commit(structureIdx);
+            commitCount.incrementAndGet();
+            return;
+        }
+        synchronized(writeBehindLock) {
+            pendingCommits.add(structureIdx);
+            ++pendingOperations;
+        }
+        afterBufferedOperation();
+    }
+    private void afterBufferedOperation() {
+        boolean flushNow;
+        synchronized(writeBehindLock) {
+            flushNow = pendingOperations>=flushSize;
+            if (!flushNow && scheduledFlush==null && flushLatency>0) {
+                scheduledFlush = FLUSH_EXECUTOR.schedule(() -> {
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        logger.error("Error while flushing objects of position: "+positionName, e);
+                    }
+                }, flushLatency, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) flush();
+    }
+    /**
+     * Writes all buffered objects and measurements and commits modified files. 
+     * The buffers are swapped under the write-behind lock and written outside of it, so that objects can be stored while a flush is performed
+     */
+    @Override
+    public void flush() {
+        synchronized(flushLock) {
+            Set<Integer> commits;
+            int operations;
+            synchronized(writeBehindLock) {
+                if (scheduledFlush!=null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pendingOperations==0) return;
+                flushingObjects = pendingObjects;
+                flushingMeasurements = pendingMeasurements;
+                commits = pendingCommits;
+                operations = pendingOperations;
+                pendingObjects = new HashMap<>();
+                pendingMeasurements = new HashMap<>();
+                pendingCommits = new HashSet<>();
+                pendingOperations = 0;
+            }
+            try {
+                long t0 = System.currentTimeMillis();
+                for (Entry<Pair<Id, Integer>, Map<Id, EncodedObject>> e : flushingObjects.entrySet()) {
+                    if (!e.getValue().isEmpty()) writeEncodedObjects(e.getKey(), e.getValue().values());
+                }
+                Set<Integer> measurementCommits = new HashSet<>();
+                for (Entry<Integer, Map<Id, Measurements>> e : flushingMeasurements.entrySet()) {
+                    if (e.getValue().isEmpty()) continue;
+                    getMeasurementStore(e.getKey()).put(new ArrayList<>(e.getValue().values()));
+                    measurementCommits.add(e.getKey());
+                }
+                for (int s : commits) commit(s);
+                for (int s : measurementCommits) getMeasurementStore(s).commit();
+                commitCount.addAndGet(commits.size()+measurementCommits.size());
+                logger.debug("flush: {} operations on objects of {} structures and measurements of {} structures in {}ms", operations, commits.size(), measurementCommits.size(), System.currentTimeMillis()-t0);
+            } finally {
+                synchronized(writeBehindLock) {
+                    flushingObjects = Collections.emptyMap();
+                    flushingMeasurements = Collections.emptyMap();
+                }
+            }
+        }
+    }
+    private void discardBuffered(int... structures) {
+        synchronized(flushLock) { // waits for the flush in progress
+            synchronized(writeBehindLock) {
+                if (structures.length==0) {
+                    pendingObjects.clear();
+                    pendingMeasurements.clear();
+                    pendingCommits.clear();
+                } else {
+                    for (int s : structures) {
+                        pendingObjects.keySet().removeIf(k -> k.value==s);
+                        pendingMeasurements.remove(s);
+                        pendingCommits.remove(s);
+                    }
+                }
+            }
+        }
+    }
+    
+    protected Map<Id, StructureObject> getChildren(Pair<Id, Integer> key) {
+        return getChildren(key, null);
+    }
+    /**
+     * 
+     * @param key parent track head id & structure index
+     * @param parents objects of the parent structure among which parents of retrieved objects are located. if null, they are searched among all objects of the parent structure
+     * @return objects stored under {@param key}
+     */
+    private Map<Id, StructureObject> getChildren(Pair<Id, Integer> key, Map<Id, StructureObject> parents) {
+        Map<Id, StructureObject> cached = cache.get(key);
+        if (cached!=null && allObjectsRetrievedInCache.contains(key)) return cached;
         else {
-            synchronized(this) {
-                if (cache.containsKey(key) && allObjectsRetrievedInCache.getOrDefault(key, false)) return cache.get(key);
-                HTreeMap<String, String> dbm = getDBMap(key);
-                if (cache.containsKey(key) && !cache.get(key).isEmpty()) {
+            synchronized(keyLocks.getAndCreateIfNecessarySync(key)) { // keys are loaded concurrently. parent keys may be locked while a key is locked: the lock order follows the structure hierarchy
+                cached = cache.peek(key);
+                if (cached!=null && allObjectsRetrievedInCache.contains(key)) return cached;
+                if (cached!=null && !cached.isEmpty()) {
                     long t0 = System.currentTimeMillis();
-                    Map<String, StructureObject> objectMap = cache.get(key);
-                    Map<String, StructureObject> objectMapToAdd = getEntrySet(dbm).parallelStream()
-                            .filter((e) -> (!objectMap.containsKey(e.getKey())))
-                            .map((e) -> JSONUtils.parse(StructureObject.class, e.getValue())).map((o) -> {
+                    Map<Id, StructureObject> objectMap = cached;
+                    Map<Id, StructureObject> objectMapToAdd = retrieveObjects(key, id -> !objectMap.containsKey(id)).stream()
+                            .map((o) -> {
                                 o.setDAO(this);
                                 return o;
                             }).collect(Collectors.toMap(o->o.getId(), o->o));
                     objectMap.putAll(objectMapToAdd);
+                    cache.put(key, objectMap); // updates weight
                     long t1 = System.currentTimeMillis();
                     logger.debug("#{} (already: {}) objects from structure: {}, time {}", objectMap.size(), objectMap.size()-objectMapToAdd.size(), key.value, t1-t0);
                 } else {
                     long t0 = System.currentTimeMillis();
                     try {
-                        Collection<String> allStrings = getValues(dbm);
-                        allStrings.size();
+                        Collection<StructureObject> allObjects = retrieveObjects(key, null);
                         long t1 = System.currentTimeMillis();
-                        Map<String, StructureObject> objectMap = allStrings.parallelStream()
-                                .map((s) -> JSONUtils.parse(StructureObject.class, s))
+                        Map<Id, StructureObject> objectMap = allObjects.stream()
                                 .map((o) -> {
                                     o.setDAO(this);
                                     return o;
                                 }).collect(Collectors.toMap(o->o.getId(), o->o));
                         cache.put(key, objectMap);
-                        long t2 = System.currentTimeMillis();
-                        logger.debug("#{} objects from structure: {}, time to retrieve: {}, time to parse: {}", allStrings.size(), key.value, t1-t0, t2-t1);
+                        logger.debug("#{} objects from structure: {}, time to retrieve: {}", allObjects.size(), key.value, t1-t0);
                     } catch(IOError|AssertionError|Exception e) {
                         logger.error("Corrupted DATA for structure: "+key.value+" parent: "+key.key, e);
-                        allObjectsRetrievedInCache.put(key, true);
                         return new HashMap<>();
                     }
                     
                 }
-                allObjectsRetrievedInCache.put(key, true);
+                allObjectsRetrievedInCache.add(key);
                 // set prev, next & trackHead
-                Map<String, StructureObject> objectMap = cache.get(key);
+                Map<Id, StructureObject> objectMap = cache.peek(key);
                 for (StructureObject o : objectMap.values()) {
                     if (o.getNextId()!=null) o.setNext(objectMap.get(o.getNextId()));
                     if (o.getPreviousId()!=null) o.setPrevious(objectMap.get(o.getPreviousId()));
@@ -256,8 +702,10 @@ public class DBMapObjectDAO implements ObjectDAO {
                 }
                 // set to parents ? 
                 if (key.value>=0) {
-                    int parentStructureIdx = mDAO.getExperiment().getStructure(key.value).getParentStructure();
-                    Map<String, StructureObject> parents = this.getCacheContaining(key.key, parentStructureIdx);
+                    if (parents==null) {
+                        int parentStructureIdx = mDAO.getExperiment().getStructure(key.value).getParentStructure();
+                        parents = this.getCacheContaining(key.key, parentStructureIdx);
+                    }
                     if (parents!=null) {
                         for (StructureObject o : objectMap.values()) o.setParent(parents.get(o.getParentId()));
                         Map<StructureObject, List<StructureObject>> byP = StructureObjectUtils.splitByParent(objectMap.values());
@@ -266,38 +714,76 @@ public class DBMapObjectDAO implements ObjectDAO {
                             Collections.sort(children);
                             p.setChildren(children, key.value);
                         }
+                        if (!objectMap.isEmpty()) registerParentKey(key, objectMap.values().iterator().next());
                     }
                 }
                 return objectMap;
             }
         }
     }
-    private void setParents(Collection<StructureObject> objects, Pair<String, Integer> parentKey) {
-        Map<String, StructureObject> allParents = getChildren(parentKey);
+    @Override
+    public void prefetch(StructureObject parentTrackHead, int... structureIdx) {
+        Experiment xp = getExperiment();
+        int parentStructureIdx = parentTrackHead.getStructureIdx();
+        // requested structures and their ancestors located under the structure of the parent track
+        Set<Integer> structures = new HashSet<>();
+        for (int s : structureIdx) {
+            if (xp.isChildOf(parentStructureIdx, s)) for (int sp : xp.getPathToStructure(parentStructureIdx, s)) structures.add(sp);
+        }
+        if (structures.isEmpty()) return;
+        long t0 = System.currentTimeMillis();
+        // each level is loaded concurrently, then child keys are determined from track heads of the loaded level
+        Map<Id, StructureObject> parentTrackObjects = getChildren(new Pair<>(parentTrackHead.isRoot() ? null : parentTrackHead.getParentTrackHeadId(), parentStructureIdx));
+        Map<Pair<Id, Integer>, Map<Id, StructureObject>> level = new HashMap<>();
+        for (int s : xp.getAllDirectChildStructures(parentStructureIdx)) {
+            if (structures.contains(s)) level.put(new Pair<>(parentTrackHead.getTrackHeadId(), s), parentTrackObjects);
+        }
+        int count = 0;
+        while(!level.isEmpty()) {
+            count+=level.size();
+            Map<Pair<Id, Integer>, Map<Id, StructureObject>> loaded = level.entrySet().parallelStream()
+                    .collect(Collectors.toMap(e -> e.getKey(), e -> getChildren(e.getKey(), e.getValue())));
+            Map<Pair<Id, Integer>, Map<Id, StructureObject>> nextLevel = new HashMap<>();
+            for (Entry<Pair<Id, Integer>, Map<Id, StructureObject>> e : loaded.entrySet()) {
+                List<Integer> childStructures = xp.getAllDirectChildStructures(e.getKey().value);
+                childStructures.retainAll(structures);
+                if (childStructures.isEmpty()) continue;
+                for (StructureObject o : e.getValue().values()) {
+                    if (!o.isTrackHead()) continue;
+                    for (int s : childStructures) nextLevel.put(new Pair<>(o.getId(), s), e.getValue());
+                }
+            }
+            level = nextLevel;
+        }
+        logger.debug("prefetch: {} parent tracks of structures: {} from: {} in {}ms", count, structures, parentTrackHead, System.currentTimeMillis()-t0);
+    }
+    private void setParents(Collection<StructureObject> objects, Pair<Id, Integer> parentKey) {
+        Map<Id, StructureObject> allParents = getChildren(parentKey);
         for (StructureObject o : objects) if (!o.isParentSet()) o.setParent(allParents.get(o.getParentId()));
     }
     @Override
-    public StructureObject getById(String parentTrackHeadId, int structureIdx, int frame, String id) {
+    public StructureObject getById(Id parentTrackHeadId, int structureIdx, int frame, Id id) {
         // parentTrackHeadId can be null in case of parent call -> frame not null
         // frame can be < 
         if (parentTrackHeadId!=null || structureIdx==-1) {
             logger.debug("getById: sIdx={} f={}, allChilldren: {}", structureIdx, frame, getChildren(new Pair(parentTrackHeadId, structureIdx)).size());
-            return ((Map<String, StructureObject>)getChildren(new Pair(parentTrackHeadId, structureIdx))).get(id);
+            return ((Map<Id, StructureObject>)getChildren(new Pair(parentTrackHeadId, structureIdx))).get(id);
         }
         else { // search in all parentTrackHeadId
-            Map<String, StructureObject> cacheMap = getCacheContaining(id, structureIdx);
+            Map<Id, StructureObject> cacheMap = getCacheContaining(id, structureIdx);
             if (cacheMap!=null) return cacheMap.get(id);
         }
         return null;
     }
     
-    private Map<String, StructureObject> getCacheContaining(String id, int structureIdx) {
+    private Map<Id, StructureObject> getCacheContaining(Id id, int structureIdx) {
         if (structureIdx==-1) { //getExperiment().getStructure(structureIdx).getParentStructure()==-1
-            Map<String, StructureObject> map = getChildren(new Pair(null, structureIdx));
+            Map<Id, StructureObject> map = getChildren(new Pair(null, structureIdx));
             if (map.containsKey(id)) return map;
         } else {
-            for (String parentTHId : DBMapUtils.getNames(getDB(structureIdx))) {
-                Map<String, StructureObject> map = getChildren(new Pair(parentTHId, structureIdx)); //"root".equals(parentTHId) ?  null : 
+            for (String parentTHId : getParentTrackHeadIds(structureIdx)) {
+                if (!Id.isValid(parentTHId)) continue; // root objects are only stored for structure -1
+                Map<Id, StructureObject> map = getChildren(new Pair(new Id(parentTHId), structureIdx));
                 if (map.containsKey(id)) return map;
             }
         }
@@ -306,7 +792,7 @@ public class DBMapObjectDAO implements ObjectDAO {
     @Override
     public void setAllChildren(List<StructureObject> parentTrack, int childStructureIdx) {
         if (parentTrack.isEmpty()) return;
-        Map<String, StructureObject> children = getChildren(new Pair(parentTrack.get(0).getTrackHeadId(), childStructureIdx));
+        Map<Id, StructureObject> children = getChildren(new Pair(parentTrack.get(0).getTrackHeadId(), childStructureIdx));
         logger.debug("setting: {} children to {} parents", children.size(), parentTrack.size());
         StructureObjectUtils.splitByParent(children.values()).forEach((parent, c) -> {
             if (c==null) return;
@@ -318,13 +804,14 @@ public class DBMapObjectDAO implements ObjectDAO {
     @Override
     public List<StructureObject> getChildren(StructureObject parent, int structureIdx) {
         List<StructureObject> res = new ArrayList<>();
-        Map<String, StructureObject> children = getChildren(new Pair(parent.getTrackHeadId(), structureIdx));
+        Map<Id, StructureObject> children = getChildren(new Pair(parent.getTrackHeadId(), structureIdx));
         if (children==null) {
             logger.error("null children for: {} @ structure: {}", parent, structureIdx);
             return new ArrayList<>();
         }
-        for (StructureObject o : children.values()) {
-            if (parent.getId().equals(o.getParentId())) {
+        for (Id id : getIndex(new Pair(parent.getTrackHeadId(), structureIdx)).getIds(parent.getFrame())) { // children are at the same frame as their parent
+            StructureObject o = children.get(id);
+            if (o!=null && parent.getId().equals(o.getParentId())) {
                 //o.parent=parent;
                 res.add(o);
             }
@@ -353,24 +840,19 @@ public class DBMapObjectDAO implements ObjectDAO {
         if (readOnly) return;
         List<StructureObject> children = DBMapObjectDAO.this.getChildren(parent, structureIdx);
         if (!children.isEmpty()) {
-            Pair<String, Integer> key = new Pair(parent.getTrackHeadId(), structureIdx);
-            Map<String, StructureObject> cacheMap = cache.get(key);
-            HTreeMap<String, String> dbm = getDBMap(key);
-            Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(key.value);
-            for (StructureObject o : children) {
-                if (cacheMap!=null) cacheMap.remove(o.getId());
-                dbm.remove(o.getId());
-            }
-            if (mDB!=null) children.forEach(c->mDB.value.remove(c.getId()));
-            getDB(structureIdx).commit();
+            Pair<Id, Integer> key = new Pair(parent.getTrackHeadId(), structureIdx);
+            Map<Id, StructureObject> cacheMap = cache.peek(key);
+            if (cacheMap!=null) for (StructureObject o : children) cacheMap.remove(o.getId());
+            erase(key, toIds(children));
+            commitOrBuffer(structureIdx);
         }
     }
 
-    public static Set<String> toIds(Collection<StructureObject> objects) {
+    public static Set<Id> toIds(Collection<StructureObject> objects) {
         return objects.stream().map(o -> o.getId()).collect(Collectors.toSet());
     }
 
-    public static Map<String, StructureObject> toIdMap(Collection<StructureObject> objects) {
+    public static Map<Id, StructureObject> toIdMap(Collection<StructureObject> objects) {
         return objects.stream().collect(Collectors.toMap(o->o.getId(), o->o));
     }
     @Override
@@ -383,14 +865,14 @@ public class DBMapObjectDAO implements ObjectDAO {
         Set<Integer> res = new HashSet<>();
         Map<StructureObject, List<StructureObject>> byTh = StructureObjectUtils.splitByTrackHead(parents);
         for (StructureObject pth : byTh.keySet()) res.addAll(deleteChildren(byTh.get(pth), structureIdx, pth.getId(), commit));
-        if (commit) getDB(structureIdx).commit();
+        if (commit) commitOrBuffer(structureIdx);
         return res;
     }
-    private Set<Integer> deleteChildren(Collection<StructureObject> parents, int structureIdx, String parentThreackHeadId, boolean commit) {
+    private Set<Integer> deleteChildren(Collection<StructureObject> parents, int structureIdx, Id parentThreackHeadId, boolean commit) {
         if (readOnly) return Collections.emptySet();
-        Pair<String, Integer> key = new Pair(parentThreackHeadId, structureIdx);
-        Map<String, StructureObject> cacheMap = getChildren(key);
-        Set<String> parentIds = toIds(parents);
+        Pair<Id, Integer> key = new Pair(parentThreackHeadId, structureIdx);
+        Map<Id, StructureObject> cacheMap = getChildren(key);
+        Set<Id> parentIds = toIds(parents);
         Set<StructureObject> toDelete = cacheMap.values().stream().filter(o->parentIds.contains(o.getParentId())).collect(Collectors.toSet());
         logger.debug("delete {}/{} children of structure {} from track: {}(#{}) ", toDelete.size(), cacheMap.size(), structureIdx, parents.stream().min((o1, o2)->o1.compareTo(o2)), parents.size());
         return delete(toDelete, true, true, false, commit);
@@ -400,43 +882,59 @@ public class DBMapObjectDAO implements ObjectDAO {
     @Override
     public synchronized void deleteObjectsByStructureIdx(int... structures) {
         if (readOnly) return;
+        if (structures.length==0) return;
+        discardBuffered(structures);
         for (int structureIdx : structures) {
             if (this.dbS.containsKey(structureIdx)) {
                 dbS.remove(structureIdx).close();
                 dbMaps.entrySet().removeIf(k -> k.getKey().value==structureIdx);
             }
             DBMapUtils.deleteDBFile(getDBFile(structureIdx));
+            indices.keySet().removeIf(k -> k.value==structureIdx);
         }
     }
     @Override
     public void applyOnAllOpenedObjects(Consumer<StructureObject> function) {
-        for (Map<String, StructureObject> obs : cache.values()) {
+        for (Map<Id, StructureObject> obs : cache.values()) {
             for (StructureObject so : obs.values()) function.accept(so);
         }
     }
     @Override
     public void clearCache() {
-        logger.debug("clearing cache for Dao: {} / objects: {}, measurements: {}", this.positionName, this.dbS.keySet(), this.measurementdbS.keySet());
+        flush();
+        logger.debug("clearing cache for Dao: {} / objects: {}, measurements: {}, cache: {}", this.positionName, this.dbS.keySet(), this.measurementStores.keySet(), cache);
         applyOnAllOpenedObjects(o->{
             o.flushImages();
             if (o.hasRegion()) o.getRegion().clearVoxels();
         }); // free memory in case objects are stored elsewhere (eg selection, tack mask...)
         cache.clear();
         allObjectsRetrievedInCache.clear();
+        clearParentKeys();
+        synchronized(this) {
+            indices.clear();
+        }
         closeAllFiles(true);
     }
     
     @Override
     public synchronized void deleteAllObjects() {
+        discardBuffered();
         closeAllObjectFiles(false);
         closeAllMeasurementFiles(false);
         cache.clear();
         allObjectsRetrievedInCache.clear();
+        clearParentKeys();
+        indices.clear();
         if (readOnly) return;
         File f = new File(dir);
-        if (f.exists() && f.isDirectory()) for (File subF : f.listFiles())  subF.delete();
+        if (f.exists() && f.isDirectory()) for (File subF : f.listFiles()) {
+            if (subF.isDirectory()) ColumnarMeasurementStore.delete(subF.getPath());
+            else subF.delete();
+        }
     }
-    private synchronized void closeAllObjectFiles(boolean commit) {
+    protected synchronized void closeAllObjectFiles(boolean commit) {
+        if (!readOnly && commit) flush();
+        else discardBuffered();
         for (DB db : dbS.values()) {
             if (!readOnly && commit&&!db.isClosed()) db.commit();
             //logger.debug("closing object file : {} ({})", db, Utils.toStringList(Utils.getKeys(dbS, db), i->this.getDBFile(i)));
@@ -453,11 +951,13 @@ public class DBMapObjectDAO implements ObjectDAO {
     }
     public synchronized void compactDBs(boolean onlyOpened) {
         if (readOnly) return;
+        flush();
         compactObjectDBs(onlyOpened);
         compactMeasurementDBs(onlyOpened);
     }
     public synchronized void compactObjectDBs(boolean onlyOpened) {
         if (readOnly) return;
+        flush();
         if (onlyOpened) {
             for (DB db : this.dbS.values()) {
                 db.commit();
@@ -475,30 +975,21 @@ public class DBMapObjectDAO implements ObjectDAO {
     public synchronized void compactMeasurementDBs(boolean onlyOpened) {
         if (readOnly) return;
         if (onlyOpened) {
-            for (Pair<DB, ?> p : this.measurementdbS.values()) {
-                p.key.commit();
-                //p.key.compact();
-            }
+            for (MeasurementStore store : this.measurementStores.values()) store.commit();
         } else {
             for (int s = -1; s<mDAO.getExperiment().getStructureCount(); ++s) {
-                if (measurementdbS.keySet().contains(s)) {
-                    measurementdbS.get(s).key.commit();
-                    //measurementdbS.get(s).key.compact();
-                } //else if (new File(this.getMeasurementDBFile(s)).exists()) this.getMeasurementDB(s).key.compact();
+                if (measurementStores.keySet().contains(s)) measurementStores.get(s).commit();
             }
         }
     }
     @Override
     public void delete(StructureObject o, boolean deleteChildren, boolean deleteFromParent, boolean relabelSiblings) {
         if (readOnly) return;
-        Pair<String, Integer> key = new Pair(o.getParentTrackHeadId(), o.getStructureIdx());
-        HTreeMap<String, String> dbMap = getDBMap(key);
-        dbMap.remove(o.getId());
-        // also remove measurements
-        Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(key.value);
-        if (mDB!=null) mDB.value.remove(o.getId());
+        Pair<Id, Integer> key = new Pair(o.getParentTrackHeadId(), o.getStructureIdx());
+        erase(key, Collections.singleton(o.getId())); // also removes measurements
         
-        if (cache.containsKey(key)) cache.get(key).remove(o.getId());
+        Map<Id, StructureObject> cacheMap = cache.peek(key);
+        if (cacheMap!=null) cacheMap.remove(o.getId());
         if (deleteChildren) {
             for (int s : o.getExperiment().getAllDirectChildStructures(o.getStructureIdx())) deleteChildren(o, s);
             //.. if track head is removed and has children -> inconsistency -> check at each eraseAll, if eraseAll children -> eraseAll whole collection if trackHead, if not dont do anything
@@ -510,7 +1001,7 @@ public class DBMapObjectDAO implements ObjectDAO {
                 store(relabeled, false);
             }   
         }
-        getDB(o.getStructureIdx()).commit();
+        commitOrBuffer(o.getStructureIdx());
     }
     @Override
     public void delete(Collection<StructureObject> list, boolean deleteChildren, boolean deleteFromParent, boolean relabelSiblings) {
@@ -519,9 +1010,9 @@ public class DBMapObjectDAO implements ObjectDAO {
     
     private Set<Integer> delete(Collection<StructureObject> list, boolean deleteChildren, boolean deleteFromParent, boolean relabelSiblings, boolean commit) {
         if (readOnly) return Collections.EMPTY_SET;
-        Map<Pair<String, Integer>, List<StructureObject>> splitByPTH = splitByParentTrackHeadIdAndStructureIdx(list);
+        Map<Pair<Id, Integer>, List<StructureObject>> splitByPTH = splitByParentTrackHeadIdAndStructureIdx(list);
         Set<Integer> allModifiedStructureIdx = new HashSet<>();
-        for (Pair<String, Integer> key : splitByPTH.keySet()) {
+        for (Pair<Id, Integer> key : splitByPTH.keySet()) {
             allModifiedStructureIdx.add(key.value);
             List<StructureObject> toRemove = splitByPTH.get(key);
             if (deleteChildren) {
@@ -530,15 +1021,9 @@ public class DBMapObjectDAO implements ObjectDAO {
                 }
             }
             
-            HTreeMap<String, String> dbMap = getDBMap(key);
-            toRemove.forEach((o) -> dbMap.remove(o.getId()));
-            // also remove measurements
-            Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(key.value);
-            if (mDB!=null) toRemove.forEach((o) -> mDB.value.remove(o.getId()));
-            if (cache.containsKey(key)) {
-                Map<String, StructureObject> cacheMap = cache.get(key);
-                for (StructureObject o : toRemove) cacheMap.remove(o.getId());
-            }
+            erase(key, toIds(toRemove)); // also removes measurements
+            Map<Id, StructureObject> cacheMap = cache.peek(key);
+            if (cacheMap!=null) for (StructureObject o : toRemove) cacheMap.remove(o.getId());
             
             //TODO if track head is removed and has children -> inconsistency -> check at each eraseAll, if eraseAll children -> eraseAll whole collection if trackHead, if not dont do anything
             if (deleteFromParent && relabelSiblings) {
@@ -555,7 +1040,7 @@ public class DBMapObjectDAO implements ObjectDAO {
                 });
             }
         }
-        if (commit) for (int i : allModifiedStructureIdx) getDB(i).commit();
+        if (commit) for (int i : allModifiedStructureIdx) commitOrBuffer(i);
         return allModifiedStructureIdx;
     }
     
@@ -563,13 +1048,14 @@ public class DBMapObjectDAO implements ObjectDAO {
     @Override
     public void store(StructureObject object) {
         if (readOnly) return;
-        Pair<String, Integer> key = new Pair(object.getParentTrackHeadId(), object.getStructureIdx());
+        Pair<Id, Integer> key = new Pair(object.getParentTrackHeadId(), object.getStructureIdx());
         if (object.hasMeasurementModifications()) upsertMeasurement(object);
-        object.updateRegionContainer();
         // get parent/pTh/next/prev ids ? 
+        writeOrBuffer(key, Collections.singleton(object), true);
         cache.getAndCreateIfNecessary(key).put(object.getId(), object);
-        getDBMap(key).put(object.getId(), JSONUtils.serialize(object));
-        getDB(object.getStructureIdx()).commit();
+        cache.refresh(key);
+        registerParentKey(key, object);
+        updateIndex(key, Collections.singleton(object));
     }
     protected void store(Collection<StructureObject> objects, boolean commit) {
         if (readOnly) return;
@@ -577,26 +1063,25 @@ public class DBMapObjectDAO implements ObjectDAO {
         //logger.debug("storing: {} commit: {}", objects.size(), commit);
         List<StructureObject> upserMeas = new ArrayList<>(objects.size());
         for (StructureObject o : objects) o.setDAO(this);
-        Map<Pair<String, Integer>, List<StructureObject>> splitByPTH = splitByParentTrackHeadIdAndStructureIdx(objects);
+        Map<Pair<Id, Integer>, List<StructureObject>> splitByPTH = splitByParentTrackHeadIdAndStructureIdx(objects);
         //logger.debug("storing: {} under #keys: {} commit: {}", objects.size(), splitByPTH.size(), commit);
-        for (Pair<String, Integer> key : splitByPTH.keySet()) {
+        for (Pair<Id, Integer> key : splitByPTH.keySet()) {
             List<StructureObject> toStore = splitByPTH.get(key);
             //logger.debug("storing: {} objects under key: {}", toStore.size(), key.toString());
-            Map<String, StructureObject> cacheMap = cache.getAndCreateIfNecessary(key);
-            HTreeMap<String, String> dbMap = getDBMap(key);
+            Map<Id, StructureObject> cacheMap = cache.getAndCreateIfNecessary(key);
             long t0 = System.currentTimeMillis();
-            Map<String, String> toStoreMap = toStore.parallelStream().map(o->{o.updateRegionContainer(); return o;}).collect(Collectors.toMap(o->o.getId(), o->JSONUtils.serialize(o)));
+            writeOrBuffer(key, toStore, commit);
+            updateIndex(key, toStore);
             long t1 = System.currentTimeMillis();
-            dbMap.putAll(toStoreMap);
-            long t2 = System.currentTimeMillis();
-            logger.debug("storing: #{} objects of structure: {} to: {} in {}ms ({}ms+{}ms)",toStoreMap.size(), key.value, objects.iterator().next().getParent()==null ? "" : objects.iterator().next().getParent().getTrackHead(), t2-t0, t1-t0, t2-t1);
+            logger.debug("storing: #{} objects of structure: {} to: {} in {}ms",toStore.size(), key.value, objects.iterator().next().getParent()==null ? "" : objects.iterator().next().getParent().getTrackHead(), t1-t0);
             toStore.stream().map((object) -> {
                 if (object.hasMeasurementModifications()) upserMeas.add(object);
                 return object;
             }).forEachOrdered((object) -> {
                 cacheMap.put(object.getId(), object);
             });
-            if (commit) this.getDB(key.value).commit();            
+            cache.refresh(key);
+            registerParentKey(key, toStore.get(0));
         }
         upsertMeasurements(upserMeas);
     }
@@ -627,10 +1112,11 @@ public class DBMapObjectDAO implements ObjectDAO {
 
     @Override
     public List<StructureObject> getTrack(StructureObject trackHead) {
-        Map<String, StructureObject> allObjects = getChildren(new Pair(trackHead.getParentTrackHeadId(), trackHead.getStructureIdx()));
-        return allObjects.values().stream()
-                .filter(o->o.getTrackHeadId().equals(trackHead.getId()))
-                .sorted((o1, o2)-> Integer.compare(o1.getFrame(), o2.getFrame()))
+        Pair<Id, Integer> key = new Pair(trackHead.getParentTrackHeadId(), trackHead.getStructureIdx());
+        Map<Id, StructureObject> allObjects = getChildren(key);
+        return getIndex(key).getTrack(trackHead.getId()).stream() // ordered by frame
+                .map(id -> allObjects.get(id))
+                .filter(o->o!=null && o.getTrackHeadId().equals(trackHead.getId()))
                 .collect(Collectors.toList());
         // TODO: parents may no be set !
     }
@@ -638,10 +1124,11 @@ public class DBMapObjectDAO implements ObjectDAO {
     @Override
     public List<StructureObject> getTrackHeads(StructureObject parentTrack, int structureIdx) {
         long t0 = System.currentTimeMillis();
-        Map<String, StructureObject> allObjects = getChildren(new Pair(parentTrack.getId(), structureIdx));
+        Pair<Id, Integer> key = new Pair(parentTrack.getId(), structureIdx);
+        Map<Id, StructureObject> allObjects = getChildren(key);
         long t1 = System.currentTimeMillis();
         logger.debug("parent: {}, structure: {}, #{} objects retrieved in {}ms", parentTrack, structureIdx, allObjects.size(), t1-t0);
-        List<StructureObject> list = allObjects.values().stream().filter(o->o.isTrackHead()).sorted().collect(Collectors.toList());
+        List<StructureObject> list = getIndex(key).getTrackHeadIds().stream().map(id -> allObjects.get(id)).filter(o->o!=null && o.isTrackHead()).sorted().collect(Collectors.toList());
         setParents(list, new Pair(parentTrack.getParentTrackHeadId(), parentTrack.getStructureIdx()));
         return list;
     }
@@ -651,112 +1138,162 @@ public class DBMapObjectDAO implements ObjectDAO {
     private String getMeasurementDBFile(int structureIdx) {
         return dir+"measurements_"+structureIdx+".db";
     }
-    protected Pair<DB, HTreeMap<String, String>> getMeasurementDB(int structureIdx) {
-        Pair<DB, HTreeMap<String, String>> res = this.measurementdbS.get(structureIdx);
+    private String getMeasurementColumnDir(int structureIdx) {
+        return dir+"measurements_"+structureIdx+"_columns";
+    }
+    protected MeasurementStore getMeasurementStore(int structureIdx) {
+        MeasurementStore res = this.measurementStores.get(structureIdx);
         if (res==null) {
-            synchronized(measurementdbS) {
-                if (!measurementdbS.containsKey(structureIdx)) {
+            synchronized(measurementStores) {
+                if (!measurementStores.containsKey(structureIdx)) {
                     try {
-                        //logger.debug("opening measurement DB for structure: {}: file {} readONly: {}",structureIdx, getMeasurementDBFile(structureIdx), readOnly);
-                        DB db = DBMapUtils.createFileDB(getMeasurementDBFile(structureIdx), readOnly);
-                        //logger.debug("opening measurement DB for structure: {}: file {} readONly: {}: {}",structureIdx, getMeasurementDBFile(structureIdx), readOnly, db);
-                        HTreeMap<String, String> dbMap = DBMapUtils.createHTreeMap(db, "measurements");
-                        res = new Pair(db, dbMap);
-                        measurementdbS.put(structureIdx, res);
+                        res = createMeasurementStore(structureIdx);
+                        measurementStores.put(structureIdx, res);
                     }  catch (org.mapdb.DBException ex) {
                         logger.error("Couldnot create DB: readOnly:"+readOnly, ex);
                         return null;
                     }
                 } else {
-                    res = measurementdbS.get(structureIdx);
+                    res = measurementStores.get(structureIdx);
                 }
             }
         }
         return res;
     }
+    /**
+     * Existing measurement files are opened in their format. If no file exists, format is set by the experiment (see {@link Experiment#getMeasurementStoreType() })
+     * @param structureIdx
+     * @return measurement store of structure {@param structureIdx}
+     */
+    protected MeasurementStore createMeasurementStore(int structureIdx) {
+        String columnDir = getMeasurementColumnDir(structureIdx);
+        boolean columnar = ColumnarMeasurementStore.exists(columnDir) || (getExperiment().getMeasurementStoreType()==Experiment.MeasurementStoreTypes.Columnar && !new File(getMeasurementDBFile(structureIdx)).exists());
+        if (columnar) return new ColumnarMeasurementStore(columnDir, positionName, structureIdx, readOnly);
+        else return new DBMapMeasurementStore(getMeasurementDBFile(structureIdx), positionName, readOnly);
+    }
+    /**
+     * Converts existing measurement files that are not in the format set by the experiment (see {@link Experiment#getMeasurementStoreType() }). Converted files are deleted
+     */
+    public synchronized void convertMeasurementStores() {
+        if (readOnly) return;
+        flush();
+        closeAllMeasurementFiles(true);
+        boolean toColumnar = getExperiment().getMeasurementStoreType()==Experiment.MeasurementStoreTypes.Columnar;
+        for (int s = 0; s<getExperiment().getStructureCount(); ++s) {
+            String dbFile = getMeasurementDBFile(s), columnDir = getMeasurementColumnDir(s);
+            boolean columnar = ColumnarMeasurementStore.exists(columnDir); // same precedence as createMeasurementStore
+            if (columnar == toColumnar || (!columnar && !new File(dbFile).exists())) continue;
+            MeasurementStore source, target;
+            if (toColumnar) {
+                source = new DBMapMeasurementStore(dbFile, positionName, true);
+                target = new ColumnarMeasurementStore(columnDir, positionName, s, false);
+            } else {
+                DBMapUtils.deleteDBFile(dbFile); // ignored while columnar files exist
+                source = new ColumnarMeasurementStore(columnDir, positionName, s, true);
+                target = new DBMapMeasurementStore(dbFile, positionName, false);
+            }
+            long t0 = System.currentTimeMillis();
+            int count = 0, batchSize = 10000; // measurements are iterated so that only one batch is held in memory
+            List<Measurements> batch = new ArrayList<>(batchSize);
+            Iterator<Measurements> it = source.iterator();
+            while (it.hasNext()) {
+                batch.add(it.next());
+                if (batch.size()==batchSize || !it.hasNext()) {
+                    target.put(batch);
+                    count+=batch.size();
+                    batch.clear();
+                }
+            }
+            target.close(true);
+            source.close(false);
+            if (toColumnar) DBMapUtils.deleteDBFile(dbFile);
+            else ColumnarMeasurementStore.delete(columnDir);
+            logger.info("Position: {} structure: {}: {} measurements converted to {} format in {}ms", positionName, s, count, toColumnar ? "columnar" : "JSON", System.currentTimeMillis()-t0);
+        }
+    }
     
     @Override
     public void upsertMeasurements(Collection<StructureObject> objects) {
         if (readOnly) return;
         Map<Integer, List<StructureObject>> bySIdx = StructureObjectUtils.splitByStructureIdx(objects);
-        for (int i : bySIdx.keySet()) {
-            Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(i);
-            for (StructureObject o : bySIdx.get(i)) {
-                o.getMeasurements().updateObjectProperties(o);
-                mDB.value.put(o.getId(), JSONUtils.serialize(o.getMeasurements()));
-                o.getMeasurements().modifications=false;
-            }
-            mDB.key.commit();
-        }
+        for (int i : bySIdx.keySet()) writeOrBufferMeasurements(i, bySIdx.get(i));
     }
 
     @Override
     public void upsertMeasurement(StructureObject o) {
         if (readOnly) return;
-        o.getMeasurements().updateObjectProperties(o);
-        Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(o.getStructureIdx());
-        mDB.value.put(o.getId(), JSONUtils.serialize(o.getMeasurements()));
-        mDB.key.commit();
-        o.getMeasurements().modifications=false;
+        writeOrBufferMeasurements(o.getStructureIdx(), Collections.singleton(o));
     }
 
     @Override
     public List<Measurements> getMeasurements(int structureIdx, String... measurements) {
-        Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(structureIdx);
-        return getValues(mDB.value).stream().map((s) -> new Measurements(parse(s), this.positionName)).collect(Collectors.toList());
+        flush();
+        MeasurementStore store = getMeasurementStore(structureIdx);
+        if (store==null) return Collections.emptyList();
+        return store.getAll(measurements);
+    }
+    @Override
+    public Iterator<Measurements> iterateMeasurements(int structureIdx, String... measurements) {
+        flush();
+        MeasurementStore store = getMeasurementStore(structureIdx);
+        if (store==null) return Collections.emptyIterator();
+        return store.iterator(measurements);
     }
     @Override
     public Measurements getMeasurements(StructureObject o) {
-        Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(o.getStructureIdx());
-        if (mDB==null) return null;
-        try {
-            String mS = mDB.value.get(o.getId());
-            if (mS==null) return null;
-            Measurements m = new Measurements(parse(mS), this.positionName);
-            return m;
-        } catch (IOError e) {
-            
+        synchronized(writeBehindLock) {
+            for (Map<Integer, Map<Id, Measurements>> buffer : Arrays.asList(pendingMeasurements, flushingMeasurements)) {
+                Map<Id, Measurements> buffered = buffer.get(o.getStructureIdx());
+                if (buffered!=null && buffered.containsKey(o.getId())) return buffered.get(o.getId()).duplicate();
+            }
         }
-        return null;
-        
+        MeasurementStore store = getMeasurementStore(o.getStructureIdx());
+        if (store==null) return null;
+        return store.get(o.getId());
     }
     @Override
     public void retrieveMeasurements(int... structureIdx) {
+        flush();
         for (int sIdx : structureIdx) {
-            Pair<DB, HTreeMap<String, String>> mDB = getMeasurementDB(sIdx);
+            MeasurementStore store = getMeasurementStore(sIdx);
+            if (store==null) continue;
             StructureObjectUtils.getAllObjectsAsStream(this, sIdx)
                 .parallel()
                 .filter(o->!o.hasMeasurements()) // only objects without measurements
                 .forEach(o->{
-                    String mS = mDB.value.get(o.getId());
-                    if (mS!=null) o.setMeasurements(new Measurements(parse(mS), this.positionName));
+                    Measurements m = store.get(o.getId());
+                    if (m!=null) o.setMeasurements(m);
                 });
         }
     }
 
     @Override
     public void deleteAllMeasurements() {
+        synchronized(flushLock) { // waits for the flush in progress
+            synchronized(writeBehindLock) {
+                pendingMeasurements.clear();
+            }
+        }
         closeAllMeasurementFiles(false);
         deleteMeasurementsFromOpenObjects(); // also in opened structureObjects
         if (readOnly) return;
-        for (int s = 0; s<getExperiment().getStructureCount(); ++s) DBMapUtils.deleteDBFile(getMeasurementDBFile(s));
+        for (int s = 0; s<getExperiment().getStructureCount(); ++s) {
+            DBMapUtils.deleteDBFile(getMeasurementDBFile(s));
+            ColumnarMeasurementStore.delete(getMeasurementColumnDir(s));
+        }
     }
     
     private void deleteMeasurementsFromOpenObjects() {
-        for (Map<String, StructureObject> m : cache.values()) {
+        for (Map<Id, StructureObject> m : cache.values()) {
             for (StructureObject o : m.values()) o.setMeasurements(null);
         }
     }
     private synchronized void closeAllMeasurementFiles(boolean commit) {
-        for (Pair<DB, HTreeMap<String, String>> p : this.measurementdbS.values()) {
-            if (!readOnly&&commit&&!p.key.isClosed()) p.key.commit();
-            //logger.debug("closing measurement DB: {} ({})",p.key, Utils.toStringList(Utils.getKeys(measurementdbS, p), i->getMeasurementDBFile(i)));
-            p.key.close();
-        }
-        measurementdbS.clear();
+        for (MeasurementStore store : this.measurementStores.values()) store.close(!readOnly&&commit);
+        measurementStores.clear();
     }
     
-    public static Map<Pair<String, Integer>, List<StructureObject>> splitByParentTrackHeadIdAndStructureIdx(Collection<StructureObject> list) {
+    public static Map<Pair<Id, Integer>, List<StructureObject>> splitByParentTrackHeadIdAndStructureIdx(Collection<StructureObject> list) {
         if (list.isEmpty()) return Collections.EMPTY_MAP;
         return list.stream().collect(Collectors.groupingBy(o -> new Pair(o.isRoot()? null : o.getParentTrackHeadId(), o.getStructureIdx())));
     }
@@ -48,5 +48,8 @@ public interface ImageDAO {
     public InputStream openTrackImageAsStream(StructureObject trackHead, int channelImageIdx);
     public void writeTrackImage(StructureObject trackHead, int channelImageIdx, InputStream image);
     public void deleteTrackImages(String position, int parentStructureIdx);
-    
+    /**
+     * Waits until all images written through this DAO are stored
+     */
+    public void flush();
 }
@@ -19,6 +19,7 @@
 package boa.data_structure.dao;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 /**
  *
@@ -36,4 +37,29 @@ public class ImageDAOFactory {
         }
         return dao;
     }
+    static HashMap<String, ChunkedImageDAO> chunkedDAO = new HashMap<>(1);
+    
+    public static ChunkedImageDAO getChunkedImageDAO(String localDirectory) {
+        ChunkedImageDAO dao = chunkedDAO.get(localDirectory);
+        if (dao==null) {
+            dao = new ChunkedImageDAO(localDirectory);
+            chunkedDAO.put(localDirectory, dao);
+        }
+        return dao;
+    }
+    /**
+     * If true, {@link #getAsyncImageDAO(boa.data_structure.dao.ImageDAO) } returns a DAO writing images asynchronously
+     */
+    public static boolean ASYNC_WRITE = true;
+    static IdentityHashMap<ImageDAO, ImageDAO> asyncDAO = new IdentityHashMap<>(1);
+    
+    public static synchronized ImageDAO getAsyncImageDAO(ImageDAO dao) {
+        if (!ASYNC_WRITE) return dao;
+        ImageDAO res = asyncDAO.get(dao);
+        if (res==null) {
+            res = new AsyncImageDAO(dao);
+            asyncDAO.put(dao, res);
+        }
+        return res;
+    }
 }
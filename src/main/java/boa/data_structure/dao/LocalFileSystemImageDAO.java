@@ -199,4 +199,6 @@ public class LocalFileSystemImageDAO implements ImageDAO {
         Utils.deleteDirectory(folder);
     }
     
+    @Override
+    public void flush() {} // writes are synchronous
 }
@@ -24,7 +24,7 @@ package boa.data_structure.dao;
  * @author Jean Ollion
  */
 public class MasterDAOFactory {
-    public enum DAOType {Morphium, DBMap, Basic};
+    public enum DAOType {Morphium, DBMap, Basic, Binary, Segment};
     private static DAOType currentType = DAOType.Morphium;
 
     public static DAOType getCurrentType() {
@@ -39,6 +39,10 @@ public class MasterDAOFactory {
         switch (daoType) {
             case DBMap:
                 return new DBMapMasterDAO(dir, dbName);
+            case Binary:
+                return new DBMapMasterDAO(dir, dbName, BinaryObjectDAO::new);
+            case Segment:
+                return new DBMapMasterDAO(dir, dbName, SegmentObjectDAO::new);
             case Basic:
                 return new BasicMasterDAO();
             default:
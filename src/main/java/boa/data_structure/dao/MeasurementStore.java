@@ -0,0 +1,58 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.Measurements;
+import boa.utils.Id;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Storage of measurements of all objects of a same structure within a position
+ * @author Jean Ollion
+ */
+public interface MeasurementStore {
+    /**
+     * Stores measurements, replacing previously stored measurements of the same objects. Modifications are durable only after {@link #commit()}
+     * @param measurements 
+     */
+    public void put(Collection<Measurements> measurements);
+    public void remove(Collection<Id> ids);
+    /**
+     * 
+     * @param id object id
+     * @return stored measurements of the object of id {@param id}, null if no measurements are stored
+     */
+    public Measurements get(Id id);
+    /**
+     * 
+     * @param keys measurement keys to retrieve. If no keys are given, all keys are retrieved. Implementations may return more keys than requested
+     * @return measurements of all objects
+     */
+    public List<Measurements> getAll(String... keys);
+    /**
+     * 
+     * @param keys measurement keys to retrieve. If no keys are given, all keys are retrieved
+     * @return iterator over measurements of all objects sorted by indices (see {@link Measurements#compareTo(boa.data_structure.Measurements) }). Implementations may create measurements on the fly so that only the current element is held in memory
+     */
+    public Iterator<Measurements> iterator(String... keys);
+    public void commit();
+    public void close(boolean commit);
+}
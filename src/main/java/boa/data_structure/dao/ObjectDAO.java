@@ -23,8 +23,10 @@ import boa.configuration.experiment.Experiment;
 import boa.data_structure.Measurements;
 import boa.data_structure.StructureObject;
 import boa.data_structure.StructureObjectUtils;
+import boa.utils.Id;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +45,7 @@ public interface ObjectDAO {
     public String getPositionName();
     public void clearCache();
     public boolean isReadOnly();
-    StructureObject getById(String parentTrackHeadId, int structureIdx, int frame, String id);
+    StructureObject getById(Id parentTrackHeadId, int structureIdx, int frame, Id id);
     public List<StructureObject> getChildren(StructureObject parent, int structureIdx); // needs indicies: structureIdx & parent
     /**
      * Sets children for each parent in parent Track
@@ -51,6 +53,13 @@ public interface ObjectDAO {
      * @param structureIdx direct child of parent
      */
     public void setAllChildren(List<StructureObject> parentTrack, int structureIdx);
+    /**
+     * Loads objects of the track of {@param parentTrackHead} and of the given descendant structures (intermediate structures are also loaded), and sets parent/children links.
+     * Implementations may load independent parent tracks concurrently
+     * @param parentTrackHead track head of the parent track
+     * @param structureIdx descendant structures of the structure of {@param parentTrackHead}
+     */
+    public void prefetch(StructureObject parentTrackHead, int... structureIdx);
     /**
      * Deletes the children of {@param parent} of structure {@param structureIdx}
      * @param parent
@@ -74,6 +83,10 @@ public interface ObjectDAO {
     //revoir les fonctions deletes avec la gestions des enfant directs et indirects.. la fonction delete doit elle appeller deleteChildren?
     public void store(StructureObject object);
     public void store(final Collection<StructureObject> objects);
+    /**
+     * Makes all previous modifications (store, delete, measurements) durable. Implementations may buffer modifications until this method is called
+     */
+    public void flush();
     
     public List<StructureObject> getRoots();
     public void setRoots(List<StructureObject> roots);
@@ -87,6 +100,13 @@ public interface ObjectDAO {
     public void retrieveMeasurements(int... structureIdx);
     public Measurements getMeasurements(StructureObject o);
     public List<Measurements> getMeasurements(int structureIdx, String... measurements);
+    /**
+     * 
+     * @param structureIdx
+     * @param measurements measurement keys to retrieve. If no keys are given, all keys are retrieved
+     * @return iterator over measurements of all objects of structure {@param structureIdx} sorted by indices (see {@link Measurements#compareTo(boa.data_structure.Measurements) })
+     */
+    public Iterator<Measurements> iterateMeasurements(int structureIdx, String... measurements);
     public void deleteAllMeasurements();
     
     public static boolean sameContent(ObjectDAO dao1, ObjectDAO dao2, ProgressCallback pcb) {
@@ -104,7 +124,7 @@ public interface ObjectDAO {
                 return false;
             }
             // deep equals
-            Map<String, StructureObject> allObjects2Map = allObjects2.stream().collect(Collectors.toMap(StructureObject::getId, Function.identity()));
+            Map<Id, StructureObject> allObjects2Map = allObjects2.stream().collect(Collectors.toMap(StructureObject::getId, Function.identity()));
             for (StructureObject o1 : allObjects1) {
                 StructureObject o2  = allObjects2Map.get(o1.getId());
                 if (!o1.toJSONEntry().toJSONString().equals(o2.toJSONEntry().toJSONString())) {
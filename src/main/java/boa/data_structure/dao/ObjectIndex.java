@@ -0,0 +1,127 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.utils.Id;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Secondary indices of objects stored under a same parent track head and structure: track head id -> object ids ordered by frame and frame -> object ids. 
+ * Updated incrementally when objects are stored or deleted so that track and frame queries do not require to scan all objects.
+ * @author Jean Ollion
+ */
+public class ObjectIndex {
+    final Map<Id, Entry> entries = new HashMap<>();
+    final Map<Id, TreeSet<Entry>> tracks = new HashMap<>();
+    final Map<Integer, Set<Id>> frames = new HashMap<>();
+    private static final Comparator<Entry> FRAME_ORDER = (e1, e2) -> {
+        int c = Integer.compare(e1.frame, e2.frame);
+        if (c!=0) return c;
+        return e1.id.compareTo(e2.id);
+    };
+    static class Entry {
+        final Id id, trackHeadId;
+        final int frame;
+        Entry(Id id, Id trackHeadId, int frame) {
+            this.id=id;
+            this.trackHeadId=trackHeadId;
+            this.frame=frame;
+        }
+    }
+    public synchronized void put(Id id, Id trackHeadId, int frame) {
+        Entry old = entries.get(id);
+        if (old!=null) {
+            if (old.frame==frame && (old.trackHeadId==null ? trackHeadId==null : old.trackHeadId.equals(trackHeadId))) return;
+            remove(old);
+        }
+        Entry e = new Entry(id, trackHeadId, frame);
+        entries.put(id, e);
+        if (trackHeadId!=null) tracks.computeIfAbsent(trackHeadId, th -> new TreeSet<>(FRAME_ORDER)).add(e);
+        frames.computeIfAbsent(frame, f -> new HashSet<>()).add(id);
+    }
+    public synchronized void remove(Id id) {
+        Entry e = entries.get(id);
+        if (e!=null) remove(e);
+    }
+    public synchronized void removeAll(Collection<Id> ids) {
+        for (Id id : ids) remove(id);
+    }
+    private void remove(Entry e) {
+        entries.remove(e.id);
+        if (e.trackHeadId!=null) {
+            TreeSet<Entry> track = tracks.get(e.trackHeadId);
+            if (track!=null) {
+                track.remove(e);
+                if (track.isEmpty()) tracks.remove(e.trackHeadId);
+            }
+        }
+        Set<Id> frame = frames.get(e.frame);
+        if (frame!=null) {
+            frame.remove(e.id);
+            if (frame.isEmpty()) frames.remove(e.frame);
+        }
+    }
+    public synchronized int size() {
+        return entries.size();
+    }
+    public synchronized boolean contains(Id id) {
+        return entries.containsKey(id);
+    }
+    /**
+     * 
+     * @param trackHeadId
+     * @return ids of objects of the track, ordered by frame
+     */
+    public synchronized List<Id> getTrack(Id trackHeadId) {
+        TreeSet<Entry> track = tracks.get(trackHeadId);
+        if (track==null) return Collections.emptyList();
+        return track.stream().map(e -> e.id).collect(Collectors.toList());
+    }
+    /**
+     * 
+     * @return ids of track heads, i.e. objects that are the first element of their track
+     */
+    public synchronized List<Id> getTrackHeadIds() {
+        List<Id> res = new ArrayList<>(tracks.size());
+        for (Map.Entry<Id, TreeSet<Entry>> e : tracks.entrySet()) {
+            if (entries.containsKey(e.getKey())) res.add(e.getKey());
+        }
+        return res;
+    }
+    /**
+     * 
+     * @param frame
+     * @return ids of objects at frame {@param frame}
+     */
+    public synchronized Set<Id> getIds(int frame) {
+        Set<Id> res = frames.get(frame);
+        if (res==null) return Collections.emptySet();
+        return new HashSet<>(res);
+    }
+}
@@ -0,0 +1,130 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.data_structure.StructureObjectBlock;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ObjectDAO storing object blocks (see {@link StructureObjectBlock}) in memory-mapped append-only segment files (see {@link SegmentStore}), one per structure. 
+ * Stored blocks are read directly from the mapped file, modifications are appended and made durable at each commit, and obsolete records are removed by background compaction.
+ * Measurements are stored as in {@link DBMapObjectDAO}
+ * @author Jean Ollion
+ */
+public class SegmentObjectDAO extends BinaryObjectDAO {
+    public static final Logger logger = LoggerFactory.getLogger(SegmentObjectDAO.class);
+    final Map<Integer, SegmentStore> stores = new HashMap<>();
+    public SegmentObjectDAO(DBMapMasterDAO mDAO, String positionName, String dir, boolean readOnly) {
+        super(mDAO, positionName, dir, readOnly);
+    }
+    protected String getSegmentName(int structureIdx) {
+        return "objects_"+structureIdx;
+    }
+    protected SegmentStore getStore(int structureIdx) {
+        synchronized(stores) {
+            SegmentStore res = stores.get(structureIdx);
+            if (res==null && !stores.containsKey(structureIdx)) {
+                if (readOnly && !SegmentStore.exists(new File(dir), getSegmentName(structureIdx))) return null;
+                try {
+                    res = new SegmentStore(new File(dir), getSegmentName(structureIdx), readOnly);
+                    stores.put(structureIdx, res);
+                } catch (IOException ex) {
+                    logger.error("Could not open segment: "+getSegmentName(structureIdx)+" readOnly: "+readOnly, ex);
+                }
+            }
+            return res;
+        }
+    }
+    @Override
+    protected ByteBuffer getRecord(int structureIdx, String name) {
+        SegmentStore store = getStore(structureIdx);
+        if (store==null) return null;
+        return store.get(name);
+    }
+    @Override
+    protected void putRecord(int structureIdx, String name, byte[] data) {
+        SegmentStore store = getStore(structureIdx);
+        if (store==null) throw new UncheckedIOException(new IOException("Segment could not be opened: "+getSegmentName(structureIdx)));
+        store.put(name, data);
+    }
+    @Override
+    protected void removeRecord(int structureIdx, String name) {
+        SegmentStore store = getStore(structureIdx);
+        if (store!=null) store.remove(name);
+    }
+    @Override
+    protected void commit(int structureIdx) {
+        SegmentStore store = getStore(structureIdx);
+        if (store!=null) store.commit();
+    }
+    @Override
+    protected Iterable<String> getRecordNames(int structureIdx) {
+        SegmentStore store = getStore(structureIdx);
+        if (store==null) return Collections.emptyList();
+        return store.keys();
+    }
+    @Override
+    public synchronized void deleteObjectsByStructureIdx(int... structures) {
+        if (readOnly) return;
+        synchronized(stores) {
+            for (int s : structures) {
+                SegmentStore store = stores.remove(s);
+                if (store!=null) store.close();
+                SegmentStore.delete(new File(dir), getSegmentName(s));
+            }
+        }
+        super.deleteObjectsByStructureIdx(structures);
+    }
+    @Override
+    protected synchronized void closeAllObjectFiles(boolean commit) {
+        super.closeAllObjectFiles(commit); // flushes buffered objects before segments are closed
+        synchronized(stores) {
+            for (SegmentStore store : stores.values()) {
+                if (store==null) continue;
+                if (!readOnly && commit) store.commit();
+                store.close();
+            }
+            stores.clear();
+        }
+    }
+    @Override
+    public synchronized void compactObjectDBs(boolean onlyOpened) {
+        if (readOnly) return;
+        flush();
+        synchronized(stores) {
+            for (SegmentStore store : stores.values()) {
+                if (store==null) continue;
+                store.commit();
+                try {
+                    if (store.needsCompaction()) store.compact();
+                } catch (IOException ex) {
+                    logger.error("Error compacting segment", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.dao;
+
+import boa.utils.BinaryWriter;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only key-value store. Modifications are kept in memory until {@link #commit()}, which appends them to the current segment file followed by a commit marker and forces them to disk. 
+ * At opening, records located after the last valid commit marker (crash during a commit) are discarded.
+ * Values are read through a memory-mapped view of the committed part of the segment.
+ * When the proportion of overwritten records is high, live records are copied into a new segment generation in a background thread. The new generation is written under a temporary name and renamed once complete and forced to disk; the old generation is then deleted.
+ * @author Jean Ollion
+ */
+public class SegmentStore {
+    public static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+    final static int MAGIC = 0x42534547; // "BSEG"
+    final static byte VERSION = 1;
+    final static int HEADER_SIZE = 5;
+    final static byte PUT = 1, DELETE = 2, COMMIT = 3;
+    final static int RECORD_OVERHEAD = 1 + 4 + 4 + 4; // type, key length, value length, crc
+    public static double COMPACTION_GARBAGE_RATIO = 0.5;
+    public static long COMPACTION_MIN_SIZE = 1<<20;
+    /**
+     * Minimal size (in bytes) by which the mapped view of the segment is extended beyond the committed records, so that commits do not require a new mapping
+     */
+    public static long MAPPING_MIN_GROWTH = 1<<20;
+    private final static ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SegmentStore-compaction");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    final File dir;
+    final String name;
+    final boolean readOnly;
+    int generation;
+    FileChannel channel;
+    MappedByteBuffer mapped;
+    long mappedLength;
+    long committedLength;
+    long liveBytes;
+    final Map<String, Location> index = new HashMap<>();
+    final Map<String, byte[]> pending = new LinkedHashMap<>(); // null value = deletion
+    boolean compacting, closed;
+    
+    static class Location {
+        final long valueOffset, recordLength;
+        final int valueLength;
+        Location(long valueOffset, int valueLength, long recordLength) {
+            this.valueOffset=valueOffset;
+            this.valueLength=valueLength;
+            this.recordLength=recordLength;
+        }
+    }
+    /**
+     * 
+     * @param dir directory containing the segment files
+     * @param name prefix of the segment files
+     * @param readOnly
+     * @throws IOException 
+     */
+    public SegmentStore(File dir, String name, boolean readOnly) throws IOException {
+        this.dir=dir;
+        this.name=name;
+        this.readOnly=readOnly;
+        open();
+    }
+    private File getFile(int generation) {
+        return new File(dir, name+"."+generation+".seg");
+    }
+    private File getTempFile(int generation) {
+        return new File(dir, name+"."+generation+".seg.tmp");
+    }
+    private static List<Integer> getGenerations(File dir, String name) {
+        Pattern p = Pattern.compile(Pattern.quote(name)+"\\.(\\d+)\\.seg");
+        List<Integer> res = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files==null) return res;
+        for (File f : files) {
+            Matcher m = p.matcher(f.getName());
+            if (m.matches()) res.add(Integer.parseInt(m.group(1)));
+        }
+        Collections.sort(res, Collections.reverseOrder());
+        return res;
+    }
+    public static boolean exists(File dir, String name) {
+        return !getGenerations(dir, name).isEmpty();
+    }
+    public static void delete(File dir, String name) {
+        for (int g : getGenerations(dir, name)) new File(dir, name+"."+g+".seg").delete();
+        deleteTempFiles(dir, name);
+    }
+    private static void deleteTempFiles(File dir, String name) { // incomplete compactions
+        Pattern p = Pattern.compile(Pattern.quote(name)+"\\.(\\d+)\\.seg\\.tmp");
+        File[] files = dir.listFiles();
+        if (files!=null) for (File f : files) if (p.matcher(f.getName()).matches()) f.delete();
+    }
+    private void open() throws IOException {
+        List<Integer> generations = getGenerations(dir, name);
+        Integer valid = null;
+        for (int g : generations) { // the most recent complete generation is used
+            if (readGeneration(g, generations.size()==1)) {
+                valid = g;
+                break;
+            }
+        }
+        if (valid==null) {
+            if (readOnly) { // empty store
+                generation = -1;
+                return;
+            }
+            generation = generations.isEmpty() ? 0 : generations.get(0)+1;
+            channel = FileChannel.open(getFile(generation).toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            committedLength = HEADER_SIZE;
+        } else generation = valid;
+        if (!readOnly) { // remove other generations: old generation not deleted, and incomplete compactions
+            for (int g : generations) if (g!=generation) getFile(g).delete();
+            deleteTempFiles(dir, name);
+        }
+    }
+    private boolean readGeneration(int generation, boolean acceptWithoutCommit) throws IOException {
+        File f = getFile(generation);
+        FileChannel c = readOnly ? FileChannel.open(f.toPath(), StandardOpenOption.READ) : FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int commits = scan(c);
+            if (commits<0 || (commits==0 && !acceptWithoutCommit)) {
+                c.close();
+                return false;
+            }
+            if (!readOnly && c.size()>committedLength) {
+                logger.warn("segment: {}: discarding {} bytes written after last commit", f, c.size()-committedLength);
+                c.truncate(committedLength);
+            }
+            this.channel = c;
+            this.generation = generation;
+            remap();
+            return true;
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+    }
+    /**
+     * Reads all records of {@param c} and sets the index with committed records
+     * @param c
+     * @return number of commit markers, -1 if header is invalid
+     * @throws IOException 
+     */
+    private int scan(FileChannel c) throws IOException {
+        index.clear();
+        liveBytes = 0;
+        committedLength = HEADER_SIZE;
+        if (c.size()<HEADER_SIZE) return -1;
+        c.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(c), 1<<16)); // not closed: would close the channel
+        if (in.readInt()!=MAGIC) return -1;
+        if (in.readByte()>VERSION) throw new IOException("Unsupported segment version");
+        long size = c.size();
+        long position = HEADER_SIZE;
+        int commits = 0;
+        Map<String, Location> uncommitted = new LinkedHashMap<>();
+        CRC32 crc = new CRC32();
+        try {
+            while (position+RECORD_OVERHEAD<=size) {
+                byte type = in.readByte();
+                int keyLength = in.readInt();
+                if (keyLength<0 || position+RECORD_OVERHEAD+keyLength>size) break;
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                int valueLength = in.readInt();
+                if (valueLength<0 || position+RECORD_OVERHEAD+keyLength+valueLength>size) break;
+                byte[] value = new byte[valueLength];
+                in.readFully(value);
+                int storedCrc = in.readInt();
+                crc.reset();
+                updateCRC(crc, type, key, value);
+                if ((int)crc.getValue()!=storedCrc) break;
+                long recordLength = RECORD_OVERHEAD + keyLength + valueLength;
+                String k = new String(key, StandardCharsets.UTF_8);
+                if (type==PUT) uncommitted.put(k, new Location(position+1+4+keyLength+4, valueLength, recordLength));
+                else if (type==DELETE) uncommitted.put(k, null);
+                else if (type==COMMIT) {
+                    for (Map.Entry<String, Location> e : uncommitted.entrySet()) applyToIndex(e.getKey(), e.getValue());
+                    uncommitted.clear();
+                    ++commits;
+                    committedLength = position + recordLength;
+                } else break;
+                position+=recordLength;
+            }
+        } catch (EOFException e) { }
+        return commits;
+    }
+    private void applyToIndex(String key, Location location) {
+        Location old = location==null ? index.remove(key) : index.put(key, location);
+        if (old!=null) liveBytes-=old.recordLength;
+        if (location!=null) liveBytes+=location.recordLength;
+    }
+    private static void updateCRC(CRC32 crc, byte type, byte[] key, byte[] value) {
+        crc.update(type);
+        crc.update(key);
+        crc.update(value);
+    }
+    private static void writeRecord(BinaryWriter out, CRC32 crc, byte type, byte[] key, byte[] value) {
+        out.writeByte(type).writeInt(key.length).writeBytes(key).writeInt(value.length).writeBytes(value);
+        crc.reset();
+        updateCRC(crc, type, key, value);
+        out.writeInt((int)crc.getValue());
+    }
+    /**
+     * Maps the segment file if committed records are not located within the current mapping. In write mode, the file is extended (sparse) beyond the committed records so that the mapping also covers the following commits
+     * @throws IOException 
+     */
+    private void remap() throws IOException {
+        if (mapped!=null && committedLength<=mappedLength) return;
+        long length = committedLength;
+        if (!readOnly) length = Math.min(Integer.MAX_VALUE, committedLength + Math.max(MAPPING_MIN_GROWTH, committedLength/4));
+        if (length<committedLength) { // values are mapped individually
+            mapped = null;
+            mappedLength = 0;
+            return;
+        }
+        if (channel.size()<length) channel.write(ByteBuffer.allocate(1), length-1); // records after the committed length are ignored at opening
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        mappedLength = length;
+    }
+    
+    public synchronized ByteBuffer get(String key) {
+        if (pending.containsKey(key)) {
+            byte[] v = pending.get(key);
+            return v==null ? null : ByteBuffer.wrap(v);
+        }
+        Location l = index.get(key);
+        if (l==null) return null;
+        if (mapped!=null) {
+            ByteBuffer res = mapped.duplicate();
+            res.position((int)l.valueOffset);
+            res.limit((int)l.valueOffset+l.valueLength);
+            return res.slice();
+        } else {
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, l.valueOffset, l.valueLength);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+    public synchronized boolean containsKey(String key) {
+        if (pending.containsKey(key)) return pending.get(key)!=null;
+        return index.containsKey(key);
+    }
+    public synchronized Set<String> keys() {
+        Set<String> res = new HashSet<>(index.keySet());
+        for (Map.Entry<String, byte[]> e : pending.entrySet()) {
+            if (e.getValue()==null) res.remove(e.getKey());
+            else res.add(e.getKey());
+        }
+        return res;
+    }
+    public synchronized void put(String key, byte[] value) {
+        if (readOnly) throw new IllegalStateException("Read only store");
+        if (value==null) throw new IllegalArgumentException("null value");
+        pending.put(key, value);
+    }
+    public synchronized void remove(String key) {
+        if (readOnly) throw new IllegalStateException("Read only store");
+        pending.put(key, null);
+    }
+    /**
+     * Appends pending modifications followed by a commit marker and forces them to disk. 
+     */
+    public void commit() {
+        synchronized(this) {
+            if (readOnly || pending.isEmpty()) return;
+            CRC32 crc = new CRC32();
+            BinaryWriter out = new BinaryWriter();
+            List<Map.Entry<String, Location>> newLocations = new ArrayList<>(pending.size());
+            for (Map.Entry<String, byte[]> e : pending.entrySet()) {
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                int start = out.size();
+                if (e.getValue()==null) {
+                    writeRecord(out, crc, DELETE, key, new byte[0]);
+                    newLocations.add(new AbstractMap.SimpleEntry<>(e.getKey(), null));
+                } else {
+                    writeRecord(out, crc, PUT, key, e.getValue());
+                    newLocations.add(new AbstractMap.SimpleEntry<>(e.getKey(), new Location(committedLength+start+1+4+key.length+4, e.getValue().length, out.size()-start)));
+                }
+            }
+            writeRecord(out, crc, COMMIT, new byte[0], new byte[0]);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+                long position = committedLength;
+                while (buffer.hasRemaining()) position+=channel.write(buffer, position);
+                channel.force(false);
+                committedLength = position;
+                for (Map.Entry<String, Location> e : newLocations) applyToIndex(e.getKey(), e.getValue());
+                pending.clear();
+                remap();
+            } catch (IOException ex) {
+                try { // remove the partially written records
+                    channel.truncate(committedLength);
+                } catch (IOException ex2) {}
+                throw new UncheckedIOException(ex);
+            }
+            if (compacting || !needsCompaction()) return;
+            compacting = true;
+        }
+        COMPACTION_EXECUTOR.submit(() -> {
+            try {
+                compact();
+            } catch (IOException|RuntimeException e) {
+                logger.error("error while compacting segment: "+name, e);
+            } finally {
+                synchronized(this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+    public synchronized boolean needsCompaction() {
+        return committedLength>COMPACTION_MIN_SIZE && (double)(committedLength-HEADER_SIZE-liveBytes)/committedLength > COMPACTION_GARBAGE_RATIO;
+    }
+    /**
+     * Copies all live records into a new generation. Committed records are immutable so the copy is performed without blocking readers or writers, except for the records committed during the copy.
+     * The new generation is written under a temporary name, and renamed only once it contains all committed records and is forced to disk, so that a crash during compaction cannot lose committed records.
+     * @throws IOException 
+     */
+    public void compact() throws IOException {
+        Map<String, Location> snapshot;
+        long snapshotEnd;
+        FileChannel source;
+        int newGeneration;
+        synchronized(this) {
+            if (closed || readOnly) return;
+            snapshot = new HashMap<>(index);
+            snapshotEnd = committedLength;
+            source = channel;
+            newGeneration = generation+1;
+        }
+        File tmp = getTempFile(newGeneration);
+        File f = getFile(newGeneration);
+        FileChannel dest = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            CRC32 crc = new CRC32();
+            BinaryWriter out = new BinaryWriter(1<<16);
+            out.writeInt(MAGIC).writeByte(VERSION);
+            long position = 0;
+            for (Map.Entry<String, Location> e : snapshot.entrySet()) {
+                ByteBuffer value = ByteBuffer.allocate(e.getValue().valueLength);
+                long p = e.getValue().valueOffset;
+                while (value.hasRemaining()) {
+                    int r = source.read(value, p);
+                    if (r<0) throw new EOFException();
+                    p+=r;
+                }
+                writeRecord(out, crc, PUT, e.getKey().getBytes(StandardCharsets.UTF_8), value.array());
+                if (out.size()>=1<<20) position = flush(out, dest, position);
+            }
+            writeRecord(out, crc, COMMIT, new byte[0], new byte[0]);
+            position = flush(out, dest, position);
+            synchronized(this) {
+                if (closed || channel!=source) {
+                    dest.close();
+                    tmp.delete();
+                    return;
+                }
+                if (committedLength>snapshotEnd) { // records committed during copy: already followed by a commit marker
+                    long count = committedLength - snapshotEnd;
+                    long transfered = 0;
+                    while (transfered<count) transfered+=source.transferTo(snapshotEnd+transfered, count-transfered, dest.position(position+transfered));
+                }
+                dest.force(true);
+                dest.close();
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                FileChannel newChannel;
+                try {
+                    newChannel = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException e) { // current generation remains the reference
+                    f.delete();
+                    throw e;
+                }
+                int oldGeneration = generation;
+                scan(newChannel);
+                channel = newChannel;
+                generation = newGeneration;
+                mapped = null;
+                remap();
+                source.close();
+                if (!getFile(oldGeneration).delete()) logger.debug("segment: {} old generation could not be deleted", name);
+                logger.debug("segment: {} compacted: generation: {} size: {}", name, generation, committedLength);
+            }
+        } catch (IOException|RuntimeException e) {
+            if (dest.isOpen()) dest.close();
+            tmp.delete();
+            throw e;
+        }
+    }
+    private void syncDirectory() {
+        try (FileChannel d = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException e) { } // not supported on all platforms
+    }
+    private static long flush(BinaryWriter out, FileChannel dest, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) position+=dest.write(buffer, position);
+        out.clear();
+        return position;
+    }
+    /**
+     * Discards pending modifications and closes the segment file
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (!pending.isEmpty()) logger.debug("segment: {} closed with {} uncommitted modifications", name, pending.size());
+        pending.clear();
+        index.clear();
+        mapped = null;
+        if (channel!=null) {
+            if (!readOnly) {
+                try {
+                    channel.truncate(committedLength); // remove the extension of the mapping
+                } catch (IOException ex) {
+                    logger.debug("segment: {} could not be truncated", name);
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.debug("error closing segment: "+name, ex);
+            }
+        }
+    }
+}
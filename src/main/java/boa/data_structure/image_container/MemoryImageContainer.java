@@ -61,7 +61,7 @@ public class MemoryImageContainer extends MultipleImageContainer {
 
     @Override
     public int getSizeZ(int channel) {
-        return imageCT[0][0].sizeZ();
+        return imageCT[channel][0].sizeZ();
     }
 
     @Override
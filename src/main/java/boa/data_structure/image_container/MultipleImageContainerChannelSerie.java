@@ -22,7 +22,7 @@ import boa.image.MutableBoundingBox;
 import boa.image.Image;
 import static boa.image.Image.logger;
 import boa.image.io.ImageIOCoordinates;
-import boa.image.io.ImageReader;
+import boa.image.io.ImageReaderPool;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -42,7 +42,7 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
     int timePointNumber;
     int[] sizeZC;
     MutableBoundingBox bounds;
-    private ImageReader reader[];
+    private volatile ImageReaderPool[] readers;
     private Image[] singleFrameImages;
     boolean[] singleFrameC;
     Map<String, Double> timePointCZT;
@@ -107,7 +107,7 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
         filePathC = imagePathC;
         this.singleFrameC = singleFrameC;
         this.timePointNumber=frameNumber;
-        this.reader=new ImageReader[imagePathC.length];
+        this.readers=new ImageReaderPool[imagePathC.length];
         this.singleFrameImages = new Image[imagePathC.length];
         this.sizeZC= sizeZC;
         if (timePointCZT!=null && !timePointCZT.isEmpty()) this.timePointCZT = new HashMap<>(timePointCZT);
@@ -117,14 +117,16 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
     private void initTimePointMap() {
         timePointCZT = new HashMap<>();
         for (int c = 0; c<filePathC.length; ++c) {
-            ImageReader r = this.getReader(c);
-            if (r==null) continue;
-            for (int z = 0; z<sizeZC[c]; ++z) {
-                for (int t = 0; t<timePointNumber; ++t) {
-                    double tp = r.getTimePoint(0, t, z);
-                    if (!Double.isNaN(tp)) timePointCZT.put(getKey(c, z, t), tp);
+            int cc = c;
+            getReaders(c).apply(r -> {
+                for (int z = 0; z<sizeZC[cc]; ++z) {
+                    for (int t = 0; t<timePointNumber; ++t) {
+                        double tp = r.getTimePoint(0, t, z);
+                        if (!Double.isNaN(tp)) timePointCZT.put(getKey(cc, z, t), tp);
+                    }
                 }
-            }
+                return null;
+            });
         }
         //logger.debug("tpMap: {}", timePointCZT);
     }
@@ -148,8 +150,9 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
     }
     
     public void setImagePath(String[] path) {
+        if (filePathC!=null) flush();
         this.filePathC=path;
-        this.reader=new ImageReader[filePathC.length];
+        this.readers=new ImageReaderPool[filePathC.length];
     }
     
     public String[] getFilePath(){return filePathC;}
@@ -181,24 +184,23 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
         return new ImageIOCoordinates(0, 0, timePoint);
     }
     
-    protected synchronized ImageReader getReader(int channelIdx) {
-        if (getImageReaders()[channelIdx]==null) {
-            synchronized(this) {
-                if (getImageReaders()[channelIdx]==null) {
-                    reader[channelIdx] = new ImageReader(filePathC[channelIdx]);
-                }
+    protected ImageReaderPool getReaders(int channelIdx) {
+        ImageReaderPool[] pools = getReaderPools();
+        if (pools[channelIdx]==null) {
+            synchronized(pools) {
+                if (pools[channelIdx]==null) pools[channelIdx] = new ImageReaderPool(filePathC[channelIdx]);
             }
         }
-        return reader[channelIdx];
+        return pools[channelIdx];
     }
     
-    protected ImageReader[] getImageReaders() {
-        if (reader==null) {
+    protected ImageReaderPool[] getReaderPools() {
+        if (readers==null) {
             synchronized(this) {
-                if (reader==null) reader=new ImageReader[filePathC.length];
+                if (readers==null) readers=new ImageReaderPool[filePathC.length];
             }
         }
-        return reader;
+        return readers;
     }
     
     @Override
@@ -214,27 +216,23 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
             }
             if (singleFrameImages[channel]==null) {
                 synchronized(singleFrameImages) {
-                    if (singleFrameImages[channel]==null) singleFrameImages[channel] = getReader(channel).openImage(ioCoordinates);
+                    if (singleFrameImages[channel]==null) singleFrameImages[channel] = getReaders(channel).openImage(ioCoordinates);
                 }
             }
             return singleFrameImages[channel];
         } else {
-            ImageReader r= getReader(channel);
-            synchronized(r) {
-                Image image = getReader(channel).openImage(ioCoordinates);
-                return image;
-            }
+            return getReaders(channel).openImage(ioCoordinates);
         }
     }
     
     @Override
-    public synchronized Image getImage(int timePoint, int channel, MutableBoundingBox bounds) {
+    public Image getImage(int timePoint, int channel, MutableBoundingBox bounds) {
         
         if (this.timePointNumber==1) timePoint=0;
         ImageIOCoordinates ioCoordinates = getImageIOCoordinates(timePoint);
         ImageIOCoordinates ioCoords = ioCoordinates.duplicate();
         ioCoords.setBounds(bounds);
-        Image image = getReader(channel).openImage(ioCoordinates);
+        Image image = getReaders(channel).openImage(ioCoordinates);
         /*if (scaleXY!=0 && scaleZ!=0) image.setCalibration((float)scaleXY, (float)scaleZ);
         else {
             scaleXY = image.getScaleXY();
@@ -246,8 +244,7 @@ public class MultipleImageContainerChannelSerie extends MultipleImageContainer {
     @Override
     public void flush() {
         for (int i = 0; i<this.getChannelNumber(); ++i) {
-            if (getImageReaders()[i]!=null) reader[i].closeReader();
-            reader [i] = null;
+            if (getReaderPools()[i]!=null) readers[i].close();
             if (singleFrameImages!=null) singleFrameImages[i]=null;
         }
     }
@@ -30,7 +30,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,12 +49,13 @@ import boa.utils.Pair;
  * @author Jean Ollion
  */
 public class MultipleImageContainerPositionChannelFrame extends MultipleImageContainer { // one file per channel & per frame
-    byte[][] bufferStore = new byte[1][];
+    public static int MAX_BUFFERS = Runtime.getRuntime().availableProcessors();
+    final Queue<byte[][]> bufferPool = new ConcurrentLinkedQueue<>(); // one file per frame: buffers are pooled instead of readers
     String inputDir, extension, positionKey, timeKeyword;
     int frameNumber;
     String[] channelKeywords;
     int[] sizeZC;
-    List<List<String>> fileCT;
+    volatile List<List<String>> fileCT;
     Map<String, Double> timePointCZT;
     @Override
     public boolean sameContent(MultipleImageContainer other) {
@@ -224,31 +227,32 @@ public class MultipleImageContainerPositionChannelFrame extends MultipleImageCon
     }
 
     @Override
-    public synchronized Image getImage(int frame, int channel) { // synchronized if use of buffer
-        if (fileCT==null) {
-            //synchronized(this) {
-                if (fileCT==null) createFileMap();
-            //}
-        }
-        return ImageReader.openImage(fileCT.get(channel).get(frame), new ImageIOCoordinates(), bufferStore);
+    public Image getImage(int frame, int channel) {
+        return getImage(frame, channel, null);
     }
     
-    
-    
     @Override
     public Image getImage(int frame, int channel, MutableBoundingBox bounds) {
-        if (fileCT==null) {
+        List<List<String>> files = fileCT; // local copy: flush may be called concurrently
+        if (files==null) {
             synchronized(this) {
                 if (fileCT==null) createFileMap();
+                files = fileCT;
             }
         }
-        return ImageReader.openImage(fileCT.get(channel).get(frame), new ImageIOCoordinates(0, 0, 0, bounds), bufferStore);
+        byte[][] buffer = bufferPool.poll();
+        if (buffer==null) buffer = new byte[1][];
+        try {
+            return ImageReader.openImage(files.get(channel).get(frame), bounds==null ? new ImageIOCoordinates() : new ImageIOCoordinates(0, 0, 0, bounds), buffer);
+        } finally {
+            if (bufferPool.size()<MAX_BUFFERS) bufferPool.offer(buffer);
+        }
     }
 
     @Override
     public void flush() {
         fileCT=null;
-        bufferStore[0] = null;
+        bufferPool.clear();
     }
 
     @Override
@@ -269,11 +273,12 @@ public class MultipleImageContainerPositionChannelFrame extends MultipleImageCon
         List<File> files = Arrays.stream(allImages).filter( f -> positionPattern.matcher(f.getName()).find()).collect(Collectors.toList());
         Pattern timePattern = Pattern.compile(".*"+timeKeyword+"(\\d+).*");
         Map<Integer, List<File>> filesByChannel = files.stream().collect(Collectors.groupingBy(f -> getKeywordIdx(f.getName(), channelKeywords)));
-        fileCT = new ArrayList<>(filesByChannel.size());
+        List<List<String>> fileCT = new ArrayList<>(filesByChannel.size());
         filesByChannel.entrySet().stream().sorted((n1, n2)->Integer.compare(n1.getKey(), n2.getKey())).forEach((channelFiles) -> {
             Map<Integer, String> filesByTimePoint = channelFiles.getValue().stream().collect(Collectors.toMap(f -> get(f.getName(), timePattern), f -> f.getAbsolutePath()));
             fileCT.add(new ArrayList<>(new TreeMap(filesByTimePoint).values()).subList(0, frameNumber));
         });
+        this.fileCT = fileCT; // only published once complete, as getImage is not synchronized
     }
     
     public static int getCommomStartIndex(List<String> names) {
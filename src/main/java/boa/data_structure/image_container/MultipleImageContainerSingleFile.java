@@ -23,6 +23,7 @@ import boa.image.Image;
 import static boa.image.Image.logger;
 import boa.image.io.ImageIOCoordinates;
 import boa.image.io.ImageReader;
+import boa.image.io.ImageReaderPool;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,7 +43,7 @@ public class MultipleImageContainerSingleFile extends MultipleImageContainer {
     int seriesIdx;
     int sizeZ;
     MutableBoundingBox bounds;
-    private ImageReader reader;
+    private volatile ImageReaderPool readers;
     private Map<String, Double> timePointCZT;
     @Override
     public boolean sameContent(MultipleImageContainer other) {
@@ -124,22 +125,25 @@ public class MultipleImageContainerSingleFile extends MultipleImageContainer {
     }
     
     private void initTimePointMap() {
-        ImageReader r = this.getReader();
         timePointCZT = new HashMap<>();
-        if (r==null) return;
-        for (int c = 0; c<this.getChannelNumber(); ++c) {
-            for (int z = 0; z<getSizeZ(c); ++z) {
-                for (int t = 0; t<getFrameNumber(); ++t) {
-                    double tp = r.getTimePoint(c, t, z);
-                    if (!Double.isNaN(tp)) timePointCZT.put(getKey(c, z, t), tp);
+        getReaders().apply(r -> {
+            for (int c = 0; c<this.getChannelNumber(); ++c) {
+                for (int z = 0; z<getSizeZ(c); ++z) {
+                    for (int t = 0; t<getFrameNumber(); ++t) {
+                        double tp = r.getTimePoint(c, t, z);
+                        if (!Double.isNaN(tp)) timePointCZT.put(getKey(c, z, t), tp);
+                    }
                 }
             }
-        }
+            return null;
+        });
         logger.debug("tpMap: {}", timePointCZT);
     }
     
     public void setImagePath(String path) {
+        flush();
         this.filePath=path;
+        this.readers=null;
     }
     
     public String getFilePath(){return filePath;}
@@ -176,17 +180,21 @@ public class MultipleImageContainerSingleFile extends MultipleImageContainer {
         return new ImageIOCoordinates(seriesIdx, channel, timePoint);
     }
     
-    protected ImageReader getReader() {
-        if (reader==null) reader = new ImageReader(filePath);
-        return reader;
+    protected ImageReaderPool getReaders() {
+        if (readers==null) {
+            synchronized(this) {
+                if (readers==null) readers = new ImageReaderPool(filePath);
+            }
+        }
+        return readers;
     }
     
     @Override
-    public synchronized Image getImage(int timePoint, int channel) {
+    public Image getImage(int timePoint, int channel) {
         if (this.timePointNumber==1) timePoint=0;
         ImageIOCoordinates ioCoordinates = getImageIOCoordinates(timePoint, channel);
         if (bounds!=null) ioCoordinates.setBounds(bounds);
-        Image image = getReader().openImage(ioCoordinates);
+        Image image = getReaders().openImage(ioCoordinates);
         /*if (scaleXY!=0 && scaleZ!=0) image.setCalibration((float)scaleXY, (float)scaleZ);
         else {
             scaleXY = image.getScaleXY();
@@ -196,12 +204,12 @@ public class MultipleImageContainerSingleFile extends MultipleImageContainer {
     }
     
     @Override
-    public synchronized Image getImage(int timePoint, int channel, MutableBoundingBox bounds) {
+    public Image getImage(int timePoint, int channel, MutableBoundingBox bounds) {
         if (this.timePointNumber==1) timePoint=0;
         ImageIOCoordinates ioCoordinates = getImageIOCoordinates(timePoint, channel);
         ImageIOCoordinates ioCoords = ioCoordinates.duplicate();
         ioCoords.setBounds(bounds);
-        Image image = getReader().openImage(ioCoordinates);
+        Image image = getReaders().openImage(ioCoordinates);
         /*if (scaleXY!=0 && scaleZ!=0) image.setCalibration((float)scaleXY, (float)scaleZ);
         else {
             scaleXY = image.getScaleXY();
@@ -211,7 +219,6 @@ public class MultipleImageContainerSingleFile extends MultipleImageContainer {
     }
     @Override 
     public void flush() {
-        if (reader!=null) reader.closeReader();
-        reader = null;
+        if (readers!=null) readers.close();
     }
 }
@@ -18,6 +18,7 @@
  */
 package boa.data_structure.input_image;
 
+import boa.data_structure.dao.AsyncImageDAO;
 import boa.data_structure.dao.ImageDAO;
 import boa.data_structure.image_container.MultipleImageContainer;
 import boa.gui.image_interaction.IJImageDisplayer;
@@ -65,7 +66,7 @@ public class InputImage {
         InputImage res = new InputImage(channelIdx, inputTimePoint, frame, microscopyFieldName, imageSources, dao);
         if (image!=null) {
             res.image = image.duplicate();
-            res.originalImageType=originalImageType.duplicate();
+            if (originalImageType!=null) res.originalImageType=originalImageType.duplicate();
         }
         return res;
     }
@@ -121,6 +122,13 @@ public class InputImage {
     
     public void saveImage() { 
         dao.writePreProcessedImage(image, channelIdx, frame, microscopyFieldName);
+        intermediateImageSavedToDAO = true; // transformations are applied: image can be re-opened from DAO after flush
+    }
+    /**
+     * Waits until the image saved by {@link #saveImage()} is stored, if the DAO writes asynchronously
+     */
+    public void waitForSavedImage() {
+        if (dao instanceof AsyncImageDAO) ((AsyncImageDAO)dao).waitForPreProcessedImage(channelIdx, frame, microscopyFieldName);
     }
     
     void setTimePoint(int timePoint) {
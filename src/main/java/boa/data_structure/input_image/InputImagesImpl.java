@@ -28,8 +28,14 @@ import boa.utils.Pair;
 import boa.utils.ThreadRunner;
 import boa.utils.ThreadRunner.ThreadAction;
 import boa.utils.Utils;
+import boa.utils.MultipleException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 /**
@@ -154,6 +160,20 @@ public class InputImagesImpl implements InputImages {
         return imagesTC;
     }
     
+    /**
+     * Fraction of the free heap that frames being read, transformed or written during pre-processing can occupy
+     */
+    public static double IN_FLIGHT_MEMORY_FRACTION = 0.5;
+    /**
+     * Upper bound of the number of frames being read, transformed or written at the same time during pre-processing
+     */
+    public static int MAX_IN_FLIGHT_FRAMES = 4 * ThreadRunner.getMaxCPUs();
+    public static int WRITER_THREADS = 2;
+    /**
+     * Applies transformations and saves images as a pipeline: read & transform (parallel) → write (in {@link #WRITER_THREADS} threads). 
+     * The number of frames being processed is bounded according to available memory: a frame is processed until it is stored, including when the DAO writes asynchronously. Once saved, images are re-opened from the DAO if needed
+     * @param close if true, images are released once saved
+     */
     public void applyTranformationsAndSave(boolean close) {
         long tStart = System.currentTimeMillis();
         // start with modified channels
@@ -163,19 +183,66 @@ public class InputImagesImpl implements InputImages {
         allChannels.addAll(modifiedChannels);
         allChannels.addAll(unmodifiedChannels);
         logger.debug("modified channels: {} unmodified: {}", modifiedChannels, unmodifiedChannels);
-        // TODO: if !close: compute necessary memory, and close other channels before computing (starting with unmodified opened channels), and close after processing
-        allChannels.stream().forEachOrdered(c -> {
-            InputImage[] imageF = imageCT[c];
-            IntStream.range(0, imageF.length).parallel().forEach(f-> {
-                imageF[f].getImage();
-                imageF[f].saveImage();
-                if (close) imageF[f].flush();
-            });
-            logger.debug("after applying transformation for channel: {} ", c, Utils.getMemoryUsage());
-        });
-        
+        List<InputImage> images = allChannels.stream().flatMap(c -> Arrays.stream(imageCT[c])).collect(Collectors.toList());
+        if (images.isEmpty()) return;
+        // first image is processed alone to estimate memory needed per frame
+        InputImage first = images.get(0);
+        Image firstImage = first.getImage();
+        first.saveImage();
+        first.waitForSavedImage();
+        int inFlight = getInFlightFrameNumber(firstImage);
+        if (close) first.flush();
+        logger.debug("pre-processing pipeline: {} frames in flight. {}", inFlight, Utils.getMemoryUsage());
+        Semaphore permits = new Semaphore(inFlight);
+        MultipleException errors = new MultipleException();
+        ExecutorService compute = Executors.newFixedThreadPool(Math.min(inFlight, ThreadRunner.getMaxCPUs()));
+        ExecutorService writer = Executors.newFixedThreadPool(Math.max(1, WRITER_THREADS));
+        try {
+            for (InputImage im : images.subList(1, images.size())) {
+                permits.acquire(); // back-pressure: waits until a frame has been written
+                synchronized(errors) {if (!errors.isEmpty()) break;}
+                compute.execute(() -> {
+                    try {
+                        im.getImage();
+                        writer.execute(() -> {
+                            try {
+                                im.saveImage();
+                                im.waitForSavedImage(); // the frame is in flight until it is stored
+                                if (close) im.flush();
+                            } catch(Throwable t) {
+                                synchronized(errors) {errors.addExceptions(new Pair<>("channel: "+im.channelIdx+" frame: "+im.frame, t));}
+                            } finally {
+                                permits.release();
+                            }
+                        });
+                    } catch(Throwable t) {
+                        synchronized(errors) {errors.addExceptions(new Pair<>("channel: "+im.channelIdx+" frame: "+im.frame, t));}
+                        permits.release();
+                    }
+                });
+            }
+            compute.shutdown();
+            compute.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); // all writing tasks are submitted
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            compute.shutdownNow();
+            writer.shutdownNow();
+        }
+        if (!errors.isEmpty()) throw errors;
         long tEnd = System.currentTimeMillis();
-        logger.debug("apply transformation & save: total time: {}, for {} time points and {} channels", tEnd-tStart, getFrameNumber(), getChannelNumber() );
+        logger.debug("apply transformation & save: total time: {}, for {} time points and {} channels {}", tEnd-tStart, getFrameNumber(), getChannelNumber(), Utils.getMemoryUsage() );
+    }
+    
+    private static int getInFlightFrameNumber(Image image) {
+        long frameBytes = 2l * image.sizeXYZ() * Math.max(4, image.getBitDepth()/8); // source & transformed images, transformations are usually computed in float
+        Runtime rt = Runtime.getRuntime();
+        long available = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+        long n = (long)(available * IN_FLIGHT_MEMORY_FRACTION) / Math.max(1, frameBytes);
+        return (int)Math.max(1, Math.min(MAX_IN_FLIGHT_FRAMES, n));
     }
     
     public void deleteFromDAO() {
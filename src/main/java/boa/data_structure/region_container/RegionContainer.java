@@ -20,14 +20,19 @@ package boa.data_structure.region_container;
 
 import boa.data_structure.Region;
 import boa.data_structure.StructureObject;
+import boa.image.BoundingBox;
 import boa.image.MutableBoundingBox;
 import boa.image.SimpleBoundingBox;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
+import boa.utils.JSONUtils;
 import java.util.Map;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
- *
+ * Persistent representation of the region of a {@link StructureObject}. 
+ * When loaded from a DAO, only the header (bounds, is2D) is decoded: the payload (voxels, ROI...) is decoded at first access to the region, so that objects can be navigated without the cost of decoding their regions
  * @author Jean Ollion
  */
 
@@ -37,6 +42,7 @@ public abstract class RegionContainer {
     protected transient StructureObject structureObject;
     SimpleBoundingBox bounds;
     boolean is2D;
+    private volatile Object encodedPayload; // JSON string or BinaryReader positioned at the start of the binary payload, null once decoded
     public RegionContainer(StructureObject structureObject) {
         this.is2D = structureObject.getRegion().is2D();
         this.structureObject=structureObject;
@@ -48,16 +54,61 @@ public abstract class RegionContainer {
     protected float getScaleXY() {return structureObject.getMicroscopyField().getScaleXY();}
     protected float getScaleZ() {return structureObject.getMicroscopyField().getScaleZ();}
     public boolean is2D() {return is2D;}
+    public BoundingBox getBounds() {return bounds;}
     public abstract Region getRegion();
+    /**
+     * 
+     * @return whether the payload of this container has been decoded
+     */
+    public boolean isPayloadDecoded() {return encodedPayload==null;}
+    /**
+     * Decodes the payload if it has not been done yet. Must be called by implementations before accessing the payload
+     */
+    protected void decodePayload() {
+        if (encodedPayload==null) return;
+        synchronized(this) {
+            Object encoded = encodedPayload;
+            if (encoded==null) return;
+            if (encoded instanceof BinaryReader) initPayloadFromBinary((BinaryReader)encoded);
+            else initPayloadFromJSON(JSONUtils.parse((String)encoded));
+            encodedPayload = null;
+        }
+    }
+    /**
+     * 
+     * @return false if this container is fully described by its header
+     */
+    protected boolean hasPayload() {return true;}
+    protected void initPayloadFromJSON(Map<String, Object> json) {}
+    protected void initPayloadFromBinary(BinaryReader in) {}
+    /**
+     * Writes the payload in the format read by {@link #initPayloadFromBinary(boa.utils.BinaryReader) }
+     * @param out 
+     */
+    protected void writePayload(BinaryWriter out) {}
+    protected void discardPayload() {encodedPayload = null;}
     
     public abstract void deleteRegion();
     public abstract void relabelRegion(int newIdx);
     public void initFromJSON(Map<String, Object> json) {
-        JSONArray bds =  (JSONArray)json.get("bounds");
+        initHeader((JSONArray)json.get("bounds"), (Boolean)json.get("is2D"));
+        if (hasPayload()) initPayloadFromJSON(json);
+    }
+    /**
+     * Only the header is parsed: the payload is kept in its JSON form until first access
+     * @param json JSON object
+     * @param entries value ranges of the top-level entries of {@param json}
+     */
+    protected void initFromJSON(String json, Map<String, int[]> entries) {
+        int[] bds = entries.get("bounds");
+        int[] is2DR = entries.get("is2D");
+        initHeader(bds==null ? null : (JSONArray)JSONUtils.parseValue(json.substring(bds[0], bds[1])), is2DR==null ? null : Boolean.valueOf(json.substring(is2DR[0], is2DR[1])));
+        if (hasPayload()) encodedPayload = json;
+    }
+    private void initHeader(JSONArray bds, Boolean is2D) {
         this.bounds=new MutableBoundingBox();
         this.bounds.initFromJSONEntry(bds);
-        if (json.containsKey("is2D")) is2D = (Boolean)json.get("is2D");
-        else is2D = true; // for retrocompatibility. do not call to structure object's method at it may not be fully initiated and may not have access to dataset
+        this.is2D = is2D==null ? true : is2D; // for retrocompatibility. do not call to structure object's method at it may not be fully initiated and may not have access to dataset
     }
     public JSONObject toJSON() {
         JSONObject res = new JSONObject();
@@ -65,6 +116,19 @@ public abstract class RegionContainer {
         res.put("is2D", is2D);
         return res;
     }
+    public void initFromBinary(BinaryReader in) {
+        int xMin = in.readSignedVarInt();
+        int yMin = in.readSignedVarInt();
+        int zMin = in.readSignedVarInt();
+        this.bounds = new SimpleBoundingBox(xMin, xMin+in.readSignedVarInt(), yMin, yMin+in.readSignedVarInt(), zMin, zMin+in.readSignedVarInt());
+        is2D = in.readBoolean();
+        if (hasPayload()) encodedPayload = in; // in is not read further by callers: region is the last element of the binary entry
+    }
+    public void toBinary(BinaryWriter out) {
+        out.writeSignedVarInt(bounds.xMin()).writeSignedVarInt(bounds.yMin()).writeSignedVarInt(bounds.zMin());
+        out.writeSignedVarInt(bounds.xMax()-bounds.xMin()).writeSignedVarInt(bounds.yMax()-bounds.yMin()).writeSignedVarInt(bounds.zMax()-bounds.zMin());
+        out.writeBoolean(is2D);
+    }
     protected RegionContainer() {}
     public static RegionContainer createFromJSON(StructureObject o, Map json) {
         RegionContainer res;
@@ -75,4 +139,48 @@ public abstract class RegionContainer {
         res.initFromJSON(json);
         return res;
     }
+    /**
+     * 
+     * @param o
+     * @param json unparsed JSON of the container: only its header is parsed, the payload is decoded at first access to the region
+     * @return container
+     */
+    public static RegionContainer createFromJSON(StructureObject o, String json) {
+        Map<String, int[]> entries = JSONUtils.getTopLevelValueRanges(json);
+        RegionContainer res;
+        if (entries.containsKey("x")) res = new RegionContainerVoxels(); // coord list
+        else if (entries.containsKey("roi")||entries.containsKey("roiZ")) res = new RegionContainerIjRoi();
+        else res = new RegionContainerBlankMask(); // only bounds
+        res.setStructureObject(o);
+        res.initFromJSON(json, entries);
+        return res;
+    }
+    // binary type codes. Do not modify: they are persisted
+    private static final byte BINARY_BLANK_MASK = 0, BINARY_VOXELS = 1, BINARY_IJROI = 2;
+    public static void writeBinary(RegionContainer container, BinaryWriter out) {
+        if (container instanceof RegionContainerVoxels) out.writeByte(BINARY_VOXELS);
+        else if (container instanceof RegionContainerIjRoi) out.writeByte(BINARY_IJROI);
+        else out.writeByte(BINARY_BLANK_MASK);
+        container.toBinary(out);
+    }
+    public static RegionContainer createFromBinary(StructureObject o, BinaryReader in) {
+        RegionContainer res;
+        byte type = in.readByte();
+        switch (type) {
+            case BINARY_VOXELS:
+                res = new RegionContainerVoxels();
+                break;
+            case BINARY_IJROI:
+                res = new RegionContainerIjRoi();
+                break;
+            case BINARY_BLANK_MASK:
+                res = new RegionContainerBlankMask();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown region container type: "+type);
+        }
+        res.setStructureObject(o);
+        res.initFromBinary(in);
+        return res;
+    }
 }
@@ -47,6 +47,8 @@ public class RegionContainerBlankMask extends RegionContainer {
     }
     
     @Override public void deleteRegion(){bounds=null;}
+    
+    @Override protected boolean hasPayload() {return false;}
 
     @Override
     public void relabelRegion(int newIdx) {
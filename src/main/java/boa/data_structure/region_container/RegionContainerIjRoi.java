@@ -46,6 +46,8 @@ import boa.image.SimpleImageProperties;
 import boa.image.SimpleOffset;
 import boa.image.TypeConverter;
 import boa.image.processing.ImageOperations;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
 import ij.plugin.filter.ThresholdToSelection;
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -121,11 +123,13 @@ public class RegionContainerIjRoi extends RegionContainer {
 
     @Override
     public Region getRegion() {
+        decodePayload();
         return new Region(getMask(), structureObject.getIdx() + 1, is2D);
     }
 
     @Override
     public void deleteRegion() {
+        discardPayload();
         bounds = null;
         roiZ = null;
     }
@@ -134,8 +138,7 @@ public class RegionContainerIjRoi extends RegionContainer {
     public void relabelRegion(int newIdx) {
     }
     @Override
-    public void initFromJSON(Map json) {
-        super.initFromJSON(json);
+    protected void initPayloadFromJSON(Map json) {
         if (json.containsKey("roi")) {
             roiZ = new ArrayList<>(1);
             roiZ.add(Base64.getDecoder().decode((String)json.get("roi")));
@@ -147,6 +150,7 @@ public class RegionContainerIjRoi extends RegionContainer {
     }
     @Override
     public JSONObject toJSON() {
+        decodePayload();
         JSONObject res = super.toJSON();
         if (roiZ ==null) encodeRoi();
         if (roiZ.size()>1) {
@@ -160,6 +164,28 @@ public class RegionContainerIjRoi extends RegionContainer {
         }
         return res;
     }
+    @Override
+    public void toBinary(BinaryWriter out) {
+        decodePayload();
+        super.toBinary(out);
+        if (roiZ ==null) encodeRoi();
+        writePayload(out);
+    }
+    @Override
+    protected void writePayload(BinaryWriter out) {
+        if (roiZ==null) {
+            out.writeVarInt(0);
+            return;
+        }
+        out.writeVarInt(roiZ.size());
+        for (byte[] bytes : roiZ) out.writeByteArray(bytes);
+    }
+    @Override
+    protected void initPayloadFromBinary(BinaryReader in) {
+        int n = in.readVarInt();
+        roiZ = new ArrayList<>(n);
+        for (int i = 0; i<n; ++i) roiZ.add(in.readByteArray());
+    }
     protected RegionContainerIjRoi() {}
     
     /**
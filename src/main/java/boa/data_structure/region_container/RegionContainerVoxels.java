@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.Map;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
 import boa.utils.JSONUtils;
 import java.util.Collection;
 import java.util.HashSet;
@@ -87,11 +89,13 @@ public class RegionContainerVoxels extends RegionContainer {
     }
     @Override
     public Region getRegion() {
+        decodePayload();
         return new Region(getVoxels(), structureObject.getIdx() + 1, bounds, is2D, structureObject.getScaleXY(), structureObject.getScaleZ());
     }
 
     @Override
     public void deleteRegion() {
+        discardPayload();
         bounds = null;
         x = null;
         y = null;
@@ -104,6 +108,7 @@ public class RegionContainerVoxels extends RegionContainer {
     
     @Override 
     public JSONObject toJSON() {
+        decodePayload();
         JSONObject res = super.toJSON();
         if (x!=null) res.put("x", JSONUtils.toJSONArray(x));
         if (y!=null) res.put("y", JSONUtils.toJSONArray(y));
@@ -111,8 +116,7 @@ public class RegionContainerVoxels extends RegionContainer {
         return res;
     }
     @Override 
-    public void initFromJSON(Map json) {
-        super.initFromJSON(json);
+    protected void initPayloadFromJSON(Map json) {
         if (!json.containsKey("x") || !json.containsKey("y")) throw new IllegalArgumentException("JSON object do no contain x & y values");
         JSONArray xJ = (JSONArray)json.get("x");
         JSONArray yJ = (JSONArray)json.get("y");
@@ -122,5 +126,43 @@ public class RegionContainerVoxels extends RegionContainer {
         y = JSONUtils.fromIntArray(yJ);
         if (zJ!=null) z = JSONUtils.fromIntArray(zJ);
     }
+    @Override
+    public void toBinary(BinaryWriter out) {
+        decodePayload();
+        super.toBinary(out);
+        writePayload(out);
+    }
+    @Override
+    protected void writePayload(BinaryWriter out) {
+        // count is shifted by one so that 0 encodes null coordinates. coordinates are relative to bounds so that they fit in 1 or 2 bytes
+        boolean hasCoords = x!=null && y!=null;
+        int n = hasCoords ? x.length : 0;
+        out.writeVarInt(hasCoords ? n+1 : 0);
+        out.writeBoolean(z!=null);
+        for (int i = 0; i<n; ++i) {
+            out.writeVarInt(x[i]-bounds.xMin());
+            out.writeVarInt(y[i]-bounds.yMin());
+            if (z!=null) out.writeVarInt(z[i]-bounds.zMin());
+        }
+    }
+    @Override
+    protected void initPayloadFromBinary(BinaryReader in) {
+        int n = in.readVarInt()-1;
+        boolean hasZ = in.readBoolean();
+        if (n<0) {
+            x = null;
+            y = null;
+            z = null;
+            return;
+        }
+        x = new int[n];
+        y = new int[n];
+        z = hasZ ? new int[n] : null;
+        for (int i = 0; i<n; ++i) {
+            x[i] = in.readVarInt()+bounds.xMin();
+            y[i] = in.readVarInt()+bounds.yMin();
+            if (hasZ) z[i] = in.readVarInt()+bounds.zMin();
+        }
+    }
     protected RegionContainerVoxels() {}
 }
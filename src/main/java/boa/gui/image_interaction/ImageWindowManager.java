@@ -24,6 +24,7 @@ import boa.core.DefaultWorker;
 import static boa.data_structure.Measurements.asString;
 import boa.data_structure.StructureObject;
 import boa.data_structure.StructureObjectUtils;
+import boa.data_structure.dao.DBMapObjectDAO;
 import static boa.data_structure.StructureObjectUtils.frameComparator;
 import static boa.data_structure.StructureObjectUtils.setAllChildren;
 import boa.image.BoundingBox;
@@ -73,12 +74,14 @@ import boa.utils.ArrayFileWriter;
 import boa.utils.HashMapGetCreate;
 import boa.utils.HashMapGetCreate.Factory;
 import boa.utils.HashMapGetCreate.SetFactory;
+import boa.utils.Id;
 import boa.utils.Pair;
 import static boa.utils.Pair.unpairKeys;
 import static boa.utils.Pair.unpairValues;
 import boa.utils.Palette;
 import boa.utils.Utils;
 import boa.utils.geom.Point;
+import com.google.common.collect.Sets;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -124,6 +127,7 @@ public abstract class ImageWindowManager<I, U, V> {
     protected final HashMapGetCreate<Image, Set<V>> displayedLabileTrackRois = new HashMapGetCreate<>(new SetFactory<>());
     
     protected final Map<Image, DefaultWorker> runningWorkers = new HashMap<>();
+    private final Set<Pair<DBMapObjectDAO, Pair<Id, Integer>>> pinnedObjects = new HashSet<>();
     
     public ImageWindowManager(ImageObjectListener listener, ImageDisplayer<I> displayer) {
         this.listener=null;
@@ -221,6 +225,24 @@ public abstract class ImageWindowManager<I, U, V> {
         displayedPrePocessedFrames.clear();
         displayedInteractiveImages.clear();
         testData.clear();
+        updatePinnedObjects();
+    }
+    /**
+     * Objects of interactive images are pinned in the cache of their DAO so that they are not evicted while displayed
+     */
+    protected void updatePinnedObjects() {
+        Set<Pair<DBMapObjectDAO, Pair<Id, Integer>>> displayed = new HashSet<>();
+        for (InteractiveImage i : imageObjectInterfaces.values()) {
+            StructureObject p = i.getParent();
+            if (!(p.getDAO() instanceof DBMapObjectDAO)) continue;
+            DBMapObjectDAO dao = (DBMapObjectDAO)p.getDAO();
+            displayed.add(new Pair<>(dao, new Pair<>(p.isRoot() ? null : p.getParentTrackHeadId(), p.getStructureIdx())));
+            if (i.getChildStructureIdx()!=p.getStructureIdx()) displayed.add(new Pair<>(dao, new Pair<>(p.getTrackHeadId(), i.getChildStructureIdx())));
+        }
+        for (Pair<DBMapObjectDAO, Pair<Id, Integer>> k : Sets.difference(pinnedObjects, displayed)) k.key.unpin(k.value.key, k.value.value);
+        for (Pair<DBMapObjectDAO, Pair<Id, Integer>> k : Sets.difference(displayed, pinnedObjects)) k.key.pin(k.value.key, k.value.value);
+        pinnedObjects.clear();
+        pinnedObjects.addAll(displayed);
     }
     public void closeNonInteractiveWindows() {
         closeLastInputImages(0);
@@ -264,6 +286,7 @@ public abstract class ImageWindowManager<I, U, V> {
         if (!imageObjectInterfaces.containsValue(i)) {
             //throw new RuntimeException("image object interface should be created through the manager");
             imageObjectInterfaces.put(i.getKey(), i);
+            updatePinnedObjects();
         }
         //T dispImage = getImage(image);
         imageObjectInterfaceMap.put(image, new InteractiveImageKey(i.parents, displayedStructureIdx, i.isTimeImage()));
@@ -349,6 +372,7 @@ public abstract class ImageWindowManager<I, U, V> {
     
     public void resetImageObjectInterface(StructureObject parent, int childStructureIdx) {
         imageObjectInterfaces.remove(new InteractiveImageKey(new ArrayList<StructureObject>(1){{add(parent);}}, childStructureIdx, false));
+        updatePinnedObjects();
     }
     
     public InteractiveImage getImageObjectInterface(StructureObject parent, int childStructureIdx, boolean createIfNotExisting) {
@@ -356,6 +380,7 @@ public abstract class ImageWindowManager<I, U, V> {
         if (i==null && createIfNotExisting) {
             i= new SimpleInteractiveImage(parent, childStructureIdx);
             imageObjectInterfaces.put(i.getKey(), i);
+            updatePinnedObjects();
         } 
         return i;
     }
@@ -372,6 +397,7 @@ public abstract class ImageWindowManager<I, U, V> {
             i = Kymograph.generateKymograph(parentTrack, childStructureIdx);
             long t1 = System.currentTimeMillis();
             imageObjectInterfaces.put(i.getKey(), i);
+            updatePinnedObjects();
             trackHeadTrackMap.getAndCreateIfNecessary(parentTrack.get(0)).add(parentTrack);
             i.setGUIMode(GUI.hasInstance());
             long t2 = System.currentTimeMillis();
@@ -499,6 +525,7 @@ public abstract class ImageWindowManager<I, U, V> {
         // ignore structure
         Iterator<Entry<InteractiveImageKey, InteractiveImage>> it = imageObjectInterfaces.entrySet().iterator();
         while(it.hasNext()) if (it.next().getKey().equalsIgnoreStructure(key)) it.remove();
+        updatePinnedObjects();
         Iterator<Entry<Image, InteractiveImageKey>> it2 = imageObjectInterfaceMap.entrySet().iterator();
         while(it2.hasNext()) if (it2.next().getValue().equalsIgnoreStructure(key)) it2.remove();
     }
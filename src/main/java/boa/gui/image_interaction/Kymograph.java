@@ -126,6 +126,23 @@ public abstract class Kymograph extends InteractiveImage {
         track.removeIf(o -> o.key.getFrame()<tpMin || o.key.getFrame()>tpMax);
     }
     public abstract Image generateEmptyImage(String name, Image type);
+    public String getImageName(int structureIdx) {
+        String structureName;
+        if (getParent().getExperiment()!=null) structureName = getParent().getExperiment().getStructure(structureIdx).getName(); 
+        else structureName= structureIdx+"";
+        String pStructureName;
+        if (getParent().getExperiment()!=null) pStructureName = getParent().getStructureIdx()<0? "": " " + getParent().getExperiment().getStructure(getParent().getStructureIdx()).getName(); 
+        else pStructureName= getParent().getStructureIdx()+"";
+        return "Kymograph of"+pStructureName+" P:"+getParent().getPositionIdx()+" Idx:"+getParent().getIdx()+" Frames ["+getParent().getFrame()+";"+parents.get(parents.size()-1).getFrame()+"]. Displayed image of: "+structureName;
+    }
+    /**
+     * 
+     * @param idx index of parent in track
+     * @return location of the parent at {@param idx} in the kymograph image
+     */
+    public BoundingBox getTrackOffset(int idx) {
+        return trackOffset[idx];
+    }
     @Override public <T extends InteractiveImage> T setDisplayPreFilteredImages(boolean displayPreFilteredImages) {
         super.setDisplayPreFilteredImages(displayPreFilteredImages);
         for (SimpleInteractiveImage m : trackObjects) m.setDisplayPreFilteredImages(displayPreFilteredImages);
@@ -139,14 +156,7 @@ public abstract class Kymograph extends InteractiveImage {
         long t0 = System.currentTimeMillis();
         Image image0 = trackObjects[0].generatemage(structureIdx, false);
         if (image0==null) return null;
-        String structureName;
-        if (getParent().getExperiment()!=null) structureName = getParent().getExperiment().getStructure(structureIdx).getName(); 
-        else structureName= structureIdx+"";
-        if (image0==null) return null;
-        String pStructureName;
-        if (getParent().getExperiment()!=null) pStructureName = getParent().getStructureIdx()<0? "": " " + getParent().getExperiment().getStructure(getParent().getStructureIdx()).getName(); 
-        else pStructureName= getParent().getStructureIdx()+"";
-        final Image displayImage =  generateEmptyImage("Kymograph of"+pStructureName+" P:"+getParent().getPositionIdx()+" Idx:"+getParent().getIdx()+" Frames ["+getParent().getFrame()+";"+parents.get(parents.size()-1).getFrame()+"]. Displayed image of: "+structureName, image0);
+        final Image displayImage =  generateEmptyImage(getImageName(structureIdx), image0);
         Image.pasteImage(image0, displayImage, trackOffset[0]);
         long t1 = System.currentTimeMillis();
         logger.debug("generate image: {} for structure: {}, ex in background?{}, time: {}ms", parents.get(0), structureIdx, background, t1-t0);
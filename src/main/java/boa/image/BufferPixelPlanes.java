@@ -0,0 +1,90 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Pixel planes stored in buffers (see {@link PixelStorage})
+ * @author Jean Ollion
+ */
+class BufferPixelPlanes extends Image.PixelPlanes {
+    final Buffer[] buffers;
+    BufferPixelPlanes(Buffer[] buffers, int sizeX) {
+        super(null, sizeX, 0, 0, 0);
+        this.buffers=buffers;
+    }
+    
+    @Override
+    Object newArray(int length) {
+        if (buffers instanceof FloatBuffer[]) return new float[length];
+        else if (buffers instanceof ShortBuffer[]) return new short[length];
+        else if (buffers instanceof ByteBuffer[]) return new byte[length];
+        else if (buffers instanceof IntBuffer[]) return new int[length];
+        else throw new IllegalArgumentException("Unsupported buffer type");
+    }
+    
+    @Override
+    void get(int z, int index, Object dest, int destIndex, int length) {
+        Buffer b = buffers[z];
+        if (b instanceof FloatBuffer) {
+            FloatBuffer d = ((FloatBuffer)b).duplicate();
+            d.position(index);
+            d.get((float[])dest, destIndex, length);
+        } else if (b instanceof ShortBuffer) {
+            ShortBuffer d = ((ShortBuffer)b).duplicate();
+            d.position(index);
+            d.get((short[])dest, destIndex, length);
+        } else if (b instanceof ByteBuffer) {
+            ByteBuffer d = ((ByteBuffer)b).duplicate();
+            d.position(index);
+            d.get((byte[])dest, destIndex, length);
+        } else if (b instanceof IntBuffer) {
+            IntBuffer d = ((IntBuffer)b).duplicate();
+            d.position(index);
+            d.get((int[])dest, destIndex, length);
+        } else throw new IllegalArgumentException("Unsupported buffer type");
+    }
+    
+    @Override
+    void put(int z, int index, Object source, int sourceIndex, int length) {
+        Buffer b = buffers[z];
+        if (b instanceof FloatBuffer) {
+            FloatBuffer d = ((FloatBuffer)b).duplicate();
+            d.position(index);
+            d.put((float[])source, sourceIndex, length);
+        } else if (b instanceof ShortBuffer) {
+            ShortBuffer d = ((ShortBuffer)b).duplicate();
+            d.position(index);
+            d.put((short[])source, sourceIndex, length);
+        } else if (b instanceof ByteBuffer) {
+            ByteBuffer d = ((ByteBuffer)b).duplicate();
+            d.position(index);
+            d.put((byte[])source, sourceIndex, length);
+        } else if (b instanceof IntBuffer) {
+            IntBuffer d = ((IntBuffer)b).duplicate();
+            d.position(index);
+            d.put((int[])source, sourceIndex, length);
+        } else throw new IllegalArgumentException("Unsupported buffer type");
+    }
+}
@@ -33,6 +33,12 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 
@@ -41,7 +47,7 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
     public final static Logger logger = LoggerFactory.getLogger(Image.class);
 
     public static void pasteImage(Image source, Image dest, Offset offset) {
-        if (source.getClass() != dest.getClass()) {
+        if (source.getBitDepth() != dest.getBitDepth()) { // views are subclasses of their image type
             throw new IllegalArgumentException("Paste Image: source and destination should be of the same type (source: " + source.getClass().getSimpleName() + " destination: " + dest.getClass().getSimpleName() + ")");
         }
         if (offset == null) {
@@ -50,25 +56,26 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
         if (source.sizeX() + offset.xMin() > dest.sizeX() || source.sizeY() + offset.yMin() > dest.sizeY() || source.sizeZ() + offset.zMin() > dest.sizeZ()) {
             throw new IllegalArgumentException("Paste Image: source (" + source.getBoundingBox().resetOffset() + ") does not fit in destination (" + dest.getBoundingBox().resetOffset() + ") offset: " + offset);
         }
-        Object[] sourceP = source.getPixelArray();
-        Object[] destP = dest.getPixelArray();
-        final int offDestFinal = dest.sizeX() * offset.yMin() + offset.xMin();
+        PixelPlanes sourceP = source.getReadablePixelPlanes();
+        PixelPlanes destP = dest.getWritablePixelPlanes();
+        final int offDestFinal = destP.getIndex(offset.xMin(), offset.yMin());
+        final int offSourceFinal = sourceP.getIndex(0, 0);
         int offDest = offDestFinal;
-        int offSource = 0;
+        int offSource = offSourceFinal;
         for (int z = 0; z < source.sizeZ(); ++z) {
             for (int y = 0; y < source.sizeY(); ++y) {
                 //logger.debug("paste imate: z source: {}, z dest: {}, y source: {} y dest: {} off source: {} off dest: {} size source: {} size dest: {}", z, z+offset.getzMin(), y, y+offset.getyMin(), offSource, off, ((byte[])sourceP[z]).length, ((byte[])destP[z+offset.getzMin()]).length);
-                System.arraycopy(sourceP[z], offSource, destP[z + offset.zMin()], offDest, source.sizeX());
-                offDest += dest.sizeX();
-                offSource += source.sizeX();
+                PixelPlanes.copy(sourceP, z, offSource, destP, z + offset.zMin(), offDest, source.sizeX());
+                offDest += destP.sizeX;
+                offSource += sourceP.sizeX;
             }
             offDest = offDestFinal;
-            offSource = 0;
+            offSource = offSourceFinal;
         }
     }
 
     public static void pasteImage(Image source, Image dest, Offset destinationOffset, BoundingBox sourceView) {
-        if (source.getClass() != dest.getClass()) {
+        if (source.getBitDepth() != dest.getBitDepth()) { // views are subclasses of their image type
             throw new IllegalArgumentException("Paste Image: source and destination should be of the same type (source: " + source.getClass().getSimpleName() + " destination: " + dest.getClass().getSimpleName() + ")");
         }
         if (destinationOffset == null) {
@@ -83,19 +90,19 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
         if (sourceView.sizeX() == 0 || sourceView.sizeY() == 0 || sourceView.sizeZ() == 0) {
             throw new IllegalArgumentException("Source view volume null: sizeX:" + sourceView.sizeX() + " sizeY:" + sourceView.sizeY() + " sizeZ:" + sourceView.sizeZ());
         }
-        Object[] sourceP = source.getPixelArray();
-        Object[] destP = dest.getPixelArray();
-        final int offDestFinal = dest.sizeX() * destinationOffset.yMin() + destinationOffset.xMin();
+        PixelPlanes sourceP = source.getReadablePixelPlanes();
+        PixelPlanes destP = dest.getWritablePixelPlanes();
+        final int offDestFinal = destP.getIndex(destinationOffset.xMin(), destinationOffset.yMin());
         destinationOffset.translate(new SimpleOffset(sourceView).reverseOffset()); //loop is made over source coords
         int offDest = offDestFinal;
-        final int offSourceFinal = sourceView.xMin() + sourceView.yMin() * source.sizeX();
+        final int offSourceFinal = sourceP.getIndex(sourceView.xMin(), sourceView.yMin());
         int offSource = offSourceFinal;
         for (int z = sourceView.zMin(); z <= sourceView.zMax(); ++z) {
             for (int y = sourceView.yMin(); y <= sourceView.yMax(); ++y) {
                 //logger.debug("paste image: z source: {}, z dest: {}, y source: {} y dest: {} x source: {} x dest: {}", z, z+destinationOffset.getzMin(), y, y+destinationOffset.getyMin(), offSource-y*source.getSizeX(), offDest-(y+destinationOffset.getyMin())*dest.getSizeX());
-                System.arraycopy(sourceP[z], offSource, destP[z + destinationOffset.zMin()], offDest, sourceView.sizeX());
-                offDest += dest.sizeX();
-                offSource += source.sizeX();
+                PixelPlanes.copy(sourceP, z, offSource, destP, z + destinationOffset.zMin(), offDest, sourceView.sizeX());
+                offDest += destP.sizeX;
+                offSource += sourceP.sizeX;
             }
             offDest = offDestFinal;
             offSource = offSourceFinal;
@@ -123,6 +130,13 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
     }
     
     public ImageProperties getProperties() {return new SimpleImageProperties(this);}
+    /**
+     * 
+     * @return location of the pixels of this image
+     */
+    public PixelStorage getPixelStorage() {
+        return PixelStorage.HEAP;
+    }
     public static <T extends Image<T>> T createEmptyImage(int bitDepth) {
         switch(bitDepth) {
             case 8:
@@ -145,6 +159,36 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
         else throw new IllegalArgumentException("unsupported image type");
     }
     
+    /**
+     * 
+     * @param storage location of the pixels of the created image. If null, pixels are stored in the heap
+     * @return blank image of same type as {@param imageType} with properties {@param properties}, with pixels stored in {@param storage}
+     */
+    public static <T extends Image<T>> T createEmptyImage(String name, Image<T> imageType, ImageProperties properties, PixelStorage storage) {
+        if (storage==null || PixelStorage.HEAP.equals(storage)) return createEmptyImage(name, imageType, properties);
+        if (imageType instanceof ImageByte) return (T)new ImageByteOffHeap(name, properties, storage);
+        else if (imageType instanceof ImageShort) return (T)new ImageShortOffHeap(name, properties, storage);
+        else if (imageType instanceof ImageInt) return (T)new ImageIntOffHeap(name, properties, storage);
+        else if (imageType instanceof ImageFloat) return (T)new ImageFloatOffHeap(name, properties, storage);
+        else throw new IllegalArgumentException("unsupported image type");
+    }
+    
+    /**
+     * 
+     * @param sizeX size of the image along X axis
+     * @param storage location of the buffers
+     * @param planes one buffer per plane, of type FloatBuffer, ShortBuffer, ByteBuffer or IntBuffer, such as a region of memory-mapped file. Buffers are used without copy. 
+     * @return image whose pixels are stored in {@param planes}
+     */
+    public static Image createImageFromBuffers(String name, int sizeX, PixelStorage storage, Buffer... planes) {
+        ImageProperties props = new SimpleImageProperties(new SimpleBoundingBox(0, sizeX-1, 0, planes[0].capacity()/sizeX-1, 0, planes.length-1), 1, 1);
+        if (planes[0] instanceof ByteBuffer) return new ImageByteOffHeap(name, props, storage, Arrays.copyOf(planes, planes.length, ByteBuffer[].class));
+        else if (planes[0] instanceof ShortBuffer) return new ImageShortOffHeap(name, props, storage, Arrays.copyOf(planes, planes.length, ShortBuffer[].class));
+        else if (planes[0] instanceof FloatBuffer) return new ImageFloatOffHeap(name, props, storage, Arrays.copyOf(planes, planes.length, FloatBuffer[].class));
+        else if (planes[0] instanceof IntBuffer) return new ImageIntOffHeap(name, props, storage, Arrays.copyOf(planes, planes.length, IntBuffer[].class));
+        else throw new IllegalArgumentException("Buffers should be of type byte, short, float or int");
+    }
+    
     public static Image createImageFrom2DPixelArray(String name, Object pixelArray, int sizeX) {
         if (pixelArray instanceof byte[]) return new ImageByte(name, sizeX, (byte[])pixelArray);
         else if (pixelArray instanceof short[]) return new ImageShort(name, sizeX, (short[])pixelArray);
@@ -154,6 +198,14 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
     }
     
     public abstract I getZPlane(int idxZ);
+    /**
+     * 
+     * @return this image if its pixels are stored in the heap, otherwise a copy of this image in the heap, made plane by plane. Unlike {@link #getPixelArray()}, pixels of this image are not moved
+     */
+    public I getHeapImage() {
+        if (getPixelStorage()==PixelStorage.HEAP) return (I)this;
+        return mergeZPlanes(splitZPlanes()).setName(name);
+    }
     
     /**
      * 
@@ -272,6 +324,10 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
     public abstract void setPixelWithOffset(int x, int y, int z, double value);
     public abstract void setPixel(int xy, int z, double value);
     public abstract void setPixelWithOffset(int xy, int z, double value);
+    /**
+     * Images whose pixels are not stored in the heap (see {@link PixelStorage}) move all their pixels to the heap when this method is called. To read pixels without moving them, use {@link #getHeapImage()} or the accessors of this class
+     * @return pixels of this image, one array per Z plane
+     */
     protected abstract Object[] getPixelArray();
     public abstract I duplicate(String name);
     public I duplicate() {return duplicate(name);}
@@ -290,6 +346,25 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
         return StreamConcatenation.concat((DoubleStream[])IntStream.range(minZ-(maskHasAbsoluteOffset?zMin:0), maxZ-(maskHasAbsoluteOffset?zMin:0)).mapToObj(z->streamPlane(z, mask, maskHasAbsoluteOffset)).filter(s->s!=DoubleStream.empty()).toArray(s->new DoubleStream[s]));
     }
     public abstract DoubleStream streamPlane(int z, ImageMask mask, boolean maskHasAbsoluteOffset);
+    /**
+     * 
+     * @param z plane of this image
+     * @param mask
+     * @param maskHasAbsoluteOffset
+     * @return indices within plane {@param z} of the pixels of this image that are inside {@param mask}. Used by images that do not store their pixels in arrays
+     */
+    protected IntStream streamIndicesInsideMask(int z, ImageMask mask, boolean maskHasAbsoluteOffset) {
+        if (z<0 || z>=sizeZ) return IntStream.empty();
+        if (!maskHasAbsoluteOffset && sameDimensions(mask)) return IntStream.range(0, sizeXY).filter(i -> mask.insideMask(i, z));
+        int dX = maskHasAbsoluteOffset ? xMin : 0;
+        int dY = maskHasAbsoluteOffset ? yMin : 0;
+        int zz = maskHasAbsoluteOffset ? z+zMin : z;
+        return IntStream.range(0, sizeXY).filter(i -> {
+            int x = i%sizeX+dX;
+            int y = i/sizeX+dY;
+            return mask.containsWithOffset(x, y, zz) && mask.insideMaskWithOffset(x, y, zz);
+        });
+    }
     
     public static DoubleStream stream(Collection<Image> images) {
         // get one single plane collection and concatenate
@@ -391,17 +466,102 @@ public abstract class Image<I extends Image<I>> extends SimpleImageProperties<I>
             z_max = sizeZ - 1;
         }
         int sizeXCopyDest = x_max - offXSource + 1;
+        PixelPlanes sourceP = getReadablePixelPlanes();
+        PixelPlanes destP = res.getWritablePixelPlanes();
         for (int z = z_min; z <= z_max; ++z) {
-            int offYSource = y_min * sizeX;
+            int offYSource = sourceP.getIndex(offXSource, y_min);
             int offYDest = oY_i;
             for (int y = y_min; y <= y_max; ++y) {
-                System.arraycopy(getPixelArray()[z], offYSource + offXSource, res.getPixelArray()[z + oZ], offYDest + offXDest, sizeXCopyDest);
+                PixelPlanes.copy(sourceP, z, offYSource, destP, z + oZ, offYDest + offXDest, sizeXCopyDest);
                 offYDest += sizeXDest;
-                offYSource += sizeX;
+                offYSource += sourceP.sizeX;
             }
         }
         return res;
     }
+    
+    public I cropViewWithOffset(BoundingBox bounds) {
+        return cropView(new SimpleBoundingBox(bounds).translate(getOffset().reverseOffset()));
+    }
+    
+    /**
+     * Same as {@link #crop(BoundingBox)} except that no pixels are copied: the returned image reads pixels from the planes of this image. Pixels are copied only when the returned image is modified or when its pixel array is requested.
+     * This image should not be modified while the returned image is in use, and it remains reachable as long as the returned image is: use {@link #crop(BoundingBox)} for images that are kept (e.g. raw images of objects). 
+     * If {@param bounds} are not included in this image, or if this image type does not support views, the result of {@link #crop(BoundingBox)} is returned
+     * @param bounds bounds relative to this image
+     * @return image view within {@param bounds}
+     */
+    public I cropView(BoundingBox bounds) {
+        if (!BoundingBox.isIncluded(bounds, new SimpleBoundingBox(this).resetOffset())) return crop(bounds);
+        I res = createView(new SimpleImageProperties(bounds, scaleXY, scaleZ));
+        if (res==null) return crop(bounds);
+        res.setCalibration(this);
+        res.translate(this); // bounds are relative to this image
+        return res;
+    }
+    /**
+     * 
+     * @param properties bounds of the view, relative to this image
+     * @return a view of this image within {@param properties}, or null if views are not supported by this image type
+     */
+    protected I createView(ImageProperties properties) {
+        return null;
+    }
+    /**
+     * 
+     * @return planes in which pixels of this image can be read without copy
+     */
+    PixelPlanes getReadablePixelPlanes() {
+        return new PixelPlanes(getPixelArray(), sizeX, 0, 0, 0);
+    }
+    /**
+     * 
+     * @return planes in which pixels of this image can be written
+     */
+    PixelPlanes getWritablePixelPlanes() {
+        return new PixelPlanes(getPixelArray(), sizeX, 0, 0, 0);
+    }
+    /**
+     * Pixel (x, y, z) of an image is located at index {@link #getIndex(int, int) getIndex(x, y)} of plane z
+     */
+    static class PixelPlanes {
+        final Object[] planes; // null if pixels are not stored in arrays
+        final int sizeX, offsetX, offsetY, offsetZ;
+        PixelPlanes(Object[] planes, int sizeX, int offsetX, int offsetY, int offsetZ) {
+            this.planes=planes;
+            this.sizeX=sizeX;
+            this.offsetX=offsetX;
+            this.offsetY=offsetY;
+            this.offsetZ=offsetZ;
+        }
+        int getIndex(int x, int y) {
+            return x + offsetX + (y + offsetY) * sizeX;
+        }
+        Object newArray(int length) {
+            return Array.newInstance(planes.getClass().getComponentType().getComponentType(), length);
+        }
+        /**
+         * Copies {@param length} pixels from index {@param index} of plane {@param z} to {@param dest} array
+         */
+        void get(int z, int index, Object dest, int destIndex, int length) {
+            System.arraycopy(planes[z+offsetZ], index, dest, destIndex, length);
+        }
+        /**
+         * Copies {@param length} pixels from {@param source} array to index {@param index} of plane {@param z}
+         */
+        void put(int z, int index, Object source, int sourceIndex, int length) {
+            System.arraycopy(source, sourceIndex, planes[z+offsetZ], index, length);
+        }
+        static void copy(PixelPlanes source, int zSource, int indexSource, PixelPlanes dest, int zDest, int indexDest, int length) {
+            if (dest.planes!=null) source.get(zSource, indexSource, dest.planes[zDest+dest.offsetZ], indexDest, length);
+            else if (source.planes!=null) dest.put(zDest, indexDest, source.planes[zSource+source.offsetZ], indexSource, length);
+            else {
+                Object buffer = source.newArray(length);
+                source.get(zSource, indexSource, buffer, 0, length);
+                dest.put(zDest, indexDest, buffer, 0, length);
+            }
+        }
+    }
 
     public abstract int getBitDepth();
     @Override
@@ -39,6 +39,14 @@ public class ImageByte extends ImageInteger<ImageByte> {
         this.pixels=new byte[sizeZ][sizeXY];
     }
     
+    /**
+     * Builds an image with properties {@param properties} that uses {@param pixels} as pixel array. Pixel array can be null (see {@link ImageByteView})
+     */
+    ImageByte(String name, ImageProperties properties, byte[][] pixels) {
+        super(name, properties);
+        this.pixels=pixels;
+    }
+    
     public ImageByte(String name, int sizeX, int sizeY, int sizeZ) {
         super(name, sizeX, sizeY, sizeZ);
         this.pixels=new byte[sizeZ][sizeX*sizeY];
@@ -276,6 +284,15 @@ public class ImageByte extends ImageInteger<ImageByte> {
         return pixels;
     }
     
+    void setPixelArray(byte[][] pixels) {
+        this.pixels=pixels;
+    }
+    
+    @Override
+    protected ImageByte createView(ImageProperties properties) {
+        return new ImageByteView(name, properties, pixels, sizeX, properties.xMin(), properties.yMin(), properties.zMin());
+    }
+    
     @Override
     public ImageByte newImage(String name, ImageProperties properties) {
         return new ImageByte(name, properties);
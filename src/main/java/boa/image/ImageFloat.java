@@ -24,7 +24,7 @@ import java.util.stream.IntStream;
 
 public class ImageFloat extends Image<ImageFloat> {
 
-    final private float[][] pixels;
+    private float[][] pixels;
 
     /**
      * Builds a new blank image with same properties as {@param properties}
@@ -35,6 +35,14 @@ public class ImageFloat extends Image<ImageFloat> {
         super(name, properties);
         this.pixels=new float[sizeZ][sizeXY];
     }
+    /**
+     * Builds an image with properties {@param properties} that uses {@param pixels} as pixel array. Pixel array can be null (see {@link ImageFloatView})
+     */
+    ImageFloat(String name, ImageProperties properties, float[][] pixels) {
+        super(name, properties);
+        this.pixels=pixels;
+    }
+    
     public ImageFloat(String name, int sizeX, int sizeY, int sizeZ) {
         super(name, sizeX, sizeY, sizeZ);
         if (sizeZ>0 && sizeX>0 && sizeY>0) this.pixels=new float[sizeZ][sizeX*sizeY];
@@ -174,6 +182,15 @@ public class ImageFloat extends Image<ImageFloat> {
     public float[][] getPixelArray() {
         return pixels;
     }
+    
+    void setPixelArray(float[][] pixels) {
+        this.pixels=pixels;
+    }
+    
+    @Override
+    protected ImageFloat createView(ImageProperties properties) {
+        return new ImageFloatView(name, properties, pixels, sizeX, properties.xMin(), properties.yMin(), properties.zMin());
+    }
 
     @Override
     public ImageFloat newImage(String name, ImageProperties properties) {
@@ -0,0 +1,282 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * {@link ImageFloat} with pixels stored outside of the java heap (see {@link PixelStorage})
+ * Pixels are moved to the heap when the pixel array is requested, or at first modification if buffers are read-only, after which this image behaves as a regular {@link ImageFloat}
+ * @author Jean Ollion
+ */
+public class ImageFloatOffHeap extends ImageFloat {
+    private volatile FloatBuffer[] planes; // null once pixels have been moved to the heap
+    private final PixelStorage storage;
+    private final boolean readOnly;
+    
+    public ImageFloatOffHeap(String name, ImageProperties properties, PixelStorage storage) {
+        this(name, properties, storage, allocate(properties.sizeZ(), properties.sizeX()*properties.sizeY(), storage));
+    }
+    
+    ImageFloatOffHeap(String name, ImageProperties properties, PixelStorage storage, FloatBuffer[] planes) {
+        super(name, properties, null);
+        this.storage=storage;
+        this.planes=planes;
+        this.readOnly=planes.length>0 && planes[0].isReadOnly();
+    }
+    
+    private static FloatBuffer[] allocate(int sizeZ, int sizeXY, PixelStorage storage) {
+        ByteBuffer[] buffers = storage.allocate(sizeZ, sizeXY * 4);
+        FloatBuffer[] res = new FloatBuffer[sizeZ];
+        for (int z = 0; z<sizeZ; ++z) res[z] = buffers[z].order(ByteOrder.nativeOrder()).asFloatBuffer();
+        return res;
+    }
+    
+    @Override
+    public PixelStorage getPixelStorage() {
+        return planes==null ? PixelStorage.HEAP : storage;
+    }
+    
+    @Override
+    PixelPlanes getReadablePixelPlanes() {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getReadablePixelPlanes();
+        return new BufferPixelPlanes(p, sizeX);
+    }
+    
+    @Override
+    PixelPlanes getWritablePixelPlanes() {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) return super.getWritablePixelPlanes();
+        return new BufferPixelPlanes(p, sizeX);
+    }
+    
+    @Override
+    protected ImageFloat createView(ImageProperties properties) {
+        if (planes==null) return super.createView(properties);
+        return null;
+    }
+    
+    @Override
+    public float[][] getPixelArray() {
+        if (planes!=null) {
+            synchronized(this) {
+                FloatBuffer[] p = planes;
+                if (p!=null) {
+                    float[][] pixels = new float[sizeZ][sizeXY];
+                    BufferPixelPlanes source = new BufferPixelPlanes(p, sizeX);
+                    for (int z = 0; z<sizeZ; ++z) source.get(z, 0, pixels[z], 0, sizeXY);
+                    setPixelArray(pixels);
+                    planes = null;
+                }
+            }
+        }
+        return super.getPixelArray();
+    }
+    
+    @Override
+    public ImageFloat getZPlane(int idxZ) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getZPlane(idxZ);
+        if (idxZ>=sizeZ) throw new IllegalArgumentException("Z-plane cannot be superior to sizeZ");
+        return new ImageFloatOffHeap(name, new SimpleImageProperties(new SimpleBoundingBox(xMin, xMax, yMin, yMax, zMin+idxZ, zMin+idxZ), scaleXY, scaleZ), storage, new FloatBuffer[]{p[idxZ]});
+    }
+    
+    @Override
+    public ImageFloat duplicate(String name) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.duplicate(name);
+        ImageFloat res = Image.createEmptyImage(name, this, this, readOnly ? PixelStorage.HEAP : storage);
+        PixelPlanes source = new BufferPixelPlanes(p, sizeX);
+        PixelPlanes dest = res.getWritablePixelPlanes();
+        for (int z = 0; z<sizeZ; ++z) PixelPlanes.copy(source, z, 0, dest, z, 0, sizeXY);
+        return res;
+    }
+    
+    @Override public DoubleStream streamPlane(int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.streamPlane(z);
+        return IntStream.range(0, sizeXY).mapToDouble(i->p[z].get(i));
+    }
+    
+    @Override public DoubleStream streamPlane(int z, ImageMask mask, boolean maskHasAbsoluteOffset) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.streamPlane(z, mask, maskHasAbsoluteOffset);
+        return streamIndicesInsideMask(z, mask, maskHasAbsoluteOffset).mapToDouble(i->p[z].get(i));
+    }
+    
+    @Override
+    public float getPixel(int x, int y, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getPixel(x, y, z);
+        return p[z].get(x+y*sizeX);
+    }
+    
+    @Override
+    public float getPixel(int xy, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getPixel(xy, z);
+        return p[z].get(xy);
+    }
+    
+    @Override
+    public float getPixelWithOffset(int x, int y, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getPixelWithOffset(x, y, z);
+        return p[z-zMin].get(x-offsetXY+y*sizeX);
+    }
+    
+    @Override
+    public float getPixelWithOffset(int xy, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getPixelWithOffset(xy, z);
+        return p[z-zMin].get(xy-offsetXY);
+    }
+    
+    @Override
+    public float getPixelLinInterX(int x, int y, int z, float dx) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.getPixelLinInterX(x, y, z, dx);
+        if (dx==0) return p[z].get(x+y*sizeX);
+        return p[z].get(x+y*sizeX) * (1-dx) + dx * p[z].get(x+1+y*sizeX);
+    }
+    
+    @Override
+    public boolean insideMask(int x, int y, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.insideMask(x, y, z);
+        return p[z].get(x+y*sizeX)!=0;
+    }
+    
+    @Override
+    public boolean insideMask(int xy, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.insideMask(xy, z);
+        return p[z].get(xy)!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int x, int y, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.insideMaskWithOffset(x, y, z);
+        return p[z-zMin].get(x-offsetXY+y*sizeX)!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int xy, int z) {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.insideMaskWithOffset(xy, z);
+        return p[z-zMin].get(xy-offsetXY)!=0;
+    }
+    
+    @Override
+    public int count() {
+        FloatBuffer[] p = planes;
+        if (p==null) return super.count();
+        int count = 0;
+        for (int z = 0; z<sizeZ; ++z) {
+            for (int xy = 0; xy<sizeXY; ++xy) {
+                if (p[z].get(xy)!=0) ++count;
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, double value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(x, y, z, value);
+        } else p[z].put(x+y*sizeX, (float)value);
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, double value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(xy, z, value);
+        } else p[z].put(xy, (float)value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, double value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(x, y, z, value);
+        } else p[z-zMin].put(x-offsetXY+y*sizeX, (float)value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int xy, int z, double value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(xy, z, value);
+        } else p[z-zMin].put(xy-offsetXY, (float)value);
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, float value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(x, y, z, value);
+        } else p[z].put(x+y*sizeX, value);
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, float value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(xy, z, value);
+        } else p[z].put(xy, value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, float value) {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(x, y, z, value);
+        } else p[z-zMin].put(x-offsetXY+y*sizeX, value);
+    }
+    
+    @Override
+    public void invert() {
+        FloatBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.invert();
+            return;
+        }
+        double[] minAndMax = this.getMinAndMax(null);
+        double off = minAndMax[1] + minAndMax[0];
+        for (int z = 0; z < sizeZ; z++) {
+            for (int xy = 0; xy<sizeXY; ++xy) setPixel(xy, z, off - getPixel(xy, z));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * {@link ImageFloat} that reads its pixels within the pixel planes of another image without copying them (see {@link Image#cropView(BoundingBox)})
+ * Pixels are copied at first modification or when the pixel array is requested, after which this image behaves as a regular {@link ImageFloat}
+ * @author Jean Ollion
+ */
+public class ImageFloatView extends ImageFloat {
+    private volatile float[][] source; // null once pixels have been copied
+    private final int sourceSizeX, offX, offY, offZ;
+    
+    ImageFloatView(String name, ImageProperties properties, float[][] source, int sourceSizeX, int offX, int offY, int offZ) {
+        super(name, properties, null);
+        this.source=source;
+        this.sourceSizeX=sourceSizeX;
+        this.offX=offX;
+        this.offY=offY;
+        this.offZ=offZ;
+    }
+    
+    public boolean isView() {
+        return source!=null;
+    }
+    
+    private int idx(int x, int y) {
+        return x + offX + (y + offY) * sourceSizeX;
+    }
+    
+    private int idx(int xy) {
+        return idx(xy%sizeX, xy/sizeX);
+    }
+    
+    private void copyPixels() {
+        if (source==null) return;
+        synchronized(this) {
+            if (source==null) return;
+            float[][] pixels = new float[sizeZ][sizeXY];
+            for (int z = 0; z<sizeZ; ++z) {
+                for (int y = 0; y<sizeY; ++y) System.arraycopy(source[z+offZ], idx(0, y), pixels[z], y*sizeX, sizeX);
+            }
+            setPixelArray(pixels);
+            source = null;
+        }
+    }
+    
+    @Override
+    PixelPlanes getReadablePixelPlanes() {
+        float[][] s = source;
+        if (s==null) return super.getReadablePixelPlanes();
+        return new PixelPlanes(s, sourceSizeX, offX, offY, offZ);
+    }
+    
+    @Override
+    protected ImageFloat createView(ImageProperties properties) {
+        float[][] s = source;
+        if (s==null) return super.createView(properties);
+        return new ImageFloatView(name, properties, s, sourceSizeX, offX+properties.xMin(), offY+properties.yMin(), offZ+properties.zMin());
+    }
+    
+    @Override
+    public float[][] getPixelArray() {
+        copyPixels();
+        return super.getPixelArray();
+    }
+    
+    @Override
+    public ImageFloat getZPlane(int idxZ) {
+        if (source==null) return super.getZPlane(idxZ);
+        if (idxZ>=sizeZ) throw new IllegalArgumentException("Z-plane cannot be superior to sizeZ");
+        return cropView(new SimpleBoundingBox(0, sizeX-1, 0, sizeY-1, idxZ, idxZ));
+    }
+    
+    @Override
+    public ImageFloat duplicate(String name) {
+        float[][] s = source;
+        if (s==null) return super.duplicate(name);
+        float[][] newPixels = new float[sizeZ][sizeXY];
+        for (int z = 0; z<sizeZ; ++z) {
+            for (int y = 0; y<sizeY; ++y) System.arraycopy(s[z+offZ], idx(0, y), newPixels[z], y*sizeX, sizeX);
+        }
+        return (ImageFloat)new ImageFloat(name, sizeX, newPixels).setCalibration(this).translate(this);
+    }
+    
+    @Override public DoubleStream streamPlane(int z) {
+        float[][] s = source;
+        if (s==null) return super.streamPlane(z);
+        return IntStream.range(0, sizeXY).mapToDouble(i->s[z+offZ][idx(i)]);
+    }
+    
+    @Override public DoubleStream streamPlane(int z, ImageMask mask, boolean maskHasAbsoluteOffset) {
+        float[][] s = source;
+        if (s==null) return super.streamPlane(z, mask, maskHasAbsoluteOffset);
+        return streamIndicesInsideMask(z, mask, maskHasAbsoluteOffset).mapToDouble(i->s[z+offZ][idx(i)]);
+    }
+    
+    @Override
+    public float getPixel(int x, int y, int z) {
+        float[][] s = source;
+        if (s==null) return super.getPixel(x, y, z);
+        return s[z+offZ][idx(x, y)];
+    }
+    
+    @Override
+    public float getPixel(int xy, int z) {
+        float[][] s = source;
+        if (s==null) return super.getPixel(xy, z);
+        return s[z+offZ][idx(xy)];
+    }
+    
+    @Override
+    public float getPixelWithOffset(int x, int y, int z) {
+        float[][] s = source;
+        if (s==null) return super.getPixelWithOffset(x, y, z);
+        return s[z-zMin+offZ][idx(x-xMin, y-yMin)];
+    }
+    
+    @Override
+    public float getPixelWithOffset(int xy, int z) {
+        float[][] s = source;
+        if (s==null) return super.getPixelWithOffset(xy, z);
+        return s[z-zMin+offZ][idx(xy-offsetXY)];
+    }
+    
+    @Override
+    public float getPixelLinInterX(int x, int y, int z, float dx) {
+        float[][] s = source;
+        if (s==null) return super.getPixelLinInterX(x, y, z, dx);
+        int i = idx(x, y);
+        if (dx==0) return s[z+offZ][i];
+        return s[z+offZ][i] * (1-dx) + dx * s[z+offZ][i+1];
+    }
+    
+    @Override
+    public boolean insideMask(int x, int y, int z) {
+        float[][] s = source;
+        if (s==null) return super.insideMask(x, y, z);
+        return s[z+offZ][idx(x, y)]!=0;
+    }
+    
+    @Override
+    public boolean insideMask(int xy, int z) {
+        float[][] s = source;
+        if (s==null) return super.insideMask(xy, z);
+        return s[z+offZ][idx(xy)]!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int x, int y, int z) {
+        float[][] s = source;
+        if (s==null) return super.insideMaskWithOffset(x, y, z);
+        return s[z-zMin+offZ][idx(x-xMin, y-yMin)]!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int xy, int z) {
+        float[][] s = source;
+        if (s==null) return super.insideMaskWithOffset(xy, z);
+        return s[z-zMin+offZ][idx(xy-offsetXY)]!=0;
+    }
+    
+    @Override
+    public int count() {
+        float[][] s = source;
+        if (s==null) return super.count();
+        int count = 0;
+        for (int z = 0; z<sizeZ; ++z) {
+            for (int y = 0; y<sizeY; ++y) {
+                int off = idx(0, y);
+                for (int x = 0; x<sizeX; ++x) {
+                    if (s[z+offZ][off+x]!=0) ++count;
+                }
+            }
+        }
+        return count;
+    }
+    
+    // modifications: pixels are copied first
+    
+    @Override
+    public void invert() {
+        copyPixels();
+        super.invert();
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, double value) {
+        copyPixels();
+        super.setPixel(x, y, z, value);
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, double value) {
+        copyPixels();
+        super.setPixel(xy, z, value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, double value) {
+        copyPixels();
+        super.setPixelWithOffset(x, y, z, value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int xy, int z, double value) {
+        copyPixels();
+        super.setPixelWithOffset(xy, z, value);
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, float value) {
+        copyPixels();
+        super.setPixel(x, y, z, value);
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, float value) {
+        copyPixels();
+        super.setPixel(xy, z, value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, float value) {
+        copyPixels();
+        super.setPixelWithOffset(x, y, z, value);
+    }
+}
@@ -39,6 +39,14 @@ public class ImageInt extends ImageInteger<ImageInt> {
         this.pixels=new int[sizeZ][sizeXY];
     }
     
+    /**
+     * Builds an image with properties {@param properties} that uses {@param pixels} as pixel array. Pixel array can be null (see {@link ImageIntOffHeap})
+     */
+    ImageInt(String name, ImageProperties properties, int[][] pixels) {
+        super(name, properties);
+        this.pixels=pixels;
+    }
+    
     public ImageInt(String name, int sizeX, int sizeY, int sizeZ) {
         super(name, sizeX, sizeY, sizeZ);
         this.pixels=new int[sizeZ][sizeX*sizeY];
@@ -275,6 +283,10 @@ public class ImageInt extends ImageInteger<ImageInt> {
         return pixels;
     }
     
+    void setPixelArray(int[][] pixels) {
+        this.pixels=pixels;
+    }
+    
     @Override
     public ImageInt newImage(String name, ImageProperties properties) {
         return new ImageInt(name, properties);
@@ -18,73 +18,64 @@
  */
 package boa.image;
 
-import boa.data_structure.Region;
 import boa.data_structure.Region;
 import boa.data_structure.RegionPopulation;
 import boa.data_structure.Voxel;
-import boa.data_structure.Voxel;
-import boa.image.BlankMask;
-import boa.image.ImageInt;
-import boa.image.ImageInteger;
-import boa.image.ImageMask;
+import boa.image.processing.watershed.WatershedTransform;
+import boa.image.processing.watershed.WatershedTransform.WatershedConfiguration;
+import boa.utils.ThreadRunner;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import boa.image.processing.watershed.WatershedTransform;
-import boa.image.processing.watershed.WatershedTransform.WatershedConfiguration;
-import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
- *
+ * Connected-component labelling of masks. 
+ * Labelling is done in two passes over the mask with a union-find structure of provisional labels stored in primitive arrays. 
+ * Large 3D stacks can be labelled in parallel: slabs of planes are labelled independently and the labels are merged at the slab boundaries. 
+ * Final labels are ordered by the first voxel of each component in raster order (z, y, x)
  * @author Jean Ollion
  */
 public class ImageLabeller {
-    int[][] labels;
-    int sizeX;
-    HashMap<Integer, Spot> spots;
-    ImageMask mask;
     public static final int[][] neigh3DHalf = new int[][]{
-            {1, 1, -1}, {0, 1, -1}, {-1, 1, -1}, {1, 0, -1}, {0, 0, -1}, {-1, 0, -1}, {1, -1, -1}, {0, 1, -1}, {-1, -1, -1},
+            {1, 1, -1}, {0, 1, -1}, {-1, 1, -1}, {1, 0, -1}, {0, 0, -1}, {-1, 0, -1}, {1, -1, -1}, {0, -1, -1}, {-1, -1, -1},
             {1, -1, 0}, {0, -1, 0}, {-1, -1, 0}, {-1, 0, 0}
         };
     public static final int[][] neigh3DLowHalf = new int[][]{ {0, 0, -1}, {0, -1, 0},  {-1, 0, 0} };
     public static final int[][] neigh2D8Half = new int[][]{ {1, -1, 0}, {0, -1, 0}, {-1, -1, 0}, {-1, 0, 0} };
     public static final int[][] neigh2D4Half = new int[][]{ {0, -1, 0}, {-1, 0, 0} };
-    int[][] neigh;
+    /**
+     * Minimal number of voxels of a stack to be labelled in parallel
+     */
+    public static int PARALLEL_MIN_VOXELS = 1<<22;
+    final ImageMask mask;
+    final int sizeX, sizeY, sizeZ;
+    final int[][] neigh;
+    final ImageInt labelImage;
+    final int[][] labels;
+    int labelCount;
+    int[] sizes; // voxel count per label
+    int[] bounds; // xMin, xMax, yMin, yMax, zMin, zMax per label
     
-    protected ImageLabeller(ImageMask mask) {
+    protected ImageLabeller(ImageMask mask, boolean lowConnectivity) {
         this.mask=mask;
-        ImageInt imLabels = new ImageInt("labels", mask);
-        labels = imLabels.getPixelArray();
-        sizeX = mask.sizeX();
-        spots = new HashMap<Integer, Spot>();
+        this.sizeX = mask.sizeX();
+        this.sizeY = mask.sizeY();
+        this.sizeZ = mask.sizeZ();
+        if (sizeZ>1) neigh = lowConnectivity ? neigh3DLowHalf : neigh3DHalf;
+        else neigh = lowConnectivity ? neigh2D4Half : neigh2D8Half;
+        labelImage = new ImageInt("labels", mask);
+        labels = labelImage.getPixelArray();
     }
     
     public static Region[] labelImage(ImageMask mask) {
         if (mask instanceof BlankMask) return new Region[]{new Region((BlankMask)mask, 1, mask.sizeZ()==1)};
-        else {
-            ImageLabeller il = new ImageLabeller(mask);
-            if (mask.sizeZ()>1) il.neigh=ImageLabeller.neigh3DHalf;
-            else il.neigh=ImageLabeller.neigh2D8Half;
-            il.labelSpots();
-            return il.getObjects();
-        }
+        else return label(mask, false, mask.sizeXYZ()>=PARALLEL_MIN_VOXELS).getObjects();
     }
     
     public static Region[] labelImageLowConnectivity(ImageMask mask) {
         if (mask instanceof BlankMask) return new Region[]{new Region((BlankMask)mask, 1, mask.sizeZ()==1)};
-        else {
-            ImageLabeller il = new ImageLabeller(mask);
-            if (mask.sizeZ()>1) il.neigh=ImageLabeller.neigh3DLowHalf;
-            else il.neigh=ImageLabeller.neigh2D4Half;
-            il.labelSpots();
-            return il.getObjects();
-        }
+        else return label(mask, true, mask.sizeXYZ()>=PARALLEL_MIN_VOXELS).getObjects();
     }
     
     public static List<Region> labelImageList(ImageMask mask) {
@@ -94,6 +85,50 @@ public class ImageLabeller {
     public static List<Region> labelImageListLowConnectivity(ImageMask mask) {
         return new ArrayList<>(Arrays.asList(labelImageLowConnectivity(mask)));
     }
+    /**
+     * 
+     * @param mask
+     * @param lowConnectivity if true 6-connectivity (4 in 2D) is used, otherwise 26-connectivity (8 in 2D)
+     * @param parallele if true, slabs of planes are labelled in parallel
+     * @return labeller containing label image, size and bounds of each label
+     */
+    public static ImageLabeller label(ImageMask mask, boolean lowConnectivity, boolean parallele) {
+        return label(mask, lowConnectivity, parallele ? Math.min(mask.sizeZ(), ThreadRunner.getMaxCPUs()) : 1);
+    }
+    /**
+     * 
+     * @param slabNumber number of slabs of planes labelled independently, in range [1; sizeZ]
+     */
+    static ImageLabeller label(ImageMask mask, boolean lowConnectivity, int slabNumber) {
+        ImageLabeller il = new ImageLabeller(mask, lowConnectivity);
+        il.labelComponents(Math.max(1, Math.min(il.sizeZ, slabNumber)));
+        return il;
+    }
+    /**
+     * 
+     * @return image in which each voxel has the label of its component, 0 outside the mask. Same landmark as the mask. 
+     */
+    public ImageInt getLabelImage() {
+        return labelImage;
+    }
+    public int getLabelCount() {
+        return labelCount;
+    }
+    /**
+     * @param label in range [1; {@link #getLabelCount()}]
+     * @return number of voxels of component {@param label}
+     */
+    public int getSize(int label) {
+        return sizes[label];
+    }
+    /**
+     * @param label in range [1; {@link #getLabelCount()}]
+     * @return bounds of component {@param label}, relative to the mask
+     */
+    public BoundingBox getBounds(int label) {
+        return new SimpleBoundingBox(bounds[6*label], bounds[6*label+1], bounds[6*label+2], bounds[6*label+3], bounds[6*label+4], bounds[6*label+5]);
+    }
+    
     /**
      * 
      * @param seeds seeds contained by final objects 
@@ -117,8 +152,8 @@ public class ImageLabeller {
 
             @Override
             public boolean checkFusionCriteria(WatershedTransform.Spot s1, WatershedTransform.Spot s2, Voxel currentVoxel) {
-                Voxel v1 = s1.voxels.iterator().next();
-                Voxel v2 = s2.voxels.iterator().next();
+                Voxel v1 = s1.getVoxel(0);
+                Voxel v2 = s2.getVoxel(0);
                 return mask.getPixel(v1.x, v1.y, v1.z)==mask.getPixel(v2.x, v2.y, v2.z) && mask.getPixel(v1.x, v1.y, v1.z)==mask.getPixel(currentVoxel.x, currentVoxel.y, currentVoxel.z);
             }
         };
@@ -126,85 +161,160 @@ public class ImageLabeller {
         RegionPopulation pop = WatershedTransform.watershed(mask, null, WatershedTransform.createSeeds(seeds, mask.sizeZ()==1, mask.getScaleXY(), mask.getScaleZ()), config);
         return pop;
     }
-    protected Region[] getObjects() {
-        Region[] res = new Region[spots.size()];
-        int label = 0;
-        for (Spot s : spots.values()) res[label++]= new Region(s.voxels, label, mask.sizeZ()==1, mask.getScaleXY(), mask.getScaleZ());
+    /**
+     * 
+     * @return one region per label, backed by a mask cropped to the bounds of the component. Coordinates are relative to the mask
+     */
+    public Region[] getObjects() {
+        ImageByte[] masks = new ImageByte[labelCount+1];
+        for (int l = 1; l<=labelCount; ++l) masks[l] = new ImageByte("", new SimpleImageProperties(getBounds(l), mask.getScaleXY(), mask.getScaleZ()));
+        for (int z = 0; z<sizeZ; ++z) {
+            for (int xy = 0; xy<sizeX*sizeY; ++xy) {
+                int l = labels[z][xy];
+                if (l!=0) {
+                    ImageByte m = masks[l];
+                    m.setPixel(xy%sizeX - m.xMin(), xy/sizeX - m.yMin(), z - m.zMin(), 1);
+                }
+            }
+        }
+        Region[] res = new Region[labelCount];
+        for (int l = 1; l<=labelCount; ++l) res[l-1] = new Region(masks[l], l, sizeZ==1);
         return res;
     }
     
-    private void labelSpots() {
-        int currentLabel = 1;
-        Spot currentSpot;
-        Voxel v;
-        int nextLabel;
-        int xy;
-        for (int z = 0; z < mask.sizeZ(); ++z) {
-            for (int y = 0; y < mask.sizeY(); ++y) {
-                for (int x = 0; x < sizeX; ++x) {
-                    xy = x + y * sizeX;
-                    if (mask.insideMask(xy, z)) {
-                        currentSpot = null;
-                        v = new Voxel(x, y, z);
-                        for (int[] t : neigh) {
-                            if (mask.contains(x + t[0], y + t[1], z + t[2])) {
-                                nextLabel = labels[z + t[2]][xy + t[0] + t[1] * sizeX];
-                                if (nextLabel != 0) {
-                                    if (currentSpot == null) {
-                                        currentSpot = spots.get(nextLabel);
-                                        currentSpot.addVox(v);
-                                    } else if (nextLabel != currentSpot.label) {
-                                        currentSpot = currentSpot.fusion(spots.get(nextLabel));
-                                        currentSpot.addVox(v);
-                                    }
-                                }
-                            }
-                        }
-                        if (currentSpot == null) {
-                            spots.put(currentLabel, new Spot(currentLabel++, v));
-                        }
+    private void labelComponents(int slabNumber) {
+        Slab[] slabs = new Slab[slabNumber];
+        for (int i = 0; i<slabNumber; ++i) slabs[i] = new Slab(i * sizeZ / slabNumber, (i+1) * sizeZ / slabNumber);
+        // first pass: provisional labels within each slab
+        IntStream.range(0, slabNumber).parallel().forEach(i -> slabs[i].labelProvisional());
+        int total = 0;
+        for (Slab s : slabs) {
+            s.offset = total;
+            total += s.count;
+        }
+        int[] parent = new int[total+1];
+        for (Slab s : slabs) for (int l = 1; l<=s.count; ++l) parent[l+s.offset] = s.parent[l]+s.offset;
+        // merge labels at slab boundaries
+        for (int i = 1; i<slabNumber; ++i) {
+            int z = slabs[i].zMin;
+            for (int y = 0; y<sizeY; ++y) {
+                for (int x = 0; x<sizeX; ++x) {
+                    int l = labels[z][x+y*sizeX];
+                    if (l==0) continue;
+                    for (int[] t : neigh) {
+                        if (t[2]==0 || !inBounds(x+t[0], y+t[1])) continue;
+                        int nl = labels[z-1][x+t[0]+(y+t[1])*sizeX];
+                        if (nl!=0) union(parent, l+slabs[i].offset, nl+slabs[i-1].offset);
                     }
                 }
             }
         }
+        // final labels: roots are the lowest provisional labels, thus final labels are ordered by the first voxel of each component
+        int[] finalLabel = new int[total+1];
+        labelCount = 0;
+        for (int l = 1; l<=total; ++l) finalLabel[l] = parent[l]==l ? ++labelCount : finalLabel[parent[l]];
+        // second pass: relabel and compute size and bounds
+        IntStream.range(0, slabNumber).parallel().forEach(i -> slabs[i].relabel(finalLabel));
+        sizes = new int[labelCount+1];
+        bounds = new int[6*(labelCount+1)];
+        for (int l = 1; l<=labelCount; ++l) {
+            bounds[6*l] = bounds[6*l+2] = bounds[6*l+4] = Integer.MAX_VALUE;
+            bounds[6*l+1] = bounds[6*l+3] = bounds[6*l+5] = Integer.MIN_VALUE;
+        }
+        for (Slab s : slabs) {
+            for (int l = 1; l<=labelCount; ++l) {
+                if (s.sizes[l]==0) continue;
+                sizes[l] += s.sizes[l];
+                for (int b = 0; b<6; b+=2) {
+                    bounds[6*l+b] = Math.min(bounds[6*l+b], s.bounds[6*l+b]);
+                    bounds[6*l+b+1] = Math.max(bounds[6*l+b+1], s.bounds[6*l+b+1]);
+                }
+            }
+        }
     }
     
-    private class Spot {
-
-        Set<Voxel> voxels;
-        int label;
-
-        public Spot(int label, Voxel v) {
-            this.label = label;
-            this.voxels = new HashSet<>();
-            voxels.add(v);
-            labels[v.z][v.x+v.y*sizeX] = label;
+    private boolean inBounds(int x, int y) {
+        return x>=0 && x<sizeX && y>=0 && y<sizeY;
+    }
+    
+    /**
+     * Union by lowest root: parent[l]<=l for all labels
+     */
+    private static void union(int[] parent, int l1, int l2) {
+        int r1 = find(parent, l1), r2 = find(parent, l2);
+        if (r1<r2) parent[r2] = r1;
+        else if (r2<r1) parent[r1] = r2;
+    }
+    
+    private static int find(int[] parent, int l) {
+        while (parent[l]!=l) {
+            parent[l] = parent[parent[l]]; // path halving
+            l = parent[l];
         }
-
-        public void addVox(Voxel v) {
-            voxels.add(v);
-            labels[v.z][v.x+v.y*sizeX] = label;
+        return l;
+    }
+    
+    /**
+     * Planes [zMin; zMax) labelled independently
+     */
+    private class Slab {
+        final int zMin, zMax;
+        int[] parent = new int[64];
+        int count, offset;
+        int[] sizes, bounds;
+        Slab(int zMin, int zMax) {
+            this.zMin=zMin;
+            this.zMax=zMax;
         }
-
-        public void setLabel(int label) {
-            this.label = label;
-            for (Voxel v : voxels) {
-                labels[v.z][v.x+v.y*sizeX] = label;
+        void labelProvisional() {
+            for (int z = zMin; z<zMax; ++z) {
+                for (int y = 0; y<sizeY; ++y) {
+                    for (int x = 0; x<sizeX; ++x) {
+                        int xy = x + y * sizeX;
+                        if (!mask.insideMask(xy, z)) continue;
+                        int l = 0;
+                        for (int[] t : neigh) {
+                            if (z+t[2]<zMin || !inBounds(x+t[0], y+t[1])) continue;
+                            int nl = labels[z+t[2]][xy+t[0]+t[1]*sizeX];
+                            if (nl!=0) {
+                                if (l==0) l = nl;
+                                else if (nl!=l) union(parent, l, nl);
+                            }
+                        }
+                        if (l==0) { // new component
+                            l = ++count;
+                            if (count==parent.length) parent = Arrays.copyOf(parent, parent.length*2);
+                            parent[l] = l;
+                        }
+                        labels[z][xy] = l;
+                    }
+                }
             }
         }
-
-        public Spot fusion(Spot other) {
-            if (other.label < label) {
-                return other.fusion(this);
+        void relabel(int[] finalLabel) {
+            sizes = new int[labelCount+1];
+            bounds = new int[6*(labelCount+1)];
+            for (int z = zMin; z<zMax; ++z) {
+                for (int y = 0; y<sizeY; ++y) {
+                    for (int x = 0; x<sizeX; ++x) {
+                        int xy = x + y * sizeX;
+                        if (labels[z][xy]==0) continue;
+                        int l = finalLabel[labels[z][xy]+offset];
+                        labels[z][xy] = l;
+                        if (sizes[l]++==0) {
+                            bounds[6*l] = bounds[6*l+1] = x;
+                            bounds[6*l+2] = bounds[6*l+3] = y;
+                            bounds[6*l+4] = bounds[6*l+5] = z;
+                        } else {
+                            if (x<bounds[6*l]) bounds[6*l] = x;
+                            else if (x>bounds[6*l+1]) bounds[6*l+1] = x;
+                            if (y<bounds[6*l+2]) bounds[6*l+2] = y;
+                            else if (y>bounds[6*l+3]) bounds[6*l+3] = y;
+                            bounds[6*l+5] = z;
+                        }
+                    }
+                }
             }
-            spots.remove(other.label);
-            voxels.addAll(other.voxels);
-            other.setLabel(label);
-            return this;
-        }
-
-        public int getSize() {
-            return voxels.size();
         }
     }
 }
@@ -40,6 +40,14 @@ public class ImageShort extends ImageInteger<ImageShort> {
         this.pixels=new short[sizeZ][sizeXY];
     }
     
+    /**
+     * Builds an image with properties {@param properties} that uses {@param pixels} as pixel array. Pixel array can be null (see {@link ImageShortView})
+     */
+    ImageShort(String name, ImageProperties properties, short[][] pixels) {
+        super(name, properties);
+        this.pixels=pixels;
+    }
+    
     public ImageShort(String name, int sizeX, int sizeY, int sizeZ) {
         super(name, sizeX, sizeY, sizeZ);
         this.pixels=new short[sizeZ][sizeX*sizeY];
@@ -276,6 +284,15 @@ public class ImageShort extends ImageInteger<ImageShort> {
         return pixels;
     }
     
+    void setPixelArray(short[][] pixels) {
+        this.pixels=pixels;
+    }
+    
+    @Override
+    protected ImageShort createView(ImageProperties properties) {
+        return new ImageShortView(name, properties, pixels, sizeX, properties.xMin(), properties.yMin(), properties.zMin());
+    }
+    
     @Override
     public ImageShort newImage(String name, ImageProperties properties) {
         return new ImageShort(name, properties);
@@ -0,0 +1,358 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * {@link ImageShort} with pixels stored outside of the java heap (see {@link PixelStorage})
+ * Pixels are moved to the heap when the pixel array is requested, or at first modification if buffers are read-only, after which this image behaves as a regular {@link ImageShort}
+ * @author Jean Ollion
+ */
+public class ImageShortOffHeap extends ImageShort {
+    private volatile ShortBuffer[] planes; // null once pixels have been moved to the heap
+    private final PixelStorage storage;
+    private final boolean readOnly;
+    
+    public ImageShortOffHeap(String name, ImageProperties properties, PixelStorage storage) {
+        this(name, properties, storage, allocate(properties.sizeZ(), properties.sizeX()*properties.sizeY(), storage));
+    }
+    
+    ImageShortOffHeap(String name, ImageProperties properties, PixelStorage storage, ShortBuffer[] planes) {
+        super(name, properties, null);
+        this.storage=storage;
+        this.planes=planes;
+        this.readOnly=planes.length>0 && planes[0].isReadOnly();
+    }
+    
+    private static ShortBuffer[] allocate(int sizeZ, int sizeXY, PixelStorage storage) {
+        ByteBuffer[] buffers = storage.allocate(sizeZ, sizeXY * 2);
+        ShortBuffer[] res = new ShortBuffer[sizeZ];
+        for (int z = 0; z<sizeZ; ++z) res[z] = buffers[z].order(ByteOrder.nativeOrder()).asShortBuffer();
+        return res;
+    }
+    
+    @Override
+    public PixelStorage getPixelStorage() {
+        return planes==null ? PixelStorage.HEAP : storage;
+    }
+    
+    @Override
+    PixelPlanes getReadablePixelPlanes() {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getReadablePixelPlanes();
+        return new BufferPixelPlanes(p, sizeX);
+    }
+    
+    @Override
+    PixelPlanes getWritablePixelPlanes() {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) return super.getWritablePixelPlanes();
+        return new BufferPixelPlanes(p, sizeX);
+    }
+    
+    @Override
+    protected ImageShort createView(ImageProperties properties) {
+        if (planes==null) return super.createView(properties);
+        return null;
+    }
+    
+    @Override
+    public short[][] getPixelArray() {
+        if (planes!=null) {
+            synchronized(this) {
+                ShortBuffer[] p = planes;
+                if (p!=null) {
+                    short[][] pixels = new short[sizeZ][sizeXY];
+                    BufferPixelPlanes source = new BufferPixelPlanes(p, sizeX);
+                    for (int z = 0; z<sizeZ; ++z) source.get(z, 0, pixels[z], 0, sizeXY);
+                    setPixelArray(pixels);
+                    planes = null;
+                }
+            }
+        }
+        return super.getPixelArray();
+    }
+    
+    @Override
+    public ImageShort getZPlane(int idxZ) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getZPlane(idxZ);
+        if (idxZ>=sizeZ) throw new IllegalArgumentException("Z-plane cannot be superior to sizeZ");
+        return new ImageShortOffHeap(name, new SimpleImageProperties(new SimpleBoundingBox(xMin, xMax, yMin, yMax, zMin+idxZ, zMin+idxZ), scaleXY, scaleZ), storage, new ShortBuffer[]{p[idxZ]});
+    }
+    
+    @Override
+    public ImageShort duplicate(String name) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.duplicate(name);
+        ImageShort res = Image.createEmptyImage(name, this, this, readOnly ? PixelStorage.HEAP : storage);
+        PixelPlanes source = new BufferPixelPlanes(p, sizeX);
+        PixelPlanes dest = res.getWritablePixelPlanes();
+        for (int z = 0; z<sizeZ; ++z) PixelPlanes.copy(source, z, 0, dest, z, 0, sizeXY);
+        return res;
+    }
+    
+    @Override public DoubleStream streamPlane(int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.streamPlane(z);
+        return IntStream.range(0, sizeXY).mapToDouble(i->(p[z].get(i) & 0xffff));
+    }
+    
+    @Override public DoubleStream streamPlane(int z, ImageMask mask, boolean maskHasAbsoluteOffset) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.streamPlane(z, mask, maskHasAbsoluteOffset);
+        return streamIndicesInsideMask(z, mask, maskHasAbsoluteOffset).mapToDouble(i->(p[z].get(i) & 0xffff));
+    }
+    
+    @Override public IntStream streamIntPlane(int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.streamIntPlane(z);
+        return IntStream.range(0, sizeXY).map(i->(p[z].get(i) & 0xffff));
+    }
+    
+    @Override public IntStream streamIntPlane(int z, ImageMask mask, boolean maskHasAbsoluteOffset) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.streamIntPlane(z, mask, maskHasAbsoluteOffset);
+        return streamIndicesInsideMask(z, mask, maskHasAbsoluteOffset).map(i->(p[z].get(i) & 0xffff));
+    }
+    
+    @Override
+    public float getPixel(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixel(x, y, z);
+        return (float)(p[z].get(x+y*sizeX) & 0xffff);
+    }
+    
+    @Override
+    public float getPixel(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixel(xy, z);
+        return (float)(p[z].get(xy) & 0xffff);
+    }
+    
+    @Override
+    public float getPixelWithOffset(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelWithOffset(x, y, z);
+        return (float)(p[z-zMin].get(x-offsetXY+y*sizeX) & 0xffff);
+    }
+    
+    @Override
+    public float getPixelWithOffset(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelWithOffset(xy, z);
+        return (float)(p[z-zMin].get(xy-offsetXY) & 0xffff);
+    }
+    
+    @Override
+    public int getPixelInt(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelInt(x, y, z);
+        return (p[z].get(x+y*sizeX) & 0xffff);
+    }
+    
+    @Override
+    public int getPixelInt(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelInt(xy, z);
+        return (p[z].get(xy) & 0xffff);
+    }
+    
+    @Override
+    public int getPixelIntWithOffset(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelIntWithOffset(x, y, z);
+        return (p[z-zMin].get(x-offsetXY+y*sizeX) & 0xffff);
+    }
+    
+    @Override
+    public int getPixelIntWithOffset(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelIntWithOffset(xy, z);
+        return (p[z-zMin].get(xy-offsetXY) & 0xffff);
+    }
+    
+    @Override
+    public float getPixelLinInterX(int x, int y, int z, float dx) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.getPixelLinInterX(x, y, z, dx);
+        if (dx==0) return (p[z].get(x+y*sizeX) & 0xffff);
+        return (p[z].get(x+y*sizeX) & 0xffff) * (1-dx) + dx * (p[z].get(x+1+y*sizeX) & 0xffff);
+    }
+    
+    @Override
+    public boolean insideMask(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.insideMask(x, y, z);
+        return p[z].get(x+y*sizeX)!=0;
+    }
+    
+    @Override
+    public boolean insideMask(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.insideMask(xy, z);
+        return p[z].get(xy)!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int x, int y, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.insideMaskWithOffset(x, y, z);
+        return p[z-zMin].get(x-offsetXY+y*sizeX)!=0;
+    }
+    
+    @Override
+    public boolean insideMaskWithOffset(int xy, int z) {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.insideMaskWithOffset(xy, z);
+        return p[z-zMin].get(xy-offsetXY)!=0;
+    }
+    
+    @Override
+    public int count() {
+        ShortBuffer[] p = planes;
+        if (p==null) return super.count();
+        int count = 0;
+        for (int z = 0; z<sizeZ; ++z) {
+            for (int xy = 0; xy<sizeXY; ++xy) {
+                if (p[z].get(xy)!=0) ++count;
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, double value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(x, y, z, value);
+        } else p[z].put(x+y*sizeX, value<0?0:(value>65535?(short)65535:(short)value));
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, double value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(xy, z, value);
+        } else p[z].put(xy, value<0?0:(value>65535?(short)65535:(short)value));
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, double value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(x, y, z, value);
+        } else p[z-zMin].put(x-offsetXY+y*sizeX, value<0?0:(value>65535?(short)65535:(short)value));
+    }
+    
+    @Override
+    public void setPixelWithOffset(int xy, int z, double value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(xy, z, value);
+        } else p[z-zMin].put(xy-offsetXY, value<0?0:(value>65535?(short)65535:(short)value));
+    }
+    
+    @Override
+    public void setPixel(int x, int y, int z, int value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(x, y, z, value);
+        } else p[z].put(x+y*sizeX, (short)value);
+    }
+    
+    @Override
+    public void setPixel(int xy, int z, int value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixel(xy, z, value);
+        } else p[z].put(xy, (short)value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int x, int y, int z, int value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(x, y, z, value);
+        } else p[z-zMin].put(x-offsetXY+y*sizeX, (short)value);
+    }
+    
+    @Override
+    public void setPixelWithOffset(int xy, int z, int value) {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.setPixelWithOffset(xy, z, value);
+        } else p[z-zMin].put(xy-offsetXY, value<0?0:(value>65535?(short)65535:(short)value));
+    }
+    
+    @Override
+    public void invert() {
+        ShortBuffer[] p = planes;
+        if (p==null || readOnly) {
+            getPixelArray();
+            super.invert();
+            return;
+        }
+        double[] minAndMax = this.getMinAndMax(null);
+        double off = minAndMax[1] + minAndMax[0];
+        for (int z = 0; z < sizeZ; z++) {
+            for (int xy = 0; xy<sizeXY; ++xy) setPixel(xy, z, off - getPixel(xy, z));
+        }
+    }
+    
+    @Override
+    public void appendBinaryMasks(int startLabel, ImageMask... masks) {
+        if (planes==null || readOnly) {
+            getPixelArray();
+            super.appendBinaryMasks(startLabel, masks);
+            return;
+        }
+        if (masks == null || masks.length==0) return;
+        if (startLabel==-1) startLabel = (int)this.getMinAndMax(null)[1]+1;
+        for (int idx = 0; idx < masks.length; ++idx) {
+            int label = idx+startLabel;
+            ImageMask currentImage = masks[idx];
+            for (int z = 0; z < currentImage.sizeZ(); ++z) {
+                for (int y = 0; y < currentImage.sizeY(); ++y) {
+                    for (int x = 0; x < currentImage.sizeX(); ++x) {
+                        if (currentImage.insideMask(x, y, z)) {
+                            int xx = x + currentImage.xMin();
+                            int yy = y + currentImage.yMin();
+                            int zz = z + currentImage.zMin();
+                            if (contains(xx, yy, zz)) setPixel(xx, yy, zz, label);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
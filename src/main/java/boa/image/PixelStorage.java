@@ -0,0 +1,80 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Location of the pixels of an image (see {@link Image#createEmptyImage(java.lang.String, boa.image.Image, boa.image.ImageProperties, boa.image.PixelStorage)})
+ * Images not stored in {@link #HEAP} are moved to the heap when their pixel array is requested
+ * @author Jean Ollion
+ */
+public enum PixelStorage {
+    /**
+     * pixels are stored in java arrays
+     */
+    HEAP,
+    /**
+     * pixels are stored in direct buffers, outside of the java heap
+     */
+    DIRECT,
+    /**
+     * pixels are stored in a memory-mapped file (a temporary file for blank images), and paged from disk by the operating system
+     */
+    MAPPED;
+    /**
+     * directory of files backing {@link #MAPPED} images. If null, the default temporary directory is used
+     */
+    public static String MAPPED_FILE_DIRECTORY = null;
+    
+    /**
+     * 
+     * @param planeNumber number of planes
+     * @param planeBytes size of each plane in bytes
+     * @return one zero-filled buffer per plane
+     */
+    ByteBuffer[] allocate(int planeNumber, int planeBytes) {
+        ByteBuffer[] res = new ByteBuffer[planeNumber];
+        switch (this) {
+            case DIRECT:
+                for (int z = 0; z<planeNumber; ++z) res[z] = ByteBuffer.allocateDirect(planeBytes);
+                return res;
+            case MAPPED:
+                File file = null;
+                try {
+                    file = File.createTempFile("bacmman_pixels", ".raw", MAPPED_FILE_DIRECTORY==null ? null : new File(MAPPED_FILE_DIRECTORY));
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                        for (int z = 0; z<planeNumber; ++z) res[z] = channel.map(FileChannel.MapMode.READ_WRITE, (long)z * planeBytes, planeBytes); // mapping remains valid after channel is closed
+                    }
+                    return res;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    if (file!=null && !file.delete()) file.deleteOnExit(); // file cannot be deleted while mapped on some systems
+                }
+            default:
+                throw new IllegalStateException("Pixels are not stored in buffers for storage: "+this);
+        }
+    }
+}
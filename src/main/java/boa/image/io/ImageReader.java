@@ -18,7 +18,11 @@
  */
 package boa.image.io;
 
+import boa.image.BoundingBox;
 import boa.image.MutableBoundingBox;
+import boa.image.SimpleImageProperties;
+import boa.image.SimpleBoundingBox;
+import boa.image.PixelStorage;
 import boa.image.IJImageWrapper;
 import boa.image.Image;
 import static boa.image.io.ImportImageUtils.paseDVLogFile;
@@ -28,6 +32,11 @@ import ij.io.Opener;
 import ij.io.TiffDecoder;
 import java.io.File;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -398,7 +407,12 @@ public class ImageReader {
     public static Image openImage(String filePath, ImageIOCoordinates ioCoords, byte[][] buffer) {
         if (filePath.endsWith(".tif")) { // try with faster IJ's method
             if (ioCoords.getSerie()==0 && ioCoords.getChannel()==0 && ioCoords.getTimePoint()==0) {
-                Image res= openIJTif(filePath);
+                if (ioCoords.getBounds()!=null) { // only read pixels within bounds
+                    Image res = openIJTifRegion(filePath, ioCoords.getBounds());
+                    if (res!=null) return res;
+                }
+                Image res = openUncompressedTif(filePath);
+                if (res==null) res = openIJTif(filePath);
                 if (res!=null) {
                     if (ioCoords.getBounds()!=null) return res.crop(ioCoords.getBounds());
                     else return res;
@@ -454,6 +468,204 @@ public class ImageReader {
             return null;
         }
     }
+    /**
+     * Layout of the pixels of an uncompressed TIFF file with one contiguous block of pixels per plane (such as written by {@link ImageWriter})
+     */
+    private static class TifLayout {
+        final FileInfo fi;
+        final int sizeX, sizeY, sizeZ, bpp;
+        final long[] planeOffsets;
+        private TifLayout(FileInfo fi, int sizeZ, int bpp, long[] planeOffsets) {
+            this.fi=fi;
+            this.sizeX=fi.width;
+            this.sizeY=fi.height;
+            this.sizeZ=sizeZ;
+            this.bpp=bpp;
+            this.planeOffsets=planeOffsets;
+        }
+        long getPlaneBytes() {
+            return (long)sizeX * sizeY * bpp;
+        }
+        ByteOrder getByteOrder() {
+            return fi.intelByteOrder ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        }
+        boolean planesAreContiguous() {
+            for (int z = 1; z<sizeZ; ++z) if (planeOffsets[z]!=planeOffsets[z-1]+getPlaneBytes()) return false;
+            return true;
+        }
+        Image setCalibration(Image image) {
+            if (fi.pixelWidth>0.0) image.setCalibration((float)fi.pixelWidth, fi.pixelDepth>0.0?(float)fi.pixelDepth:(float)fi.pixelWidth);
+            return image;
+        }
+        private static boolean stripsAreContiguous(FileInfo fi, long planeBytes) {
+            if (fi.stripOffsets==null || fi.stripLengths==null || fi.stripOffsets.length<=1) return true;
+            long offset = fi.stripOffsets[0];
+            for (int i = 0; i<fi.stripOffsets.length; ++i) {
+                if (fi.stripOffsets[i]!=offset) return false;
+                offset+=fi.stripLengths[i];
+            }
+            return offset - fi.stripOffsets[0] >= planeBytes;
+        }
+        /**
+         * 
+         * @return layout of the TIFF file, or null if the file cannot be read, is compressed, of unsupported type or not stored contiguously
+         */
+        static TifLayout get(File file) {
+            TiffDecoder td = new TiffDecoder(file.getParent(), file.getName());
+            FileInfo[] info;
+            try {
+                info = td.getTiffInfo();
+            } catch (IOException ex) {
+                return null;
+            }
+            if (info==null || info.length==0) return null;
+            FileInfo fi = info[0];
+            if (fi.compression!=FileInfo.COMPRESSION_NONE) return null;
+            int bpp;
+            switch (fi.fileType) {
+                case FileInfo.GRAY8: bpp = 1; break;
+                case FileInfo.GRAY16_UNSIGNED: bpp = 2; break;
+                case FileInfo.GRAY32_FLOAT: bpp = 4; break;
+                default: return null;
+            }
+            long planeBytes = (long)fi.width * fi.height * bpp;
+            int sizeZ = info.length>1 ? info.length : Math.max(1, fi.nImages);
+            long[] planeOffsets = new long[sizeZ];
+            for (int z = 0; z<sizeZ; ++z) {
+                if (info.length>1) {
+                    if (info[z].compression!=FileInfo.COMPRESSION_NONE || info[z].width!=fi.width || info[z].height!=fi.height || info[z].fileType!=fi.fileType || !stripsAreContiguous(info[z], planeBytes)) return null;
+                    planeOffsets[z] = info[z].getOffset();
+                } else {
+                    if (z==0 && !stripsAreContiguous(fi, planeBytes)) return null;
+                    planeOffsets[z] = fi.getOffset() + z * (planeBytes + fi.gapBetweenImages);
+                }
+            }
+            return new TifLayout(fi, sizeZ, bpp, planeOffsets);
+        }
+    }
+    /**
+     * Planes of at least this size (in bytes) stored in native byte order are read by {@link #openUncompressedTif(java.lang.String)} into direct buffers, outside of the java heap
+     */
+    public static long DIRECT_TIF_MIN_PLANE_BYTES = 1<<20;
+    /**
+     * Opens an uncompressed TIFF file (such as written by {@link ImageWriter}) by reading the pixels of each plane with a single read. 
+     * If the planes are large enough (see {@link #DIRECT_TIF_MIN_PLANE_BYTES}) and stored in native byte order, they are read into direct buffers that are used as pixels of the returned image (see {@link boa.image.PixelStorage#DIRECT}). 
+     * Otherwise they are copied into a regular image. 
+     * Files are not kept mapped, so that they can be overwritten or deleted while the returned image is in use (e.g. when pre-processing is run again while images are cached)
+     * @param filePath
+     * @return the image or null if the file is compressed or of unsupported type
+     */
+    public static Image openUncompressedTif(String filePath) {
+        File file = new File(filePath);
+        TifLayout layout = TifLayout.get(file);
+        if (layout==null || layout.getPlaneBytes()>Integer.MAX_VALUE) return null;
+        int planeBytes = (int)layout.getPlaneBytes();
+        boolean direct = planeBytes>=DIRECT_TIF_MIN_PLANE_BYTES && layout.getByteOrder().equals(ByteOrder.nativeOrder());
+        Image res;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size()<layout.planeOffsets[layout.sizeZ-1]+planeBytes) return null;
+            if (direct) {
+                Buffer[] planes = new Buffer[layout.sizeZ];
+                for (int z = 0; z<layout.sizeZ; ++z) {
+                    ByteBuffer plane = ByteBuffer.allocateDirect(planeBytes).order(layout.getByteOrder());
+                    readFully(channel, plane, layout.planeOffsets[z]);
+                    plane.clear();
+                    planes[z] = asTypedBuffer(plane, layout.bpp);
+                }
+                res = Image.createImageFromBuffers(file.getName(), layout.sizeX, PixelStorage.DIRECT, planes);
+            } else {
+                SimpleImageProperties props = new SimpleImageProperties(new SimpleBoundingBox(0, layout.sizeX-1, 0, layout.sizeY-1, 0, layout.sizeZ-1), 1, 1);
+                switch(layout.bpp) {
+                    case 1: res = new ImageByte(file.getName(), props); break;
+                    case 2: res = new ImageShort(file.getName(), props); break;
+                    default: res = new ImageFloat(file.getName(), props);
+                }
+                ByteBuffer plane = ByteBuffer.allocateDirect(planeBytes).order(layout.getByteOrder()); // re-used for each plane
+                for (int z = 0; z<layout.sizeZ; ++z) {
+                    readFully(channel, plane, layout.planeOffsets[z]);
+                    copyRow(plane, 0, getPlane(res, z), 0, layout.sizeX * layout.sizeY);
+                }
+            }
+        } catch (IOException ex) {
+            logger.debug("could not read tif image: {}: {}", filePath, ex.getMessage());
+            return null;
+        }
+        return layout.setCalibration(res);
+    }
+    private static Buffer asTypedBuffer(ByteBuffer buffer, int bpp) {
+        switch(bpp) {
+            case 1: return buffer;
+            case 2: return buffer.asShortBuffer();
+            default: return buffer.asFloatBuffer();
+        }
+    }
+    /**
+     * Reads only the pixels of an uncompressed TIFF file (such as written by {@link ImageWriter}) located within {@param bounds}: for each plane, the rows intersecting {@param bounds} are read directly from the file, without decoding the whole plane.
+     * @param filePath
+     * @param bounds area to read, relative to the image. Pixels outside the image are set to 0, as with {@link Image#crop(boa.image.BoundingBox) }
+     * @return image with same dimensions and offset as {@param bounds}, or null if the file is compressed or of unsupported type
+     */
+    public static Image openIJTifRegion(String filePath, BoundingBox bounds) {
+        File file = new File(filePath);
+        TifLayout layout = TifLayout.get(file);
+        if (layout==null) return null;
+        int sizeX = layout.sizeX, sizeY = layout.sizeY, sizeZ = layout.sizeZ, bpp = layout.bpp;
+        long[] planeOffsets = layout.planeOffsets;
+        Image res;
+        SimpleImageProperties props = new SimpleImageProperties(bounds, 1, 1);
+        switch(bpp) {
+            case 1: res = new ImageByte(file.getName(), props); break;
+            case 2: res = new ImageShort(file.getName(), props); break;
+            default: res = new ImageFloat(file.getName(), props);
+        }
+        int xMin = Math.max(0, bounds.xMin()), xMax = Math.min(sizeX-1, bounds.xMax());
+        int yMin = Math.max(0, bounds.yMin()), yMax = Math.min(sizeY-1, bounds.yMax());
+        int zMin = Math.max(0, bounds.zMin()), zMax = Math.min(sizeZ-1, bounds.zMax());
+        if (xMin<=xMax && yMin<=yMax && zMin<=zMax) {
+            int w = xMax - xMin + 1, h = yMax - yMin + 1;
+            boolean readRows = w * 2 <= sizeX; // narrow regions: read only the useful part of each row
+            ByteBuffer buffer = ByteBuffer.allocate((readRows ? w : sizeX * h) * bpp).order(layout.getByteOrder());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                for (int z = zMin; z<=zMax; ++z) {
+                    Object plane = getPlane(res, z - bounds.zMin());
+                    if (readRows) {
+                        for (int y = yMin; y<=yMax; ++y) {
+                            readFully(channel, buffer, planeOffsets[z] + ((long)y * sizeX + xMin) * bpp);
+                            copyRow(buffer, 0, plane, (y - bounds.yMin()) * res.sizeX() + xMin - bounds.xMin(), w);
+                        }
+                    } else {
+                        readFully(channel, buffer, planeOffsets[z] + (long)yMin * sizeX * bpp);
+                        for (int y = yMin; y<=yMax; ++y) copyRow(buffer, ((y - yMin) * sizeX + xMin) * bpp, plane, (y - bounds.yMin()) * res.sizeX() + xMin - bounds.xMin(), w);
+                    }
+                }
+            } catch (IOException ex) {
+                logger.debug("could not read region of tif image: {}: {}", filePath, ex.getMessage());
+                return null;
+            }
+        }
+        res.translate(bounds);
+        return layout.setCalibration(res);
+    }
+    private static Object getPlane(Image image, int z) {
+        if (image instanceof ImageByte) return ((ImageByte)image).getPixelArray()[z];
+        else if (image instanceof ImageShort) return ((ImageShort)image).getPixelArray()[z];
+        else return ((ImageFloat)image).getPixelArray()[z];
+    }
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n<0) throw new IOException("unexpected end of file");
+        }
+    }
+    private static void copyRow(ByteBuffer buffer, int bufferOffset, Object plane, int planeOffset, int length) {
+        if (plane instanceof byte[]) {
+            if (buffer.hasArray()) System.arraycopy(buffer.array(), bufferOffset, plane, planeOffset, length);
+            else ((ByteBuffer)buffer.duplicate().position(bufferOffset)).get((byte[])plane, planeOffset, length);
+        }
+        else if (plane instanceof short[]) ((ByteBuffer)buffer.position(bufferOffset)).asShortBuffer().get((short[])plane, planeOffset, length);
+        else ((ByteBuffer)buffer.position(bufferOffset)).asFloatBuffer().get((float[])plane, planeOffset, length);
+    }
     public static Image openIJTif(String filePath) { // TODO : 3D files open only some planes
         File file = new File(filePath);
         TiffDecoder td = new TiffDecoder(file.getParent(), file.getName());
@@ -0,0 +1,212 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image.io;
+
+import boa.image.Image;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of {@link ImageReader} opened on a same file, so that several planes of the file can be decoded concurrently.
+ * Readers are re-used, readers idle for more than {@link #idleTimeout} ms are closed by a shared background thread, and {@link #close()} closes all idle readers and readers currently in use once they are released.
+ * Readers are always closed outside the lock of the pool.
+ * @author Jean Ollion
+ */
+public class ImageReaderPool {
+    public static final Logger logger = LoggerFactory.getLogger(ImageReaderPool.class);
+    public static int DEFAULT_MAX_READERS = Runtime.getRuntime().availableProcessors();
+    public static long DEFAULT_IDLE_TIMEOUT = 60000;
+    final String filePath;
+    final int maxReaders;
+    final long idleTimeout;
+    private final ArrayDeque<IdleReader> idle = new ArrayDeque<>();
+    private int count; // number of open readers (idle + in use)
+    private int generation; // incremented at each close: readers from a previous generation are closed when released
+    private boolean reaperScheduled;
+    private static ScheduledExecutorService reaper;
+    
+    public ImageReaderPool(String filePath) {
+        this(filePath, DEFAULT_MAX_READERS, DEFAULT_IDLE_TIMEOUT);
+    }
+    public ImageReaderPool(String filePath, int maxReaders, long idleTimeout) {
+        if (maxReaders<1) throw new IllegalArgumentException("Max number of readers should be >=1");
+        this.filePath=filePath;
+        this.maxReaders=maxReaders;
+        this.idleTimeout=idleTimeout;
+    }
+    public String getFilePath() {
+        return filePath;
+    }
+    /**
+     * Opens a reader on the file of this pool or re-uses an idle one. If {@link #maxReaders} readers are already in use, waits until one is released
+     * @return a reader, that must be returned with {@link #release(boa.image.io.ImageReader)}
+     */
+    public ImageReader borrow() {
+        List<ImageReader> expired = new ArrayList<>();
+        try {
+            int gen;
+            synchronized(this) {
+                removeExpired(expired);
+                while (idle.isEmpty() && count>=maxReaders) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(ex);
+                    }
+                }
+                IdleReader r = idle.pollLast(); // most recently used first
+                if (r!=null) return r.reader;
+                ++count;
+                gen = generation;
+            }
+            try {
+                return new PooledReader(filePath, gen);
+            } catch (RuntimeException|Error e) {
+                synchronized(this) {
+                    --count;
+                    notify();
+                }
+                throw e;
+            }
+        } finally {
+            closeReaders(expired);
+        }
+    }
+    public void release(ImageReader reader) {
+        if (reader==null) return;
+        List<ImageReader> toClose = new ArrayList<>();
+        toClose.add(reader);
+        if (reader instanceof PooledReader) {
+            synchronized(this) {
+                if (((PooledReader)reader).generation==generation) {
+                    idle.addLast(new IdleReader(reader, System.currentTimeMillis()));
+                    toClose.clear();
+                    removeExpired(toClose);
+                    scheduleReaper();
+                } else --count;
+                notify();
+            }
+        }
+        closeReaders(toClose);
+    }
+    /**
+     * Borrows a reader, applies {@param function} to it and releases the reader
+     * @param <T>
+     * @param function
+     * @return result of {@param function}
+     */
+    public <T> T apply(Function<ImageReader, T> function) {
+        ImageReader r = borrow();
+        try {
+            return function.apply(r);
+        } finally {
+            release(r);
+        }
+    }
+    public Image openImage(ImageIOCoordinates coords) {
+        return apply(r -> r.openImage(coords));
+    }
+    /**
+     * Closes all idle readers. Readers currently in use are closed when released
+     */
+    public void close() {
+        List<ImageReader> toClose = new ArrayList<>();
+        synchronized(this) {
+            for (IdleReader r : idle) toClose.add(r.reader);
+            count-=idle.size();
+            idle.clear();
+            ++generation;
+            notifyAll();
+        }
+        closeReaders(toClose);
+    }
+    public synchronized int getOpenReaderCount() {
+        return count;
+    }
+    public synchronized int getIdleReaderCount() {
+        return idle.size();
+    }
+    private void removeExpired(List<ImageReader> expired) { // called in synchronized block
+        if (idle.isEmpty()) return;
+        long limit = System.currentTimeMillis() - idleTimeout;
+        Iterator<IdleReader> it = idle.iterator(); // oldest first
+        while (it.hasNext()) {
+            IdleReader r = it.next();
+            if (r.lastUse>limit) break;
+            it.remove();
+            --count;
+            expired.add(r.reader);
+        }
+    }
+    private static void closeReaders(List<ImageReader> readers) {
+        for (ImageReader r : readers) r.closeReader();
+    }
+    /**
+     * Schedules the closing of idle readers when the oldest one expires, so that readers are closed even if the pool is not used anymore
+     */
+    private void scheduleReaper() { // called in synchronized block
+        if (reaperScheduled || idle.isEmpty()) return;
+        long delay = Math.max(0, idleTimeout - (System.currentTimeMillis() - idle.peekFirst().lastUse)) + 1;
+        reaperScheduled = true;
+        getReaper().schedule(this::reap, delay, TimeUnit.MILLISECONDS);
+    }
+    private void reap() {
+        List<ImageReader> expired = new ArrayList<>();
+        synchronized(this) {
+            reaperScheduled = false;
+            removeExpired(expired);
+            scheduleReaper();
+        }
+        closeReaders(expired);
+    }
+    private static synchronized ScheduledExecutorService getReaper() {
+        if (reaper==null) {
+            reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ImageReaderPool reaper");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return reaper;
+    }
+    private static class IdleReader {
+        final ImageReader reader;
+        final long lastUse;
+        IdleReader(ImageReader reader, long lastUse) {
+            this.reader=reader;
+            this.lastUse=lastUse;
+        }
+    }
+    private static class PooledReader extends ImageReader {
+        final int generation;
+        PooledReader(String filePath, int generation) {
+            super(filePath);
+            this.generation=generation;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import static boa.image.Image.logger;
 import boa.image.ImageByte;
 import boa.image.ImageFloat;
 import boa.image.ImageShort;
+import boa.image.PixelStorage;
 import boa.image.TypeConverter;
 import static boa.image.io.ImageFormat.PNG;
 import java.io.BufferedOutputStream;
@@ -79,7 +80,7 @@ public class ImageWriter {
     public static void writeToFile(Image image, String path, String fileName, ImageFormat extension) {
         if (fileName==null) fileName=image.getName();
         new File(path).mkdirs();
-        image = TypeConverter.toCommonImageType(image);
+        image = TypeConverter.toCommonImageType(image).getHeapImage(); // pixels of images stored off-heap are copied plane by plane instead of being moved to the heap
         if (image instanceof ImageFloat && extension.equals(PNG)) throw new IllegalArgumentException("Float image cannot be written as PNG");
         String fullPath = path+File.separator+fileName+extension.getExtension();
         File f = new File(fullPath);
@@ -160,6 +161,10 @@ public class ImageWriter {
     }
     
     private static byte[] getBytePlane(Image image, int z, boolean littleEndian) {
+        if (image.getPixelStorage()!=PixelStorage.HEAP) { // copy the plane instead of moving all pixels to the heap
+            image = image.getZPlane(z).getHeapImage();
+            z = 0;
+        }
         if (image instanceof ImageByte) {
             return ((ImageByte)image).getPixelArray()[z];
         } else if (image instanceof ImageShort) {
@@ -24,7 +24,6 @@ import boa.gui.image_interaction.ImageWindowManagerFactory;
 import boa.data_structure.Voxel;
 import boa.image.BlankMask;
 import boa.image.BoundingBox;
-import boa.image.BoundingBox.LoopFunction;
 import boa.image.MutableBoundingBox;
 import boa.image.Image;
 import static boa.image.Image.logger;
@@ -41,7 +40,6 @@ import java.util.Comparator;
 import boa.image.processing.neighborhood.EllipsoidalNeighborhood;
 import boa.image.processing.neighborhood.Neighborhood;
 import boa.utils.ArrayUtil;
-import boa.utils.HashMapGetCreate;
 import boa.utils.ThreadRunner;
 
 /**
@@ -65,53 +63,61 @@ public class Filters {
     }
     
     public static <T extends Image<T>> T median(Image image, T output, Neighborhood neighborhood, boolean parallele) {
+        if (neighborhood instanceof DisplacementNeighborhood) return SlidingRankFilter.median(image, output, (DisplacementNeighborhood)neighborhood, null, parallele);
         return applyFilter(image, output, new Median(), neighborhood, parallele);
     }
     
+    /**
+     * Neighborhoods supported by {@link SlidingMinMaxFilter} (e.g. ellipsoidal or cylindrical) are processed with a cost per pixel independent of the neighborhood length along each axis
+     */
     public static <T extends Image<T>> T max(Image image, T output, Neighborhood neighborhood, boolean parallele) {
+        if (SlidingMinMaxFilter.isSupported(neighborhood)) return SlidingMinMaxFilter.max(image, output, (DisplacementNeighborhood)neighborhood, parallele);
         return applyFilter(image, output, new Max(), neighborhood, parallele);
     }
     
     public static <T extends Image<T>> T min(Image image, T output, Neighborhood neighborhood, boolean parallele) {
+        if (SlidingMinMaxFilter.isSupported(neighborhood)) return SlidingMinMaxFilter.min(image, output, (DisplacementNeighborhood)neighborhood, parallele);
         return applyFilter(image, output, new Min(), neighborhood, parallele);
     }
     
     public static <T extends ImageInteger<T>, I extends ImageInteger<I>> T binaryMax(I image, T output, Neighborhood neighborhood, boolean outOfBoundIsNonNull, boolean extendImage, boolean parallele) {
         if (extendImage) image =  image.extend(neighborhood.getBoundingBox());
+        if (SlidingMinMaxFilter.isSupported(neighborhood)) return SlidingMinMaxFilter.binaryMax(image, output, (DisplacementNeighborhood)neighborhood, outOfBoundIsNonNull, parallele);
         return applyFilter(image, output, new BinaryMax(outOfBoundIsNonNull), neighborhood, parallele);
     }
     
     public static <T extends ImageInteger<T>> T binaryMin(ImageInteger image, T output, Neighborhood neighborhood, boolean outOfBoundIsNull, boolean parallele) {
+        if (SlidingMinMaxFilter.isSupported(neighborhood)) return SlidingMinMaxFilter.binaryMin(image, output, (DisplacementNeighborhood)neighborhood, outOfBoundIsNull, parallele);
         return applyFilter(image, output, new BinaryMin(outOfBoundIsNull), neighborhood, parallele);
     }
     
     public static <T extends Image<T>> T open(Image image, T output, Neighborhood neighborhood, boolean parallele) {
-        ImageFloat min = applyFilter(image, new ImageFloat("", 0, 0, 0), new Min(), neighborhood, parallele);
+        ImageFloat min = min(image, new ImageFloat("", 0, 0, 0), neighborhood, parallele);
         //if (output == image) output = Image.createEmptyImage("open", output, output);
-        return applyFilter(min, output, new Max(), neighborhood, parallele);
+        return max(min, output, neighborhood, parallele);
     }
     
     public static <T extends Image<T>> T close(Image image, T output, Neighborhood neighborhood, boolean parallele) {
-        ImageFloat max = applyFilter(image, new ImageFloat("", 0, 0, 0), new Max(), neighborhood, parallele);
-        return applyFilter(max, output, new Min(), neighborhood, parallele);
+        ImageFloat max = max(image, new ImageFloat("", 0, 0, 0), neighborhood, parallele);
+        return min(max, output, neighborhood, parallele);
     }
     
     public static <T extends ImageInteger<T>> T binaryOpen(ImageInteger image, T output, Neighborhood neighborhood, boolean parallele) {
-        ImageByte min = applyFilter(image, new ImageByte("", 0, 0, 0), new BinaryMin(true), neighborhood, parallele);
+        ImageByte min = binaryMin(image, new ImageByte("", 0, 0, 0), neighborhood, true, parallele);
         //if (output == image) output = Image.createEmptyImage("binary open", output, output);
-        return applyFilter(min, output, new BinaryMax(false), neighborhood, parallele);
+        return binaryMax(min, output, neighborhood, false, false, parallele);
     }
 
     public static <T extends ImageInteger<T>> T binaryCloseExtend(ImageInteger<T> image, Neighborhood neighborhood, boolean parallele) {
         MutableBoundingBox extent = neighborhood.getBoundingBox();
         T resized =  image.extend(extent);
-        ImageByte max = applyFilter(resized, new ImageByte("", 0, 0, 0), new BinaryMax(false), neighborhood, parallele);
-        T min = applyFilter(max, resized, new BinaryMin(false), neighborhood, parallele);
+        ImageByte max = binaryMax(resized, new ImageByte("", 0, 0, 0), neighborhood, false, false, parallele);
+        T min = binaryMin(max, resized, neighborhood, false, parallele);
         return min.crop(image.getBoundingBox().resetOffset().translate(extent.duplicate().reverseOffset()));
     }
     public static <T extends ImageInteger<T>> T binaryClose(ImageInteger image, T output, Neighborhood neighborhood, boolean parallele) {
-        ImageByte max = applyFilter(image, new ImageByte("", 0, 0, 0), new BinaryMax(false), neighborhood, parallele);
-        return applyFilter(max, output, new BinaryMin(false), neighborhood, parallele);
+        ImageByte max = binaryMax(image, new ImageByte("", 0, 0, 0), neighborhood, false, false, parallele);
+        return binaryMin(max, output, neighborhood, false, parallele);
     }
     /*public static <T extends ImageInteger> T labelWiseBinaryCloseExtend(T image, Neighborhood neighborhood) {
         BoundingBox extent = neighborhood.getBoundingBox();
@@ -188,26 +194,26 @@ public class Filters {
         float round=res instanceof ImageFloat ? 0: 0.5f;
         
         
-        //if (Context.getThreadNumber(true)>1) BoundingBox.loopParallele(res.getBoundingBox().resetOffset(), loopFunc); // neiborhood is not thread safe. Todo: use reusable queue with copies of neighborhood
-        //else BoundingBox.loop(res.getBoundingBox().resetOffset(), loopFunc);
-        if (parallele && Runtime.getRuntime().availableProcessors()>1) {
-            HashMapGetCreate<Thread, Filter> nMap = new HashMapGetCreate<>(t -> {
+        int sizeY = res.sizeY();
+        if (parallele && Runtime.getRuntime().availableProcessors()>1) { // rows are processed by blocks, each block with its own copy of filter and neighborhood (that are not thread safe)
+            ThreadRunner.executeByBlocks(sizeY * res.sizeZ(), true, () -> {
                 Filter f = filter.duplicate();
                 f.setUp(image, neighborhood.duplicate());
                 return f;
-            });
-            LoopFunction loopFunc = (x, y, z)->res.setPixel(x, y, z, nMap.getAndCreateIfNecessarySyncOnKey(Thread.currentThread()).applyFilter(x, y, z)+round);
-            BoundingBox.loop(res, loopFunc, parallele);
+            }, (f, row) -> filterRow(f, res, row % sizeY, row / sizeY, round));
         } else  {
             filter.setUp(image, neighborhood);
-            LoopFunction loopFunc = (x, y, z)->res.setPixel(x, y, z, filter.applyFilter(x, y, z)+round);
-            BoundingBox.loop(res.getBoundingBox().resetOffset(), loopFunc);
+            for (int row = 0; row<sizeY * res.sizeZ(); ++row) filterRow(filter, res, row % sizeY, row / sizeY, round);
         }
         res.resetOffset().translate(image);
         res.setCalibration(image);
         return res;
     }
     
+    private static void filterRow(Filter filter, Image res, int y, int z, float round) {
+        for (int x = 0; x<res.sizeX(); ++x) res.setPixel(x, y, z, filter.applyFilter(x, y, z)+round);
+    }
+    
     public static abstract class Filter {
         protected Image image;
         protected Neighborhood neighborhood;
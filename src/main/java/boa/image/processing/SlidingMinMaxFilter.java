@@ -0,0 +1,237 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image.processing;
+
+import boa.image.Image;
+import boa.image.ImageFloat;
+import boa.image.ImageInteger;
+import boa.image.processing.neighborhood.DisplacementNeighborhood;
+import boa.image.processing.neighborhood.Neighborhood;
+import boa.utils.ThreadRunner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Minimum and maximum filters (erosion / dilation) with a cost per pixel that does not depend on the length of the neighborhood along each line. 
+ * The neighborhood is decomposed into runs of consecutive pixels along the X-axis; the minimum / maximum along each run is computed with the van Herk / Gil-Werman algorithm (3 comparisons per pixel whatever the length of the run). 
+ * Neighborhoods that are the product of an XY-shape by a segment along Z (e.g. {@link boa.image.processing.neighborhood.CylindricalNeighborhood}), or rectangles, are further separated into 1D passes along each axis. 
+ * The decomposition is exact: results are identical to the per-pixel filters of {@link Filters}
+ * @author Jean Ollion
+ */
+public class SlidingMinMaxFilter {
+    
+    /**
+     * @param neighborhood
+     * @return true if {@param neighborhood} can be processed by this class: it should be a {@link DisplacementNeighborhood} that includes its center, and all its rows along the X-axis should be made of consecutive pixels
+     */
+    public static boolean isSupported(Neighborhood neighborhood) {
+        return neighborhood instanceof DisplacementNeighborhood && Decomposition.decompose((DisplacementNeighborhood)neighborhood)!=null;
+    }
+    
+    public static <T extends Image<T>> T min(Image image, T output, DisplacementNeighborhood neighborhood, boolean parallele) {
+        return filter(image, output, "Min", neighborhood, false, false, Float.NaN, parallele);
+    }
+    
+    public static <T extends Image<T>> T max(Image image, T output, DisplacementNeighborhood neighborhood, boolean parallele) {
+        return filter(image, output, "Max", neighborhood, true, false, Float.NaN, parallele);
+    }
+    
+    /**
+     * Binary erosion
+     * @param outOfBoundIsNull if true, pixels whose neighborhood is partially out of the image are set to 0
+     */
+    public static <T extends Image<T>> T binaryMin(ImageInteger image, T output, DisplacementNeighborhood neighborhood, boolean outOfBoundIsNull, boolean parallele) {
+        return filter(image, output, "BinaryMin", neighborhood, false, true, outOfBoundIsNull ? 0 : Float.NaN, parallele);
+    }
+    
+    /**
+     * Binary dilation
+     * @param outOfBoundIsNonNull if true, pixels whose neighborhood is partially out of the image are set to 1
+     */
+    public static <T extends Image<T>> T binaryMax(ImageInteger image, T output, DisplacementNeighborhood neighborhood, boolean outOfBoundIsNonNull, boolean parallele) {
+        return filter(image, output, "BinaryMax", neighborhood, true, true, outOfBoundIsNonNull ? 1 : Float.NaN, parallele);
+    }
+    
+    /**
+     * 
+     * @param outOfBoundValue value of pixels out of the image. If NaN pixels out of the image are not taken into account
+     */
+    private static <T extends Image<T>> T filter(Image image, T output, String filterName, DisplacementNeighborhood neighborhood, boolean max, boolean binary, float outOfBoundValue, boolean parallele) {
+        Decomposition d = Decomposition.decompose(neighborhood);
+        if (d==null) throw new IllegalArgumentException("Neighborhood cannot be decomposed into rows of consecutive pixels: "+neighborhood);
+        T res;
+        String name = filterName+" of: "+image.getName();
+        if (output==null) res = (T)Image.createEmptyImage(name, image, image);
+        else if (!output.sameDimensions(image) || output==image) res = Image.createEmptyImage(name, output, image);
+        else res = (T)output.setName(name);
+        float round = res instanceof ImageFloat ? 0 : 0.5f;
+        float pad = Float.isNaN(outOfBoundValue) ? (max ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY) : outOfBoundValue;
+        int sizeX = image.sizeX(), sizeY = image.sizeY(), sizeZ = image.sizeZ();
+        float[][] values = new float[sizeZ][sizeX*sizeY];
+        loop(sizeY*sizeZ, parallele, (b, row) -> {
+            int y = row % sizeY, z = row / sizeY;
+            for (int x = 0; x<sizeX; ++x) values[z][x+y*sizeX] = binary ? (image.getPixel(x, y, z)!=0 ? 1 : 0) : image.getPixel(x, y, z);
+        });
+        if (d.zMax>d.zMin) { // pass along Z-axis
+            loop(sizeX*sizeY, parallele, (b, xy) -> {
+                b.ensureLineSize(sizeZ);
+                for (int z = 0; z<sizeZ; ++z) b.line[z] = values[z][xy];
+                filterLine(b.line, sizeZ, d.zMin, d.zMax, pad, max, b.out, false, b);
+                for (int z = 0; z<sizeZ; ++z) values[z][xy] = b.out[z];
+            });
+        }
+        if (d.yMax>d.yMin) { // pass along Y-axis
+            loop(sizeX*sizeZ, parallele, (b, xz) -> {
+                int x = xz % sizeX, z = xz / sizeX;
+                b.ensureLineSize(sizeY);
+                for (int y = 0; y<sizeY; ++y) b.line[y] = values[z][x+y*sizeX];
+                filterLine(b.line, sizeY, d.yMin, d.yMax, pad, max, b.out, false, b);
+                for (int y = 0; y<sizeY; ++y) values[z][x+y*sizeX] = b.out[y];
+            });
+        }
+        // remaining rows along X-axis
+        loop(sizeY*sizeZ, parallele, (b, row) -> {
+            int y = row % sizeY, z = row / sizeY;
+            b.ensureLineSize(sizeX);
+            Arrays.fill(b.out, 0, sizeX, max ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY);
+            boolean outOfBounds = false;
+            for (int i = 0; i<d.dy.length; ++i) {
+                int yy = y + d.dy[i], zz = z + d.dz[i];
+                if (yy<0 || yy>=sizeY || zz<0 || zz>=sizeZ) outOfBounds = true;
+                else {
+                    System.arraycopy(values[zz], yy*sizeX, b.line, 0, sizeX);
+                    filterLine(b.line, sizeX, d.xMin[i], d.xMax[i], pad, max, b.out, true, b);
+                }
+            }
+            for (int x = 0; x<sizeX; ++x) {
+                float v = outOfBounds ? op(b.out[x], pad, max) : b.out[x];
+                res.setPixel(x, y, z, v+round);
+            }
+        });
+        res.resetOffset().translate(image);
+        res.setCalibration(image);
+        return res;
+    }
+    
+    private static float op(float v1, float v2, boolean max) {
+        if (max) return v1>=v2 ? v1 : v2;
+        else return v1<=v2 ? v1 : v2;
+    }
+    
+    /**
+     * van Herk / Gil-Werman algorithm: out[x] = min (or max) of line[x+start] ... line[x+end], where values out of the line are replaced by {@param pad}
+     * @param accumulate if true, the result is combined with the values already present in {@param out}
+     */
+    private static void filterLine(float[] line, int n, int start, int end, float pad, boolean max, float[] out, boolean accumulate, Buffers b) {
+        int l = end - start + 1;
+        int m = n + l - 1;
+        b.ensurePaddedSize(m);
+        float[] p = b.padded, r = b.prefix, s = b.suffix;
+        for (int j = 0; j<m; ++j) {
+            int i = j + start;
+            p[j] = i>=0 && i<n ? line[i] : pad;
+        }
+        for (int j = 0; j<m; ++j) r[j] = j%l==0 ? p[j] : op(r[j-1], p[j], max);
+        for (int j = m-1; j>=0; --j) s[j] = j%l==l-1 || j==m-1 ? p[j] : op(s[j+1], p[j], max);
+        if (accumulate) for (int x = 0; x<n; ++x) out[x] = op(out[x], op(s[x], r[x+l-1], max), max);
+        else for (int x = 0; x<n; ++x) out[x] = op(s[x], r[x+l-1], max);
+    }
+    
+    private static void loop(int count, boolean parallele, ObjIntConsumer<Buffers> function) {
+        ThreadRunner.executeByBlocks(count, parallele, Buffers::new, function);
+    }
+    
+    /**
+     * Per-thread working arrays, sized at first use
+     */
+    private static class Buffers {
+        float[] line = new float[0], out = line, padded = line, prefix = line, suffix = line;
+        void ensureLineSize(int size) {
+            if (line.length<size) {
+                line = new float[size];
+                out = new float[size];
+            }
+        }
+        void ensurePaddedSize(int size) {
+            if (padded.length<size) {
+                padded = new float[size];
+                prefix = new float[size];
+                suffix = new float[size];
+            }
+        }
+    }
+    
+    /**
+     * Neighborhood as a segment along Z-axis [zMin; zMax] x segment along Y-axis [yMin; yMax] x union of rows along the X-axis
+     */
+    private static class Decomposition {
+        int zMin, zMax, yMin, yMax;
+        int[] dy, dz, xMin, xMax;
+        
+        static Decomposition decompose(DisplacementNeighborhood n) {
+            int[] nDZ = n.is3D() && n.dz!=null ? n.dz : new int[n.dx.length];
+            Integer[] idx = IntStream.range(0, n.dx.length).boxed().toArray(Integer[]::new);
+            Arrays.sort(idx, Comparator.<Integer>comparingInt(i -> nDZ[i]).thenComparingInt(i -> n.dy[i]).thenComparingInt(i -> n.dx[i]));
+            List<int[]> rows = new ArrayList<>(); // dy, dz, xMin, xMax
+            boolean center = false;
+            int[] current = null;
+            for (int i : idx) {
+                if (current!=null && current[0]==n.dy[i] && current[1]==nDZ[i]) {
+                    if (n.dx[i]==current[3]) continue;
+                    if (n.dx[i]!=current[3]+1) return null; // not consecutive
+                    current[3] = n.dx[i];
+                } else {
+                    current = new int[]{n.dy[i], nDZ[i], n.dx[i], n.dx[i]};
+                    rows.add(current);
+                }
+                if (n.dx[i]==0 && n.dy[i]==0 && nDZ[i]==0) center = true;
+            }
+            if (!center) return null;
+            Decomposition d = new Decomposition();
+            // segment along Z: all planes share the same rows
+            int z0 = rows.get(0)[1], z1 = rows.get(rows.size()-1)[1];
+            List<int[]> plane = new ArrayList<>();
+            for (int[] row : rows) if (row[1]==z0) plane.add(row);
+            if (z1>z0 && plane.size() * (z1-z0+1) == rows.size() && IntStream.range(0, rows.size()).allMatch(i -> {int[] r = rows.get(i), r0 = plane.get(i%plane.size()); return r[1]==z0+i/plane.size() && r[0]==r0[0] && r[2]==r0[2] && r[3]==r0[3];})) {
+                d.zMin = z0;
+                d.zMax = z1;
+                rows.clear();
+                for (int[] row : plane) rows.add(new int[]{row[0], 0, row[2], row[3]});
+            }
+            // segment along Y: rectangle
+            int y0 = rows.get(0)[0], y1 = rows.get(rows.size()-1)[0];
+            if (y1>y0 && rows.size()==y1-y0+1 && IntStream.range(0, rows.size()).allMatch(i -> {int[] r = rows.get(i); return r[1]==0 && r[0]==y0+i && r[2]==rows.get(0)[2] && r[3]==rows.get(0)[3];})) {
+                d.yMin = y0;
+                d.yMax = y1;
+                int[] row = rows.get(0);
+                rows.clear();
+                rows.add(new int[]{0, 0, row[2], row[3]});
+            }
+            d.dy = rows.stream().mapToInt(r -> r[0]).toArray();
+            d.dz = rows.stream().mapToInt(r -> r[1]).toArray();
+            d.xMin = rows.stream().mapToInt(r -> r[2]).toArray();
+            d.xMax = rows.stream().mapToInt(r -> r[3]).toArray();
+            return d;
+        }
+    }
+}
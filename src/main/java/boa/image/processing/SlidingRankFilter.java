@@ -0,0 +1,206 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image.processing;
+
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.ImageInteger;
+import boa.image.ImageMask;
+import boa.image.ImageShort;
+import boa.image.processing.neighborhood.DisplacementNeighborhood;
+import boa.utils.ThreadRunner;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Rank filters (median, percentiles) computed by sliding the neighborhood along the X-axis: when the neighborhood moves by one pixel, only the pixels entering and leaving it are updated, instead of sorting the whole neighborhood at each pixel. 
+ * Values of the neighborhood are stored in a two-level histogram for 8 and 16-bit images (Huang / Perreault & Hébert), and in a sorted array for other image types. 
+ * Results are identical to {@link Filters.Median}: pixels out of the image or out of the mask are excluded from the neighborhood
+ * @author Jean Ollion
+ */
+public class SlidingRankFilter {
+    
+    public static <T extends Image<T>> T median(Image image, T output, DisplacementNeighborhood neighborhood, ImageMask mask, boolean parallele) {
+        return rank(image, output, neighborhood, mask, 0.5, parallele);
+    }
+    /**
+     * 
+     * @param image image to filter
+     * @param output image in which the result is written. If null, or with different dimensions or same as {@param image}, a new image of same type as {@param image} (or {@param output} if not null) is created
+     * @param neighborhood 
+     * @param mask only pixels within mask are taken into account, can be null
+     * @param percentile in range [0, 1]. The value is interpolated linearly between the two closest ranks, so that 0.5 gives the median
+     * @param parallele rows are processed in parallel
+     * @return filtered image
+     */
+    public static <T extends Image<T>> T rank(Image image, T output, DisplacementNeighborhood neighborhood, ImageMask mask, double percentile, boolean parallele) {
+        if (percentile<0 || percentile>1) throw new IllegalArgumentException("Percentile should be in range [0, 1]");
+        T res;
+        String name = (percentile==0.5 ? "Median" : "Rank") + " of: "+image.getName();
+        if (output==null) res = (T)Image.createEmptyImage(name, image, image);
+        else if (!output.sameDimensions(image) || output==image) res = Image.createEmptyImage(name, output, image);
+        else res = (T)output.setName(name);
+        float round = res instanceof ImageInteger ? 0.5f : 0;
+        Displacements d = new Displacements(neighborhood);
+        boolean histogram = image instanceof ImageByte || image instanceof ImageShort;
+        ThreadRunner.executeByBlocks(image.sizeY() * image.sizeZ(), parallele, 
+                () -> histogram ? new HistogramWindow((ImageInteger)image, image.getBitDepth()) : new SortedWindow(image, d.dx.length), 
+                (w, row) -> filterRow(row % image.sizeY(), row / image.sizeY(), image, mask, d, w, res, percentile, round));
+        res.resetOffset().translate(image);
+        res.setCalibration(image);
+        return res;
+    }
+    
+    private static void filterRow(int y, int z, Image image, ImageMask mask, Displacements d, Window w, Image res, double percentile, float round) {
+        int sizeX = image.sizeX();
+        for (int i = 0; i<d.dx.length; ++i) update(w, image, mask, d.dx[i], y+d.dy[i], z+d.dz[i], true);
+        for (int x = 0; x<sizeX; ++x) {
+            if (x>0) {
+                for (int i = 0; i<d.leavingDX.length; ++i) update(w, image, mask, x-1+d.leavingDX[i], y+d.leavingDY[i], z+d.leavingDZ[i], false);
+                for (int i = 0; i<d.enteringDX.length; ++i) update(w, image, mask, x+d.enteringDX[i], y+d.enteringDY[i], z+d.enteringDZ[i], true);
+            }
+            res.setPixel(x, y, z, getValue(w, percentile)+round);
+        }
+        for (int i = 0; i<d.dx.length; ++i) update(w, image, mask, sizeX-1+d.dx[i], y+d.dy[i], z+d.dz[i], false); // empty window for next row
+    }
+    
+    private static void update(Window w, Image image, ImageMask mask, int x, int y, int z, boolean add) {
+        if (image.contains(x, y, z) && (mask==null || mask.insideMask(x, y, z))) {
+            if (add) w.add(x, y, z);
+            else w.remove(x, y, z);
+        }
+    }
+    
+    private static double getValue(Window w, double percentile) {
+        int n = w.getCount();
+        if (n==0) return 0;
+        double r = percentile * (n-1);
+        int k = (int)r;
+        double frac = r - k;
+        double value = w.getValue(k);
+        if (frac>0) value += (w.getValue(k+1) - value) * frac;
+        return value;
+    }
+    
+    /**
+     * Displacements of the neighborhood, and displacements of pixels leaving (resp. entering) the neighborhood when it moves by one pixel along the X-axis
+     */
+    private static class Displacements {
+        final int[] dx, dy, dz;
+        final int[] leavingDX, leavingDY, leavingDZ;
+        final int[] enteringDX, enteringDY, enteringDZ;
+        Displacements(DisplacementNeighborhood n) {
+            dx = n.dx;
+            dy = n.dy;
+            dz = n.is3D() && n.dz!=null ? n.dz : new int[n.dx.length];
+            Set<String> all = new HashSet<>();
+            for (int i = 0; i<dx.length; ++i) all.add(key(dx[i], dy[i], dz[i]));
+            int[] leaving = IntStream.range(0, dx.length).filter(i -> !all.contains(key(dx[i]-1, dy[i], dz[i]))).toArray();
+            int[] entering = IntStream.range(0, dx.length).filter(i -> !all.contains(key(dx[i]+1, dy[i], dz[i]))).toArray();
+            leavingDX = Arrays.stream(leaving).map(i -> dx[i]).toArray();
+            leavingDY = Arrays.stream(leaving).map(i -> dy[i]).toArray();
+            leavingDZ = Arrays.stream(leaving).map(i -> dz[i]).toArray();
+            enteringDX = Arrays.stream(entering).map(i -> dx[i]).toArray();
+            enteringDY = Arrays.stream(entering).map(i -> dy[i]).toArray();
+            enteringDZ = Arrays.stream(entering).map(i -> dz[i]).toArray();
+        }
+        private static String key(int x, int y, int z) {
+            return x+";"+y+";"+z;
+        }
+    }
+    
+    private static abstract class Window {
+        abstract void add(int x, int y, int z);
+        abstract void remove(int x, int y, int z);
+        abstract int getCount();
+        /**
+         * @param rank 0-based rank, lower than {@link #getCount()}
+         * @return value of rank {@param rank} within the window
+         */
+        abstract double getValue(int rank);
+    }
+    
+    private static class HistogramWindow extends Window {
+        final ImageInteger image;
+        final int[] fine, coarse;
+        final int shift;
+        int count;
+        HistogramWindow(ImageInteger image, int bitDepth) {
+            this.image = image;
+            fine = new int[1<<bitDepth];
+            shift = bitDepth/2;
+            coarse = new int[fine.length>>shift];
+        }
+        @Override void add(int x, int y, int z) {
+            int v = image.getPixelInt(x, y, z);
+            ++fine[v];
+            ++coarse[v>>shift];
+            ++count;
+        }
+        @Override void remove(int x, int y, int z) {
+            int v = image.getPixelInt(x, y, z);
+            --fine[v];
+            --coarse[v>>shift];
+            --count;
+        }
+        @Override int getCount() {
+            return count;
+        }
+        @Override double getValue(int rank) {
+            int c = 0, cumCount = 0;
+            while (cumCount + coarse[c] <= rank) cumCount += coarse[c++];
+            int v = c<<shift;
+            while (cumCount + fine[v] <= rank) cumCount += fine[v++];
+            return v;
+        }
+    }
+    
+    private static class SortedWindow extends Window {
+        final Image image;
+        final float[] values;
+        int count;
+        SortedWindow(Image image, int capacity) {
+            this.image = image;
+            values = new float[capacity];
+        }
+        @Override void add(int x, int y, int z) {
+            float v = image.getPixel(x, y, z);
+            int i = Arrays.binarySearch(values, 0, count, v);
+            if (i<0) i = -i-1;
+            System.arraycopy(values, i, values, i+1, count-i);
+            values[i] = v;
+            ++count;
+        }
+        @Override void remove(int x, int y, int z) {
+            float v = image.getPixel(x, y, z);
+            int i = Arrays.binarySearch(values, 0, count, v);
+            if (i<0) throw new IllegalStateException("Value: "+v+" at x="+x+" y="+y+" z="+z+" is not in the sliding window: the input image should not be modified during filtering");
+            System.arraycopy(values, i+1, values, i, count-i-1);
+            --count;
+        }
+        @Override int getCount() {
+            return count;
+        }
+        @Override double getValue(int rank) {
+            return values[rank];
+        }
+    }
+}
@@ -36,7 +36,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 import boa.image.processing.neighborhood.EllipsoidalNeighborhood;
 import boa.image.processing.neighborhood.Neighborhood;
 
@@ -45,7 +44,7 @@ import boa.image.processing.neighborhood.Neighborhood;
  * @author Jean Ollion
  */
 public class MultiScaleWatershedTransform {
-    final protected TreeSet<Voxel> heap;
+    final protected PixelQueue heap;
     final protected Spot[] spots; // map label -> spot (spots[0]==null)
     protected int spotNumber;
     final protected Image[] watershedMaps;
@@ -82,7 +81,7 @@ public class MultiScaleWatershedTransform {
         if (!Image.sameSize(Arrays.asList(watershedMaps))) throw new IllegalArgumentException("WatershedMaps should be of same dimensions");
         if (mask==null) mask=new BlankMask( watershedMaps[0]);
         this.decreasingPropagation = decreasingPropagation;
-        heap = decreasingPropagation ? new TreeSet<>(Voxel.getInvertedComparator()) : new TreeSet<>(Voxel.getComparator());
+        heap = PixelQueue.create(watershedMaps[0], decreasingPropagation, watershedMaps);
         this.mask=mask;
         this.watershedMaps=watershedMaps;
         spotNumber = 0;
@@ -141,8 +140,9 @@ public class MultiScaleWatershedTransform {
         List<Voxel> nextProp  = new ArrayList<>(neigh.getSize());
         Set<Integer> surroundingLabels = fusionCriterion==null || fusionCriterion instanceof DefaultFusionCriterion ? null : new HashSet<>(neigh.getSize());
         while (!heap.isEmpty()) {
-            //Voxel v = heap.poll();
-            Voxel v = heap.pollFirst();
+            int key = heap.poll();
+            Voxel v = new Voxel(heap.getX(key), heap.getY(key), heap.getZ(key));
+            v.value = heap.getPolledValue();
             if (segmentedMap.getPixelInt(v.x, v.y, v.z)>0) continue;
             score.setUp(v);
             for (int i = 0; i<neigh.getSize(); ++i) {
@@ -160,9 +160,7 @@ public class MultiScaleWatershedTransform {
             // check propagation criterion
             for (Voxel n : nextProp) {
                 n.value = watershedMaps[spots[currentLabel].scale].getPixel(n.x, n.y, n.z);
-                if (propagationCriterion.continuePropagation(v, n)) { // check if voxel already in set
-                    if (!heap.contains(n)) heap.add(n); // if already present in set -> was accessed from lower value -> priority
-                }
+                if (propagationCriterion.continuePropagation(v, n)) heap.add(n); // if already present in queue -> was accessed from lower value -> priority
             }
             nextProp.clear();
             // check fusion criterion
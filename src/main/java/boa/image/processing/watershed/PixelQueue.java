@@ -0,0 +1,223 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image.processing.watershed;
+
+import boa.data_structure.Voxel;
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.ImageProperties;
+import boa.image.ImageShort;
+import java.util.Arrays;
+
+/**
+ * Priority queue of pixels used by watershed propagation, storing (value, key) pairs in primitive arrays instead of {@link Voxel} objects. 
+ * Pixels are polled by increasing value (decreasing value if the queue is decreasing). Ties are broken by increasing key (decreasing key), which, with keys from {@link #getKey(int, int, int)}, corresponds to the order of {@link Voxel#getComparator()} ({@link Voxel#getInvertedComparator()}). 
+ * A same pixel can be added several times.
+ * @author Jean Ollion
+ */
+public abstract class PixelQueue {
+    final boolean decreasing;
+    final int sizeY, sizeZ, sizeYZ;
+    float polledValue;
+    
+    protected PixelQueue(ImageProperties dimensions, boolean decreasing) {
+        this.decreasing=decreasing;
+        this.sizeY = dimensions.sizeY();
+        this.sizeZ = dimensions.sizeZ();
+        this.sizeYZ = sizeY * sizeZ;
+    }
+    /**
+     * 
+     * @param dimensions dimensions of the propagation domain
+     * @param decreasing if true, pixels with highest values are polled first
+     * @param maps images from which values of pixels are taken
+     * @return a bucket queue if all {@param maps} are 8 or 16-bit images, a binary heap otherwise
+     */
+    public static PixelQueue create(ImageProperties dimensions, boolean decreasing, Image... maps) {
+        if (maps.length>0 && Arrays.stream(maps).allMatch(m -> m instanceof ImageByte || m instanceof ImageShort)) return new BucketQueue(dimensions, decreasing, Arrays.stream(maps).mapToInt(Image::getBitDepth).max().getAsInt());
+        return new HeapQueue(dimensions, decreasing);
+    }
+    
+    public int getKey(int x, int y, int z) {
+        return x * sizeYZ + y * sizeZ + z;
+    }
+    public int getX(int key) {
+        return key / sizeYZ;
+    }
+    public int getY(int key) {
+        return (key / sizeZ) % sizeY;
+    }
+    public int getZ(int key) {
+        return key % sizeZ;
+    }
+    
+    public void add(Voxel v) {
+        add(v.value, getKey(v.x, v.y, v.z));
+    }
+    public abstract void add(float value, int key);
+    /**
+     * Removes the first pixel of the queue. Its value can be retrieved with {@link #getPolledValue()}
+     * @return key of the removed pixel
+     */
+    public abstract int poll();
+    /**
+     * @return value of the last pixel returned by {@link #poll()}
+     */
+    public float getPolledValue() {
+        return polledValue;
+    }
+    public abstract int size();
+    public boolean isEmpty() {
+        return size()==0;
+    }
+    public abstract void clear();
+    
+    /**
+     * Binary heap of (float, int) pairs
+     */
+    static class HeapQueue extends PixelQueue {
+        float[] values = new float[64];
+        int[] keys = new int[64];
+        int size;
+        HeapQueue(ImageProperties dimensions, boolean decreasing) {
+            super(dimensions, decreasing);
+        }
+        private boolean before(float v1, int k1, float v2, int k2) {
+            if (decreasing) return v1>v2 || (v1==v2 && k1>k2);
+            else return v1<v2 || (v1==v2 && k1<k2);
+        }
+        @Override public void add(float value, int key) {
+            if (size==keys.length) {
+                values = Arrays.copyOf(values, size*2);
+                keys = Arrays.copyOf(keys, size*2);
+            }
+            int i = size++;
+            while (i>0) { // sift up
+                int parent = (i-1)>>1;
+                if (!before(value, key, values[parent], keys[parent])) break;
+                values[i] = values[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            values[i] = value;
+            keys[i] = key;
+        }
+        @Override public int poll() {
+            int res = keys[0];
+            polledValue = values[0];
+            --size;
+            float value = values[size];
+            int key = keys[size];
+            int i = 0;
+            while (true) { // sift down
+                int child = 2*i+1;
+                if (child>=size) break;
+                if (child+1<size && before(values[child+1], keys[child+1], values[child], keys[child])) ++child;
+                if (!before(values[child], keys[child], value, key)) break;
+                values[i] = values[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            values[i] = value;
+            keys[i] = key;
+            return res;
+        }
+        @Override public int size() {
+            return size;
+        }
+        @Override public void clear() {
+            size = 0;
+        }
+    }
+    
+    /**
+     * Hierarchical bucket queue for integer values: one bucket per value, buckets being grouped to skip empty ranges. Within a bucket, keys are ordered by a binary heap.
+     */
+    static class BucketQueue extends PixelQueue {
+        final IntHeap[] buckets;
+        final int[] groupCount;
+        final int shift;
+        int size, current;
+        BucketQueue(ImageProperties dimensions, boolean decreasing, int bitDepth) {
+            super(dimensions, decreasing);
+            buckets = new IntHeap[1<<bitDepth];
+            shift = bitDepth/2;
+            groupCount = new int[buckets.length>>shift];
+        }
+        @Override public void add(float value, int key) {
+            int b = decreasing ? buckets.length - 1 - (int)value : (int)value;
+            if (buckets[b]==null) buckets[b] = new IntHeap();
+            buckets[b].add(decreasing ? ~key : key); // ~key inverts order of positive keys
+            ++groupCount[b>>shift];
+            ++size;
+            if (b<current) current = b;
+        }
+        @Override public int poll() {
+            int b = current;
+            while (groupCount[b>>shift]==0) b = ((b>>shift)+1)<<shift;
+            while (buckets[b]==null || buckets[b].size==0) ++b;
+            current = b;
+            --groupCount[b>>shift];
+            --size;
+            polledValue = decreasing ? buckets.length - 1 - b : b;
+            int key = buckets[b].poll();
+            return decreasing ? ~key : key;
+        }
+        @Override public int size() {
+            return size;
+        }
+        @Override public void clear() {
+            for (IntHeap h : buckets) if (h!=null) h.size=0;
+            Arrays.fill(groupCount, 0);
+            size = 0;
+            current = 0;
+        }
+    }
+    
+    static class IntHeap {
+        int[] data = new int[16];
+        int size;
+        void add(int value) {
+            if (size==data.length) data = Arrays.copyOf(data, size*2);
+            int i = size++;
+            while (i>0) {
+                int parent = (i-1)>>1;
+                if (data[parent]<=value) break;
+                data[i] = data[parent];
+                i = parent;
+            }
+            data[i] = value;
+        }
+        int poll() {
+            int res = data[0];
+            int value = data[--size];
+            int i = 0;
+            while (true) {
+                int child = 2*i+1;
+                if (child>=size) break;
+                if (child+1<size && data[child+1]<data[child]) ++child;
+                if (data[child]>=value) break;
+                data[i] = data[child];
+                i = child;
+            }
+            data[i] = value;
+            return res;
+        }
+    }
+}
@@ -42,7 +42,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeSet;
 import boa.image.processing.neighborhood.EllipsoidalNeighborhood;
 import boa.image.processing.neighborhood.Neighborhood;
 import boa.utils.HashMapGetCreate;
@@ -81,7 +80,7 @@ public class WatershedTransform {
             return this;
         }
     }
-    final protected TreeSet<Voxel> heap;
+    final protected PixelQueue heap;
     final protected Spot[] spots; // map label -> spot (spots[0]==null)
     protected int spotNumber;
     final protected Image watershedMap;
@@ -142,8 +141,7 @@ public class WatershedTransform {
         this.decreasingPropagation = config.decreasingPropagation;
         this.lowConnectivity = config.lowConnectivity;
         this.prop = config.prop;
-        heap = decreasingPropagation ? new TreeSet<>(Voxel.getInvertedComparator()) : new TreeSet<>(Voxel.getComparator());
-        //heap = decreasingPropagation ? new PriorityQueue<>(Voxel.getInvertedComparator()) : new PriorityQueue<>();
+        heap = PixelQueue.create(watershedMap, decreasingPropagation, watershedMap);
         this.mask=mask;
         this.watershedMap=watershedMap;
         spots = new Spot[regionalExtrema.size()+1];
@@ -193,37 +191,42 @@ public class WatershedTransform {
         EllipsoidalNeighborhood neigh = watershedMap.sizeZ()>1?new EllipsoidalNeighborhood(rad, rad, true) : new EllipsoidalNeighborhood(rad, true);
         for (Spot s : spots) {
             if (s!=null) {
-                for (Voxel v : s.voxels) {
-                    if (!mask.insideMask(v.x, v.y, v.z)) continue;
-                    for (int i = 0; i<neigh.getSize(); ++i) {
-                        Voxel n = new Voxel(v.x+neigh.dx[i], v.y+neigh.dy[i], v.z+neigh.dz[i]) ;
-                        if (segmentedMap.contains(n.x, n.y, n.z) && mask.insideMask(n.x, n.y, n.z)) {
-                            n.value = watershedMap.getPixel(n.x, n.y, n.z);
-                            heap.add(n);
-                        }
+                for (int i = 0; i<s.size; ++i) {
+                    int x = heap.getX(s.keys[i]), y = heap.getY(s.keys[i]), z = heap.getZ(s.keys[i]);
+                    if (!mask.insideMask(x, y, z)) continue;
+                    for (int j = 0; j<neigh.getSize(); ++j) {
+                        int xx = x+neigh.dx[j], yy = y+neigh.dy[j], zz = z+neigh.dz[j];
+                        if (segmentedMap.contains(xx, yy, zz) && mask.insideMask(xx, yy, zz) && segmentedMap.getPixelInt(xx, yy, zz)==0) heap.add(watershedMap.getPixel(xx, yy, zz), heap.getKey(xx, yy, zz));
                     }
                 }
             }
         }
         Score score = generateScore();
-        List<Voxel> nextProp  = new ArrayList<>(neigh.getSize());
+        Voxel v = new Voxel(0, 0, 0), n = new Voxel(0, 0, 0); // instances are re-used: criteria should not keep references to them
+        int[] nextKeys = new int[neigh.getSize()];
+        float[] nextValues = new float[neigh.getSize()];
+        boolean checkPropagation = !(propagationCriterion instanceof DefaultPropagationCriterion);
         Set<Integer> surroundingLabels = fusionCriterion==null || fusionCriterion instanceof DefaultFusionCriterion ? null : new HashSet<>(neigh.getSize());
         //logger.debug("fusion crit: {} surr. label null ? {}", fusionCriterion==null ? "null" : fusionCriterion.getClass(), surroundingLabels==null);
         while (!heap.isEmpty()) {
-            //Voxel v = heap.poll();
-            Voxel v = heap.pollFirst();
+            int key = heap.poll();
+            v.x = heap.getX(key);
+            v.y = heap.getY(key);
+            v.z = heap.getZ(key);
+            v.value = heap.getPolledValue();
             if (segmentedMap.getPixelInt(v.x, v.y, v.z)>0) continue; //already segmented
             score.setUp(v);
+            int nextCount = 0;
             for (int i = 0; i<neigh.getSize(); ++i) { // check all neighbors
-                Voxel n = new Voxel(v.x+neigh.dx[i], v.y+neigh.dy[i], v.z+neigh.dz[i]) ;
-                if (segmentedMap.contains(n.x, n.y, n.z) && mask.insideMask(n.x, n.y, n.z)) {
-                    int nextLabel = segmentedMap.getPixelInt(n.x, n.y, n.z);
+                int xx = v.x+neigh.dx[i], yy = v.y+neigh.dy[i], zz = v.z+neigh.dz[i];
+                if (segmentedMap.contains(xx, yy, zz) && mask.insideMask(xx, yy, zz)) {
+                    int nextLabel = segmentedMap.getPixelInt(xx, yy, zz);
                     if (nextLabel>0) { // if already segmented
                         if (surroundingLabels!=null) surroundingLabels.add(nextLabel); // add to surrounding labels for fusion cirterion
-                        score.add(n, nextLabel); // add candidate spot for segmentation
+                        score.add(xx, yy, zz, nextLabel); // add candidate spot for segmentation
                     } else { // else -> add to propagation heap
-                        n.value = watershedMap.getPixel(n.x, n.y, n.z);
-                        nextProp.add(n);
+                        nextKeys[nextCount] = heap.getKey(xx, yy, zz);
+                        nextValues[nextCount++] = watershedMap.getPixel(xx, yy, zz);
                     }
                 }
             }
@@ -233,11 +236,23 @@ public class WatershedTransform {
                 ImageWindowManagerFactory.showImage(this.watershedMap);
                 ImageWindowManagerFactory.showImage(this.segmentedMap);
             }
-            spots[currentLabel].addVox(v);
+            spots[currentLabel].addVox(key);
             // check propagation criterion
-            nextProp.removeIf(n->!propagationCriterion.continuePropagation(v, n));
-            heap.addAll(nextProp);
-            nextProp.clear();
+            if (checkPropagation) {
+                int count = 0;
+                for (int i = 0; i<nextCount; ++i) {
+                    n.x = heap.getX(nextKeys[i]);
+                    n.y = heap.getY(nextKeys[i]);
+                    n.z = heap.getZ(nextKeys[i]);
+                    n.value = nextValues[i];
+                    if (propagationCriterion.continuePropagation(v, n)) {
+                        nextKeys[count] = nextKeys[i];
+                        nextValues[count++] = nextValues[i];
+                    }
+                }
+                nextCount = count;
+            }
+            for (int i = 0; i<nextCount; ++i) heap.add(nextValues[i], nextKeys[i]);
             // check fusion criterion for all surrounding labels
             if (surroundingLabels!=null) {
                 surroundingLabels.remove(currentLabel);
@@ -257,30 +272,38 @@ public class WatershedTransform {
     
     
     public void runDirectSegmentation() {
-        
-        for (Spot s : spots) if (s!=null) heap.addAll(s.voxels);
+        for (Spot s : spots) {
+            if (s!=null) for (int i = 0; i<s.size; ++i) heap.add(watershedMap.getPixel(heap.getX(s.keys[i]), heap.getY(s.keys[i]), heap.getZ(s.keys[i])), s.keys[i]);
+        }
         double rad = lowConnectivity ? 1 : 1.5;
         EllipsoidalNeighborhood neigh = watershedMap.sizeZ()>1?new EllipsoidalNeighborhood(rad, rad, true) : new EllipsoidalNeighborhood(rad, true);
+        Voxel v = new Voxel(0, 0, 0), n = new Voxel(0, 0, 0); // instances are re-used: criteria should not keep references to them
         while (!heap.isEmpty()) {
-            //Voxel v = heap.poll();
-            Voxel v = heap.pollFirst();
+            int key = heap.poll();
+            v.x = heap.getX(key);
+            v.y = heap.getY(key);
+            v.z = heap.getZ(key);
+            v.value = heap.getPolledValue();
             Spot currentSpot = spots[segmentedMap.getPixelInt(v.x, v.y, v.z)];
             if (currentSpot ==null) logger.error("spot null @ v={} label: {}", v, segmentedMap.getPixelInt(v.x, v.y, v.z));
             for (int i = 0; i<neigh.getSize(); ++i) {
-                Voxel n = new Voxel(v.x+neigh.dx[i], v.y+neigh.dy[i], v.z+neigh.dz[i]) ;
+                n.x = v.x+neigh.dx[i];
+                n.y = v.y+neigh.dy[i];
+                n.z = v.z+neigh.dz[i];
                 if (segmentedMap.contains(n.x, n.y, n.z) && mask.insideMask(n.x, n.y, n.z)) {
                     int nextLabel = segmentedMap.getPixelInt(n.x, n.y, n.z);
                     if (nextLabel==currentSpot.label) continue;
                     else if (nextLabel>0) {
+                        n.value = 0;
                         if (fusionCriterion.checkFusionCriteria(currentSpot, spots[nextLabel], n)) {
                             currentSpot = currentSpot.fusion( spots[nextLabel]);
                         }
                     } else {
                         n.value =watershedMap.getPixel(n.x, n.y, n.z);
                         if (propagationCriterion.continuePropagation(v, n)){
-                            currentSpot.addVox(n);
-                            heap.add(n);
-                            
+                            int nextKey = heap.getKey(n.x, n.y, n.z);
+                            currentSpot.addVox(nextKey);
+                            heap.add(n.value, nextKey);
                         }
                     }
                 }
@@ -298,7 +321,7 @@ public class WatershedTransform {
     }
     private interface Score {
         public abstract void setUp(Voxel center);
-        public abstract void add(Voxel v, int label);
+        public abstract void add(int x, int y, int z, int label);
         public abstract int getLabel();
     }
     private class MinDiffWsMap implements Score {
@@ -306,9 +329,9 @@ public class WatershedTransform {
         double curDiff = Double.POSITIVE_INFINITY;
         int curLabel;
         @Override
-        public void add(Voxel v, int label) {
+        public void add(int x, int y, int z, int label) {
             //double diff=!decreasingPropagation ? watershedMap.getPixel(v.x, v.y, v.z) : -watershedMap.getPixel(v.x, v.y, v.z);
-            double diff = Math.abs(centerV - watershedMap.getPixel(v.x, v.y, v.z)-centerV);
+            double diff = Math.abs(centerV - watershedMap.getPixel(x, y, z)-centerV);
             if (diff<curDiff) {
                 curDiff=diff;
                 curLabel = label;
@@ -330,9 +353,9 @@ public class WatershedTransform {
         double curDiff = Double.NEGATIVE_INFINITY; // reset
         int curLabel = 0;
         @Override
-        public void add(Voxel v, int label) {
+        public void add(int x, int y, int z, int label) {
             //double diff=!decreasingPropagation ? watershedMap.getPixel(v.x, v.y, v.z) : -watershedMap.getPixel(v.x, v.y, v.z);
-            double diff = Math.abs(watershedMap.getPixel(v.x, v.y, v.z)-centerV);
+            double diff = Math.abs(watershedMap.getPixel(x, y, z)-centerV);
             if (diff>curDiff) {
                 curDiff=diff;
                 curLabel = label;
@@ -355,8 +378,8 @@ public class WatershedTransform {
         double curDiff = Double.MAX_VALUE;;
         int curLabel;
         @Override
-        public void add(Voxel v, int label) {
-            double diff=Math.abs(priorityMap.getPixel(v.x, v.y, v.z)-centerP) ;
+        public void add(int x, int y, int z, int label) {
+            double diff=Math.abs(priorityMap.getPixel(x, y, z)-centerP) ;
             if (diff<curDiff) {
                 curDiff=diff;
                 curLabel = label;
@@ -378,7 +401,7 @@ public class WatershedTransform {
         double curDistSq;
         int curLabel;
         @Override
-        public void add(Voxel v, int label) {
+        public void add(int x, int y, int z, int label) {
             double d = spots[label].distSq(center);
             if (d<curDistSq) {
                 curDistSq = d;
@@ -397,17 +420,16 @@ public class WatershedTransform {
         }
     }
     private class MaxPriority implements Score {
-        Voxel center, curVoxel;
+        Voxel center;
         double priority;
         int curLabel;
         HashMapGetCreate<Integer, int[]> count = new HashMapGetCreate<>(i->new int[1]);
         @Override
-        public void add(Voxel v, int label) {
-            double p = priorityMap.getPixel(v.x, v.y, v.z);
+        public void add(int x, int y, int z, int label) {
+            double p = priorityMap.getPixel(x, y, z);
             if (p>priority || (p==priority && spots[curLabel].distSq(center)>spots[label].distSq(center))) {
                 priority = p;
                 curLabel = label;
-                curVoxel = v;
                 count.clear();
             } else if (p==priority) { // max count ?
                 if (count.isEmpty()) count.getAndCreateIfNecessary(curLabel)[0]++; // add count for previous label
@@ -422,7 +444,6 @@ public class WatershedTransform {
         @Override
         public void setUp(Voxel center) {
             this.center=center;
-            curVoxel = null;
             priority = Double.NEGATIVE_INFINITY; // reset
             curLabel=0;
             count.clear();
@@ -450,19 +471,23 @@ public class WatershedTransform {
     public Spot[] getSpotArray() {
         return spots;
     }
-    public Collection<Voxel> getHeap() {
+    public PixelQueue getHeap() {
         return heap;
     }
     
     
+    /**
+     * Region growing from a seed. Voxels are stored as keys of {@link #heap}, membership being given by the label image
+     */
     public class Spot {
-        public Set<Voxel> voxels;
+        int[] keys;
+        int size;
         int label;
         float priorityValue;
         double[] center;
         public Spot(int label, Collection<Voxel> voxels) {
             this.label=label;
-            this.voxels=new HashSet<>(voxels);
+            this.keys = new int[Math.max(16, voxels.size())];
             if (computeSpotCenter) center= new double[3];
             for (Voxel v : voxels) {
                 v.value=watershedMap.getPixel(v.x, v.y, v.z);
@@ -475,6 +500,7 @@ public class WatershedTransform {
                     float p = priorityMap.getPixel(v.x, v.y, v.z);
                     if (p>priorityValue) priorityValue = p;
                 }
+                if (segmentedMap.getPixelInt(v.x, v.y, v.z)!=label) keys[size++] = heap.getKey(v.x, v.y, v.z);
                 segmentedMap.setPixel(v.x, v.y, v.z, label);
             }
             if (center!=null && voxels.size()>1) {
@@ -485,6 +511,29 @@ public class WatershedTransform {
             }
             
         }
+        /**
+         * @return number of voxels of the spot
+         */
+        public int size() {
+            return size;
+        }
+        /**
+         * @param idx index of voxel, lower than {@link #size()}
+         * @return a new voxel with value from the watershed map
+         */
+        public Voxel getVoxel(int idx) {
+            Voxel v = new Voxel(heap.getX(keys[idx]), heap.getY(keys[idx]), heap.getZ(keys[idx]));
+            v.value = watershedMap.getPixel(v.x, v.y, v.z);
+            return v;
+        }
+        /**
+         * @return a new set containing the voxels of the spot, with values from the watershed map
+         */
+        public Set<Voxel> getVoxels() {
+            Set<Voxel> res = new HashSet<>(size);
+            for (int i = 0; i<size; ++i) res.add(getVoxel(i));
+            return res;
+        }
         
         public double distSq(Voxel v) {
             return Math.pow(v.x- center[0], 2)+ Math.pow(v.y-center[1], 2)+Math.pow(v.z-center[2], 2);
@@ -492,7 +541,7 @@ public class WatershedTransform {
         
         public void setLabel(int label) {
             this.label=label;
-            for (Voxel v : voxels) segmentedMap.setPixel(v.x, v.y, v.z, label);
+            for (int i = 0; i<size; ++i) segmentedMap.setPixel(heap.getX(keys[i]), heap.getY(keys[i]), heap.getZ(keys[i]), label);
         }
 
         public Spot fusion(Spot spot) {
@@ -501,30 +550,44 @@ public class WatershedTransform {
             spots[spot.label]=null;
             spotNumber--;
             spot.setLabel(label);
-            this.voxels.addAll(spot.voxels); // pas besoin de check si voxels.contains(v) car les spots ne se recouvrent pas            //update seed: lowest seedIntensity
-            //if (watershedMap.getPixel(seed.x, seed.y, seed.getZ())>watershedMap.getPixel(spot.seed.x, spot.seed.y, spot.seed.getZ())) seed=spot.seed;
+            ensureCapacity(size + spot.size);
+            System.arraycopy(spot.keys, 0, keys, size, spot.size); // spots do not overlap
+            size += spot.size;
             return this;
         }
-        
+        private void ensureCapacity(int capacity) {
+            if (keys.length<capacity) keys = Arrays.copyOf(keys, Math.max(capacity, keys.length*2));
+        }
         public void addVox(Voxel v) {
-            if (!voxels.contains(v)) {
-                voxels.add(v);
-                segmentedMap.setPixel(v.x, v.y, v.z, label);
+            addVox(heap.getKey(v.x, v.y, v.z));
+        }
+        void addVox(int key) {
+            int x = heap.getX(key), y = heap.getY(key), z = heap.getZ(key);
+            if (segmentedMap.getPixelInt(x, y, z)!=label) {
+                ensureCapacity(size+1);
+                keys[size++] = key;
+                segmentedMap.setPixel(x, y, z, label);
             }
         }
         
         public Region toRegion(int label) {
-            return new Region(voxels, label, segmentedMap.sizeZ()==1, mask.getScaleXY(), mask.getScaleZ()).setQuality(getQuality());
+            return new Region(getVoxels(), label, segmentedMap.sizeZ()==1, mask.getScaleXY(), mask.getScaleZ()).setQuality(getQuality());
         }
         
         public double getQuality() {
             if (decreasingPropagation) {
                 double max = Double.NEGATIVE_INFINITY;
-                for (Voxel v: voxels) if (v.value>max) max = v.value;
+                for (int i = 0; i<size; ++i) {
+                    double value = watershedMap.getPixel(heap.getX(keys[i]), heap.getY(keys[i]), heap.getZ(keys[i]));
+                    if (value>max) max = value;
+                }
                 return max;
             } else {
                 double min = Double.POSITIVE_INFINITY;
-                for (Voxel v: voxels) if (v.value<min) min = v.value;
+                for (int i = 0; i<size; ++i) {
+                    double value = watershedMap.getPixel(heap.getX(keys[i]), heap.getY(keys[i]), heap.getZ(keys[i]));
+                    if (value<min) min = value;
+                }
                 return -min;
             }
         }
@@ -613,7 +676,7 @@ public class WatershedTransform {
         }
         @Override public void setUp(WatershedTransform instance) {}
         @Override public boolean checkFusionCriteria(Spot s1, Spot s2, Voxel currentVoxel) {
-            return s1.voxels.size()<=minimumSize || s2.voxels.size()<=minimumSize;
+            return s1.size()<=minimumSize || s2.size()<=minimumSize;
         }
     }
     public static class ThresholdFusionOnWatershedMap implements FusionCriterion {
@@ -24,19 +24,28 @@ import boa.data_structure.dao.MasterDAO;
 import boa.data_structure.Measurements;
 import boa.data_structure.dao.ObjectDAO;
 import boa.data_structure.Selection;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import boa.utils.Pair;
+import boa.utils.ThreadRunner;
 import boa.utils.Utils;
 
 /**
@@ -117,73 +126,103 @@ public class MeasurementExtractor {
         MeasurementExtractor de= new MeasurementExtractor(db, allMeasurementsSort.lastKey());
         de.extractMeasurementObjects(outputFile, positions, allMeasurementsSort);
     }
+    /**
+     * Measurements of each position are streamed in index order and written to a temporary file, positions being processed in parallel. Temporary files are then concatenated in the order of {@param positions}
+     * @param outputFile
+     * @param positions
+     * @param allMeasurements 
+     */
     protected void extractMeasurementObjects(String outputFile, List<String> positions, Map<Integer, String[]> allMeasurements) {
         Experiment xp = db.getExperiment();
         if (positions==null) positions = Arrays.asList(db.getExperiment().getPositionsAsString());
         long t0 = System.currentTimeMillis();
-        FileWriter fstream;
-        BufferedWriter out;
-        int count = 0;
-        try {
-            File output = new File(outputFile);
-            output.delete();
-            fstream = new FileWriter(output);
-            out = new BufferedWriter(fstream);
-            TreeMap<Integer, String[]> allMeasurementsSort = new TreeMap<>(allMeasurements); // sort by structureIndex value
-            out.write(getHeader(getAllMeasurements(allMeasurements))); 
-            
-            int currentStructureIdx = allMeasurementsSort.lastKey();
-            int[] parentOrder = new int[currentStructureIdx]; // maps structureIdx to parent order
-            for (int s : allMeasurementsSort.keySet()) {
-                if (s!=currentStructureIdx) {
-                    parentOrder[s] = xp.getPathToStructure(s, currentStructureIdx).length;
-                }
+        TreeMap<Integer, String[]> allMeasurementsSort = new TreeMap<>(allMeasurements); // sort by structureIndex value
+        int currentStructureIdx = allMeasurementsSort.lastKey();
+        int[] parentOrder = new int[currentStructureIdx]; // maps structureIdx to parent order
+        for (int s : allMeasurementsSort.keySet()) {
+            if (s!=currentStructureIdx) {
+                parentOrder[s] = xp.getPathToStructure(s, currentStructureIdx).length;
             }
-            String[] currentMeasurementNames = allMeasurementsSort.pollLastEntry().getValue();
-            for (String fieldName : positions) {
-                int posIdx = db.getExperiment().getPositionIdx(fieldName);
-                ObjectDAO dao = db.getDao(fieldName);
-                TreeMap<Integer, List<Measurements>> parentMeasurements = new TreeMap<Integer, List<Measurements>>();
-                for (Entry<Integer, String[]> e : allMeasurementsSort.entrySet()) parentMeasurements.put(e.getKey(), dao.getMeasurements(e.getKey(), e.getValue()));
-                List<Measurements> currentMeasurements = dao.getMeasurements(currentStructureIdx, currentMeasurementNames);
-                Collections.sort(currentMeasurements);
-                for (Measurements m : currentMeasurements) {
-                    StringBuilder line = getBaseLine(m, posIdx);
-                    // add measurements from parents of the the current structure
-                    for (Entry<Integer, List<Measurements>> e : parentMeasurements.entrySet()) {
-                        Measurements key = m.getParentMeasurementKey(parentOrder[e.getKey()]);
-                        int pIdx = e.getValue().indexOf(key);
-                        if (pIdx==-1) {
-                            for (String pMeasName : allMeasurementsSort.get(e.getKey())) {
-                                line.append(separator);
-                                line.append(Measurements.NA_STRING);
-                            } 
-                        }
-                        else {
-                            key = e.getValue().get(pIdx);
-                            for (String pMeasName : allMeasurementsSort.get(e.getKey())) {
-                                line.append(separator);
-                                line.append(key.getValueAsString(pMeasName, numberFormater));
-                                
-                            }
-                        }
-                    }
-                    //add measurements from the current structure
-                    for (String mName : currentMeasurementNames) {
-                        line.append(separator);
-                        line.append(m.getValueAsString(mName, numberFormater));
+        }
+        File output = new File(outputFile);
+        output.delete();
+        File[] tempFiles = new File[positions.size()];
+        List<Pair<Integer, ObjectDAO>> daos = new ArrayList<>(positions.size());
+        for (String position : positions) daos.add(new Pair<>(daos.size(), db.getDao(position))); // DAOs are created sequentially
+        AtomicInteger count = new AtomicInteger();
+        try {
+            ThreadRunner.executeAndThrowErrors(daos.parallelStream(), p -> {
+                try {
+                    tempFiles[p.key] = File.createTempFile("measurements_"+p.value.getPositionName()+"_", ".csv", output.getAbsoluteFile().getParentFile());
+                    try (BufferedWriter out = new BufferedWriter(new FileWriter(tempFiles[p.key]))) {
+                        count.addAndGet(extractMeasurementObjects(p.value, xp.getPositionIdx(p.value.getPositionName()), allMeasurementsSort, parentOrder, out));
                     }
-                    out.newLine();
-                    out.write(line.toString());
-                    ++count;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
                 }
+            });
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+                out.write(getHeader(getAllMeasurements(allMeasurements)).getBytes()); // same default charset as FileWriter
+                for (File f : tempFiles) Files.copy(f.toPath(), out);
             }
-            out.close();
             long t1 = System.currentTimeMillis();
-            logger.debug("data extractions: {} line in: {} ms", count, t1-t0);
-        } catch (IOException ex) {
-            logger.debug("init extract data error: {}", ex);
+            logger.debug("data extractions: {} line in: {} ms", count.get(), t1-t0);
+        } catch (IOException|RuntimeException ex) {
+            logger.error("extract data error", ex);
+        } finally {
+            for (File f : tempFiles) if (f!=null) f.delete();
+        }
+    }
+    /**
+     * Writes one line per measurement of the last structure of {@param allMeasurements}, preceded by a new line. 
+     * Measurements of the current structure and its parents are iterated in index order, so that parent measurements are joined by advancing the parent iterators: only the current measurement of each structure is held in memory
+     * @return number of written lines
+     */
+    protected int extractMeasurementObjects(ObjectDAO dao, int posIdx, TreeMap<Integer, String[]> allMeasurements, int[] parentOrder, BufferedWriter out) throws IOException {
+        int currentStructureIdx = allMeasurements.lastKey();
+        String[] currentMeasurementNames = allMeasurements.get(currentStructureIdx);
+        Map<Integer, ParentCursor> parentMeasurements = new TreeMap<>();
+        for (Entry<Integer, String[]> e : allMeasurements.headMap(currentStructureIdx).entrySet()) parentMeasurements.put(e.getKey(), new ParentCursor(dao.iterateMeasurements(e.getKey(), e.getValue())));
+        Iterator<Measurements> currentMeasurements = dao.iterateMeasurements(currentStructureIdx, currentMeasurementNames);
+        int count = 0;
+        while (currentMeasurements.hasNext()) {
+            Measurements m = currentMeasurements.next();
+            StringBuilder line = getBaseLine(m, posIdx);
+            // add measurements from parents of the the current structure
+            for (Entry<Integer, ParentCursor> e : parentMeasurements.entrySet()) {
+                Measurements key = m.getParentMeasurementKey(parentOrder[e.getKey()]);
+                Measurements parent = key==null ? null : e.getValue().get(key.getIndices());
+                for (String pMeasName : allMeasurements.get(e.getKey())) {
+                    line.append(separator);
+                    line.append(parent==null ? Measurements.NA_STRING : parent.getValueAsString(pMeasName, numberFormater));
+                }
+            }
+            //add measurements from the current structure
+            for (String mName : currentMeasurementNames) {
+                line.append(separator);
+                line.append(m.getValueAsString(mName, numberFormater));
+            }
+            out.newLine();
+            out.write(line.toString());
+            ++count;
+        }
+        return count;
+    }
+    /**
+     * Iterates parent measurements in index order: as children are also iterated in index order, requested parent indices never decrease
+     */
+    static class ParentCursor {
+        final Iterator<Measurements> parents;
+        Measurements current;
+        ParentCursor(Iterator<Measurements> parents) {
+            this.parents=parents;
+        }
+        Measurements get(int[] parentIndices) {
+            while (current==null || Measurements.compareIndices(current.getIndices(), parentIndices)<0) {
+                if (!parents.hasNext()) return null;
+                current = parents.next();
+            }
+            return Measurements.compareIndices(current.getIndices(), parentIndices)==0 ? current : null;
         }
     }
-    
 }
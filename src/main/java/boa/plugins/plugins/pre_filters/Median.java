@@ -31,13 +31,15 @@ import java.util.ArrayList;
 import boa.plugins.Filter;
 import boa.plugins.PreFilter;
 import boa.image.processing.Filters;
+import boa.image.processing.SlidingRankFilter;
 /**
  *
  * @author Jean Ollion
  */
 public class Median implements PreFilter, Filter {
     ScaleXYZParameter radius = new ScaleXYZParameter("Radius", 2, 1, true).setToolTipText("Radius in pixel");
-    Parameter[] parameters = new Parameter[]{radius};
+    NumberParameter percentile = new BoundedNumberParameter("Percentile", 1, 50, 0, 100).setToolTipText("Rank of the value selected within the neighborhood, in percentage. 50 corresponds to the median value, 0 to the minimal value and 100 to the maximal value");
+    Parameter[] parameters = new Parameter[]{radius, percentile};
     public Median() {}
     public Median(double radius) {
         this.radius.setScaleXY(radius);
@@ -49,12 +51,24 @@ public class Median implements PreFilter, Filter {
     }
     @Override
     public Image runPreFilter(Image input, ImageMask mask) {
-        return filter(input, radius.getScaleXY(), radius.getScaleZ(input.getScaleXY(), input.getScaleZ()), false);
+        return filter(input, radius.getScaleXY(), radius.getScaleZ(input.getScaleXY(), input.getScaleZ()), percentile.getValue().doubleValue()/100d, false);
     }
     
     public static Image filter(Image input, double radiusXY, double radiusZ, boolean parallele) {
         return Filters.median(input, null, Filters.getNeighborhood(radiusXY, radiusZ, input), parallele);
     }
+    /**
+     * 
+     * @param input
+     * @param radiusXY
+     * @param radiusZ
+     * @param percentile in range [0, 1]
+     * @param parallele
+     * @return {@param input} filtered with a rank filter of rank {@param percentile}
+     */
+    public static Image filter(Image input, double radiusXY, double radiusZ, double percentile, boolean parallele) {
+        return SlidingRankFilter.rank(input, null, Filters.getNeighborhood(radiusXY, radiusZ, input), null, percentile, parallele);
+    }
     @Override
     public Parameter[] getParameters() {
         return parameters;
@@ -66,7 +80,7 @@ public class Median implements PreFilter, Filter {
     
     @Override 
     public Image applyTransformation(int channelIdx, int timePoint, Image image) {
-        return filter(image, radius.getScaleXY(), radius.getScaleZ(image.getScaleXY(), image.getScaleZ()), true);
+        return filter(image, radius.getScaleXY(), radius.getScaleZ(image.getScaleXY(), image.getScaleZ()), percentile.getValue().doubleValue()/100d, true);
     }
 
     boolean testMode;
@@ -94,7 +94,7 @@ public class SegmentOnly extends SegmentationProcessingPipeline<SegmentOnly> imp
             Segmenter seg = segmenter.instanciatePlugin();
             if (applyToSegmenter!=null) applyToSegmenter.apply(globalParent, seg);
             Image input = globalParent.getPreFilteredImage(structureIdx);
-            if (subSegmentation) input = input.cropWithOffset(ref2D?new MutableBoundingBox(subParent.getBounds()).copyZ(input):subParent.getBounds());
+            if (subSegmentation) input = input.cropViewWithOffset(ref2D?new MutableBoundingBox(subParent.getBounds()).copyZ(input):subParent.getBounds());
             RegionPopulation pop = seg.runSegmenter(input, structureIdx, subParent);
             pop = postFilters.filter(pop, structureIdx, subParent);
             if (subSegmentation && pop!=null) pop.translate(subParent.getBounds(), true);
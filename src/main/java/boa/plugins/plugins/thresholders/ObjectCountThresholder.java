@@ -122,8 +122,8 @@ public class ObjectCountThresholder implements Thresholder {
         int count = 0;
         for (Spot s : instance.getSpotArray()) {
             if (s!=null) {
-                if (s.voxels.size()>1) count++;
-                else if (!s.voxels.isEmpty() && s.voxels.iterator().next().value>value==bright) ++count; 
+                if (s.size()>1) count++;
+                else if (s.size()==1 && s.getVoxel(0).value>value==bright) ++count; 
             }
         }
         return count;
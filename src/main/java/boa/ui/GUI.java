@@ -1177,6 +1177,7 @@ public class GUI extends javax.swing.JFrame implements ImageObjectListener, Prog
         localFileSystemDatabaseRadioButton = new javax.swing.JRadioButtonMenuItem();
         localDBMenu = new javax.swing.JMenu();
         compactLocalDBMenuItem = new javax.swing.JMenuItem();
+        convertMeasurementsMenuItem = new javax.swing.JMenuItem();
         importMenu = new javax.swing.JMenu();
         importDataMenuItem = new javax.swing.JMenuItem();
         importPositionsToCurrentExperimentMenuItem = new javax.swing.JMenuItem();
@@ -1868,6 +1869,14 @@ public class GUI extends javax.swing.JFrame implements ImageObjectListener, Prog
         });
         localDBMenu.add(compactLocalDBMenuItem);
 
+        convertMeasurementsMenuItem.setText("Convert Measurements of Selected Dataset(s)");
+        convertMeasurementsMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                convertMeasurementsMenuItemActionPerformed(evt);
+            }
+        });
+        localDBMenu.add(convertMeasurementsMenuItem);
+
         optionMenu.add(localDBMenu);
 
         mainMenu.add(optionMenu);
@@ -2877,6 +2886,20 @@ public class GUI extends javax.swing.JFrame implements ImageObjectListener, Prog
         }
     }//GEN-LAST:event_compactLocalDBMenuItemActionPerformed
 
+    private void convertMeasurementsMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_convertMeasurementsMenuItemActionPerformed
+        if (this.localFileSystemDatabaseRadioButton.isSelected()) {
+            closeExperiment();
+            for (String xp : getSelectedExperiments()) {
+                DBMapMasterDAO dao = (DBMapMasterDAO)MasterDAOFactory.createDAO(xp, this.getHostNameOrDir(xp));
+                dao.lockPositions();
+                GUI.log("Converting measurements of Dataset: "+xp+" to format: "+dao.getExperiment().getMeasurementStoreType());
+                dao.convertMeasurementStores();
+                dao.unlockPositions();
+                dao.unlockConfiguration();
+            }
+        }
+    }//GEN-LAST:event_convertMeasurementsMenuItemActionPerformed
+
     private void clearMemoryMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearMemoryMenuItemActionPerformed
         if (!checkConnection()) return;
         ExperimentSearchUtils.clearMemory(db);
@@ -3724,6 +3747,7 @@ public class GUI extends javax.swing.JFrame implements ImageObjectListener, Prog
     private javax.swing.JMenuItem clearTrackImagesMenuItem;
     private javax.swing.JMenuItem closeAllWindowsMenuItem;
     private javax.swing.JMenuItem compactLocalDBMenuItem;
+    private javax.swing.JMenuItem convertMeasurementsMenuItem;
     private javax.swing.JScrollPane configurationJSP;
     private javax.swing.JPanel configurationPanel;
     private javax.swing.JTextPane console;
@@ -30,6 +30,7 @@ import boa.data_structure.SelectionUtils;
 import boa.configuration.parameters.PreFilterSequence;
 import boa.configuration.experiment.Experiment;
 import boa.configuration.parameters.TrackPreFilterSequence;
+import boa.data_structure.dao.DBMapObjectDAO;
 import boa.data_structure.dao.MasterDAO;
 import boa.data_structure.Region;
 import boa.data_structure.dao.ObjectDAO;
@@ -85,6 +86,15 @@ public class ManualEdition {
     public static final BiPredicate<StructureObject, StructureObject> ALWAYS_MERGE = (s1, s2)->true;
     public static final BiPredicate<StructureObject, StructureObject> MERGE_TRACKS_BACT_SIZE_COND = (prev, next)-> next.getRegion().size()>prev.getRegion().size()  * 0.8;
     
+    /**
+     * Enables write-behind on {@param dao} so that objects stored during an edition are written and committed by batches, at the flush that ends the edition
+     * @param dao
+     * @return {@param dao}
+     */
+    private static ObjectDAO writeBehind(ObjectDAO dao) {
+        if (dao instanceof DBMapObjectDAO && !dao.isReadOnly()) ((DBMapObjectDAO)dao).setWriteBehind(DBMapObjectDAO.EDITION_FLUSH_SIZE, DBMapObjectDAO.EDITION_FLUSH_LATENCY);
+        return dao;
+    }
     private static List<StructureObject> getNext(StructureObject o) {
         StructureObject nextParent = o.getNext()==null ? o.getParent().getNext() : o.getNext().getParent();
         if (nextParent==null) return Collections.EMPTY_LIST;
@@ -152,8 +162,9 @@ public class ManualEdition {
         if (objectsToUpdate==null || objectsToUpdate.isEmpty()) return;
         for (Pair<StructureObject, Region> p : objectsToUpdate) {
             p.key.setRegion(p.value);
-            p.key.getDAO().store(p.key);
+            writeBehind(p.key.getDAO()).store(p.key);
         }
+        objectsToUpdate.stream().map(p -> p.key.getDAO()).distinct().forEach(dao -> dao.flush());
         if (updateDisplay) updateDisplayAndSelectObjects(Pair.unpairKeys(objectsToUpdate));
     }
     public static void linkObjects(StructureObject prev, StructureObject next, boolean allowDoubleLink, Collection<StructureObject> modifiedObjects) {
@@ -314,7 +325,8 @@ public class ManualEdition {
         }
         //repairLinkInconsistencies(db, modifiedObjects, modifiedObjects);
         Utils.removeDuplicates(modifiedObjects, false);
-        db.getDao(objects.get(0).getPositionName()).store(modifiedObjects);
+        writeBehind(db.getDao(objects.get(0).getPositionName())).store(modifiedObjects);
+        db.getDao(objects.get(0).getPositionName()).flush();
         if (updateDisplay) {
             // reload track-tree and update selection toDelete
             int parentStructureIdx = objects.get(0).getParent().getStructureIdx();
@@ -344,7 +356,8 @@ public class ManualEdition {
                 o.setAttribute(StructureObject.EDITED_LINK_PREV, true);
                 o.setAttribute(StructureObject.TRACK_ERROR_PREV, null);
             });
-            db.getDao(e.getKey()).store(modifiedObjects);
+            writeBehind(db.getDao(e.getKey())).store(modifiedObjects);
+            db.getDao(e.getKey()).flush();
             if (updateDisplay) {
                 int parentStructureIdx = futureTrackHeads.iterator().next().getParent().getStructureIdx();
                 if (GUI.getInstance().trackTreeController!=null) GUI.getInstance().trackTreeController.updateParentTracks(GUI.getInstance().trackTreeController.getTreeIdx(parentStructureIdx));
@@ -407,7 +420,8 @@ public class ManualEdition {
         List<StructureObject> modifiedObjects = new ArrayList<StructureObject>();
         for (StructureObject o : objects) ManualEdition.unlinkObject(o, ALWAYS_MERGE, modifiedObjects);
         Utils.removeDuplicates(modifiedObjects, false);
-        db.getDao(objects.get(0).getPositionName()).store(modifiedObjects);
+        writeBehind(db.getDao(objects.get(0).getPositionName())).store(modifiedObjects);
+        db.getDao(objects.get(0).getPositionName()).flush();
         if (updateDisplay) {
             // reload track-tree and update selection toDelete
             int parentStructureIdx = objects.get(0).getParent().getStructureIdx();
@@ -504,7 +518,8 @@ public class ManualEdition {
                     parent.relabelChildren(structureIdx, modified);
                     modified.addAll(newChildren);
                     Utils.removeDuplicates(modified, false);
-                    db.getDao(parent.getPositionName()).store(modified);
+                    writeBehind(db.getDao(parent.getPositionName())).store(modified);
+                    db.getDao(parent.getPositionName()).flush();
                     
                     //Update tree
                     /*ObjectNode node = GUI.getInstance().objectTreeGenerator.getObjectNode(e.getKey());
@@ -559,7 +574,7 @@ public class ManualEdition {
         }
         Map<String, List<StructureObject>> objectsByPosition = StructureObjectUtils.splitByPosition(objects);
         for (String f : objectsByPosition.keySet()) {
-            ObjectDAO dao = db==null? null : db.getDao(f);
+            ObjectDAO dao = db==null? null : writeBehind(db.getDao(f));
             Set<StructureObject> objectsToStore = new HashSet<>();
             List<StructureObject> newObjects = new ArrayList<>();
             if (!(splitter instanceof FreeLineSplitter)) ensurePreFilteredImages(objectsByPosition.get(f).stream().map(o->o.getParent()), structureIdx, xp, dao);
@@ -594,6 +609,7 @@ public class ManualEdition {
             
             if (!test && dao!=null) {
                 dao.store(objectsToStore);
+                dao.flush();
                 logger.debug("storing modified objects after split: {}", objectsToStore);
             }
             if (updateDisplay && !test) {
@@ -650,7 +666,7 @@ public class ManualEdition {
     public static void mergeObjects(MasterDAO db, Collection<StructureObject> objects, boolean updateDisplay) {
         String fieldName = StructureObjectUtils.keepOnlyObjectsFromSameMicroscopyField(objects);
         if (objects.isEmpty()) return;
-        ObjectDAO dao = db.getDao(fieldName);
+        ObjectDAO dao = writeBehind(db.getDao(fieldName));
         Map<StructureObject, List<StructureObject>> objectsByParent = StructureObjectUtils.splitByParent(objects);
         List<StructureObject> newObjects = new ArrayList<>();
         for (StructureObject parent : objectsByParent.keySet()) {
@@ -679,6 +695,7 @@ public class ManualEdition {
                 modifiedObjects.add(res);
                 Utils.removeDuplicates(modifiedObjects, false);
                 dao.store(modifiedObjects);
+                dao.flush();
             }
         }
         if (updateDisplay) updateDisplayAndSelectObjects(newObjects);
@@ -711,7 +728,7 @@ public class ManualEdition {
     }
     public static void deleteObjects(MasterDAO db, Collection<StructureObject> objects, BiPredicate<StructureObject, StructureObject> mergeTracks, boolean updateDisplay) {
         String fieldName = StructureObjectUtils.keepOnlyObjectsFromSameMicroscopyField(objects);
-        ObjectDAO dao = db!=null ? db.getDao(fieldName) : null;
+        ObjectDAO dao = db!=null ? writeBehind(db.getDao(fieldName)) : null;
         Map<Integer, List<StructureObject>> objectsByStructureIdx = StructureObjectUtils.splitByStructureIdx(objects);
         for (int structureIdx : objectsByStructureIdx.keySet()) {
             List<StructureObject> toDelete = objectsByStructureIdx.get(structureIdx);
@@ -728,6 +745,7 @@ public class ManualEdition {
                 dao.delete(toDelete, true, true, true);
                 modifiedObjects.removeAll(toDelete); // avoid storing deleted objects!!!
                 dao.store(modifiedObjects);
+                dao.flush();
             } else {
                 //Collections.sort(toDelete);
                 //logger.debug("Deleting {} objects, from {} parents", toDelete.size(), parents.size());
@@ -758,7 +776,7 @@ public class ManualEdition {
         boolean allowMerge = db.getExperiment().getStructure(structureIdx).allowMerge();
         logger.debug("allow Split: {}, allow merge: {}", allowSplit, allowMerge);
         int count = 0, countUncorr=0, count2=0, countUncorr2=0, countTh=0;
-        ObjectDAO dao = db.getDao(fieldName);
+        ObjectDAO dao = writeBehind(db.getDao(fieldName));
         List<StructureObject> modifiedObjects = new ArrayList<StructureObject>();
         List<StructureObject> uncorrected = new ArrayList<StructureObject>();
         for (StructureObject root : dao.getRoots()) {
@@ -812,6 +830,7 @@ public class ManualEdition {
         }
         Utils.removeDuplicates(modifiedObjects, false);
         dao.store(modifiedObjects);
+        dao.flush();
     }
     
     public static void deleteAllObjectsFromFrame(MasterDAO db, boolean after) {
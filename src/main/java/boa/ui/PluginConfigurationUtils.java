@@ -53,6 +53,7 @@ import boa.plugins.Transformation;
 import boa.plugins.plugins.processing_pipeline.SegmentAndTrack;
 import boa.plugins.plugins.processing_pipeline.SegmentOnly;
 import boa.utils.ArrayUtil;
+import boa.utils.Id;
 import boa.utils.Pair;
 import boa.utils.Utils;
 import java.awt.event.ActionEvent;
@@ -91,7 +92,7 @@ public class PluginConfigurationUtils {
         int segParentStrutureIdx = o.getExperiment().getStructure(structureIdx).getSegmentationParentStructure();
         Function<StructureObject, StructureObject> getParent = c -> (c.getStructureIdx()>parentStrutureIdx) ? c.getParent(parentStrutureIdx) : c.getChildren(parentStrutureIdx).get(0);
         List<StructureObject> wholeParentTrack = StructureObjectUtils.getTrack( getParent.apply(o).getTrackHead(), false);
-        Map<String, StructureObject> dupMap = StructureObjectUtils.createGraphCut(wholeParentTrack, true, true);  // don't modify object directly. 
+        Map<Id, StructureObject> dupMap = StructureObjectUtils.createGraphCut(wholeParentTrack, true, true);  // don't modify object directly. 
         List<StructureObject> wholeParentTrackDup = wholeParentTrack.stream().map(p->dupMap.get(p.getId())).collect(Collectors.toList());
         List<StructureObject> parentTrackDup = parentSelection.stream().map(getParent).distinct().map(p->dupMap.get(p.getId())).sorted().collect(Collectors.toList());
 
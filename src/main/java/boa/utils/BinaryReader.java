@@ -0,0 +1,120 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads values written by {@link BinaryWriter} from a byte array or a {@link ByteBuffer} (e.g. a memory-mapped region)
+ * @author Jean Ollion
+ */
+public class BinaryReader {
+    final ByteBuffer buffer;
+    public BinaryReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+    public BinaryReader(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length).slice());
+    }
+    /**
+     * 
+     * @param buffer data is read from position 0 to limit, independently of the position of {@param buffer}
+     */
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.buffer.order(java.nio.ByteOrder.BIG_ENDIAN);
+    }
+    public int position() {
+        return buffer.position();
+    }
+    public BinaryReader position(int position) {
+        buffer.position(position);
+        return this;
+    }
+    public int remaining() {
+        return buffer.remaining();
+    }
+    public int limit() {
+        return buffer.limit();
+    }
+    public BinaryReader skip(int bytes) {
+        buffer.position(buffer.position()+bytes);
+        return this;
+    }
+    public byte readByte() {
+        return buffer.get();
+    }
+    public boolean readBoolean() {
+        return buffer.get()!=0;
+    }
+    public int readInt() {
+        return buffer.getInt();
+    }
+    public int getInt(int position) {
+        return buffer.getInt(position);
+    }
+    public byte getByte(int position) {
+        return buffer.get(position);
+    }
+    public long readLong() {
+        return buffer.getLong();
+    }
+    public float readFloat() {
+        return buffer.getFloat();
+    }
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+    public int readVarInt() {
+        int res = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift>28) throw new IllegalStateException("Malformed var-int");
+            b = buffer.get();
+            res |= (b & 0x7F) << shift;
+            shift+=7;
+        } while ((b & 0x80) != 0);
+        return res;
+    }
+    public int readSignedVarInt() {
+        int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+    public byte[] readBytes(int length) {
+        byte[] res = new byte[length];
+        buffer.get(res);
+        return res;
+    }
+    public byte[] getBytes(int position, int length) {
+        byte[] res = new byte[length];
+        for (int i = 0; i<length; ++i) res[i] = buffer.get(position+i);
+        return res;
+    }
+    public byte[] readByteArray() {
+        int length = readVarInt();
+        return readBytes(length);
+    }
+    public String readString() {
+        int length = readVarInt();
+        if (length==0) return null;
+        return new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,134 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with fixed-width (big-endian) and variable-length (LEB128 / zig-zag) integer encoding
+ * @author Jean Ollion
+ */
+public class BinaryWriter {
+    byte[] buffer;
+    int position;
+    public BinaryWriter() {
+        this(64);
+    }
+    public BinaryWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+    private void ensureCapacity(int additional) {
+        if (position+additional>buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length*2, position+additional));
+    }
+    public int size() {
+        return position;
+    }
+    public BinaryWriter clear() {
+        position = 0;
+        return this;
+    }
+    public BinaryWriter writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte)b;
+        return this;
+    }
+    public BinaryWriter writeBoolean(boolean b) {
+        return writeByte(b?1:0);
+    }
+    public BinaryWriter writeInt(int v) {
+        ensureCapacity(4);
+        buffer[position++] = (byte)(v>>>24);
+        buffer[position++] = (byte)(v>>>16);
+        buffer[position++] = (byte)(v>>>8);
+        buffer[position++] = (byte)v;
+        return this;
+    }
+    public BinaryWriter writeLong(long v) {
+        writeInt((int)(v>>>32));
+        return writeInt((int)v);
+    }
+    public BinaryWriter writeFloat(float v) {
+        return writeInt(Float.floatToIntBits(v));
+    }
+    public BinaryWriter writeDouble(double v) {
+        return writeLong(Double.doubleToLongBits(v));
+    }
+    /**
+     * Unsigned LEB128 encoding: 1 byte for values < 128, 2 bytes for values < 16384...
+     * @param v
+     * @return this writer
+     */
+    public BinaryWriter writeVarInt(int v) {
+        ensureCapacity(5);
+        while ((v & ~0x7F) != 0) {
+            buffer[position++] = (byte)((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[position++] = (byte)v;
+        return this;
+    }
+    /**
+     * Zig-zag + LEB128 encoding, efficient for small signed values
+     * @param v
+     * @return this writer
+     */
+    public BinaryWriter writeSignedVarInt(int v) {
+        return writeVarInt((v << 1) ^ (v >> 31));
+    }
+    public BinaryWriter writeBytes(byte[] bytes) {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+    public BinaryWriter writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position+=length;
+        return this;
+    }
+    /**
+     * Writes the length as var-int followed by the bytes. null is encoded as length 0
+     * @param bytes
+     * @return this writer
+     */
+    public BinaryWriter writeByteArray(byte[] bytes) {
+        if (bytes==null) return writeVarInt(0);
+        writeVarInt(bytes.length);
+        return writeBytes(bytes);
+    }
+    public BinaryWriter writeString(String s) {
+        return writeByteArray(s==null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+    /**
+     * Overwrites a fixed-width int at a given position (e.g. to write a length or offset once known)
+     * @param position
+     * @param v
+     * @return this writer
+     */
+    public BinaryWriter setInt(int position, int v) {
+        if (position+4>this.position) throw new IndexOutOfBoundsException("position: "+position+" size: "+this.position);
+        buffer[position] = (byte)(v>>>24);
+        buffer[position+1] = (byte)(v>>>16);
+        buffer[position+2] = (byte)(v>>>8);
+        buffer[position+3] = (byte)v;
+        return this;
+    }
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+}
@@ -47,6 +47,13 @@ public class DBMapUtils {
             return null;
         }
     }
+    public static HTreeMap<String, byte[]> createBinaryHTreeMap(DB db, String key) {
+        try {
+            return db.hashMap(key, Serializer.STRING, Serializer.BYTE_ARRAY).createOrOpen(); 
+        } catch (UnsupportedOperationException e) { // read-only case
+            return null;
+        }
+    }
     public static <K, V> Set<Entry<K, V>> getEntrySet(HTreeMap<K, V> map) {
         if (map==null) return Collections.EMPTY_SET; // read-only case
         return map.getEntries(); 
@@ -55,6 +62,10 @@ public class DBMapUtils {
         if (map==null) return Collections.EMPTY_SET;
         return map.getValues(); 
     }
+    public static <K> Set<K> getKeys(HTreeMap<K, ?> map) {
+        if (map==null) return Collections.EMPTY_SET;
+        return map.getKeys(); 
+    }
     public static Iterable<String> getNames(DB db) {
         return db.getAllNames(); 
     }
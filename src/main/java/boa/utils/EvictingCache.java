@@ -0,0 +1,208 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Map with a bound on the total weight of its values, evicting least recently used entries when the bound is exceeded. 
+ * Entries rejected by the eviction filter are skipped and remain in the cache; the most recently used entry is never evicted. 
+ * Values can be modified after insertion: their weight is re-computed each time they are accessed or refreshed.
+ * Counts hits, misses and evictions.
+ * @author Jean Ollion
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class EvictingCache<K, V> {
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final Map<K, Long> weights = new HashMap<>();
+    private final HashMapGetCreate.Factory<K, V> factory;
+    private final ToLongFunction<V> weigher;
+    private long maxWeight, totalWeight;
+    private BiPredicate<K, V> evictionFilter;
+    private BiConsumer<K, V> evictionListener;
+    private long hits, misses, evictions;
+    /**
+     * 
+     * @param factory used by {@link #getAndCreateIfNecessary(java.lang.Object)}
+     * @param weigher weight of a value
+     * @param maxWeight maximal total weight of values. if 0 or negative, the cache is unbounded
+     */
+    public EvictingCache(HashMapGetCreate.Factory<K, V> factory, ToLongFunction<V> weigher, long maxWeight) {
+        this.factory=factory;
+        this.weigher=weigher;
+        this.maxWeight=maxWeight;
+    }
+    /**
+     * 
+     * @param evictionFilter entries for which the filter returns false are never evicted. Called while the cache is locked: it should not access the cache other than through {@link #containsKey(java.lang.Object)} and {@link #keys()}
+     * @return this cache for convinience
+     */
+    public synchronized EvictingCache<K, V> setEvictionFilter(BiPredicate<K, V> evictionFilter) {
+        this.evictionFilter=evictionFilter;
+        return this;
+    }
+    /**
+     * 
+     * @param evictionListener called after an entry has been evicted
+     * @return this cache for convinience
+     */
+    public synchronized EvictingCache<K, V> setEvictionListener(BiConsumer<K, V> evictionListener) {
+        this.evictionListener=evictionListener;
+        return this;
+    }
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight=maxWeight;
+        trim();
+    }
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+    public synchronized int size() {
+        return map.size();
+    }
+    public synchronized boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+    /**
+     * 
+     * @param key
+     * @return value associated to {@param key}, or null. Counts as a hit or a miss
+     */
+    public synchronized V get(K key) {
+        V v = map.get(key);
+        if (v==null) ++misses;
+        else {
+            ++hits;
+            updateWeight(key, v);
+        }
+        return v;
+    }
+    /**
+     * 
+     * @param key
+     * @return value associated to {@param key}, or null. Not counted as a hit or a miss
+     */
+    public synchronized V peek(K key) {
+        return map.get(key);
+    }
+    public synchronized V getAndCreateIfNecessary(K key) {
+        V v = get(key);
+        if (v==null) {
+            v = factory.create(key);
+            put(key, v);
+        }
+        return v;
+    }
+    public synchronized V put(K key, V value) {
+        V old = map.put(key, value);
+        updateWeight(key, value);
+        trim();
+        return old;
+    }
+    public synchronized V remove(K key) {
+        Long w = weights.remove(key);
+        if (w!=null) totalWeight-=w;
+        return map.remove(key);
+    }
+    /**
+     * Re-computes the weight of the value associated to {@param key}, to be called after it has been modified. May trigger evictions
+     * @param key 
+     */
+    public synchronized void refresh(K key) {
+        V v = map.get(key);
+        if (v==null) return;
+        updateWeight(key, v);
+        trim();
+    }
+    public synchronized void clear() {
+        map.clear();
+        weights.clear();
+        totalWeight = 0;
+    }
+    /**
+     * 
+     * @return copy of keys, from least to most recently used
+     */
+    public synchronized List<K> keys() {
+        return new ArrayList<>(map.keySet());
+    }
+    /**
+     * 
+     * @return copy of values, from least to most recently used
+     */
+    public synchronized List<V> values() {
+        return new ArrayList<>(map.values());
+    }
+    private void updateWeight(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        Long old = weights.put(key, w);
+        totalWeight += w - (old==null ? 0 : old);
+    }
+    /**
+     * Evicts least recently used entries accepted by the eviction filter until the total weight is below the bound
+     */
+    public synchronized void trim() {
+        if (maxWeight<=0 || totalWeight<=maxWeight || map.size()<=1) return;
+        List<Entry<K, V>> evicted = new ArrayList<>();
+        long weight = totalWeight;
+        Iterator<Entry<K, V>> it = map.entrySet().iterator();
+        for (int i = 0; i<map.size()-1 && weight>maxWeight; ++i) { // most recently used entry is kept
+            Entry<K, V> e = it.next();
+            if (evictionFilter!=null && !evictionFilter.test(e.getKey(), e.getValue())) continue;
+            evicted.add(e);
+            weight -= weights.get(e.getKey());
+        }
+        for (Entry<K, V> e : evicted) {
+            remove(e.getKey());
+            ++evictions;
+            if (evictionListener!=null) evictionListener.accept(e.getKey(), e.getValue());
+        }
+    }
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+    @Override
+    public synchronized String toString() {
+        return "entries: "+map.size()+" weight: "+totalWeight+"/"+(maxWeight>0 ? maxWeight : "unbounded")+" hits: "+hits+" misses: "+misses+" evictions: "+evictions;
+    }
+}
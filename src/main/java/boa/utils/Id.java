@@ -223,17 +223,28 @@ public final class Id implements Comparable<Id>, Serializable {
      * @throws IllegalArgumentException if array is null or not of length 12
      */
     public Id(final byte[] bytes) {
+        this(checkLength(bytes), 0);
+    }
+    private static byte[] checkLength(final byte[] bytes) {
         if (bytes == null) {
             throw new IllegalArgumentException();
         }
         if (bytes.length != 12) {
             throw new IllegalArgumentException("need 12 bytes");
         }
-
-        timestamp = makeInt(bytes[0], bytes[1], bytes[2], bytes[3]);
-        machineIdentifier = makeInt((byte) 0, bytes[4], bytes[5], bytes[6]);
-        processIdentifier = (short) makeInt((byte) 0, (byte) 0, bytes[7], bytes[8]);
-        counter = makeInt((byte) 0, bytes[9], bytes[10], bytes[11]);
+        return bytes;
+    }
+    /**
+     * Constructs a new instance from the 12 bytes of the given array starting at {@param offset}
+     *
+     * @param bytes the byte array
+     * @param offset position of the first byte
+     */
+    public Id(final byte[] bytes, final int offset) {
+        timestamp = makeInt(bytes[offset], bytes[offset+1], bytes[offset+2], bytes[offset+3]);
+        machineIdentifier = makeInt((byte) 0, bytes[offset+4], bytes[offset+5], bytes[offset+6]);
+        processIdentifier = (short) makeInt((byte) 0, (byte) 0, bytes[offset+7], bytes[offset+8]);
+        counter = makeInt((byte) 0, bytes[offset+9], bytes[offset+10], bytes[offset+11]);
     }
 
     /**
@@ -271,20 +282,29 @@ public final class Id implements Comparable<Id>, Serializable {
      */
     public byte[] toByteArray() {
         byte[] bytes = new byte[12];
-        bytes[0] = int3(timestamp);
-        bytes[1] = int2(timestamp);
-        bytes[2] = int1(timestamp);
-        bytes[3] = int0(timestamp);
-        bytes[4] = int2(machineIdentifier);
-        bytes[5] = int1(machineIdentifier);
-        bytes[6] = int0(machineIdentifier);
-        bytes[7] = short1(processIdentifier);
-        bytes[8] = short0(processIdentifier);
-        bytes[9] = int2(counter);
-        bytes[10] = int1(counter);
-        bytes[11] = int0(counter);
+        writeTo(bytes, 0);
         return bytes;
     }
+    /**
+     * Writes the 12 bytes of this id in big-endian order
+     *
+     * @param bytes destination array
+     * @param offset position of the first byte
+     */
+    public void writeTo(final byte[] bytes, final int offset) {
+        bytes[offset] = int3(timestamp);
+        bytes[offset+1] = int2(timestamp);
+        bytes[offset+2] = int1(timestamp);
+        bytes[offset+3] = int0(timestamp);
+        bytes[offset+4] = int2(machineIdentifier);
+        bytes[offset+5] = int1(machineIdentifier);
+        bytes[offset+6] = int0(machineIdentifier);
+        bytes[offset+7] = short1(processIdentifier);
+        bytes[offset+8] = short0(processIdentifier);
+        bytes[offset+9] = int2(counter);
+        bytes[offset+10] = int1(counter);
+        bytes[offset+11] = int0(counter);
+    }
 
     /**
      * Gets the timestamp (number of seconds since the Unix epoch).
@@ -337,14 +357,15 @@ public final class Id implements Comparable<Id>, Serializable {
      * @return a string representation of the Id in hexadecimal format
      */
     public String toHexString() {
-        StringBuilder buf = new StringBuilder(24);
-
+        char[] chars = new char[24];
+        int i = 0;
         for (final byte b : toByteArray()) {
-            buf.append(String.format("%02x", b & 0xff));
+            chars[i++] = HEX_CHARS[b >> 4 & 0xF];
+            chars[i++] = HEX_CHARS[b & 0xF];
         }
-
-        return buf.toString();
+        return new String(chars);
     }
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
 
     @Override
     public boolean equals(final Object o) {
@@ -388,14 +409,20 @@ public final class Id implements Comparable<Id>, Serializable {
             throw new NullPointerException();
         }
 
-        byte[] byteArray = toByteArray();
-        byte[] otherByteArray = other.toByteArray();
-        for (int i = 0; i < 12; i++) {
-            if (byteArray[i] != otherByteArray[i]) {
-                return ((byteArray[i] & 0xff) < (otherByteArray[i] & 0xff)) ? -1 : 1;
-            }
+        // same order as the unsigned comparison of byte arrays
+        int c = Integer.compareUnsigned(timestamp, other.timestamp);
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(machineIdentifier, other.machineIdentifier);
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(processIdentifier & 0xffff, other.processIdentifier & 0xffff);
+        if (c != 0) {
+            return c;
         }
-        return 0;
+        return Integer.compare(counter, other.counter);
     }
 
     @Override
@@ -502,7 +529,7 @@ public final class Id implements Comparable<Id>, Serializable {
 
         byte[] b = new byte[12];
         for (int i = 0; i < b.length; i++) {
-            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+            b[i] = (byte) (Character.digit(s.charAt(i * 2), 16) << 4 | Character.digit(s.charAt(i * 2 + 1), 16));
         }
         return b;
     }
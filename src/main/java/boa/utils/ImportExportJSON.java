@@ -151,7 +151,7 @@ public class ImportExportJSON {
         logger.debug("{} objets read", allObjects.size());
         List<Measurements> allMeas = reader.readObjects(dao.getPositionName()+"/measurements.txt", o->new Measurements(parse(o), dao.getPositionName()));
         logger.debug("{} measurements read", allObjects.size());
-        Map<String, StructureObject> objectsById = new HashMap<>(allObjects.size());
+        Map<Id, StructureObject> objectsById = new HashMap<>(allObjects.size());
         
         List<StructureObject> roots = new ArrayList<>();
         Iterator<StructureObject> it = allObjects.iterator();
@@ -188,9 +188,25 @@ public class JSONUtils {
             return null;
         }
     }
+    /**
+     * 
+     * @param s JSON value
+     * @return parsed value, or null if {@param s} could not be parsed
+     */
+    public static Object parseValue(String s) {
+        try {
+            return new JSONParser().parse(s);
+        } catch (ParseException ex) {
+            logger.trace("Could not parse: "+s, ex);
+            return null;
+        }
+    }
     public static <T> T parse(Class<T> clazz, String s) {
         if (StructureObject.class.equals(clazz)) {
-            JSONObject o = parse(s);
+            int[] region = getTopLevelValueRanges(s).get("object"); // the region is not parsed: its JSON is kept as a string and decoded at first access
+            if (region==null) return (T)new StructureObject(parse(s));
+            JSONObject o = parse(s.substring(0, region[0])+"null"+s.substring(region[1]));
+            o.put("object", s.substring(region[0], region[1]));
             return (T)new StructureObject(o);
         } else if (Measurements.class.equals(clazz)) {
             throw new IllegalArgumentException("Cannot create measurement only from JSON need position name");
@@ -208,6 +224,64 @@ public class JSONUtils {
         throw new IllegalArgumentException("Type not supported");
     }
     
+    /**
+     * Locates the values of the top-level entries of a JSON object without parsing them
+     * @param json JSON object
+     * @return for each top-level key, start (included) and end (excluded) index of its value in {@param json}. Empty if {@param json} is not a JSON object
+     */
+    public static Map<String, int[]> getTopLevelValueRanges(String json) {
+        Map<String, int[]> res = new HashMap<>();
+        int i = skipWhiteSpaces(json, 0);
+        if (i>=json.length() || json.charAt(i)!='{') return res;
+        i = skipWhiteSpaces(json, i+1);
+        while (i<json.length() && json.charAt(i)=='"') {
+            int keyEnd = skipString(json, i);
+            String key = json.substring(i+1, keyEnd-1);
+            i = skipWhiteSpaces(json, keyEnd);
+            if (i>=json.length() || json.charAt(i)!=':') return res;
+            int valueStart = skipWhiteSpaces(json, i+1);
+            int valueEnd = skipValue(json, valueStart);
+            res.put(key, new int[]{valueStart, valueEnd});
+            i = skipWhiteSpaces(json, valueEnd);
+            if (i<json.length() && json.charAt(i)==',') i = skipWhiteSpaces(json, i+1);
+            else break;
+        }
+        return res;
+    }
+    private static int skipWhiteSpaces(String s, int i) {
+        while (i<s.length() && Character.isWhitespace(s.charAt(i))) ++i;
+        return i;
+    }
+    /**
+     * @param i index of the opening quote
+     * @return index following the closing quote
+     */
+    private static int skipString(String s, int i) {
+        for (int j = i+1; j<s.length(); ++j) {
+            char c = s.charAt(j);
+            if (c=='\\') ++j;
+            else if (c=='"') return j+1;
+        }
+        return s.length();
+    }
+    private static int skipValue(String s, int i) {
+        if (i>=s.length()) return i;
+        char c = s.charAt(i);
+        if (c=='"') return skipString(s, i);
+        if (c=='{' || c=='[') {
+            int depth = 0;
+            for (int j = i; j<s.length(); ++j) {
+                char cj = s.charAt(j);
+                if (cj=='"') j = skipString(s, j)-1;
+                else if (cj=='{' || cj=='[') ++depth;
+                else if ((cj=='}' || cj==']') && --depth==0) return j+1;
+            }
+            return s.length();
+        }
+        int j = i; // number, boolean or null
+        while (j<s.length() && ",}] \t\r\n".indexOf(s.charAt(j))<0) ++j;
+        return j;
+    }
     public static JSONArray toJSON(Collection<? extends JSONSerializable> coll) {
         JSONArray res = new JSONArray();
         for (JSONSerializable j : coll) res.add(j.toJSONEntry());
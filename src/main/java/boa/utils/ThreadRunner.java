@@ -36,9 +36,11 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 /**
 Copyright (C) Jean Ollion
@@ -159,6 +161,26 @@ public class ThreadRunner {
     public static int getMaxCPUs() {
         return Runtime.getRuntime().availableProcessors();
     }
+    /**
+     * Processes indices of range [0; {@param count}) split into contiguous blocks. Blocks are processed in parallel in the common fork-join pool if {@param parallele} is true. 
+     * Each block creates its own state with {@param stateFactory}, that is passed to {@param action} for each index of the block: states are not shared among threads and are created once per block instead of once per index
+     * @param <S> type of state
+     * @param count number of indices
+     * @param parallele
+     * @param stateFactory supplier of per-block state (e.g. working arrays, duplicated filters)
+     * @param action action performed on each index
+     */
+    public static <S> void executeByBlocks(int count, boolean parallele, Supplier<S> stateFactory, ObjIntConsumer<S> action) {
+        if (count<=0) return;
+        int nBlocks = parallele ? Math.min(count, getMaxCPUs() * 4) : 1;
+        IntStream blocks = IntStream.range(0, nBlocks);
+        if (parallele && nBlocks>1) blocks = blocks.parallel();
+        blocks.forEach(b -> {
+            S state = stateFactory.get();
+            int end = (int)((long)(b+1) * count / nBlocks);
+            for (int i = (int)((long)b * count / nBlocks); i<end; ++i) action.accept(state, i);
+        });
+    }
     public static <T> void execute(final T[] array, final boolean setToNull, final ThreadAction<T> action) {
         execute(array, setToNull, action, null, null);
     }
@@ -0,0 +1,123 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.core;
+
+import boa.configuration.experiment.ChannelImage;
+import boa.configuration.experiment.Experiment;
+import boa.configuration.experiment.Structure;
+import boa.data_structure.Region;
+import boa.data_structure.StructureObject;
+import static boa.data_structure.StructureObjectUtils.setTrackLinks;
+import boa.data_structure.dao.BasicMasterDAO;
+import boa.data_structure.dao.ImageDAO;
+import boa.data_structure.dao.ObjectDAO;
+import boa.data_structure.image_container.MemoryImageContainer;
+import boa.gui.image_interaction.Kymograph;
+import boa.image.BlankMask;
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.ImageShort;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestTrackImages {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    static final int FRAMES = 6, TRACKS = 3, SIZE_X = 40, SIZE_Y = 30, SIZE_Z = 3;
+    
+    @Test
+    public void testTrackImagesAsSequentialGenerator() throws Exception {
+        // channel 0 is 2D, channel 1 is 3D. Parents are 2D and in channel 0
+        Experiment xp = new Experiment("test");
+        xp.setOutputDirectory(testFolder.newFolder("output").getAbsolutePath());
+        xp.getChannelImages().insert(new ChannelImage("channel2D"), new ChannelImage("channel3D"));
+        xp.getStructures().removeAllElements();
+        xp.getStructures().insert(new Structure("Parent", -1, 0), new Structure("Child", 0, 1));
+        Random r = new Random(0);
+        Image[][] imageCT = new Image[2][FRAMES];
+        for (int t = 0; t<FRAMES; ++t) {
+            imageCT[0][t] = new ImageByte("", SIZE_X, SIZE_Y, 1);
+            imageCT[1][t] = new ImageShort("", SIZE_X, SIZE_Y, SIZE_Z);
+            for (Image[] imageT : imageCT) {
+                for (int z = 0; z<imageT[t].sizeZ(); ++z) {
+                    for (int xy = 0; xy<imageT[t].sizeXY(); ++xy) imageT[t].setPixel(xy, z, 1 + r.nextInt(imageT[t] instanceof ImageByte ? 254 : 4095));
+                }
+            }
+        }
+        xp.createPosition("pos").setImages(new MemoryImageContainer(imageCT));
+        ImageDAO imageDAO = xp.getImageDAO();
+        for (int c = 0; c<imageCT.length; ++c) {
+            for (int t = 0; t<FRAMES; ++t) imageDAO.writePreProcessedImage(imageCT[c][t], c, t, "pos");
+        }
+        imageDAO.flush();
+        BasicMasterDAO db = new BasicMasterDAO(xp);
+        ObjectDAO dao = db.getDao("pos");
+        
+        // tracks of parents with varying bounds, last track starts later
+        List<StructureObject> roots = new ArrayList<>(FRAMES);
+        for (int t = 0; t<FRAMES; ++t) roots.add(new StructureObject(t, new BlankMask(SIZE_X, SIZE_Y, 1, 0, 0, 0, 1, 1), dao));
+        setTrackLinks(roots);
+        dao.store(roots);
+        List<List<StructureObject>> tracks = new ArrayList<>(TRACKS);
+        for (int k = 0; k<TRACKS; ++k) {
+            List<StructureObject> track = new ArrayList<>();
+            for (int t = k==TRACKS-1 ? 2 : 0; t<FRAMES; ++t) track.add(new StructureObject(t, 0, k, new Region(new BlankMask(6 + t%3 + k, 20 - k, 1, 2 + 12 * k, 3 + t%2, 0, 1, 1), k+1, true), roots.get(t)));
+            setTrackLinks(track);
+            dao.store(track);
+            tracks.add(track);
+        }
+        
+        // reference: old sequential generator, computed before track images exist
+        Image[][] expected = new Image[TRACKS][2];
+        for (int k = 0; k<TRACKS; ++k) {
+            for (int sIdx = 0; sIdx<2; ++sIdx) expected[k][sIdx] = Kymograph.generateKymograph(tracks.get(k), 0).generatemage(sIdx, false);
+        }
+        
+        int inFlight = Processor.TRACK_IMAGES_IN_FLIGHT;
+        Processor.TRACK_IMAGES_IN_FLIGHT = 1; // several groups of tracks
+        try {
+            Processor.generateTrackImages(dao, 0, null, 0, 1);
+        } finally {
+            Processor.TRACK_IMAGES_IN_FLIGHT = inFlight;
+        }
+        for (int k = 0; k<TRACKS; ++k) {
+            for (int c = 0; c<2; ++c) {
+                Image e = expected[k][c];
+                Image a = imageDAO.openTrackImage(tracks.get(k).get(0), c);
+                assertNotNull("track image: track="+k+" c="+c, a);
+                assertEquals("sizeZ: track="+k+" c="+c, c==0 ? 1 : SIZE_Z, a.sizeZ());
+                assertTrue("dimensions: track="+k+" c="+c+" expected: "+e.getBoundingBox()+" actual: "+a.getBoundingBox(), e.sameDimensions(a));
+                for (int z = 0; z<e.sizeZ(); ++z) {
+                    for (int xy = 0; xy<e.sizeXY(); ++xy) assertEquals("value: track="+k+" c="+c+" z="+z+" xy="+xy, e.getPixel(xy, z), a.getPixel(xy, z), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.dao.AsyncImageDAO;
+import boa.data_structure.dao.ImageDAO;
+import boa.image.BlankMask;
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.MutableBoundingBox;
+import boa.utils.MultipleException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestAsyncImageDAO {
+    @Test
+    public void testWriteBehind() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryImageDAO mem = new MemoryImageDAO(release);
+        AsyncImageDAO dao = new AsyncImageDAO(mem, 2, 1000);
+        ImageByte im = new ImageByte("", 10, 10, 1);
+        im.setPixel(3, 4, 0, 7);
+        dao.writePreProcessedImage(im, 0, 0, "pos");
+        assertNull("write is not performed yet", mem.images.get("0;0;pos"));
+        Image pending = dao.openPreProcessedImage(0, 0, "pos");
+        assertNotNull("pending image is served", pending);
+        assertEquals("pending image value", 7, pending.getPixel(3, 4, 0), 0);
+        Image crop = dao.openPreProcessedImage(0, 0, "pos", new MutableBoundingBox(2, 5, 3, 6, 0, 0));
+        assertEquals("pending image crop", 7, crop.getPixel(1, 1, 0), 0);
+        assertEquals("pending bytes", 100, dao.getPendingBytes());
+        release.countDown();
+        dao.flush();
+        assertEquals("pending bytes after flush", 0, dao.getPendingBytes());
+        assertTrue("written after flush", mem.images.get("0;0;pos")==im);
+    }
+    @Test
+    public void testErrorsThrownAtFlush() {
+        MemoryImageDAO mem = new MemoryImageDAO(null);
+        mem.fail = true;
+        AsyncImageDAO dao = new AsyncImageDAO(mem, 1, 1000);
+        dao.writePreProcessedImage(new ImageByte("", 2, 2, 1), 0, 1, "pos");
+        try {
+            dao.flush();
+            fail("error should be thrown by flush");
+        } catch (MultipleException e) {
+            assertEquals("one error", 1, e.getExceptions().size());
+        }
+        dao.flush(); // errors are thrown only once
+    }
+    
+    @Test
+    public void testFlushAll() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryImageDAO mem1 = new MemoryImageDAO(release), mem2 = new MemoryImageDAO(release);
+        AsyncImageDAO dao1 = new AsyncImageDAO(mem1, 1, 1000), dao2 = new AsyncImageDAO(mem2, 1, 1000);
+        dao1.writePreProcessedImage(new ImageByte("", 2, 2, 1), 0, 0, "pos1");
+        dao2.writePreProcessedImage(new ImageByte("", 2, 2, 1), 0, 0, "pos2");
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {}
+            release.countDown();
+        });
+        releaser.start();
+        AsyncImageDAO.flushAll(); // called at JVM shutdown
+        assertNotNull("pending image of first DAO written", mem1.images.get("0;0;pos1"));
+        assertNotNull("pending image of second DAO written", mem2.images.get("0;0;pos2"));
+        releaser.join();
+    }
+    
+    static class MemoryImageDAO implements ImageDAO {
+        final Map<String, Image> images = new ConcurrentHashMap<>();
+        final CountDownLatch release;
+        boolean fail;
+        MemoryImageDAO(CountDownLatch release) {
+            this.release=release;
+        }
+        @Override public String getImageExtension() {return ".tif";}
+        @Override public InputStream openPreProcessedImageAsStream(int channelImageIdx, int timePoint, String microscopyFieldName) {return null;}
+        @Override public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {return images.get(channelImageIdx+";"+timePoint+";"+microscopyFieldName);}
+        @Override public Image openPreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName, MutableBoundingBox bounds) {return openPreProcessedImage(channelImageIdx, timePoint, microscopyFieldName).crop(bounds);}
+        @Override public BlankMask getPreProcessedImageProperties(String microscopyFieldName) {return null;}
+        @Override public void writePreProcessedImage(Image image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+            if (release!=null) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {}
+            }
+            if (fail) throw new RuntimeException("write error");
+            images.put(channelImageIdx+";"+timePoint+";"+microscopyFieldName, image);
+        }
+        @Override public void writePreProcessedImage(InputStream image, int channelImageIdx, int timePoint, String microscopyFieldName) {}
+        @Override public void deletePreProcessedImage(int channelImageIdx, int timePoint, String microscopyFieldName) {images.remove(channelImageIdx+";"+timePoint+";"+microscopyFieldName);}
+        @Override public void writeTrackImage(StructureObject trackHead, int channelImageIdx, Image image) {}
+        @Override public Image openTrackImage(StructureObject trackHead, int channelImageIdx) {return null;}
+        @Override public InputStream openTrackImageAsStream(StructureObject trackHead, int channelImageIdx) {return null;}
+        @Override public void writeTrackImage(StructureObject trackHead, int channelImageIdx, InputStream image) {}
+        @Override public void deleteTrackImages(String position, int parentStructureIdx) {}
+        @Override public void flush() {}
+    }
+}
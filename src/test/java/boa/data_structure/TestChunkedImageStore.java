@@ -0,0 +1,113 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.dao.ChunkedImageStore;
+import boa.image.Image;
+import boa.image.ImageShort;
+import boa.image.MutableBoundingBox;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestChunkedImageStore {
+    @Test
+    public void testPartialRead() throws IOException {
+        String path = Files.createTempDirectory("chunks").toString()+File.separator+"c00";
+        ChunkedImageStore store = new ChunkedImageStore(path);
+        ImageShort im = new ImageShort("", 70, 45, 3);
+        for (int z = 0; z<im.sizeZ(); ++z) {
+            for (int y = 0; y<im.sizeY(); ++y) {
+                for (int x = 0; x<im.sizeX(); ++x) im.setPixel(x, y, z, x + 100 * y + 10000 * z);
+            }
+        }
+        store.write(0, im, 16, 2, true);
+        store.write(1, im, 16, 2, false);
+        
+        store = new ChunkedImageStore(path); // index is read from file
+        assertTrue("frame stored", store.contains(1));
+        MutableBoundingBox bounds = new MutableBoundingBox(13, 50, 7, 40, 1, 2);
+        Image crop = store.read(0, bounds);
+        assertTrue("dimensions", crop.sameDimensions(bounds));
+        assertEquals("offset", 13, crop.xMin());
+        for (int z = bounds.zMin(); z<=bounds.zMax(); ++z) {
+            for (int y = bounds.yMin(); y<=bounds.yMax(); ++y) {
+                for (int x = bounds.xMin(); x<=bounds.xMax(); ++x) assertEquals("value", im.getPixel(x, y, z), crop.getPixelWithOffset(x, y, z), 0);
+            }
+        }
+        Image full = store.read(1, null);
+        assertEquals("full image value", im.getPixel(69, 44, 2), full.getPixel(69, 44, 2), 0);
+        
+        store.delete(0);
+        assertNull("deleted frame", store.read(0, null));
+        store.delete(1);
+        assertFalse("files deleted with last frame", store.exists());
+    }
+    @Test
+    public void testSpaceReuse() throws IOException {
+        String path = Files.createTempDirectory("chunks").toString()+File.separator+"c00";
+        ChunkedImageStore store = new ChunkedImageStore(path);
+        ImageShort im = new ImageShort("", 40, 30, 2);
+        int nFrames = 3;
+        for (int f = 0; f<nFrames; ++f) store.write(f, fill(im, f), 16, 1, false);
+        long length = store.getDataLength();
+        long frameLength = im.sizeXYZ() * 2;
+        for (int rep = 1; rep<=10; ++rep) { // overwritten frames use the space of the frames they replace
+            for (int f = 0; f<nFrames; ++f) store.write(f, fill(im, f + 10 * rep), 16, 1, false);
+        }
+        assertTrue("data file does not grow when frames are overwritten", store.getDataLength()<=length + frameLength);
+        store.delete(1);
+        store.write(3, fill(im, 3), 16, 1, false);
+        assertTrue("space of deleted frame is reused", store.getDataLength()<=length + frameLength);
+        
+        store = new ChunkedImageStore(path); // free space is recovered from index
+        assertFalse("deleted frame", store.contains(1));
+        assertPixels(fill(im, 100), store.read(0, null));
+        assertPixels(fill(im, 102), store.read(2, null));
+        assertPixels(fill(im, 3), store.read(3, null));
+        store.write(1, fill(im, 1), 16, 1, false);
+        assertTrue("free space is reused after reopening", store.getDataLength()<=length + 2 * frameLength);
+        assertPixels(fill(im, 1), store.read(1, null));
+        assertPixels(fill(im, 3), store.read(3, null));
+    }
+    private static ImageShort fill(ImageShort im, int value) {
+        for (int z = 0; z<im.sizeZ(); ++z) {
+            for (int y = 0; y<im.sizeY(); ++y) {
+                for (int x = 0; x<im.sizeX(); ++x) im.setPixel(x, y, z, x + 100 * y + 1000 * z + value);
+            }
+        }
+        return im;
+    }
+    private static void assertPixels(Image expected, Image actual) {
+        for (int z = 0; z<expected.sizeZ(); ++z) {
+            for (int y = 0; y<expected.sizeY(); ++y) {
+                for (int x = 0; x<expected.sizeX(); ++x) assertEquals("value", expected.getPixel(x, y, z), actual.getPixel(x, y, z), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.dao.ColumnarMeasurementStore;
+import boa.utils.Id;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestColumnarMeasurementStore {
+    private static Measurements getMeasurements(Id id, int frame, Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i<keyValues.length; i+=2) values.put((String)keyValues[i], keyValues[i+1]);
+        return new Measurements(id, "pos", 1, frame, frame*2.5, frame==0, new int[]{0, frame}, values);
+    }
+    @Test
+    public void testStoreAndRetrieve() throws IOException {
+        String dir = Files.createTempDirectory("measurements").toString();
+        Id id1 = Id.get(), id2 = Id.get(), id3 = Id.get();
+        ColumnarMeasurementStore store = new ColumnarMeasurementStore(dir, "pos", 1, false);
+        store.put(Arrays.asList(
+                getMeasurements(id1, 0, "Size", 10.5, "Count", 3, "Flag", true, "Name", "a", "Profile", new double[]{1, 2}),
+                getMeasurements(id2, 1, "Size", 11.0, "Name", "b"),
+                getMeasurements(id3, 2, "Size", 12.0, "Count", 5, "Name", "a")));
+        store.close(true);
+        
+        store = new ColumnarMeasurementStore(dir, "pos", 1, false);
+        Measurements m1 = store.get(id1);
+        assertEquals("double", 10.5, m1.getValue("Size"));
+        assertEquals("long", 3L, m1.getValue("Count"));
+        assertEquals("boolean", true, m1.getValue("Flag"));
+        assertEquals("string", "a", m1.getValue("Name"));
+        assertTrue("array", Arrays.equals(new double[]{1, 2}, (double[])m1.getValue("Profile")));
+        assertEquals("frame", 0, m1.getFrame());
+        assertEquals("time point", 0, m1.getCalibratedTimePoint(), 0);
+        assertTrue("track head", m1.isTrackHead());
+        assertEquals("structure", 1, m1.getStructureIdx());
+        assertTrue("indices", Arrays.equals(new int[]{0, 0}, m1.getIndices()));
+        Measurements m2 = store.get(id2);
+        assertNull("missing value", m2.getValue("Count"));
+        assertNull("missing boolean", m2.getValue("Flag"));
+        
+        // overwrite: keys absent from stored measurements are removed, type is promoted
+        store.put(Collections.singleton(getMeasurements(id1, 0, "Size", 9.0, "Count", 2.5)));
+        store.remove(Collections.singleton(id3));
+        store.commit();
+        store.close(false);
+        
+        store = new ColumnarMeasurementStore(dir, "pos", 1, true);
+        List<Measurements> all = store.getAll("Count");
+        assertEquals("removed object", 2, all.size());
+        Collections.sort(all);
+        assertEquals("promoted column", 2.5, all.get(0).getValue("Count"));
+        assertNull("only requested keys", all.get(0).getValue("Size"));
+        m1 = store.get(id1);
+        assertEquals("overwritten value", 9.0, m1.getValue("Size"));
+        assertNull("removed key", m1.getValue("Name"));
+        assertNull("removed object", store.get(id3));
+        store.close(false);
+        ColumnarMeasurementStore.delete(dir);
+    }
+    @Test
+    public void testCompaction() throws IOException {
+        String dir = Files.createTempDirectory("measurements").toString();
+        ColumnarMeasurementStore store = new ColumnarMeasurementStore(dir, "pos", 1, false);
+        List<Measurements> list = new ArrayList<>();
+        List<Id> ids = new ArrayList<>();
+        for (int i = 0; i<3000; ++i) {
+            Id id = Id.get();
+            ids.add(id);
+            list.add(getMeasurements(id, i, "Value", i, "Label", "l"+(i%7)));
+        }
+        store.put(list);
+        store.commit();
+        store.remove(ids.subList(0, 2000));
+        store.close(true);
+        store = new ColumnarMeasurementStore(dir, "pos", 1, true);
+        assertEquals("remaining objects", 1000, store.getAll().size());
+        Measurements m = store.get(ids.get(2500));
+        assertEquals("value after compaction", 2500L, m.getValue("Value"));
+        assertEquals("label after compaction", "l"+(2500%7), m.getValue("Label"));
+        Iterator<Measurements> it = store.iterator("Value");
+        Measurements previous = it.next();
+        int count = 1;
+        while (it.hasNext()) {
+            Measurements next = it.next();
+            assertTrue("sorted iteration", previous.compareTo(next)<0);
+            previous = next;
+            ++count;
+        }
+        assertEquals("iterated objects", 1000, count);
+        store.close(false);
+        ColumnarMeasurementStore.delete(dir);
+    }
+    @Test
+    public void testInterruptedCompaction() throws IOException {
+        String dir = Files.createTempDirectory("measurements").toString();
+        String backup = Files.createTempDirectory("measurements").toString();
+        ColumnarMeasurementStore store = new ColumnarMeasurementStore(dir, "pos", 1, false);
+        List<Measurements> list = new ArrayList<>();
+        List<Id> ids = new ArrayList<>();
+        for (int i = 0; i<3000; ++i) {
+            Id id = Id.get();
+            ids.add(id);
+            list.add(getMeasurements(id, i, "Value", i, "Label", "l"+(i%7)));
+        }
+        store.put(list);
+        store.commit();
+        for (File f : new File(dir).listFiles()) Files.copy(f.toPath(), new File(backup, f.getName()).toPath());
+        store.remove(ids.subList(0, 2000));
+        store.commit(); // compaction
+        // interruption before the rows file is replaced: files of the previous commit are present along with the compacted columns
+        for (File f : new File(dir).listFiles((d, n) -> n.endsWith(".col"))) {
+            File target = new File(backup, f.getName());
+            assertTrue("compacted column written to a new file: "+f.getName(), !target.exists());
+            Files.copy(f.toPath(), target.toPath());
+        }
+        store.close(false);
+        ColumnarMeasurementStore.delete(dir);
+        
+        store = new ColumnarMeasurementStore(backup, "pos", 1, false);
+        assertEquals("objects before compaction", 3000, store.getAll().size());
+        Measurements m = store.get(ids.get(2500));
+        assertEquals("value before compaction", 2500L, m.getValue("Value"));
+        assertEquals("label before compaction", "l"+(2500%7), m.getValue("Label"));
+        store.put(Collections.singleton(getMeasurements(ids.get(0), 0, "Value", 1, "Label", "x")));
+        store.commit();
+        assertEquals("unreferenced column files removed", 2, new File(backup).listFiles((d, n) -> n.endsWith(".col")).length);
+        store.close(false);
+        ColumnarMeasurementStore.delete(backup);
+    }
+}
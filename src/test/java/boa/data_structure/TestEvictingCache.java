@@ -0,0 +1,63 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.utils.EvictingCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestEvictingCache {
+    @Test
+    public void testLRUEviction() {
+        List<Integer> evicted = new ArrayList<>();
+        EvictingCache<Integer, List<Integer>> cache = new EvictingCache<Integer, List<Integer>>(k -> new ArrayList<>(), l -> l.size(), 4)
+                .setEvictionFilter((k, v) -> k!=0) // 0 is never evicted
+                .setEvictionListener((k, v) -> evicted.add(k));
+        cache.put(0, Arrays.asList(0));
+        cache.put(1, Arrays.asList(1));
+        cache.put(2, Arrays.asList(2));
+        cache.get(1); // 2 becomes least recently used after 0
+        cache.put(3, Arrays.asList(3, 3));
+        assertEquals("evicted entries", Arrays.asList(2), evicted);
+        assertNull("evicted value", cache.peek(2));
+        assertEquals("weight", 4, cache.getWeight());
+        
+        // weight of modified values
+        List<Integer> l = cache.getAndCreateIfNecessary(4);
+        l.add(4);
+        l.add(4);
+        cache.refresh(4);
+        assertEquals("evicted entries after refresh", Arrays.asList(2, 1, 3), evicted);
+        assertTrue("filtered entry kept", cache.containsKey(0));
+        assertTrue("most recent entry kept", cache.containsKey(4));
+        
+        assertEquals("hits", 1, cache.getHitCount());
+        assertEquals("misses", 1, cache.getMissCount());
+        assertEquals("evictions", 3, cache.getEvictionCount());
+    }
+}
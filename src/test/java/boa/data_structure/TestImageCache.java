@@ -0,0 +1,63 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.image.ImageByte;
+import boa.image.MutableBoundingBox;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestImageCache {
+    @Test
+    public void testEvictionAndPinning() {
+        ImageCache cache = new ImageCache(250);
+        ImageCache.Key k0 = new ImageCache.Key("xp1", "pos", 0, 0, null);
+        ImageCache.Key k1 = new ImageCache.Key("xp1", "pos", 0, 1, null);
+        ImageCache.Key k2 = new ImageCache.Key("xp1", "pos", 0, 2, null);
+        ImageCache.Pin pin = cache.pin(Arrays.asList(k0));
+        cache.get(k0, () -> new ImageByte("", 10, 10, 1));
+        cache.get(k1, () -> new ImageByte("", 10, 10, 1));
+        cache.get(k2, () -> new ImageByte("", 10, 10, 1));
+        assertTrue("pinned image is kept", cache.contains(k0));
+        assertFalse("least recently used image is evicted", cache.contains(k1));
+        assertEquals("weight", 200, cache.getWeight());
+        pin.close();
+        cache.get(k1, () -> new ImageByte("", 10, 10, 1));
+        assertFalse("unpinned image is evicted", cache.contains(k0));
+        assertEquals("misses", 4, cache.getMissCount());
+        assertTrue("same key", cache.contains(new ImageCache.Key("xp1", "pos", 0, 1, null)));
+        assertFalse("bounds are part of the key", cache.contains(new ImageCache.Key("xp1", "pos", 0, 1, new MutableBoundingBox(0, 1, 0, 1, 0, 0))));
+        assertFalse("dataset is part of the key", cache.contains(new ImageCache.Key("xp2", "pos", 0, 1, null)));
+        cache.invalidate("xp2", "pos", 2);
+        assertTrue("frame of another dataset invalidated", cache.contains(k2));
+        cache.invalidate("xp1", "pos", 2);
+        assertFalse("invalidated frame", cache.contains(k2));
+        cache.invalidate("xp2", "pos");
+        assertEquals("position of another dataset invalidated", 1, cache.getSize());
+        cache.invalidate("xp1", "pos");
+        assertEquals("invalidated position", 0, cache.getSize());
+    }
+}
@@ -0,0 +1,276 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.configuration.experiment.ChannelImage;
+import boa.configuration.experiment.Experiment;
+import boa.configuration.experiment.Structure;
+import boa.core.Processor;
+import boa.data_structure.dao.DBMapMasterDAO;
+import boa.data_structure.dao.DBMapObjectDAO;
+import boa.data_structure.dao.MasterDAOFactory;
+import boa.data_structure.dao.MasterDAOFactory.DAOType;
+import boa.dummy_plugins.DummySegmenter;
+import boa.image.BlankMask;
+import boa.plugins.PluginFactory;
+import boa.plugins.plugins.processing_pipeline.SegmentThenTrack;
+import boa.plugins.plugins.trackers.ObjectIdxTracker;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import static boa.data_structure.StructureObjectUtils.setTrackLinks;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestObjectDAO {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    
+    private DBMapObjectDAO createDAO(DAOType type) throws IOException {
+        DBMapMasterDAO db = (DBMapMasterDAO)MasterDAOFactory.createDAO("testdb", testFolder.newFolder().getAbsolutePath(), type);
+        Experiment xp = new Experiment("test");
+        xp.getChannelImages().insert(new ChannelImage("ChannelImage"));
+        xp.getStructures().insert(new Structure("Structure0", -1, 0));
+        xp.setOutputDirectory(testFolder.newFolder().getAbsolutePath());
+        db.setExperiment(xp);
+        return db.getDao("test");
+    }
+    private static List<Integer> getFrames(List<StructureObject> objects) {
+        return objects.stream().map(o -> o.getFrame()).collect(Collectors.toList());
+    }
+    
+    @Test
+    public void testSingleObjectModifications() throws IOException {
+        for (DAOType type : new DAOType[]{DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            dao.setWriteBehind(1, 0);
+            List<StructureObject> roots = new ArrayList<>();
+            List<Integer> expectedFrames = new ArrayList<>();
+            for (int f = 0; f<200; ++f) {
+                StructureObject r = new StructureObject(f, new BlankMask(1, 2, 3, 0, 0, 0, 1, 1), dao);
+                roots.add(r);
+                dao.store(r); // each call is written as a delta record
+            }
+            for (int f = 0; f<200; ++f) {
+                if (f%3==0) dao.delete(roots.get(f), false, false, false);
+                else expectedFrames.add(f);
+            }
+            roots.get(1).setAttribute("test", 1d);
+            dao.store(roots.get(1));
+            dao.clearCache();
+            List<StructureObject> retrieved = dao.getRoots();
+            assertEquals(type+": retrieved frames", expectedFrames, getFrames(retrieved));
+            assertEquals(type+": modified object", 1d, ((Number)retrieved.get(0).getAttribute("test")).doubleValue(), 0);
+            dao.unlock();
+        }
+    }
+    @Test
+    public void testQueryBufferedObjects() throws IOException {
+        for (DAOType type : new DAOType[]{DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            dao.setWriteBehind(Integer.MAX_VALUE, 0); // only flushed by explicit calls
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<3; ++f) roots.add(new StructureObject(f, new BlankMask(10, 10, 1, 0, 0, 0, 1, 1), dao));
+            setTrackLinks(roots);
+            dao.store(roots);
+            dao.flush();
+            dao.clearCache();
+            roots = dao.getRoots();
+            // child 0 forms a track over all frames, child 1 starts a new track at each frame
+            StructureObject[][] children = new StructureObject[3][2];
+            for (int f = 0; f<3; ++f) {
+                for (int i = 0; i<2; ++i) children[f][i] = new StructureObject(f, 0, i, new Region(new BlankMask(1, 1, 1, i, 0, 0, 1, 1), i+1, true), roots.get(f));
+                if (f>0) setTrackLinks(children[f-1][0], children[f][0], true, true);
+            }
+            for (int f = 0; f<3; ++f) dao.store(Arrays.asList(children[f])); // buffered: no index exists yet for this parent track
+            for (int f = 0; f<3; ++f) assertEquals(type+": buffered children at frame: "+f, 2, dao.getChildren(roots.get(f), 0).size());
+            assertEquals(type+": buffered track heads", 4, dao.getTrackHeads(roots.get(0), 0).size());
+            assertEquals(type+": buffered track", 3, dao.getTrack(children[0][0]).size());
+            
+            // index created while objects are both persisted and buffered
+            dao.flush();
+            dao.clearCache();
+            roots = dao.getRoots();
+            StructureObject added = new StructureObject(1, 0, 2, new Region(new BlankMask(1, 1, 1, 5, 0, 0, 1, 1), 3, true), roots.get(1));
+            dao.store(added);
+            assertEquals(type+": persisted and buffered children", 3, dao.getChildren(roots.get(1), 0).size());
+            assertEquals(type+": persisted and buffered track heads", 5, dao.getTrackHeads(roots.get(0), 0).size());
+            dao.unlock();
+        }
+    }
+    @Test
+    public void testWriteBehindCommits() throws IOException {
+        int frames = 20;
+        for (DAOType type : new DAOType[]{DAOType.DBMap, DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            dao.setWriteBehind(1, 0);
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<frames; ++f) roots.add(new StructureObject(f, new BlankMask(10, 10, 1, 0, 0, 0, 1, 1), dao));
+            dao.store(roots);
+            long commits = dao.getCommitCount();
+            for (StructureObject r : roots) dao.store(new StructureObject(r.getFrame(), 0, 0, new Region(new BlankMask(1, 1, 1, 0, 0, 0, 1, 1), 1, true), r));
+            long unbufferedCommits = dao.getCommitCount() - commits;
+            assertEquals(type+": each store is committed", frames, unbufferedCommits);
+            
+            dao.setWriteBehind(DBMapObjectDAO.PROCESSING_FLUSH_SIZE, DBMapObjectDAO.PROCESSING_FLUSH_LATENCY);
+            commits = dao.getCommitCount();
+            for (StructureObject r : roots) dao.store(new StructureObject(r.getFrame(), 0, 1, new Region(new BlankMask(1, 1, 1, 1, 0, 0, 1, 1), 2, true), r));
+            assertEquals(type+": no commit before flush", commits, dao.getCommitCount());
+            dao.flush();
+            assertEquals(type+": objects of all parent tracks committed once by the flush", 1, dao.getCommitCount() - commits);
+            
+            dao.clearCache();
+            roots = dao.getRoots();
+            for (StructureObject r : roots) assertEquals(type+": children of frame: "+r.getFrame(), 2, dao.getChildren(r, 0).size());
+            dao.unlock();
+        }
+    }
+    @Test
+    public void testConcurrentWriteBehind() throws Exception {
+        int threads = 4, rootsPerThread = 20, childrenPerRoot = 10;
+        for (DAOType type : new DAOType[]{DAOType.DBMap, DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<threads*rootsPerThread; ++f) roots.add(new StructureObject(f, new BlankMask(100, 100, 1, 0, 0, 0, 1, 1), dao)); // not linked: each root is the head of its own track
+            dao.store(roots);
+            dao.setWriteBehind(50, 1); // flushes are performed by storing threads and by the flush thread while objects are stored and modified
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t<threads; ++t) {
+                List<StructureObject> threadRoots = roots.subList(t*rootsPerThread, (t+1)*rootsPerThread); // each thread stores under distinct parent tracks
+                futures.add(executor.submit(() -> {
+                    for (StructureObject r : threadRoots) {
+                        for (int i = 0; i<childrenPerRoot; ++i) {
+                            StructureObject c = new StructureObject(r.getFrame(), 0, i, new Region(new BlankMask(1, 1, 1, i, 0, 0, 1, 1), i+1, true), r);
+                            c.setAttribute("value", 1d);
+                            dao.store(c);
+                            c.setAttribute("value", 2d);
+                            dao.store(c);
+                            c.setAttribute("value", -1d); // modification after the last call to store: must not be written
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            executor.shutdown();
+            dao.clearCache();
+            roots = dao.getRoots();
+            assertEquals(type+": retrieved roots", threads*rootsPerThread, roots.size());
+            for (StructureObject r : roots) {
+                List<StructureObject> children = dao.getChildren(r, 0);
+                assertEquals(type+": children of frame: "+r.getFrame(), childrenPerRoot, children.size());
+                for (StructureObject c : children) assertEquals(type+": stored value", 2d, ((Number)c.getAttribute("value")).doubleValue(), 0);
+            }
+            dao.unlock();
+        }
+    }
+    @Test
+    public void testEvictedObjectsAreReleased() throws Exception {
+        int frames = 40, childrenPerRoot = 20, cacheLimit = 5 * childrenPerRoot;
+        for (DAOType type : new DAOType[]{DAOType.DBMap, DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<frames; ++f) roots.add(new StructureObject(f, new BlankMask(100, 100, 1, 0, 0, 0, 1, 1), dao)); // not linked: children of each root are stored under a distinct key
+            dao.store(roots);
+            for (StructureObject r : roots) {
+                List<StructureObject> children = new ArrayList<>();
+                for (int i = 0; i<childrenPerRoot; ++i) children.add(new StructureObject(r.getFrame(), 0, i, new Region(new BlankMask(1, 1, 1, i, 0, 0, 1, 1), i+1, true), r));
+                dao.store(children);
+            }
+            dao.clearCache();
+            dao.setCacheLimit(frames + cacheLimit); // roots are never evicted
+            roots = dao.getRoots(); // roots are kept referenced: they must not retain evicted children
+            List<WeakReference<StructureObject>> loaded = new ArrayList<>();
+            for (StructureObject r : roots) {
+                List<StructureObject> children = r.getChildren(0);
+                assertEquals(type+": children of frame: "+r.getFrame(), childrenPerRoot, children.size());
+                for (StructureObject c : children) loaded.add(new WeakReference<>(c));
+            }
+            assertTrue(type+": objects were evicted", dao.getCacheEvictionCount()>0);
+            int retained = loaded.size();
+            for (int i = 0; i<20 && retained>cacheLimit; ++i) {
+                System.gc();
+                Thread.sleep(50);
+                retained = (int)loaded.stream().filter(ref -> ref.get()!=null).count();
+            }
+            assertTrue(type+": retained objects: "+retained+" cache limit: "+cacheLimit, retained<=cacheLimit);
+            // evicted children are retrieved again
+            assertEquals(type+": children retrieved after eviction", childrenPerRoot, roots.get(0).getChildren(0).size());
+            dao.unlock();
+        }
+    }
+    @Test
+    public void testTrackOnlyWithEviction() throws IOException {
+        int frames = 10, parentTracks = 10, childrenPerParent = 3;
+        PluginFactory.findPlugins("boa.dummy_plugins");
+        PluginFactory.findPlugins("boa.plugins.plugins");
+        for (DAOType type : new DAOType[]{DAOType.DBMap, DAOType.Binary, DAOType.Segment}) {
+            DBMapObjectDAO dao = createDAO(type);
+            Structure sub = new Structure("Structure1", 0, 0);
+            dao.getExperiment().getStructures().insert(sub);
+            sub.setProcessingPipeline(new SegmentThenTrack(new DummySegmenter(true, 2), new ObjectIdxTracker()));
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<frames; ++f) roots.add(new StructureObject(f, new BlankMask(100, 10, 1, 0, 0, 0, 1, 1), dao));
+            setTrackLinks(roots);
+            dao.store(roots);
+            List<StructureObject> parents = new ArrayList<>(), children = new ArrayList<>();
+            for (StructureObject r : roots) {
+                for (int i = 0; i<parentTracks; ++i) {
+                    StructureObject p = new StructureObject(r.getFrame(), 0, i, new Region(new BlankMask(10, 10, 1, i*10, 0, 0, 1, 1), i+1, true), r);
+                    if (r.getFrame()>0) setTrackLinks(parents.get(parents.size()-parentTracks), p, true, true);
+                    parents.add(p);
+                    for (int j = 0; j<childrenPerParent; ++j) children.add(new StructureObject(r.getFrame(), 1, j, new Region(new BlankMask(1, 1, 1, i*10+j, 0, 0, 1, 1), j+1, true), p)); // not linked
+                }
+            }
+            dao.store(parents);
+            dao.store(children);
+            dao.clearCache();
+            dao.setCacheLimit(frames * (1 + parentTracks + childrenPerParent)); // roots, parents and children of a single parent track
+            roots = dao.getRoots();
+            Processor.executeProcessingScheme(roots, 1, true, false);
+            dao.clearCache();
+            dao.setCacheLimit(0);
+            roots = dao.getRoots();
+            for (StructureObject r : roots.subList(1, frames)) {
+                for (StructureObject p : r.getChildren(0)) {
+                    List<StructureObject> pChildren = p.getChildren(1);
+                    assertEquals(type+": children of: "+p, childrenPerParent, pChildren.size());
+                    for (StructureObject c : pChildren) {
+                        assertTrue(type+": stored link of: "+c, c.getPrevious()!=null);
+                        assertEquals(type+": previous of: "+c, c.getIdx(), c.getPrevious().getIdx());
+                    }
+                }
+            }
+            dao.unlock();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.dao.ObjectIndex;
+import boa.utils.Id;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestObjectIndex {
+    @Test
+    public void testTrackAndFrameIndex() {
+        Id a = Id.get(), b = Id.get(), c = Id.get(), d = Id.get();
+        ObjectIndex index = new ObjectIndex();
+        index.put(c, a, 2);
+        index.put(a, a, 0);
+        index.put(b, a, 1);
+        index.put(d, d, 1);
+        assertEquals("track ordered by frame", Arrays.asList(a, b, c), index.getTrack(a));
+        assertEquals("track heads", new HashSet<>(Arrays.asList(a, d)), new HashSet<>(index.getTrackHeadIds()));
+        assertEquals("frame", new HashSet<>(Arrays.asList(b, d)), index.getIds(1));
+        
+        // link modification: c becomes the track head of a new track
+        index.put(c, c, 2);
+        assertEquals("track after modification", Arrays.asList(a, b), index.getTrack(a));
+        assertEquals("new track", Arrays.asList(c), index.getTrack(c));
+        
+        index.removeAll(Arrays.asList(b, d));
+        assertEquals("track after removal", Arrays.asList(a), index.getTrack(a));
+        assertEquals("frame after removal", Collections.emptySet(), index.getIds(1));
+        assertTrue("track head removed", !index.getTrackHeadIds().contains(d));
+        assertEquals("size", 2, index.size());
+    }
+}
@@ -0,0 +1,159 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.configuration.parameters.Parameter;
+import boa.data_structure.TestAsyncImageDAO.MemoryImageDAO;
+import boa.data_structure.dao.AsyncImageDAO;
+import boa.data_structure.dao.ImageDAO;
+import boa.data_structure.image_container.MemoryImageContainer;
+import boa.data_structure.input_image.InputImage;
+import boa.data_structure.input_image.InputImagesImpl;
+import boa.image.Image;
+import boa.image.ImageFloat;
+import boa.image.ImageShort;
+import boa.image.processing.ImageTransformation.Axis;
+import boa.plugins.Transformation;
+import boa.plugins.plugins.transformations.Flip;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestPreProcessingPipeline {
+    static final int CHANNELS = 2, FRAMES = 12;
+    
+    @Test
+    public void testParallelPreProcessing() {
+        // reference: frames transformed and saved one after the other
+        MemoryImageDAO sequential = new MemoryImageDAO(null);
+        InputImagesImpl seq = getInputImages(sequential, new InFlightCounter());
+        for (int c = 0; c<CHANNELS; ++c) {
+            for (int t = 0; t<FRAMES; ++t) sequential.writePreProcessedImage(seq.getImage(c, t), c, t, "pos");
+        }
+        
+        int maxInFlight = InputImagesImpl.MAX_IN_FLIGHT_FRAMES;
+        InputImagesImpl.MAX_IN_FLIGHT_FRAMES = 2;
+        try {
+            InFlightCounter counter = new InFlightCounter();
+            SlowImageDAO parallel = new SlowImageDAO(counter);
+            AsyncImageDAO async = new AsyncImageDAO(parallel, 2, Long.MAX_VALUE); // no back-pressure from the DAO
+            InputImagesImpl par = getInputImages(async, counter);
+            par.applyTranformationsAndSave(true);
+            async.flush();
+            assertTrue("frames in flight are bounded until they are written: "+counter.max.get(), counter.max.get()<=InputImagesImpl.MAX_IN_FLIGHT_FRAMES);
+            assertEquals("all frames written", CHANNELS * FRAMES, parallel.images.size());
+            assertSameImages(sequential, parallel);
+        } finally {
+            InputImagesImpl.MAX_IN_FLIGHT_FRAMES = maxInFlight;
+        }
+    }
+    private static void assertSameImages(ImageDAO expected, ImageDAO actual) {
+        for (int c = 0; c<CHANNELS; ++c) {
+            for (int t = 0; t<FRAMES; ++t) {
+                Image e = expected.openPreProcessedImage(c, t, "pos");
+                Image a = actual.openPreProcessedImage(c, t, "pos");
+                assertNotNull("image stored: c="+c+" t="+t, a);
+                assertEquals("type: c="+c+" t="+t, e.getClass(), a.getClass());
+                assertTrue("dimensions: c="+c+" t="+t, e.sameDimensions(a));
+                for (int z = 0; z<e.sizeZ(); ++z) {
+                    for (int xy = 0; xy<e.sizeXY(); ++xy) assertEquals("value: c="+c+" t="+t+" z="+z+" xy="+xy, Float.floatToIntBits(e.getPixel(xy, z)), Float.floatToIntBits(a.getPixel(xy, z)));
+                }
+            }
+        }
+    }
+    /**
+     * 
+     * @return input images of a position of {@link #CHANNELS} channels and {@link #FRAMES} frames, with transformations
+     */
+    private static InputImagesImpl getInputImages(ImageDAO dao, InFlightCounter counter) {
+        Random r = new Random(0);
+        Image[][] imageCT = new Image[CHANNELS][FRAMES];
+        for (int c = 0; c<CHANNELS; ++c) {
+            for (int t = 0; t<FRAMES; ++t) {
+                imageCT[c][t] = new ImageShort("", 17, 13, 3);
+                for (int z = 0; z<imageCT[c][t].sizeZ(); ++z) {
+                    for (int xy = 0; xy<imageCT[c][t].sizeXY(); ++xy) imageCT[c][t].setPixel(xy, z, r.nextInt(4096));
+                }
+            }
+        }
+        MemoryImageContainer container = new MemoryImageContainer(imageCT);
+        InputImage[][] inputCT = new InputImage[CHANNELS][FRAMES];
+        for (int c = 0; c<CHANNELS; ++c) {
+            for (int t = 0; t<FRAMES; ++t) inputCT[c][t] = new InputImage(c, t, t, "pos", container, dao);
+        }
+        InputImagesImpl res = new InputImagesImpl(inputCT, 0, null);
+        res.addTransformation(0, new Flip(Axis.X));
+        for (int c = 0; c<CHANNELS; ++c) res.addTransformation(c, new ScaleTransformation(counter));
+        return res;
+    }
+    private static class InFlightCounter {
+        final AtomicInteger count = new AtomicInteger(), max = new AtomicInteger();
+        void increment() {
+            int n = count.incrementAndGet();
+            max.accumulateAndGet(n, Math::max);
+        }
+        void decrement() {
+            count.decrementAndGet();
+        }
+    }
+    /**
+     * Converts to float, scales values and counts transformed frames that are not written yet
+     */
+    private static class ScaleTransformation implements Transformation {
+        final InFlightCounter counter;
+        ScaleTransformation(InFlightCounter counter) {
+            this.counter=counter;
+        }
+        @Override
+        public Image applyTransformation(int channelIdx, int timePoint, Image image) {
+            counter.increment();
+            ImageFloat res = new ImageFloat(image.getName(), image);
+            for (int z = 0; z<image.sizeZ(); ++z) {
+                for (int xy = 0; xy<image.sizeXY(); ++xy) res.setPixel(xy, z, image.getPixel(xy, z) * 1.37 + channelIdx - timePoint / 3.0);
+            }
+            return res;
+        }
+        @Override public void setTestMode(boolean testMode) {}
+        @Override public Parameter[] getParameters() {return new Parameter[0];}
+    }
+    /**
+     * Writes are slow so that frames accumulate if the pipeline does not wait for them
+     */
+    private static class SlowImageDAO extends MemoryImageDAO {
+        final InFlightCounter counter;
+        SlowImageDAO(InFlightCounter counter) {
+            super(null);
+            this.counter=counter;
+        }
+        @Override public void writePreProcessedImage(Image image, int channelImageIdx, int timePoint, String microscopyFieldName) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {}
+            super.writePreProcessedImage(image, channelImageIdx, timePoint, microscopyFieldName);
+            counter.decrement();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.data_structure.dao.SegmentStore;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestSegmentStore {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    
+    private static String getString(ByteBuffer b) {
+        if (b==null) return null;
+        byte[] res = new byte[b.remaining()];
+        b.get(res);
+        return new String(res, StandardCharsets.UTF_8);
+    }
+    @Test
+    public void testCommitAndReopen() throws IOException {
+        File dir = testFolder.newFolder();
+        SegmentStore store = new SegmentStore(dir, "objects_0", false);
+        store.put("a", "1".getBytes(StandardCharsets.UTF_8));
+        store.put("b", "2".getBytes(StandardCharsets.UTF_8));
+        store.commit();
+        store.put("a", "3".getBytes(StandardCharsets.UTF_8));
+        store.remove("b");
+        store.commit();
+        store.put("c", "4".getBytes(StandardCharsets.UTF_8));
+        assertEquals("pending value", "4", getString(store.get("c")));
+        store.close(); // c is not committed
+        
+        store = new SegmentStore(dir, "objects_0", true);
+        assertEquals("overwritten value", "3", getString(store.get("a")));
+        assertNull("deleted value", store.get("b"));
+        assertNull("uncommitted value", store.get("c"));
+        assertEquals("keys", new HashSet<>(Arrays.asList("a")), store.keys());
+        store.close();
+    }
+    @Test
+    public void testIncompleteCommit() throws IOException {
+        File dir = testFolder.newFolder();
+        SegmentStore store = new SegmentStore(dir, "objects_0", false);
+        store.put("a", "1".getBytes(StandardCharsets.UTF_8));
+        store.commit();
+        store.close();
+        File segment = new File(dir, "objects_0.0.seg");
+        long length = segment.length();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) { // partially written record
+            out.write(new byte[]{1, 0, 0, 0, 1, 'b', 0, 0});
+        }
+        store = new SegmentStore(dir, "objects_0", false);
+        assertEquals("committed value", "1", getString(store.get("a")));
+        store.close();
+        assertEquals("uncommitted tail truncated", length, segment.length());
+        store = new SegmentStore(dir, "objects_0", false);
+        store.put("b", "2".getBytes(StandardCharsets.UTF_8));
+        store.commit();
+        store.close();
+        store = new SegmentStore(dir, "objects_0", true);
+        assertEquals("value after recovery", "2", getString(store.get("b")));
+        store.close();
+    }
+    @Test
+    public void testCompaction() throws IOException {
+        File dir = testFolder.newFolder();
+        SegmentStore store = new SegmentStore(dir, "objects_0", false);
+        for (int i = 0; i<50; ++i) {
+            store.put("k"+(i%5), ("v"+i).getBytes(StandardCharsets.UTF_8));
+            store.commit();
+        }
+        store.compact();
+        store.put("x", "y".getBytes(StandardCharsets.UTF_8));
+        store.commit();
+        assertEquals("single generation", 1, dir.list().length);
+        store.close();
+        store = new SegmentStore(dir, "objects_0", true);
+        for (int i = 45; i<50; ++i) assertEquals("value after compaction", "v"+i, getString(store.get("k"+(i%5))));
+        assertEquals("value committed after compaction", "y", getString(store.get("x")));
+        assertTrue("keys", store.keys().containsAll(Arrays.asList("k0", "k4", "x")));
+        store.close();
+    }
+    @Test
+    public void testIncompleteCompaction() throws IOException {
+        File dir = testFolder.newFolder();
+        SegmentStore store = new SegmentStore(dir, "objects_0", false);
+        store.put("a", "1".getBytes(StandardCharsets.UTF_8));
+        store.commit();
+        store.close();
+        File tmp = new File(dir, "objects_0.1.seg.tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) { // compaction interrupted before the new generation was complete
+            out.write(new byte[]{0x42, 0x53, 0x45, 0x47, 1});
+        }
+        store = new SegmentStore(dir, "objects_0", false);
+        assertEquals("committed value", "1", getString(store.get("a")));
+        assertTrue("temporary generation removed", !tmp.exists());
+        for (int i = 0; i<50; ++i) {
+            store.put("k"+i, ("v"+i).getBytes(StandardCharsets.UTF_8));
+            store.commit();
+        }
+        store.compact();
+        store.close();
+        assertEquals("single generation", Arrays.asList("objects_0.1.seg"), Arrays.asList(dir.list()));
+        store = new SegmentStore(dir, "objects_0", true);
+        for (int i = 0; i<50; ++i) assertEquals("value after compaction", "v"+i, getString(store.get("k"+i)));
+        store.close();
+    }
+}
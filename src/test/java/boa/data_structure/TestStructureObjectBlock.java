@@ -0,0 +1,103 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure;
+
+import boa.image.BlankMask;
+import boa.utils.Id;
+import boa.utils.JSONUtils;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestStructureObjectBlock {
+    @Test
+    public void testEncodeDecode() {
+        StructureObject root = new StructureObject(0, new BlankMask(20, 20, 1, 0, 0, 0, 1, 1), null);
+        Set<Voxel> voxels = new HashSet<>(Arrays.asList(new Voxel(3, 4, 0), new Voxel(4, 4, 0), new Voxel(4, 5, 0)));
+        StructureObject o1 = new StructureObject(0, 0, 0, new Region(voxels, 1, true, 1, 1), root);
+        StructureObject o2 = new StructureObject(0, 0, 1, new Region(new BlankMask(3, 4, 1, 10, 12, 0, 1, 1), 2, true), root);
+        o1.setAttribute("test", 2.5);
+        o1.setAttribute(StructureObject.EDITED_SEGMENTATION, true);
+        o1.setNext(o2);
+        for (StructureObject o : Arrays.asList(o1, o2)) {
+            o.getParentTrackHeadId();
+            o.getTrackHeadId();
+            o.updateRegionContainer();
+        }
+        StructureObjectBlock block = new StructureObjectBlock(root.getId(), 0);
+        block.putAll(Arrays.asList(o1, o2));
+        StructureObjectBlock decoded = StructureObjectBlock.decode(block.encode());
+        assertEquals("block size", 2, decoded.size());
+        Map<Id, StructureObject> decodedById = decoded.getObjects(null).stream().collect(Collectors.toMap(StructureObject::getId, Function.identity()));
+        for (StructureObject o : Arrays.asList(o1, o2)) {
+            assertTrue("object retrieved", decodedById.containsKey(o.getId()));
+            assertEquals("same content", o.toJSONEntry().toJSONString(), decodedById.get(o.getId()).toJSONEntry().toJSONString());
+        }
+        
+        // replace & remove
+        o2.setIdx(2);
+        decoded.putAll(Arrays.asList(o2));
+        assertEquals("block size after replace", 2, decoded.size());
+        assertEquals("removed count", 1, decoded.removeAll(Arrays.asList(o1.getId())));
+        decoded = StructureObjectBlock.decode(decoded.encode());
+        assertEquals("block size after remove", 1, decoded.size());
+        assertEquals("remaining object", o2.getId(), decoded.getId(0));
+        assertEquals("replaced idx", 2, decoded.getIdx(0));
+    }
+    @Test
+    public void testLazyRegionDecoding() {
+        StructureObject root = new StructureObject(0, new BlankMask(20, 20, 1, 0, 0, 0, 1, 1), null);
+        Set<Voxel> voxels = new HashSet<>(Arrays.asList(new Voxel(3, 4, 0), new Voxel(4, 4, 0), new Voxel(4, 5, 0)));
+        StructureObject o = new StructureObject(0, 0, 0, new Region(voxels, 1, true, 1, 1), root);
+        o.updateRegionContainer();
+        String json = o.toJSONEntry().toJSONString();
+        StructureObjectBlock block = new StructureObjectBlock(root.getId(), 0);
+        block.putAll(Arrays.asList(o));
+        StructureObject decoded = StructureObjectBlock.decode(block.encode()).getObject(0);
+        assertTrue("region container", decoded.hasRegionContainer());
+        assertTrue("payload not decoded", !decoded.getRegionContainer().isPayloadDecoded());
+        assertTrue("bounds from header", o.getBounds().sameBounds(decoded.getBounds()));
+        assertTrue("payload not decoded by bounds", !decoded.getRegionContainer().isPayloadDecoded());
+        assertEquals("same content", json, decoded.toJSONEntry().toJSONString());
+        assertTrue("payload decoded", decoded.getRegionContainer().isPayloadDecoded());
+        
+        StructureObject fromJSON = JSONUtils.parse(StructureObject.class, json);
+        assertTrue("payload not decoded from JSON", !fromJSON.getRegionContainer().isPayloadDecoded());
+        assertTrue("bounds from JSON header", o.getBounds().sameBounds(fromJSON.getBounds()));
+        assertTrue("payload not decoded by bounds from JSON", !fromJSON.getRegionContainer().isPayloadDecoded());
+        assertEquals("same content from JSON", json, fromJSON.toJSONEntry().toJSONString());
+        
+        o.setAttribute("object", "\"}{[ \\\"object\\\":"); // nested key and JSON characters in a string
+        String jsonWithAttributes = o.toJSONEntry().toJSONString();
+        fromJSON = JSONUtils.parse(StructureObject.class, jsonWithAttributes);
+        assertTrue("payload not decoded from JSON with attributes", !fromJSON.getRegionContainer().isPayloadDecoded());
+        assertEquals("attribute", o.getAttribute("object"), fromJSON.getAttribute("object"));
+        assertEquals("same content from JSON with attributes", jsonWithAttributes, fromJSON.toJSONEntry().toJSONString());
+    }
+}
@@ -0,0 +1,82 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.data_structure.region_container;
+
+import boa.data_structure.Region;
+import boa.data_structure.StructureObject;
+import boa.data_structure.Voxel;
+import boa.image.BlankMask;
+import boa.utils.BinaryReader;
+import boa.utils.BinaryWriter;
+import boa.utils.JSONUtils;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestRegionContainerVoxels {
+    private static RegionContainerVoxels createContainer() {
+        StructureObject root = new StructureObject(0, new BlankMask(20, 20, 1, 0, 0, 0, 1, 1), null);
+        StructureObject o = new StructureObject(0, 0, 0, new Region(new HashSet<>(Arrays.asList(new Voxel(3, 4, 0), new Voxel(4, 4, 0), new Voxel(4, 5, 0))), 1, true, 1, 1), root);
+        return new RegionContainerVoxels(o);
+    }
+    private static RegionContainerVoxels binaryCopy(RegionContainerVoxels container) {
+        BinaryWriter out = new BinaryWriter();
+        RegionContainer.writeBinary(container, out);
+        return (RegionContainerVoxels)RegionContainer.createFromBinary(container.structureObject, new BinaryReader(out.toByteArray()));
+    }
+    @Test
+    public void testNullCoordinates() {
+        RegionContainerVoxels container = createContainer();
+        container.x = null;
+        container.y = null;
+        container.z = null;
+        RegionContainerVoxels decoded = binaryCopy(container);
+        decoded.decodePayload();
+        assertNull("null x preserved", decoded.x);
+        assertNull("null y preserved", decoded.y);
+        
+        container = createContainer();
+        container.x = new int[0];
+        container.y = new int[0];
+        decoded = binaryCopy(container);
+        decoded.decodePayload();
+        assertArrayEquals("empty x preserved", new int[0], decoded.x);
+        assertArrayEquals("empty y preserved", new int[0], decoded.y);
+    }
+    @Test
+    public void testJSONPayloadKeptEncoded() {
+        RegionContainerVoxels container = createContainer();
+        String json = container.toJSON().toJSONString();
+        RegionContainerVoxels fromJSON = (RegionContainerVoxels)RegionContainer.createFromJSON(container.structureObject, json);
+        assertTrue("payload not decoded", !fromJSON.isPayloadDecoded());
+        assertNull("coordinates not parsed", fromJSON.x);
+        assertTrue("bounds", container.getBounds().sameBounds(fromJSON.getBounds()));
+        assertEquals("same content", json, fromJSON.toJSON().toJSONString());
+        assertArrayEquals("same x", container.x, fromJSON.x);
+        assertArrayEquals("same y", container.y, fromJSON.y);
+    }
+}
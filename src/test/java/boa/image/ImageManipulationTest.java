@@ -28,6 +28,8 @@ import boa.image.ImageShort;
 import boa.image.TypeConverter;
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import java.util.ArrayDeque;
+import java.util.Random;
 import org.junit.Test;
 
 /**
@@ -234,6 +236,70 @@ public class ImageManipulationTest {
         for (int z = 0; z < mask2.sizeZ(); ++z) assertArrayEquals("Spot voxels slice:"+z, mask.getPixelArray()[z], mask2.getPixelArray()[z]);       
     }
     
+    @Test
+    public void testImageLabellerParallel() {
+        ImageByte mask = new ImageByte("", 40, 30, 16);
+        Random r = new Random(0);
+        for (int z = 0; z<mask.sizeZ(); ++z) {
+            for (int xy = 0; xy<mask.sizeXY(); ++xy) if (r.nextDouble()<0.3) mask.setPixel(xy, z, 1);
+        }
+        for (boolean low : new boolean[]{false, true}) {
+            int[][] expected = floodFillLabels(mask, low);
+            for (int slabs : new int[]{1, 2, 3, 5, mask.sizeZ()}) { // several slabs whatever the number of CPUs, so that labels are merged at slab boundaries
+                ImageLabeller par = ImageLabeller.label(mask, low, slabs);
+                for (int z = 0; z < mask.sizeZ(); ++z) assertArrayEquals("Labels slabs:"+slabs+" low connectivity:"+low+" slice:"+z, expected[z], par.getLabelImage().getPixelArray()[z]);
+                int labelCount = 0;
+                for (int[] plane : expected) for (int l : plane) labelCount = Math.max(labelCount, l);
+                assertEquals("Number of labels slabs:"+slabs, labelCount, par.getLabelCount());
+                Region[] objects = par.getObjects();
+                ImageByte mask2 = new ImageByte("", mask);
+                for (int l = 1; l<=par.getLabelCount(); ++l) {
+                    Region o = objects[l-1];
+                    assertEquals("Size of object", par.getSize(l), o.getVoxels().size());
+                    assertEquals("Bounds of object", par.getBounds(l).toString(), o.getBounds().toString());
+                    o.draw(mask2, 1);
+                }
+                for (int z = 0; z < mask2.sizeZ(); ++z) assertArrayEquals("Object voxels slice:"+z, mask.getPixelArray()[z], mask2.getPixelArray()[z]);
+            }
+        }
+    }
+    /**
+     * Reference labelling: breadth-first flood fill from each unlabelled voxel, in raster order
+     * @param lowConnectivity if true 6-connectivity, otherwise 26-connectivity
+     * @return labels per plane, numbered by first voxel
+     */
+    private static int[][] floodFillLabels(ImageByte mask, boolean lowConnectivity) {
+        int sX = mask.sizeX(), sY = mask.sizeY(), sZ = mask.sizeZ();
+        int[][] labels = new int[sZ][sX*sY];
+        int label = 0;
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int z = 0; z<sZ; ++z) {
+            for (int xy = 0; xy<sX*sY; ++xy) {
+                if (mask.getPixel(xy, z)==0 || labels[z][xy]!=0) continue;
+                labels[z][xy] = ++label;
+                queue.add(new int[]{xy%sX, xy/sX, z});
+                while (!queue.isEmpty()) {
+                    int[] v = queue.poll();
+                    for (int dz = -1; dz<=1; ++dz) {
+                        for (int dy = -1; dy<=1; ++dy) {
+                            for (int dx = -1; dx<=1; ++dx) {
+                                int d = Math.abs(dx)+Math.abs(dy)+Math.abs(dz);
+                                if (d==0 || (lowConnectivity && d>1)) continue;
+                                int x = v[0]+dx, y = v[1]+dy, zz = v[2]+dz;
+                                if (x<0 || x>=sX || y<0 || y>=sY || zz<0 || zz>=sZ) continue;
+                                int i = x + y * sX;
+                                if (mask.getPixel(i, zz)==0 || labels[zz][i]!=0) continue;
+                                labels[zz][i] = label;
+                                queue.add(new int[]{x, y, zz});
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+    
     
     
 }
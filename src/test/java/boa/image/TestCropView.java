@@ -0,0 +1,108 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestCropView {
+    
+    private static ImageShort generateImage() {
+        ImageShort im = new ImageShort("", 20, 15, 4);
+        Random r = new Random(0);
+        for (int z = 0; z<im.sizeZ(); ++z) {
+            for (int xy = 0; xy<im.sizeXY(); ++xy) im.setPixel(xy, z, r.nextInt(1000));
+        }
+        im.translate(new SimpleOffset(5, 3, 1));
+        return im;
+    }
+    
+    private static void assertSameImage(Image expected, Image actual) {
+        assertTrue("dimensions", expected.sameDimensions(actual));
+        assertTrue("offset", expected.getOffset().sameOffset(actual));
+        for (int z = 0; z<expected.sizeZ(); ++z) {
+            for (int y = 0; y<expected.sizeY(); ++y) {
+                for (int x = 0; x<expected.sizeX(); ++x) {
+                    assertEquals("value", expected.getPixel(x, y, z), actual.getPixel(x, y, z), 0);
+                    assertEquals("value with offset", expected.getPixelWithOffset(x+expected.xMin(), y+expected.yMin(), z+expected.zMin()), actual.getPixelWithOffset(x+actual.xMin(), y+actual.yMin(), z+actual.zMin()), 0);
+                }
+            }
+            assertArrayEquals("stream", expected.streamPlane(z).toArray(), actual.streamPlane(z).toArray(), 0);
+        }
+    }
+    
+    @Test
+    public void testView() {
+        ImageShort im = generateImage();
+        BoundingBox bounds = new SimpleBoundingBox(2, 11, 3, 9, 1, 2);
+        ImageShort view = im.cropView(bounds);
+        assertTrue("is view", view instanceof ImageShortView && ((ImageShortView)view).isView());
+        assertSameImage(im.crop(bounds), view);
+        assertEquals("count", im.crop(bounds).count(), view.count());
+        assertSameImage(im.crop(bounds), view.duplicate());
+        // view of view
+        BoundingBox bounds2 = new SimpleBoundingBox(1, 4, 2, 5, 1, 1);
+        assertSameImage(im.crop(bounds).crop(bounds2), view.cropView(bounds2));
+        assertSameImage(im.crop(bounds).crop(bounds2), view.crop(bounds2));
+        assertSameImage(im.crop(bounds).getZPlane(1), view.getZPlane(1));
+        // bounds outside image: regular crop
+        BoundingBox outside = new SimpleBoundingBox(-2, 11, 3, 9, 1, 2);
+        assertTrue("outside bounds", !(im.cropView(outside) instanceof ImageShortView));
+        assertSameImage(im.crop(outside), im.cropView(outside));
+    }
+    
+    @Test
+    public void testPaste() {
+        ImageShort im = generateImage();
+        BoundingBox bounds = new SimpleBoundingBox(2, 11, 3, 9, 1, 2);
+        ImageShort fromCrop = new ImageShort("", 12, 10, 3);
+        ImageShort fromView = new ImageShort("", 12, 10, 3);
+        Image.pasteImage(im.crop(bounds), fromCrop, new SimpleOffset(1, 2, 1));
+        Image.pasteImage(im.cropView(bounds), fromView, new SimpleOffset(1, 2, 1));
+        assertSameImage(fromCrop, fromView);
+        BoundingBox sourceView = new SimpleBoundingBox(1, 5, 2, 4, 0, 1);
+        Image.pasteImage(im.crop(bounds), fromCrop, new SimpleOffset(0, 0, 0), sourceView);
+        Image.pasteImage(im.cropView(bounds), fromView, new SimpleOffset(0, 0, 0), sourceView);
+        assertSameImage(fromCrop, fromView);
+    }
+    
+    @Test
+    public void testCopyOnWrite() {
+        ImageShort im = generateImage();
+        ImageShort ref = im.duplicate();
+        BoundingBox bounds = new SimpleBoundingBox(2, 11, 3, 9, 1, 2);
+        ImageShort view = im.cropView(bounds);
+        view.setPixel(1, 1, 0, 5000);
+        assertTrue("pixels copied", !((ImageShortView)view).isView());
+        assertEquals("modified value", 5000, view.getPixelInt(1, 1, 0));
+        assertSameImage(ref, im);
+        view.setPixel(1, 1, 0, ref.getPixelInt(3, 4, 1));
+        assertSameImage(im.crop(bounds), view);
+        ImageShort view2 = im.cropView(bounds);
+        view2.getPixelArray()[0][0] = 5000;
+        assertSameImage(ref, im);
+    }
+}
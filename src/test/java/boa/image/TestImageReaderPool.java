@@ -0,0 +1,94 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import boa.image.io.ImageFormat;
+import boa.image.io.ImageIOCoordinates;
+import boa.image.io.ImageReader;
+import boa.image.io.ImageReaderPool;
+import boa.image.io.ImageWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestImageReaderPool {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    
+    @Test
+    public void testBorrowReleaseTimeout() throws Exception {
+        ImageByte image = new ImageByte("", 12, 9, 2);
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) image.setPixel(xy, z, (xy + 7 * z) % 256);
+        }
+        String path = new File(testFolder.getRoot(), "im.tif").getAbsolutePath();
+        ImageWriter.writeToFile(image, path, ImageFormat.TIF);
+        ImageReaderPool pool = new ImageReaderPool(path, 2, 200);
+        ImageReader r1 = pool.borrow();
+        ImageReader r2 = pool.borrow();
+        assertEquals("open readers", 2, pool.getOpenReaderCount());
+        
+        // all readers are in use: borrowing waits until one is released
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ImageReader> waiting = executor.submit(pool::borrow);
+            Thread.sleep(100);
+            assertFalse("borrow waits for a released reader", waiting.isDone());
+            pool.release(r1);
+            ImageReader r3 = waiting.get(5, TimeUnit.SECONDS);
+            assertTrue("released reader is re-used", r1==r3);
+            assertEquals("no reader opened", 2, pool.getOpenReaderCount());
+            pool.release(r3);
+        } finally {
+            executor.shutdownNow();
+        }
+        pool.release(r2);
+        assertEquals("idle readers", 2, pool.getIdleReaderCount());
+        Image read = pool.openImage(new ImageIOCoordinates());
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) assertEquals("value", image.getPixel(xy, z), read.getPixel(xy, z), 0);
+        }
+        
+        // idle readers are closed once expired, without further use of the pool
+        long t0 = System.currentTimeMillis();
+        while (pool.getOpenReaderCount()>0 && System.currentTimeMillis()-t0<5000) Thread.sleep(20);
+        assertEquals("expired readers closed", 0, pool.getOpenReaderCount());
+        assertEquals("no idle reader", 0, pool.getIdleReaderCount());
+        
+        // readers in use when the pool is closed are closed when released
+        ImageReader r = pool.borrow();
+        pool.close();
+        assertEquals("reader in use still open", 1, pool.getOpenReaderCount());
+        pool.release(r);
+        assertEquals("reader closed at release", 0, pool.getOpenReaderCount());
+        assertEquals("closed reader not re-used", 0, pool.getIdleReaderCount());
+    }
+}
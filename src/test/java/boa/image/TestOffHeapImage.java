@@ -0,0 +1,86 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestOffHeapImage {
+    
+    private static <T extends Image<T>> T fill(T image) {
+        Random r = new Random(0);
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) image.setPixel(xy, z, r.nextInt(200));
+        }
+        return image;
+    }
+    
+    private static void assertSameValues(Image expected, Image actual) {
+        assertEquals("dimensions", true, expected.sameDimensions(actual));
+        for (int z = 0; z<expected.sizeZ(); ++z) {
+            for (int xy = 0; xy<expected.sizeXY(); ++xy) assertEquals("value", expected.getPixel(xy, z), actual.getPixel(xy, z), 0);
+            assertArrayEquals("stream", expected.streamPlane(z).toArray(), actual.streamPlane(z).toArray(), 0);
+        }
+    }
+    
+    private static void testStorage(Image type, PixelStorage storage) {
+        ImageProperties props = new SimpleImageProperties(new SimpleBoundingBox(2, 21, 3, 17, 0, 2), 1, 1);
+        Image heap = fill(Image.createEmptyImage("", type, props));
+        Image offHeap = fill(Image.createEmptyImage("", type, props, storage));
+        assertEquals("storage", storage, offHeap.getPixelStorage());
+        assertSameValues(heap, offHeap);
+        assertEquals("count", heap.count(), offHeap.count());
+        assertSameValues(heap.getZPlane(1), offHeap.getZPlane(1));
+        BoundingBox bounds = new SimpleBoundingBox(3, 12, 2, 9, 1, 2);
+        assertSameValues(heap.crop(bounds), offHeap.crop(bounds));
+        Image pasteHeap = Image.createEmptyImage("", type, props);
+        Image pasteOffHeap = Image.createEmptyImage("", type, props, storage);
+        Image.pasteImage(heap.crop(bounds), pasteHeap, new SimpleOffset(1, 2, 0));
+        Image.pasteImage(offHeap.crop(bounds), pasteOffHeap, new SimpleOffset(1, 2, 0));
+        assertSameValues(pasteHeap, pasteOffHeap);
+        Image dup = offHeap.duplicate();
+        assertEquals("duplicate storage", storage, dup.getPixelStorage());
+        assertSameValues(heap, dup);
+        ImageMask mask = new BlankMask(5, 4, 2, 4, 5, 0, 1, 1);
+        assertArrayEquals("masked stream", heap.stream(mask, true).toArray(), offHeap.stream(mask, true).toArray(), 0);
+        Image heapCopy = offHeap.getHeapImage();
+        assertEquals("heap copy storage", PixelStorage.HEAP, heapCopy.getPixelStorage());
+        assertEquals("pixels not moved by heap copy", storage, offHeap.getPixelStorage());
+        assertSameValues(heap, heapCopy);
+        offHeap.getPixelArray();
+        assertEquals("moved to heap", PixelStorage.HEAP, offHeap.getPixelStorage());
+        assertSameValues(heap, offHeap);
+    }
+    
+    @Test
+    public void testDirect() {
+        for (Image type : new Image[]{new ImageByte("", 0, 0, 0), new ImageShort("", 0, 0, 0), new ImageFloat("", 0, 0, 0), new ImageInt("", 0, 0, 0)}) testStorage(type, PixelStorage.DIRECT);
+    }
+    
+    @Test
+    public void testMapped() {
+        for (Image type : new Image[]{new ImageByte("", 0, 0, 0), new ImageShort("", 0, 0, 0), new ImageFloat("", 0, 0, 0), new ImageInt("", 0, 0, 0)}) testStorage(type, PixelStorage.MAPPED);
+    }
+}
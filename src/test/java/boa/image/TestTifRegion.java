@@ -0,0 +1,187 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import boa.image.io.ImageIOCoordinates;
+import boa.image.io.ImageReader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reading a region of a TIFF file must give the same image as reading the whole file and cropping it
+ * @author Jean Ollion
+ */
+public class TestTifRegion {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    static final BoundingBox[] BOUNDS = new BoundingBox[] {
+        new SimpleBoundingBox(3, 8, 2, 15, 1, 2), // narrow: only the useful part of each row is read
+        new SimpleBoundingBox(0, 24, 5, 9, 0, 3), // wide: whole rows are read
+        new SimpleBoundingBox(-4, 10, 12, 22, -1, 1), // partially outside the image
+        new SimpleBoundingBox(20, 30, -3, 4, 3, 5),
+        new SimpleBoundingBox(7, 7, 0, 18, 2, 2), // single column
+        new SimpleBoundingBox(30, 35, 25, 30, 0, 0) // outside the image
+    };
+    
+    @Test
+    public void testRegion() throws IOException {
+        for (Image image : new Image[]{new ImageByte("", 26, 19, 4), new ImageShort("", 26, 19, 4), new ImageFloat("", 26, 19, 4)}) {
+            fill(image);
+            String name = "im"+image.getBitDepth();
+            // uncompressed files with contiguous strips are read by region
+            testRegion(image, writeTif(name+"_single.tif", image, ByteOrder.LITTLE_ENDIAN, image.sizeY(), false, 0, 0), true);
+            testRegion(image, writeTif(name+"_strips.tif", image, ByteOrder.BIG_ENDIAN, 4, false, 0, 37), true);
+            // strips that are not contiguous or compressed: whole image is read and cropped
+            testRegion(image, writeTif(name+"_gaps.tif", image, ByteOrder.LITTLE_ENDIAN, 4, false, 5, 0), false);
+            testRegion(image, writeTif(name+"_deflate.tif", image, ByteOrder.BIG_ENDIAN, 6, true, 3, 11), false);
+        }
+    }
+    private void testRegion(Image image, String path, boolean readByRegion) {
+        Image full = ImageReader.openIJTif(path);
+        assertTrue("dimensions", image.sameDimensions(full));
+        assertPixels("full image: "+path, image, full);
+        for (BoundingBox bounds : BOUNDS) {
+            Image region = ImageReader.openIJTifRegion(path, bounds);
+            if (readByRegion) {
+                assertNotNull("region read: "+path, region);
+                assertRegion(path, bounds, full.crop(bounds), region);
+            } else assertNull("region not read: "+path, region);
+            assertRegion(path, bounds, full.crop(bounds), ImageReader.openImage(path, new ImageIOCoordinates(bounds)));
+        }
+    }
+    private static void assertRegion(String path, BoundingBox bounds, Image expected, Image actual) {
+        String message = path+" bounds: "+bounds;
+        assertTrue("dimensions: "+message, actual.sameDimensions(bounds));
+        assertEquals("offset X: "+message, expected.xMin(), actual.xMin());
+        assertEquals("offset Y: "+message, expected.yMin(), actual.yMin());
+        assertEquals("offset Z: "+message, expected.zMin(), actual.zMin());
+        assertEquals("type: "+message, expected.getBitDepth(), actual.getBitDepth());
+        assertPixels(message, expected, actual);
+    }
+    private static void assertPixels(String message, Image expected, Image actual) {
+        for (int z = 0; z<expected.sizeZ(); ++z) {
+            for (int xy = 0; xy<expected.sizeXY(); ++xy) assertEquals("value: "+message+" z="+z+" xy="+xy, expected.getPixel(xy, z), actual.getPixel(xy, z), 0);
+        }
+    }
+    private static void fill(Image image) {
+        Random r = new Random(image.getBitDepth());
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) {
+                switch (image.getBitDepth()) {
+                    case 8: image.setPixel(xy, z, r.nextInt(256)); break;
+                    case 16: image.setPixel(xy, z, r.nextInt(65536)); break;
+                    default: image.setPixel(xy, z, (float)r.nextGaussian() * 1000);
+                }
+            }
+        }
+    }
+    /**
+     * Writes {@param image} as a TIFF file with one IFD per plane
+     * @param rowsPerStrip number of rows in each strip
+     * @param compress whether strips are deflate-compressed
+     * @param stripGap number of bytes between consecutive strips
+     * @param planeGap number of bytes before the first strip of each plane
+     * @return path of the written file
+     */
+    private String writeTif(String fileName, Image image, ByteOrder order, int rowsPerStrip, boolean compress, int stripGap, int planeGap) throws IOException {
+        int bpp = image.getBitDepth()/8;
+        int sizeX = image.sizeX(), sizeY = image.sizeY();
+        int nStrips = (sizeY + rowsPerStrip - 1) / rowsPerStrip;
+        ByteBuffer out = ByteBuffer.allocate(1024 + image.sizeZ() * (2 * image.sizeXY() * bpp + planeGap + nStrips * (stripGap + 128))).order(order);
+        out.put(order.equals(ByteOrder.LITTLE_ENDIAN) ? (byte)'I' : (byte)'M').put(order.equals(ByteOrder.LITTLE_ENDIAN) ? (byte)'I' : (byte)'M').putShort((short)42);
+        int nextIFDPointer = out.position();
+        out.putInt(0);
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            out.position(out.position() + planeGap);
+            int[] offsets = new int[nStrips], lengths = new int[nStrips];
+            for (int s = 0; s<nStrips; ++s) {
+                if (s>0) out.position(out.position() + stripGap);
+                int yMax = Math.min(sizeY, (s+1) * rowsPerStrip);
+                ByteBuffer strip = ByteBuffer.allocate((yMax - s * rowsPerStrip) * sizeX * bpp).order(order);
+                for (int y = s * rowsPerStrip; y<yMax; ++y) {
+                    for (int x = 0; x<sizeX; ++x) {
+                        float v = image.getPixel(x, y, z);
+                        switch (bpp) {
+                            case 1: strip.put((byte)v); break;
+                            case 2: strip.putShort((short)v); break;
+                            default: strip.putFloat(v);
+                        }
+                    }
+                }
+                byte[] bytes = compress ? deflate(strip.array()) : strip.array();
+                offsets[s] = out.position();
+                lengths[s] = bytes.length;
+                out.put(bytes);
+            }
+            if (out.position()%2!=0) out.put((byte)0); // IFD starts on a word boundary
+            out.putInt(nextIFDPointer, out.position());
+            int nTags = 10;
+            int arrays = out.position() + 2 + nTags * 12 + 4;
+            out.putShort((short)nTags);
+            putTag(out, 256, 4, 1, sizeX); // image width
+            putTag(out, 257, 4, 1, sizeY); // image length
+            putTag(out, 258, 3, 1, image.getBitDepth()); // bits per sample
+            putTag(out, 259, 3, 1, compress ? 8 : 1); // compression
+            putTag(out, 262, 3, 1, 1); // photometric interpretation: black is zero
+            putTag(out, 273, 4, nStrips, nStrips==1 ? offsets[0] : arrays); // strip offsets
+            putTag(out, 277, 3, 1, 1); // samples per pixel
+            putTag(out, 278, 4, 1, rowsPerStrip); // rows per strip
+            putTag(out, 279, 4, nStrips, nStrips==1 ? lengths[0] : arrays + 4 * nStrips); // strip byte counts
+            putTag(out, 339, 3, 1, bpp==4 ? 3 : 1); // sample format
+            nextIFDPointer = out.position();
+            out.putInt(0);
+            if (nStrips>1) {
+                for (int o : offsets) out.putInt(o);
+                for (int l : lengths) out.putInt(l);
+            }
+        }
+        File file = new File(testFolder.getRoot(), fileName);
+        Files.write(file.toPath(), Arrays.copyOf(out.array(), out.position()));
+        return file.getAbsolutePath();
+    }
+    private static void putTag(ByteBuffer out, int tag, int type, int count, int value) {
+        out.putShort((short)tag).putShort((short)type).putInt(count);
+        if (type==3 && count==1) out.putShort((short)value).putShort((short)0);
+        else out.putInt(value);
+    }
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) res.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        return res.toByteArray();
+    }
+}
@@ -0,0 +1,100 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image;
+
+import boa.image.io.ImageFormat;
+import boa.image.io.ImageReader;
+import boa.image.io.ImageWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestUncompressedTif {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    
+    private void testOpen(Image image) {
+        Random r = new Random(0);
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) image.setPixel(xy, z, r.nextInt(250));
+        }
+        String path = new File(testFolder.getRoot(), "im"+image.getBitDepth()+".tif").getAbsolutePath();
+        ImageWriter.writeToFile(image, path, ImageFormat.TIF);
+        long minPlaneBytes = ImageReader.DIRECT_TIF_MIN_PLANE_BYTES;
+        try {
+            for (long min : new long[]{0, Long.MAX_VALUE}) {
+                ImageReader.DIRECT_TIF_MIN_PLANE_BYTES = min;
+                Image opened = ImageReader.openUncompressedTif(path);
+                assertTrue("image opened", opened!=null);
+                assertEquals("storage", min==0 ? PixelStorage.DIRECT : PixelStorage.HEAP, opened.getPixelStorage());
+                assertTrue("dimensions", image.sameDimensions(opened));
+                for (int z = 0; z<image.sizeZ(); ++z) {
+                    for (int xy = 0; xy<image.sizeXY(); ++xy) assertEquals("value", image.getPixel(xy, z), opened.getPixel(xy, z), 0);
+                }
+                opened.setPixel(0, 0, 0, 1);
+                assertEquals("modified value", 1, opened.getPixel(0, 0, 0), 0);
+            }
+        } finally {
+            ImageReader.DIRECT_TIF_MIN_PLANE_BYTES = minPlaneBytes;
+        }
+        assertEquals("file not modified", image.getPixel(0, 0, 0), ImageReader.openIJTif(path).getPixel(0, 0, 0), 0);
+    }
+    
+    @Test
+    public void testFileNotKeptOpen() throws IOException {
+        Image image = new ImageFloat("", 30, 20, 3);
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) image.setPixel(xy, z, xy+z);
+        }
+        File file = new File(testFolder.getRoot(), "truncated.tif");
+        ImageWriter.writeToFile(image, file.getAbsolutePath(), ImageFormat.TIF);
+        long minPlaneBytes = ImageReader.DIRECT_TIF_MIN_PLANE_BYTES;
+        Image opened;
+        try {
+            ImageReader.DIRECT_TIF_MIN_PLANE_BYTES = 0;
+            opened = ImageReader.openUncompressedTif(file.getAbsolutePath());
+        } finally {
+            ImageReader.DIRECT_TIF_MIN_PLANE_BYTES = minPlaneBytes;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0); // pixels of a mapped file would not be readable anymore
+        }
+        assertTrue("file can be deleted", file.delete());
+        for (int z = 0; z<image.sizeZ(); ++z) {
+            for (int xy = 0; xy<image.sizeXY(); ++xy) assertEquals("value", image.getPixel(xy, z), opened.getPixel(xy, z), 0);
+        }
+    }
+    
+    @Test
+    public void testOpenUncompressed() {
+        testOpen(new ImageByte("", 30, 20, 3));
+        testOpen(new ImageShort("", 30, 20, 3));
+        testOpen(new ImageFloat("", 30, 20, 3));
+    }
+}
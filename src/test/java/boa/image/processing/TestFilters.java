@@ -28,6 +28,7 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.Prefs;
 import boa.image.BlankMask;
+import boa.image.BoundingBox;
 import boa.image.MutableBoundingBox;
 import boa.image.IJImageWrapper;
 import boa.image.Image;
@@ -39,6 +40,12 @@ import boa.image.ImageInteger;
 import boa.image.io.ImageReader;
 import boa.image.ImageShort;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import boa.image.processing.neighborhood.CylindricalNeighborhood;
+import boa.image.processing.neighborhood.DisplacementNeighborhood;
 import boa.image.processing.neighborhood.EllipsoidalNeighborhood;
 import boa.image.processing.neighborhood.Neighborhood;
 
@@ -50,6 +57,35 @@ public class TestFilters {
     public static void main(String[] args) {
         //new TestFilters().testScale();
         new TestFilters().testMedian();
+        //new TestFilters().benchmarkFilters();
+    }
+    
+    /**
+     * Processing time of the per-pixel filters, sequential and parallel, on 2D and 3D images
+     */
+    public void benchmarkFilters() {
+        int repeats = 5;
+        for (Image test : new Image[]{TestUtils.generateRandomImage(1024, 1024, 1, new ImageShort("", 0, 0, 0)), TestUtils.generateRandomImage(256, 256, 32, new ImageShort("", 0, 0, 0))}) {
+            Neighborhood n = Filters.getNeighborhood(3, 2, test);
+            for (Filters.Filter f : new Filters.Filter[]{new Filters.Mean(), new Filters.Sigma(), new Filters.Median()}) {
+                for (boolean parallele : new boolean[]{false, true}) {
+                    Filters.applyFilter(test, null, f.duplicate(), n, parallele); // warm-up
+                    long t0 = System.nanoTime();
+                    for (int i = 0; i<repeats; ++i) Filters.applyFilter(test, null, f.duplicate(), n.duplicate(), parallele);
+                    logger.info("{} image: {}D, parallele: {}, time: {}ms", f.getClass().getSimpleName(), test.sizeZ()>1 ? 3 : 2, parallele, (System.nanoTime()-t0)/(1e6*repeats));
+                }
+            }
+            for (boolean parallele : new boolean[]{false, true}) {
+                Filters.median(test, null, n, parallele);
+                Filters.max(test, null, n, parallele);
+                long t0 = System.nanoTime();
+                for (int i = 0; i<repeats; ++i) Filters.median(test, null, n, parallele);
+                long t1 = System.nanoTime();
+                for (int i = 0; i<repeats; ++i) Filters.max(test, null, n, parallele);
+                long t2 = System.nanoTime();
+                logger.info("sliding filters image: {}D, parallele: {}, median: {}ms, max: {}ms", test.sizeZ()>1 ? 3 : 2, parallele, (t1-t0)/(1e6*repeats), (t2-t1)/(1e6*repeats));
+            }
+        }
     }
     
     public void testScale() {
@@ -139,4 +175,51 @@ public class TestFilters {
         res = Filters.median(test, test, n, false);
         TestUtils.assertImage(resIJ, res, 0);
     }
+    
+    @Test
+    public void testSlidingRankFilter() {
+        DisplacementNeighborhood n = new EllipsoidalNeighborhood(3, 2, false);
+        for (Image test : new Image[]{TestUtils.generateRandomImage(25, 20, 6, new ImageByte("", 0, 0, 0)), TestUtils.generateRandomImage(25, 20, 6, new ImageShort("", 0, 0, 0)), TestUtils.generateRandomImage(25, 20, 6, new ImageFloat("", 0, 0, 0))}) {
+            Image ref = Filters.applyFilter(test, null, new Filters.Median(), n, false);
+            TestUtils.assertImage(ref, SlidingRankFilter.median(test, null, n, null, false), 0);
+            TestUtils.assertImage(ref, SlidingRankFilter.median(test, null, n, null, true), 0);
+            ImageByte mask = TestUtils.generateRandomImage(25, 20, 6, new ImageByte("", 0, 0, 0));
+            ImageOperations.threshold(mask, 128, true, false, false, mask);
+            TestUtils.assertImage(Filters.applyFilter(test, null, new Filters.Median(mask), n, false), SlidingRankFilter.median(test, null, n, mask, true), 0);
+            for (double p : new double[]{0, 0.1, 0.9, 1}) {
+                Image res = SlidingRankFilter.rank(test, null, n, null, p, false);
+                BoundingBox.loop(test, (x, y, z) -> {
+                    n.setPixels(x, y, z, test, null);
+                    float[] values = Arrays.copyOf(n.getPixelValues(), n.getValueCount());
+                    Arrays.sort(values);
+                    double r = p * (values.length-1);
+                    int k = (int)r;
+                    double v = k+1<values.length ? values[k] + (values[k+1]-values[k]) * (r-k) : values[k];
+                    if (res instanceof ImageInteger) v = (int)(v+0.5);
+                    assertEquals("percentile: "+p+" x="+x+" y="+y+" z="+z, (float)v, res.getPixel(x, y, z), 1e-3);
+                });
+            }
+        }
+    }
+    
+    @Test
+    public void testSlidingMinMaxFilter() {
+        Image test = TestUtils.generateRandomImage(25, 20, 6, new ImageShort("", 0, 0, 0));
+        ImageByte mask = TestUtils.generateRandomImage(25, 20, 6, new ImageByte("", 0, 0, 0));
+        ImageOperations.threshold(mask, 64, true, false, false, mask);
+        for (DisplacementNeighborhood n : new DisplacementNeighborhood[]{new EllipsoidalNeighborhood(3.5, false), new EllipsoidalNeighborhood(3, 2, false), new CylindricalNeighborhood(2, 1, false)}) {
+            assertTrue(SlidingMinMaxFilter.isSupported(n));
+            Image min = Filters.min(test, null, n, true);
+            Image max = Filters.max(test, null, n, false);
+            ImageByte binMin = Filters.binaryMin(mask, new ImageByte("", 0, 0, 0), n, true, true);
+            ImageByte binMax = Filters.binaryMax(mask, new ImageByte("", 0, 0, 0), n, false, false, false);
+            BoundingBox.loop(test, (x, y, z) -> {
+                assertEquals("min x="+x+" y="+y+" z="+z, n.getMin(x, y, z, test), min.getPixel(x, y, z), 0);
+                assertEquals("max x="+x+" y="+y+" z="+z, n.getMax(x, y, z, test), max.getPixel(x, y, z), 0);
+                assertEquals("binary min x="+x+" y="+y+" z="+z, mask.insideMask(x, y, z) && !n.hasNullValue(x, y, z, mask, true), binMin.insideMask(x, y, z));
+                assertEquals("binary max x="+x+" y="+y+" z="+z, mask.insideMask(x, y, z) || n.hasNonNullValue(x, y, z, mask, false), binMax.insideMask(x, y, z));
+            });
+        }
+        assertFalse(SlidingMinMaxFilter.isSupported(new EllipsoidalNeighborhood(2, true)));
+    }
 }
@@ -0,0 +1,66 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.image.processing.watershed;
+
+import boa.data_structure.Voxel;
+import boa.image.BlankMask;
+import boa.image.Image;
+import boa.image.ImageByte;
+import boa.image.ImageFloat;
+import java.util.Random;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestPixelQueue {
+    @Test
+    public void testOrder() {
+        BlankMask dims = new BlankMask(13, 11, 3);
+        for (boolean decreasing : new boolean[]{false, true}) {
+            assertOrder(PixelQueue.create(dims, decreasing, new ImageFloat("", dims)), decreasing);
+            PixelQueue bucket = PixelQueue.create(dims, decreasing, new ImageByte("", dims));
+            assertTrue("bucket queue for 8-bit map", bucket instanceof PixelQueue.BucketQueue);
+            assertOrder(bucket, decreasing);
+        }
+    }
+    private static void assertOrder(PixelQueue queue, boolean decreasing) {
+        TreeSet<Voxel> reference = new TreeSet<>(decreasing ? Voxel.getInvertedComparator() : Voxel.getComparator());
+        Random r = new Random(1);
+        for (int i = 0; i<10000; ++i) {
+            if (r.nextInt(3)>0 || reference.isEmpty()) { // insertions and polls are interleaved
+                Voxel v = new Voxel(r.nextInt(13), r.nextInt(11), r.nextInt(3));
+                v.value = r.nextInt(20);
+                if (reference.add(v)) queue.add(v);
+            } else {
+                Voxel v = reference.pollFirst();
+                int key = queue.poll();
+                assertEquals("x", v.x, queue.getX(key));
+                assertEquals("y", v.y, queue.getY(key));
+                assertEquals("z", v.z, queue.getZ(key));
+                assertEquals("value", v.value, queue.getPolledValue(), 0);
+            }
+        }
+        assertEquals("size", reference.size(), queue.size());
+    }
+}
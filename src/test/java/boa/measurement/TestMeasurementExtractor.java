@@ -0,0 +1,178 @@
+/* 
+ * Copyright (C) 2018 Jean Ollion
+ *
+ * This File is part of BACMMAN
+ *
+ * BACMMAN is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BACMMAN is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BACMMAN.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package boa.measurement;
+
+import boa.configuration.experiment.ChannelImage;
+import boa.configuration.experiment.Experiment;
+import boa.configuration.experiment.Structure;
+import boa.data_structure.Measurements;
+import boa.data_structure.Region;
+import boa.data_structure.StructureObject;
+import boa.data_structure.dao.DBMapMasterDAO;
+import boa.data_structure.dao.MasterDAO;
+import boa.data_structure.dao.MasterDAOFactory;
+import boa.data_structure.dao.MasterDAOFactory.DAOType;
+import boa.data_structure.dao.ObjectDAO;
+import boa.image.BlankMask;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jean Ollion
+ */
+public class TestMeasurementExtractor {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    
+    private MasterDAO createDataset(Experiment.MeasurementStoreTypes measurementStoreType) throws IOException {
+        MasterDAO db = MasterDAOFactory.createDAO("testdb", testFolder.newFolder().getAbsolutePath(), DAOType.DBMap);
+        Experiment xp = new Experiment("test");
+        xp.getChannelImages().insert(new ChannelImage("ChannelImage"));
+        Structure child = new Structure("Child", 0, 0);
+        xp.getStructures().insert(new Structure("Parent", -1, 0), child);
+        child.setParentStructure(0);
+        xp.setOutputDirectory(testFolder.newFolder().getAbsolutePath());
+        xp.setMeasurementStoreType(measurementStoreType);
+        xp.createPosition("position0");
+        xp.createPosition("position1");
+        db.setExperiment(xp);
+        for (String position : xp.getPositionsAsString()) {
+            ObjectDAO dao = db.getDao(position);
+            List<StructureObject> roots = new ArrayList<>();
+            for (int f = 0; f<3; ++f) roots.add(new StructureObject(f, new BlankMask(100, 100, 1, 0, 0, 0, 1, 1), dao));
+            dao.store(roots);
+            List<StructureObject> parents = new ArrayList<>();
+            List<StructureObject> children = new ArrayList<>();
+            for (StructureObject r : roots) {
+                for (int i = 0; i<2; ++i) {
+                    StructureObject p = new StructureObject(r.getFrame(), 0, i, new Region(new BlankMask(10, 10, 1, 20*i, 0, 0, 1, 1), i+1, true), r);
+                    if (i==0) p.getMeasurements().setValue("ParentValue", r.getFrame()*10+i); // no measurements for second parent: NA values
+                    parents.add(p);
+                    for (int j = 0; j<3; ++j) {
+                        StructureObject c = new StructureObject(r.getFrame(), 1, j, new Region(new BlankMask(1, 1, 1, 20*i+j, 0, 0, 1, 1), j+1, true), p);
+                        c.getMeasurements().setValue("ChildValue", r.getFrame()*100+i*10+j+0.5);
+                        c.getMeasurements().setStringValue("ChildLabel", "l"+j);
+                        children.add(c);
+                    }
+                }
+            }
+            // stored in an order that differs from index order
+            Collections.reverse(parents);
+            Collections.reverse(children);
+            dao.store(parents);
+            dao.store(children);
+        }
+        return db;
+    }
+    /**
+     * Reference extraction: as the previous extractor, all measurements of a position are loaded and sorted and parents are joined through a map. Parents are looked up by indices only
+     */
+    private static List<String> extractReference(MasterDAO db, List<String> positions, Map<Integer, String[]> allMeasurements) {
+        TreeMap<Integer, String[]> allMeasurementsSort = new TreeMap<>(allMeasurements);
+        int currentStructureIdx = allMeasurementsSort.lastKey();
+        MeasurementExtractor extractor = new MeasurementExtractor(db, currentStructureIdx);
+        List<String> lines = new ArrayList<>();
+        lines.add(extractor.getHeader(MeasurementExtractor.getAllMeasurements(allMeasurements)));
+        String[] currentMeasurementNames = allMeasurementsSort.get(currentStructureIdx);
+        for (String position : positions) {
+            ObjectDAO dao = db.getDao(position);
+            int posIdx = db.getExperiment().getPositionIdx(position);
+            TreeMap<Integer, Map<List<Integer>, Measurements>> parentMeasurements = new TreeMap<>();
+            for (Entry<Integer, String[]> e : allMeasurementsSort.headMap(currentStructureIdx).entrySet()) {
+                parentMeasurements.put(e.getKey(), dao.getMeasurements(e.getKey(), e.getValue()).stream().collect(Collectors.toMap(m -> toList(m.getIndices()), m -> m)));
+            }
+            List<Measurements> currentMeasurements = dao.getMeasurements(currentStructureIdx, currentMeasurementNames);
+            Collections.sort(currentMeasurements);
+            for (Measurements m : currentMeasurements) {
+                StringBuilder line = extractor.getBaseLine(m, posIdx);
+                for (Entry<Integer, Map<List<Integer>, Measurements>> e : parentMeasurements.entrySet()) {
+                    Measurements key = m.getParentMeasurementKey(db.getExperiment().getPathToStructure(e.getKey(), currentStructureIdx).length);
+                    Measurements parent = key==null ? null : e.getValue().get(toList(key.getIndices()));
+                    for (String pMeasName : allMeasurementsSort.get(e.getKey())) line.append(MeasurementExtractor.separator).append(parent==null ? Measurements.NA_STRING : parent.getValueAsString(pMeasName, MeasurementExtractor.numberFormater));
+                }
+                for (String mName : currentMeasurementNames) line.append(MeasurementExtractor.separator).append(m.getValueAsString(mName, MeasurementExtractor.numberFormater));
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+    private static List<Integer> toList(int[] indices) {
+        return Arrays.stream(indices).boxed().collect(Collectors.toList());
+    }
+    private static Map<Integer, String[]> getAllMeasurements() {
+        Map<Integer, String[]> allMeasurements = new HashMap<>();
+        allMeasurements.put(0, new String[]{"ParentValue"});
+        allMeasurements.put(1, new String[]{"ChildValue", "ChildLabel"});
+        return allMeasurements;
+    }
+    @Test
+    public void testExtractMeasurements() throws IOException {
+        for (Experiment.MeasurementStoreTypes type : Experiment.MeasurementStoreTypes.values()) {
+            MasterDAO db = createDataset(type);
+            List<String> positions = Arrays.asList(db.getExperiment().getPositionsAsString());
+            Map<Integer, String[]> allMeasurements = getAllMeasurements();
+            File output = new File(testFolder.newFolder(), "measurements.csv");
+            MeasurementExtractor.extractMeasurementObjects(db, output.getAbsolutePath(), positions, allMeasurements);
+            List<String> expected = extractReference(db, positions, allMeasurements);
+            assertEquals(type+": line count", 1 + 2 * 3 * 2 * 3, expected.size());
+            assertEquals(type+": extracted lines", expected, Files.readAllLines(output.toPath()));
+        }
+    }
+    private static List<String> listMeasurementFiles(MasterDAO db) throws IOException {
+        try (Stream<Path> files = Files.walk(Paths.get(db.getExperiment().getOutputDirectory()))) {
+            return files.map(p -> p.getFileName().toString()).filter(n -> n.startsWith("measurements_")).sorted().collect(Collectors.toList());
+        }
+    }
+    @Test
+    public void testConvertMeasurementStores() throws IOException {
+        MasterDAO db = createDataset(Experiment.MeasurementStoreTypes.JSON);
+        List<String> positions = Arrays.asList(db.getExperiment().getPositionsAsString());
+        Map<Integer, String[]> allMeasurements = getAllMeasurements();
+        List<String> expected = extractReference(db, positions, allMeasurements);
+        List<String> jsonFiles = listMeasurementFiles(db);
+        assertTrue("JSON files: "+jsonFiles, jsonFiles.contains("measurements_1.db"));
+        for (Experiment.MeasurementStoreTypes type : new Experiment.MeasurementStoreTypes[]{Experiment.MeasurementStoreTypes.Columnar, Experiment.MeasurementStoreTypes.JSON}) {
+            db.getExperiment().setMeasurementStoreType(type);
+            ((DBMapMasterDAO)db).convertMeasurementStores();
+            List<String> files = listMeasurementFiles(db);
+            assertEquals(type+": converted files: "+files, type==Experiment.MeasurementStoreTypes.Columnar, files.contains("measurements_1_columns"));
+            assertEquals(type+": converted files: "+files, type==Experiment.MeasurementStoreTypes.JSON, files.contains("measurements_1.db"));
+            assertEquals(type+": measurements after conversion", expected, extractReference(db, positions, allMeasurements));
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package boa.processing.test;
 
 import static boa.test_utils.TestUtils.logger;
+import boa.utils.Id;
 import boa.ui.GUI;
 import boa.gui.image_interaction.ImageWindowManagerFactory;
 import boa.core.Processor;
@@ -84,7 +85,7 @@ public class TestSegmenter {
                 }
             }
         }
-        Map<String, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, false); 
+        Map<Id, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, false); 
         logger.debug("parentTrack: {} ({})", parentTrack.get(0), parentTrack.size());
         parentTrack = Utils.transform(parentTrack, o->gCutMap.get(o.getId()));
         for (StructureObject p : parentTrack) p.setChildren(null, structureIdx);
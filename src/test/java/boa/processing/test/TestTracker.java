@@ -19,6 +19,7 @@
 package boa.processing.test;
 
 import static boa.test_utils.TestUtils.logger;
+import boa.utils.Id;
 import boa.ui.GUI;
 import boa.gui.image_interaction.InteractiveImage;
 import boa.gui.image_interaction.ImageWindowManager;
@@ -135,7 +136,7 @@ public class TestTracker {
         ps.getPreFilters().removeAll();
         ps.getTrackPreFilters(false).removeAll();
         
-        Map<String, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, true); 
+        Map<Id, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, true); 
         parentTrack = Utils.transform(parentTrack, o->gCutMap.get(o.getId()));
         for (StructureObject p : parentTrack) p.setChildren(null, structureIdx);
         logger.debug("parent track: {}", parentTrack.size());
@@ -198,7 +199,7 @@ public class TestTracker {
         }
         ps.getPreFilters().removeAll();
         ps.getTrackPreFilters(false).removeAll();
-        Map<String, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, true); 
+        Map<Id, StructureObject> gCutMap = StructureObjectUtils.createGraphCut(parentTrack, true, true); 
         parentTrack = Utils.transform(parentTrack, o->gCutMap.get(o.getId()));
         for (StructureObject p : parentTrack) p.setChildren(null, structureIdx);
         